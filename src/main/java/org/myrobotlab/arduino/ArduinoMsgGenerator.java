@@ -26,7 +26,7 @@ public class ArduinoMsgGenerator {
 
   public transient final static Logger log = LoggerFactory.getLogger(ArduinoMsgGenerator.class);
 
-  static final Integer MRLCOMM_VERSION = 67;
+  static final Integer MRLCOMM_VERSION = 69;
 
   private String ackEnabled = "true";
 
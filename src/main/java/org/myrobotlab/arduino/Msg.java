@@ -63,7 +63,7 @@ public class Msg {
   public transient final static Logger log = LoggerFactory.getLogger(Msg.class);
   public static final int MAX_MSG_SIZE = 64;
   public static final int MAGIC_NUMBER = 170; // 10101010
-  public static final int MRLCOMM_VERSION = 67;
+  public static final int MRLCOMM_VERSION = 69;
   // send buffer
   private int sendBufferSize = 0;
   private int sendBuffer[] = new int[MAX_MSG_SIZE];
@@ -220,6 +220,15 @@ public class Msg {
   public final static int PUBLISH_MRL_COMM_BEGIN = 55;
   // > servoStop/deviceId
   public final static int SERVO_STOP = 56;
+  // > i2cPollStart/deviceId/pollId/deviceAddress/registerAddress/size/b16
+  // intervalMs
+  public final static int I2C_POLL_START = 57;
+  // > i2cPollStop/deviceId/pollId
+  public final static int I2C_POLL_STOP = 58;
+  // < publishI2cPollData/deviceId/pollId/bu32 timestamp/[] data
+  public final static int PUBLISH_I2C_POLL_DATA = 59;
+  // > i2cTransaction/deviceId/deviceAddress/[] ops
+  public final static int I2C_TRANSACTION = 60;
 
   /**
    * These methods will be invoked from the Msg class as callbacks from MrlComm.
@@ -244,6 +253,8 @@ public class Msg {
   // public void publishEncoderData(Integer deviceId/*byte*/, Integer
   // position/*b16*/){}
   // public void publishMrlCommBegin(Integer version/*byte*/){}
+  // public void publishI2cPollData(Integer deviceId/*byte*/, Integer
+  // pollId/*byte*/, Long timestamp/*bu32*/, int[] data/*[]*/){}
 
   public Msg(MrlCommPublisher arduino, SerialDevice serial) {
     this.arduino = arduino;
@@ -644,6 +655,41 @@ public class Msg {
 
         break;
       }
+      case PUBLISH_I2C_POLL_DATA: {
+        Integer deviceId = ioCmd[startPos + 1]; // bu8
+        startPos += 1;
+        Integer pollId = ioCmd[startPos + 1]; // bu8
+        startPos += 1;
+        Long timestamp = bu32(ioCmd, startPos + 1);
+        startPos += 4; // bu32
+        int[] data = subArray(ioCmd, startPos + 2, ioCmd[startPos + 1]);
+        startPos += 1 + ioCmd[startPos + 1];
+        if (invoke) {
+          arduino.invoke("publishI2cPollData", deviceId, pollId, timestamp, data);
+        } else {
+          arduino.publishI2cPollData(deviceId, pollId, timestamp, data);
+        }
+        if (record != null) {
+          rxBuffer.append("< publishI2cPollData");
+          rxBuffer.append("/");
+          rxBuffer.append(deviceId);
+          rxBuffer.append("/");
+          rxBuffer.append(pollId);
+          rxBuffer.append("/");
+          rxBuffer.append(timestamp);
+          rxBuffer.append("/");
+          rxBuffer.append(Arrays.toString(data));
+          rxBuffer.append("\n");
+          try {
+            record.write(rxBuffer.toString().getBytes());
+            rxBuffer.setLength(0);
+          } catch (IOException e) {
+            log.warn("failed recording bytes.", e);
+          }
+        }
+
+        break;
+      }
 
     }
   }
@@ -2147,6 +2193,128 @@ public class Msg {
     }
   }
 
+  public synchronized byte[] i2cPollStart(Integer deviceId/* byte */,
+      Integer pollId/* byte */, Integer deviceAddress/* byte */,
+      Integer registerAddress/* byte */, Integer size/* byte */,
+      Integer intervalMs/* b16 */) {
+    if (debug) {
+      log.info("Sending Message: i2cPollStart to {}", serial.getName());
+    }
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try {
+      appendMessage(baos, MAGIC_NUMBER);
+      appendMessage(baos, 1 + 1 + 1 + 1 + 1 + 1 + 2); // size
+      appendMessage(baos, I2C_POLL_START); // msgType = 57
+      appendMessage(baos, deviceId);
+      appendMessage(baos, pollId);
+      appendMessage(baos, deviceAddress);
+      appendMessage(baos, registerAddress);
+      appendMessage(baos, size);
+      appendMessageb16(baos, intervalMs);
+
+      byte[] message = sendMessage(baos);
+      if (ackEnabled) {
+        waitForAck();
+      }
+      if (record != null) {
+        txBuffer.append("> i2cPollStart");
+        txBuffer.append("/");
+        txBuffer.append(deviceId);
+        txBuffer.append("/");
+        txBuffer.append(pollId);
+        txBuffer.append("/");
+        txBuffer.append(deviceAddress);
+        txBuffer.append("/");
+        txBuffer.append(registerAddress);
+        txBuffer.append("/");
+        txBuffer.append(size);
+        txBuffer.append("/");
+        txBuffer.append(intervalMs);
+        txBuffer.append("\n");
+        record.write(txBuffer.toString().getBytes());
+        txBuffer.setLength(0);
+      }
+
+      return message;
+    } catch (Exception e) {
+      log.error("i2cPollStart threw", e);
+      return null;
+    }
+  }
+
+  public synchronized byte[] i2cPollStop(Integer deviceId/* byte */,
+      Integer pollId/* byte */) {
+    if (debug) {
+      log.info("Sending Message: i2cPollStop to {}", serial.getName());
+    }
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try {
+      appendMessage(baos, MAGIC_NUMBER);
+      appendMessage(baos, 1 + 1 + 1); // size
+      appendMessage(baos, I2C_POLL_STOP); // msgType = 58
+      appendMessage(baos, deviceId);
+      appendMessage(baos, pollId);
+
+      byte[] message = sendMessage(baos);
+      if (ackEnabled) {
+        waitForAck();
+      }
+      if (record != null) {
+        txBuffer.append("> i2cPollStop");
+        txBuffer.append("/");
+        txBuffer.append(deviceId);
+        txBuffer.append("/");
+        txBuffer.append(pollId);
+        txBuffer.append("\n");
+        record.write(txBuffer.toString().getBytes());
+        txBuffer.setLength(0);
+      }
+
+      return message;
+    } catch (Exception e) {
+      log.error("i2cPollStop threw", e);
+      return null;
+    }
+  }
+
+  public synchronized byte[] i2cTransaction(Integer deviceId/* byte */,
+      Integer deviceAddress/* byte */, int[] ops/* [] */) {
+    if (debug) {
+      log.info("Sending Message: i2cTransaction to {}", serial.getName());
+    }
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try {
+      appendMessage(baos, MAGIC_NUMBER);
+      appendMessage(baos, 1 + 1 + 1 + (1 + ops.length)); // size
+      appendMessage(baos, I2C_TRANSACTION); // msgType = 60
+      appendMessage(baos, deviceId);
+      appendMessage(baos, deviceAddress);
+      appendMessage(baos, ops);
+
+      byte[] message = sendMessage(baos);
+      if (ackEnabled) {
+        waitForAck();
+      }
+      if (record != null) {
+        txBuffer.append("> i2cTransaction");
+        txBuffer.append("/");
+        txBuffer.append(deviceId);
+        txBuffer.append("/");
+        txBuffer.append(deviceAddress);
+        txBuffer.append("/");
+        txBuffer.append(Arrays.toString(ops));
+        txBuffer.append("\n");
+        record.write(txBuffer.toString().getBytes());
+        txBuffer.setLength(0);
+      }
+
+      return message;
+    } catch (Exception e) {
+      log.error("i2cTransaction threw", e);
+      return null;
+    }
+  }
+
   public static String methodToString(int method) {
     switch (method) {
       case PUBLISH_MRLCOMM_ERROR: {
@@ -2317,6 +2485,18 @@ public class Msg {
       case SERVO_STOP: {
         return "servoStop";
       }
+      case I2C_POLL_START: {
+        return "i2cPollStart";
+      }
+      case I2C_POLL_STOP: {
+        return "i2cPollStop";
+      }
+      case PUBLISH_I2C_POLL_DATA: {
+        return "publishI2cPollData";
+      }
+      case I2C_TRANSACTION: {
+        return "i2cTransaction";
+      }
 
       default: {
         return "ERROR UNKNOWN METHOD (" + Integer.toString(method) + ")";
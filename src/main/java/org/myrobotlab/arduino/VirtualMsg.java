@@ -62,7 +62,7 @@ public class VirtualMsg {
   public transient final static Logger log = LoggerFactory.getLogger(VirtualMsg.class);
   public static final int MAX_MSG_SIZE = 64;
   public static final int MAGIC_NUMBER = 170; // 10101010
-  public static final int MRLCOMM_VERSION = 67;
+  public static final int MRLCOMM_VERSION = 69;
   // send buffer
   private int sendBufferSize = 0;
   private int sendBuffer[] = new int[MAX_MSG_SIZE];
@@ -219,6 +219,15 @@ public class VirtualMsg {
   public final static int PUBLISH_MRL_COMM_BEGIN = 55;
   // > servoStop/deviceId
   public final static int SERVO_STOP = 56;
+  // > i2cPollStart/deviceId/pollId/deviceAddress/registerAddress/size/b16
+  // intervalMs
+  public final static int I2C_POLL_START = 57;
+  // > i2cPollStop/deviceId/pollId
+  public final static int I2C_POLL_STOP = 58;
+  // < publishI2cPollData/deviceId/pollId/bu32 timestamp/[] data
+  public final static int PUBLISH_I2C_POLL_DATA = 59;
+  // > i2cTransaction/deviceId/deviceAddress/[] ops
+  public final static int I2C_TRANSACTION = 60;
 
   /**
    * These methods will be invoked from the Msg class as callbacks from MrlComm.
@@ -287,6 +296,13 @@ public class VirtualMsg {
   // Integer pin/*byte*/){}
   // public void setZeroPoint(Integer deviceId/*byte*/){}
   // public void servoStop(Integer deviceId/*byte*/){}
+  // public void i2cPollStart(Integer deviceId/*byte*/, Integer
+  // pollId/*byte*/, Integer deviceAddress/*byte*/, Integer
+  // registerAddress/*byte*/, Integer size/*byte*/, Integer
+  // intervalMs/*b16*/){}
+  // public void i2cPollStop(Integer deviceId/*byte*/, Integer pollId/*byte*/){}
+  // public void i2cTransaction(Integer deviceId/*byte*/, Integer
+  // deviceAddress/*byte*/, int[] ops/*[]*/){}
 
   public VirtualMsg(MrlComm arduino, SerialDevice serial) {
     this.arduino = arduino;
@@ -850,6 +866,52 @@ public class VirtualMsg {
         }
         break;
       }
+      case I2C_POLL_START: {
+        Integer deviceId = ioCmd[startPos + 1]; // bu8
+        startPos += 1;
+        Integer pollId = ioCmd[startPos + 1]; // bu8
+        startPos += 1;
+        Integer deviceAddress = ioCmd[startPos + 1]; // bu8
+        startPos += 1;
+        Integer registerAddress = ioCmd[startPos + 1]; // bu8
+        startPos += 1;
+        Integer size = ioCmd[startPos + 1]; // bu8
+        startPos += 1;
+        Integer intervalMs = b16(ioCmd, startPos + 1);
+        startPos += 2; // b16
+        if (invoke) {
+          arduino.invoke("i2cPollStart", deviceId, pollId, deviceAddress, registerAddress, size, intervalMs);
+        } else {
+          arduino.i2cPollStart(deviceId, pollId, deviceAddress, registerAddress, size, intervalMs);
+        }
+        break;
+      }
+      case I2C_POLL_STOP: {
+        Integer deviceId = ioCmd[startPos + 1]; // bu8
+        startPos += 1;
+        Integer pollId = ioCmd[startPos + 1]; // bu8
+        startPos += 1;
+        if (invoke) {
+          arduino.invoke("i2cPollStop", deviceId, pollId);
+        } else {
+          arduino.i2cPollStop(deviceId, pollId);
+        }
+        break;
+      }
+      case I2C_TRANSACTION: {
+        Integer deviceId = ioCmd[startPos + 1]; // bu8
+        startPos += 1;
+        Integer deviceAddress = ioCmd[startPos + 1]; // bu8
+        startPos += 1;
+        int[] ops = subArray(ioCmd, startPos + 2, ioCmd[startPos + 1]);
+        startPos += 1 + ioCmd[startPos + 1];
+        if (invoke) {
+          arduino.invoke("i2cTransaction", deviceId, deviceAddress, ops);
+        } else {
+          arduino.i2cTransaction(deviceId, deviceAddress, ops);
+        }
+        break;
+      }
 
     }
   }
@@ -1311,6 +1373,47 @@ public class VirtualMsg {
     }
   }
 
+  public synchronized byte[] publishI2cPollData(Integer deviceId/* byte */,
+      Integer pollId/* byte */, Long timestamp/* bu32 */, int[] data/* [] */) {
+    if (debug) {
+      log.info("Sending Message: publishI2cPollData to {}", serial.getName());
+    }
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try {
+      appendMessage(baos, MAGIC_NUMBER);
+      appendMessage(baos, 1 + 1 + 1 + 4 + (1 + data.length)); // size
+      appendMessage(baos, PUBLISH_I2C_POLL_DATA); // msgType = 59
+      appendMessage(baos, deviceId);
+      appendMessage(baos, pollId);
+      appendMessagebu32(baos, timestamp);
+      appendMessage(baos, data);
+
+      byte[] message = sendMessage(baos);
+      if (ackEnabled) {
+        waitForAck();
+      }
+      if (record != null) {
+        txBuffer.append("> publishI2cPollData");
+        txBuffer.append("/");
+        txBuffer.append(deviceId);
+        txBuffer.append("/");
+        txBuffer.append(pollId);
+        txBuffer.append("/");
+        txBuffer.append(timestamp);
+        txBuffer.append("/");
+        txBuffer.append(Arrays.toString(data));
+        txBuffer.append("\n");
+        record.write(txBuffer.toString().getBytes());
+        txBuffer.setLength(0);
+      }
+
+      return message;
+    } catch (Exception e) {
+      log.error("publishI2cPollData threw", e);
+      return null;
+    }
+  }
+
   public static String methodToString(int method) {
     switch (method) {
       case PUBLISH_MRLCOMM_ERROR: {
@@ -1481,6 +1584,18 @@ public class VirtualMsg {
       case SERVO_STOP: {
         return "servoStop";
       }
+      case I2C_POLL_START: {
+        return "i2cPollStart";
+      }
+      case I2C_POLL_STOP: {
+        return "i2cPollStop";
+      }
+      case PUBLISH_I2C_POLL_DATA: {
+        return "publishI2cPollData";
+      }
+      case I2C_TRANSACTION: {
+        return "i2cTransaction";
+      }
 
       default: {
         return "ERROR UNKNOWN METHOD (" + Integer.toString(method) + ")";
@@ -10,6 +10,7 @@ import java.util.Map;
 import org.myrobotlab.arduino.BoardInfo;
 import org.myrobotlab.arduino.VirtualMsg;
 import org.myrobotlab.framework.QueueStats;
+import org.myrobotlab.framework.SimClock;
 import org.myrobotlab.logging.LoggerFactory;
 import org.myrobotlab.service.Arduino;
 import org.myrobotlab.service.Serial;
@@ -499,16 +500,32 @@ public class MrlComm implements SerialDataListener {
     ((MrlI2CBus) getDevice(deviceId)).i2cWriteRead(deviceAddress, readSize, writeValue);
   }
 
+  // > i2cPollStart/deviceId/pollId/deviceAddress/registerAddress/size/b16
+  // intervalMs
+  public void i2cPollStart(Integer deviceId, Integer pollId, Integer deviceAddress, Integer registerAddress, Integer size, Integer intervalMs) {
+    ((MrlI2CBus) getDevice(deviceId)).pollStart(pollId, deviceAddress, registerAddress, size, intervalMs);
+  }
+
+  // > i2cPollStop/deviceId/pollId
+  public void i2cPollStop(Integer deviceId, Integer pollId) {
+    ((MrlI2CBus) getDevice(deviceId)).pollStop(pollId);
+  }
+
+  // > i2cTransaction/deviceId/deviceAddress/[] ops
+  public void i2cTransaction(Integer deviceId, Integer deviceAddress, int[] ops) {
+    ((MrlI2CBus) getDevice(deviceId)).i2cTransaction(deviceAddress, ops);
+  }
+
   public Object invoke(String method, Object... params) {
     return virtual.invokeOn(false, this, method, params);
   }
 
   public long micros() {
-    return System.nanoTime() / 1000;
+    return SimClock.nanoTime() / 1000;
   }
 
   private long millis() {
-    return System.currentTimeMillis();
+    return SimClock.currentTimeMillis();
   }
 
   // > motorAttach/deviceId/type/[] pins
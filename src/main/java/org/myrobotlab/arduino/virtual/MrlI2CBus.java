@@ -1,6 +1,7 @@
 package org.myrobotlab.arduino.virtual;
 
 import org.myrobotlab.arduino.VirtualMsg;
+import org.myrobotlab.framework.SimClock;
 import org.myrobotlab.service.VirtualArduino;
 
 public class MrlI2CBus extends Device {
@@ -8,8 +9,26 @@ public class MrlI2CBus extends Device {
   private static int TWCR = 0;
   int bus;
 
+  static final int MAX_I2C_POLLS = 4;
+  static final int MAX_I2C_POLL_SIZE = 32;
+
+  static class I2cPoll {
+    boolean active;
+    int pollId;
+    int deviceAddress;
+    int registerAddress;
+    int size;
+    int intervalMs;
+    long lastRead;
+  }
+
+  I2cPoll[] polls = new I2cPoll[MAX_I2C_POLLS];
+
   MrlI2CBus(int deviceId, VirtualArduino virtual) {
     super(deviceId, VirtualMsg.DEVICE_TYPE_I2C, virtual);
+    for (int i = 0; i < MAX_I2C_POLLS; ++i) {
+      polls[i] = new I2cPoll();
+    }
     if (TWCR == 0) { //// do this check so that Wire only gets initialized once
       Wire.begin();
       // Force 400 KHz i2c
@@ -70,8 +89,112 @@ public class MrlI2CBus extends Device {
     msg.publishI2cData(id, msg.getBuffer());
   }
 
+  // I2CTRANSACTION | DEVICE_INDEX | I2CADDRESS | OPSSIZE | OPS....
+  // every op is a header byte - high bit set for a read, the low 7 bits are
+  // the size - followed by the bytes of a write. Everything read is published
+  // at once
+  void i2cTransaction(int deviceAddress, int[] ops) {
+    int[] data = new int[MAX_I2C_POLL_SIZE];
+    int size = 0;
+    int i = 0;
+    while (i < ops.length) {
+      int header = ops[i++];
+      int opSize = header & 0x7F;
+      if ((header & 0x80) != 0) {
+        int answer = Wire.requestFrom(deviceAddress, opSize);
+        for (int j = 0; j < answer; j++) {
+          int value = Wire.read();
+          if (size < data.length) {
+            data[size++] = value;
+          }
+        }
+      } else {
+        Wire.beginTransmission(deviceAddress);
+        for (int j = 0; j < opSize && i < ops.length; j++) {
+          Wire.write(ops[i++]);
+        }
+        Wire.endTransmission();
+      }
+    }
+    int[] read = new int[size];
+    System.arraycopy(data, 0, read, 0, size);
+    msg.publishI2cData(id, read);
+  }
+
+  // starts (or changes) a scheduled read - reuses the slot of the same pollId
+  void pollStart(int pollId, int deviceAddress, int registerAddress, int size, int intervalMs) {
+    I2cPoll slot = null;
+    for (int i = 0; i < MAX_I2C_POLLS; ++i) {
+      if (polls[i].active && polls[i].pollId == pollId) {
+        slot = polls[i];
+        break;
+      }
+    }
+    if (slot == null) {
+      for (int i = 0; i < MAX_I2C_POLLS; ++i) {
+        if (!polls[i].active) {
+          slot = polls[i];
+          break;
+        }
+      }
+    }
+    if (slot == null) {
+      msg.publishMRLCommError("too many i2c polls");
+      return;
+    }
+    slot.pollId = pollId;
+    slot.deviceAddress = deviceAddress;
+    slot.registerAddress = registerAddress;
+    slot.size = Math.min(size, MAX_I2C_POLL_SIZE);
+    slot.intervalMs = intervalMs;
+    // first read on the next update
+    slot.lastRead = millis() - intervalMs;
+    slot.active = true;
+  }
+
+  void pollStop(int pollId) {
+    for (int i = 0; i < MAX_I2C_POLLS; ++i) {
+      if (polls[i].pollId == pollId) {
+        polls[i].active = false;
+      }
+    }
+  }
+
+  void poll(I2cPoll poll) {
+    long timestamp = micros();
+    Wire.beginTransmission(poll.deviceAddress);
+    Wire.write(poll.registerAddress);
+    Wire.endTransmission();
+    int answer = Wire.requestFrom(poll.deviceAddress, poll.size);
+    int[] data = new int[answer];
+    for (int i = 0; i < answer; i++) {
+      data[i] = Wire.read();
+    }
+    msg.publishI2cPollData(id, poll.pollId, timestamp & 0xFFFFFFFFL, data);
+  }
+
   void update() {
-    // Nothing to do
+    long now = millis();
+    for (int i = 0; i < MAX_I2C_POLLS; ++i) {
+      I2cPoll poll = polls[i];
+      if (poll.active && now - poll.lastRead >= poll.intervalMs) {
+        // keep the schedule, a read which is late does not push the next
+        // ones back, reads which were missed are skipped
+        poll.lastRead += poll.intervalMs;
+        if (now - poll.lastRead >= poll.intervalMs) {
+          poll.lastRead = now;
+        }
+        poll(poll);
+      }
+    }
+  }
+
+  private long millis() {
+    return SimClock.currentTimeMillis();
+  }
+
+  private long micros() {
+    return SimClock.nanoTime() / 1000;
   }
 
 }
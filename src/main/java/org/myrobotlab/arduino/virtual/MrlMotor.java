@@ -1,6 +1,7 @@
 package org.myrobotlab.arduino.virtual;
 
 import org.myrobotlab.arduino.Msg;
+import org.myrobotlab.framework.SimClock;
 import org.myrobotlab.logging.LoggerFactory;
 import org.myrobotlab.service.VirtualArduino;
 import org.myrobotlab.virtual.VirtualMotor;
@@ -141,7 +142,7 @@ public class MrlMotor extends Device {
   }
 
   private long millis() {
-    return System.currentTimeMillis();
+    return SimClock.currentTimeMillis();
   }
 
   public void startSweep(int min, int max, int step) {
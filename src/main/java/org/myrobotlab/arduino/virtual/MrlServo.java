@@ -1,6 +1,7 @@
 package org.myrobotlab.arduino.virtual;
 
 import org.myrobotlab.arduino.Msg;
+import org.myrobotlab.framework.SimClock;
 import org.myrobotlab.logging.LoggerFactory;
 import org.myrobotlab.service.VirtualArduino;
 import org.myrobotlab.virtual.VirtualServo;
@@ -181,7 +182,7 @@ public class MrlServo extends Device implements VirtualServo {
   }
 
   private long millis() {
-    return System.currentTimeMillis();
+    return SimClock.currentTimeMillis();
   }
 
   private void publishServoEvent(int type) {
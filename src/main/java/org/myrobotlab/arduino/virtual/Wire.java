@@ -1,40 +1,84 @@
 package org.myrobotlab.arduino.virtual;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Register file simulation of the i2c bus. A device given registers with
+ * setRegisters behaves like most i2c sensors - the first byte written is the
+ * register pointer, further bytes are written to the registers and reads
+ * continue from the pointer. Devices without registers read 123.
+ */
 public class Wire {
 
-  public static void beginTransmission(int writeValue) {
-    // TODO Auto-generated method stub
+  static final Map<Integer, int[]> registers = new ConcurrentHashMap<Integer, int[]>();
+
+  static final Map<Integer, Integer> pointers = new ConcurrentHashMap<Integer, Integer>();
 
+  static int txAddress = -1;
+  static int txCount = 0;
+  static int rxAddress = -1;
+
+  public static void setRegisters(int deviceAddress, int startRegister, int... values) {
+    int[] file = registers.computeIfAbsent(deviceAddress, k -> new int[256]);
+    for (int i = 0; i < values.length; ++i) {
+      file[(startRegister + i) & 0xFF] = values[i] & 0xFF;
+    }
   }
 
-  public static void write(int writeValue) {
-    // TODO Auto-generated method stub
+  public static int getRegister(int deviceAddress, int register) {
+    int[] file = registers.get(deviceAddress);
+    return (file == null) ? 0 : file[register & 0xFF];
+  }
 
+  public static void clear() {
+    registers.clear();
+    pointers.clear();
   }
 
-  public static void endTransmission() {
-    // TODO Auto-generated method stub
+  public static void beginTransmission(int deviceAddress) {
+    txAddress = deviceAddress;
+    txCount = 0;
+  }
 
+  public static void write(int writeValue) {
+    int[] file = registers.get(txAddress);
+    if (file == null) {
+      return;
+    }
+    if (txCount == 0) {
+      pointers.put(txAddress, writeValue & 0xFF);
+    } else {
+      int pointer = pointers.getOrDefault(txAddress, 0);
+      file[pointer] = writeValue & 0xFF;
+      pointers.put(txAddress, (pointer + 1) & 0xFF);
+    }
+    ++txCount;
+  }
+
+  public static void endTransmission() {
+    txAddress = -1;
   }
 
   public static int requestFrom(int deviceAddress, int readSize) {
-    // TODO Auto-generated method stub
+    rxAddress = deviceAddress;
     return readSize;
   }
 
   public static void begin() {
-    // TODO Auto-generated method stub
-
   }
 
   public static void setClock(long l) {
-    // TODO Auto-generated method stub
-
   }
 
   public static int read() {
-    // TODO Auto-generated method stub
-    return 123;
+    int[] file = registers.get(rxAddress);
+    if (file == null) {
+      return 123;
+    }
+    int pointer = pointers.getOrDefault(rxAddress, 0);
+    pointers.put(rxAddress, (pointer + 1) & 0xFF);
+    return file[pointer];
   }
 
 }
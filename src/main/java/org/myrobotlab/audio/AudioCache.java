@@ -0,0 +1,491 @@
+package org.myrobotlab.audio;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import org.myrobotlab.logging.LoggerFactory;
+import org.slf4j.Logger;
+
+/**
+ * Cache of generated speech. The speech services write one file per phrase
+ * (audioFile/&lt;Service&gt;/&lt;voice&gt;/&lt;md5&gt;.mp3), the cache keeps an
+ * index of them in memory and in audioFile/cache.index, so finding a phrase
+ * does not probe the file system. When the files grow over maxBytes the least
+ * recently used ones are deleted.
+ *
+ * Phrases spoken often are decoded once and kept as PCM in memory - the hot
+ * tier, bounded by maxHotBytes. AudioProcessor plays them without opening and
+ * decoding the file again. Prewarmed phrases are pinned - they are neither
+ * deleted nor dropped from memory.
+ */
+public class AudioCache {
+
+  public final static Logger log = LoggerFactory.getLogger(AudioCache.class);
+
+  public static final String INDEX_FILE = "cache.index";
+
+  /**
+   * generated files are named by the md5 of their text
+   */
+  static final Pattern cacheFileName = Pattern.compile("[0-9a-f]{32}\\.\\w+");
+
+  public static class Entry {
+    public String filename;
+    public String text;
+    public long size;
+    public long lastUsed;
+    public int hits;
+    public boolean pinned;
+  }
+
+  /**
+   * decoded audio ready for a SourceDataLine
+   */
+  public static class Pcm {
+    public AudioFormat format;
+    public byte[] data;
+
+    public Pcm(AudioFormat format, byte[] data) {
+      this.format = format;
+      this.data = data;
+    }
+  }
+
+  private static AudioCache instance = null;
+
+  final File root;
+
+  final File indexFile;
+
+  /**
+   * access ordered - the first entries are the least recently used
+   */
+  final LinkedHashMap<String, Entry> index = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+  final LinkedHashMap<String, Pcm> hot = new LinkedHashMap<String, Pcm>(16, 0.75f, true);
+
+  final Set<String> decoding = new HashSet<String>();
+
+  final Set<String> knownDirs = new HashSet<String>();
+
+  ExecutorService decoder = null;
+
+  long bytes = 0;
+  long hotBytes = 0;
+
+  long maxBytes = 256 * 1024 * 1024;
+  long maxHotBytes = 32 * 1024 * 1024;
+
+  /**
+   * uses before a phrase is decoded into memory
+   */
+  int hotHits = 2;
+
+  long hits = 0;
+  long misses = 0;
+  long hotPlays = 0;
+  long evicted = 0;
+
+  long lastSave = 0;
+  boolean dirty = false;
+
+  /**
+   * the cache of the speech services - audioFile in the working directory
+   */
+  public static synchronized AudioCache getInstance() {
+    if (instance == null) {
+      instance = new AudioCache(new File(System.getProperty("user.dir"), "audioFile"));
+    }
+    return instance;
+  }
+
+  /**
+   * decoded audio of a file if it is in memory, does not create the cache for
+   * players of other files
+   */
+  public static Pcm getHot(String filename) {
+    AudioCache cache = instance;
+    return (cache == null || filename == null) ? null : cache.getPcm(filename);
+  }
+
+  public AudioCache(File root) {
+    this.root = root;
+    this.indexFile = new File(root, INDEX_FILE);
+    load();
+  }
+
+  /**
+   * @return true if the file is in the cache - it is not probed on disk
+   */
+  public synchronized boolean contains(String filename) {
+    // get, not containsKey - a hit counts as a use for the eviction order
+    if (index.get(filename) != null) {
+      ++hits;
+      return true;
+    }
+    ++misses;
+    return false;
+  }
+
+  /**
+   * creates the directory a file will be generated in, once per directory
+   */
+  public void prepare(String filename) {
+    File dir = new File(filename).getParentFile();
+    if (dir == null) {
+      return;
+    }
+    synchronized (knownDirs) {
+      if (knownDirs.add(dir.getPath()) && !dir.exists()) {
+        dir.mkdirs();
+      }
+    }
+  }
+
+  /**
+   * adds a generated file to the cache
+   */
+  public synchronized Entry put(String filename, String text) {
+    File file = new File(filename);
+    Entry entry = index.get(filename);
+    if (entry == null) {
+      entry = new Entry();
+      entry.filename = filename;
+      index.put(filename, entry);
+    } else {
+      bytes -= entry.size;
+    }
+    entry.text = text;
+    entry.size = file.length();
+    entry.lastUsed = System.currentTimeMillis();
+    bytes += entry.size;
+    evict();
+    changed();
+    return entry;
+  }
+
+  /**
+   * a cached file is spoken again - once it has been used hotHits times it is
+   * decoded into memory in the background
+   */
+  public void touch(String filename) {
+    synchronized (this) {
+      Entry entry = index.get(filename);
+      if (entry == null) {
+        return;
+      }
+      entry.lastUsed = System.currentTimeMillis();
+      ++entry.hits;
+      changed();
+      if (entry.hits < hotHits || hot.containsKey(filename) || !decoding.add(filename)) {
+        return;
+      }
+    }
+    getDecoder().submit(() -> decode(filename, false));
+  }
+
+  /**
+   * decodes a file into memory now and pins it
+   */
+  public Pcm warm(String filename) {
+    synchronized (this) {
+      Entry entry = index.get(filename);
+      if (entry != null) {
+        entry.pinned = true;
+        changed();
+      }
+      Pcm pcm = hot.get(filename);
+      if (pcm != null) {
+        return pcm;
+      }
+    }
+    return decode(filename, true);
+  }
+
+  public synchronized Pcm getPcm(String filename) {
+    Pcm pcm = hot.get(filename);
+    if (pcm != null) {
+      ++hotPlays;
+    }
+    return pcm;
+  }
+
+  Pcm decode(String filename, boolean pinned) {
+    try (AudioInputStream in = AudioSystem.getAudioInputStream(new File(filename))) {
+      AudioFormat baseFormat = in.getFormat();
+      AudioFormat decodedFormat = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, baseFormat.getSampleRate(), 16, baseFormat.getChannels(), baseFormat.getChannels() * 2,
+          baseFormat.getSampleRate(), false);
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      try (AudioInputStream din = AudioSystem.getAudioInputStream(decodedFormat, in)) {
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = din.read(buffer, 0, buffer.length)) != -1) {
+          out.write(buffer, 0, n);
+        }
+      }
+      Pcm pcm = new Pcm(decodedFormat, out.toByteArray());
+      synchronized (this) {
+        // one phrase should not push everything else out
+        if (!pinned && pcm.data.length > maxHotBytes / 4) {
+          return null;
+        }
+        Pcm previous = hot.put(filename, pcm);
+        if (previous != null) {
+          hotBytes -= previous.data.length;
+        }
+        hotBytes += pcm.data.length;
+        evictHot();
+      }
+      return pcm;
+    } catch (Exception e) {
+      log.warn("could not decode {} - {}", filename, e.getMessage());
+      return null;
+    } finally {
+      synchronized (this) {
+        decoding.remove(filename);
+      }
+    }
+  }
+
+  /**
+   * removes a file from the cache and deletes it
+   */
+  public synchronized void remove(String filename) {
+    Entry entry = index.remove(filename);
+    if (entry != null) {
+      bytes -= entry.size;
+    }
+    Pcm pcm = hot.remove(filename);
+    if (pcm != null) {
+      hotBytes -= pcm.data.length;
+    }
+    new File(filename).delete();
+    changed();
+  }
+
+  /**
+   * removes every file below a directory - e.g. all of one speech service
+   */
+  public synchronized void removeAll(String dir) {
+    List<String> filenames = new ArrayList<String>();
+    for (String filename : index.keySet()) {
+      if (filename.startsWith(dir)) {
+        filenames.add(filename);
+      }
+    }
+    for (String filename : filenames) {
+      remove(filename);
+    }
+  }
+
+  /**
+   * deletes the least recently used files until the cache fits in maxBytes
+   */
+  synchronized void evict() {
+    Iterator<Map.Entry<String, Entry>> it = index.entrySet().iterator();
+    while (bytes > maxBytes && it.hasNext()) {
+      Entry entry = it.next().getValue();
+      if (entry.pinned) {
+        continue;
+      }
+      it.remove();
+      bytes -= entry.size;
+      Pcm pcm = hot.remove(entry.filename);
+      if (pcm != null) {
+        hotBytes -= pcm.data.length;
+      }
+      new File(entry.filename).delete();
+      ++evicted;
+      log.debug("evicted {}", entry.filename);
+    }
+  }
+
+  synchronized void evictHot() {
+    Iterator<Map.Entry<String, Pcm>> it = hot.entrySet().iterator();
+    while (hotBytes > maxHotBytes && it.hasNext()) {
+      Map.Entry<String, Pcm> e = it.next();
+      Entry entry = index.get(e.getKey());
+      if (entry != null && entry.pinned) {
+        continue;
+      }
+      it.remove();
+      hotBytes -= e.getValue().data.length;
+    }
+  }
+
+  synchronized ExecutorService getDecoder() {
+    if (decoder == null) {
+      decoder = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "audioCache.decoder");
+        t.setDaemon(true);
+        return t;
+      });
+    }
+    return decoder;
+  }
+
+  /**
+   * the index is saved at most every 10 seconds while it changes - save
+   * writes it now
+   */
+  void changed() {
+    dirty = true;
+    if (System.currentTimeMillis() - lastSave > 10000) {
+      save();
+    }
+  }
+
+  /**
+   * index lines are filename (relative to the cache directory), size, last
+   * use, hits, pinned and the text, separated by tabs
+   */
+  public synchronized void save() {
+    if (!dirty) {
+      return;
+    }
+    lastSave = System.currentTimeMillis();
+    dirty = false;
+    if (!root.exists()) {
+      root.mkdirs();
+    }
+    File tmp = new File(root, INDEX_FILE + ".tmp");
+    String prefix = root.getPath() + File.separator;
+    try (PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8))) {
+      for (Entry entry : index.values()) {
+        String filename = entry.filename.startsWith(prefix) ? entry.filename.substring(prefix.length()) : entry.filename;
+        String text = (entry.text == null) ? "" : entry.text.replaceAll("[\\t\\r\\n]", " ");
+        out.println(String.format("%s\t%d\t%d\t%d\t%b\t%s", filename, entry.size, entry.lastUsed, entry.hits, entry.pinned, text));
+      }
+    } catch (IOException e) {
+      log.error("could not save {}", indexFile, e);
+      return;
+    }
+    indexFile.delete();
+    if (!tmp.renameTo(indexFile)) {
+      log.error("could not rename {} to {}", tmp, indexFile);
+    }
+  }
+
+  /**
+   * reads the index - a cache without one is indexed from the generated files
+   * already on disk
+   */
+  synchronized void load() {
+    index.clear();
+    bytes = 0;
+    if (indexFile.exists()) {
+      try {
+        for (String line : Files.readAllLines(indexFile.toPath(), StandardCharsets.UTF_8)) {
+          String[] parts = line.split("\t", 6);
+          if (parts.length < 6) {
+            continue;
+          }
+          Entry entry = new Entry();
+          entry.filename = new File(parts[0]).isAbsolute() ? parts[0] : new File(root, parts[0]).getPath();
+          entry.size = Long.parseLong(parts[1]);
+          entry.lastUsed = Long.parseLong(parts[2]);
+          entry.hits = Integer.parseInt(parts[3]);
+          entry.pinned = Boolean.parseBoolean(parts[4]);
+          entry.text = parts[5];
+          index.put(entry.filename, entry);
+          bytes += entry.size;
+        }
+        log.info("audio cache {} files {} bytes", index.size(), bytes);
+        return;
+      } catch (Exception e) {
+        log.error("could not read {} - indexing the files", indexFile, e);
+        index.clear();
+        bytes = 0;
+      }
+    }
+    List<File> files = new ArrayList<File>();
+    scan(root, files);
+    files.sort((a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+    for (File file : files) {
+      Entry entry = new Entry();
+      entry.filename = file.getPath();
+      entry.size = file.length();
+      entry.lastUsed = file.lastModified();
+      index.put(entry.filename, entry);
+      bytes += entry.size;
+    }
+    if (!files.isEmpty()) {
+      dirty = true;
+      save();
+    }
+  }
+
+  void scan(File dir, List<File> files) {
+    File[] list = dir.listFiles();
+    if (list == null) {
+      return;
+    }
+    for (File file : list) {
+      if (file.isDirectory()) {
+        scan(file, files);
+      } else if (cacheFileName.matcher(file.getName()).matches()) {
+        files.add(file);
+      }
+    }
+  }
+
+  public synchronized void setMaxBytes(long maxBytes) {
+    this.maxBytes = maxBytes;
+    evict();
+  }
+
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  public synchronized void setMaxHotBytes(long maxHotBytes) {
+    this.maxHotBytes = maxHotBytes;
+    evictHot();
+  }
+
+  public long getMaxHotBytes() {
+    return maxHotBytes;
+  }
+
+  public void setHotHits(int hotHits) {
+    this.hotHits = hotHits;
+  }
+
+  public synchronized int size() {
+    return index.size();
+  }
+
+  public synchronized long getBytes() {
+    return bytes;
+  }
+
+  public synchronized int getHotSize() {
+    return hot.size();
+  }
+
+  public synchronized String getStats() {
+    return String.format("%d files %d/%d bytes - %d in memory %d/%d bytes - %d hits %d misses %d played from memory %d evicted", index.size(), bytes, maxBytes, hot.size(), hotBytes,
+        maxHotBytes, hits, misses, hotPlays, evicted);
+  }
+
+}
@@ -0,0 +1,458 @@
+package org.myrobotlab.audio;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.Line;
+import javax.sound.sampled.Mixer;
+import javax.sound.sampled.SourceDataLine;
+
+import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.service.data.AudioData;
+import org.slf4j.Logger;
+
+/**
+ * One open output line per audio device, shared by every track of every
+ * AudioFile. Tracks hand decoded PCM to a Playback and the engine mixes all
+ * playbacks in software, so a clip starts with the next block instead of after
+ * opening a line, and overlapping clips share the device. Volume and balance
+ * are gains applied in the mix.
+ *
+ * The line is kept running with silence while idle and closed after
+ * idleTimeoutMs without anything to play.
+ */
+public class AudioEngine implements Runnable {
+
+  public final static Logger log = LoggerFactory.getLogger(AudioEngine.class);
+
+  /**
+   * the mix format - clips of other rates or channels are converted
+   */
+  public static final AudioFormat FORMAT = new AudioFormat(44100, 16, 2, true, false);
+
+  /**
+   * frames mixed and written at once - about 6 ms
+   */
+  public static final int BLOCK_FRAMES = 256;
+
+  /**
+   * line buffer in blocks - the latency of the engine
+   */
+  public static final int LINE_BLOCKS = 4;
+
+  static final Map<String, AudioEngine> engines = new HashMap<String, AudioEngine>();
+
+  /**
+   * a clip being played - the track thread writes into it and the engine mixes
+   * from it
+   */
+  public static class Playback {
+
+    public final AudioData data;
+
+    final int channels;
+    final double step;
+
+    /**
+     * interleaved stereo frames in the mix format
+     */
+    final short[] ring;
+    long written = 0;
+    long read = 0;
+
+    volatile boolean ended = false;
+    volatile boolean stopped = false;
+    volatile boolean done = false;
+
+    volatile double volume = 1.0;
+    volatile float balance = 0.0f;
+
+    final long submitTs;
+
+    /**
+     * time the first frame is expected at the speaker, 0 until mixed
+     */
+    volatile long startTs = 0;
+
+    // resampler state - position between the previous frame and the next
+    double pos = 0;
+    float prevLeft = 0;
+    float prevRight = 0;
+    boolean primed = false;
+
+    /**
+     * converted frames of a write, grown when a larger chunk comes - only the
+     * thread feeding the playback writes
+     */
+    short[] scratch = new short[0];
+
+    public Playback(AudioData data, AudioFormat format, int bufferFrames) {
+      this.data = data;
+      this.channels = format.getChannels();
+      this.step = format.getSampleRate() / FORMAT.getSampleRate();
+      this.ring = new short[bufferFrames * 2];
+      this.submitTs = System.currentTimeMillis();
+    }
+
+    public void setVolume(double volume) {
+      this.volume = volume;
+    }
+
+    public void setBalance(float balance) {
+      this.balance = balance;
+    }
+
+    /**
+     * converts 16 bit little endian PCM of the clip format to the mix format and
+     * queues it, blocks while the buffer is full
+     */
+    public void write(byte[] pcm, int offset, int length) throws InterruptedException {
+      int frameSize = channels * 2;
+      int size = (int) ((length / frameSize) / step + 2) * 2;
+      if (scratch.length < size) {
+        scratch = new short[size];
+      }
+      short[] out = scratch;
+      int n = 0;
+      for (int i = offset; i + frameSize <= offset + length; i += frameSize) {
+        float left = (short) ((pcm[i] & 0xFF) | (pcm[i + 1] << 8));
+        float right = (channels > 1) ? (short) ((pcm[i + 2] & 0xFF) | (pcm[i + 3] << 8)) : left;
+        if (!primed) {
+          prevLeft = left;
+          prevRight = right;
+          primed = true;
+          continue;
+        }
+        // linear interpolation between the previous and this frame
+        while (pos < 1.0) {
+          out[n++] = (short) (prevLeft + (left - prevLeft) * pos);
+          out[n++] = (short) (prevRight + (right - prevRight) * pos);
+          pos += step;
+        }
+        pos -= 1.0;
+        prevLeft = left;
+        prevRight = right;
+      }
+      put(out, n);
+    }
+
+    synchronized void put(short[] samples, int length) throws InterruptedException {
+      int i = 0;
+      while (i < length && !stopped) {
+        while (written - read >= ring.length && !stopped) {
+          wait();
+        }
+        int n = (int) Math.min(length - i, ring.length - (written - read));
+        for (int j = 0; j < n; ++j) {
+          ring[(int) ((written + j) % ring.length)] = samples[i + j];
+        }
+        written += n;
+        i += n;
+      }
+    }
+
+    /**
+     * no more data - the playback is done when the engine has mixed the rest
+     */
+    public synchronized void end() {
+      ended = true;
+      notifyAll();
+    }
+
+    /**
+     * stops now, dropping what has not been mixed
+     */
+    public synchronized void stop() {
+      stopped = true;
+      notifyAll();
+    }
+
+    public boolean isStarted() {
+      return startTs != 0;
+    }
+
+    public long getStartTs() {
+      return startTs;
+    }
+
+    /**
+     * ms from handing the clip to the engine to it being heard
+     */
+    public long getStartLatency() {
+      return startTs - submitTs;
+    }
+
+    public synchronized boolean waitForStart() throws InterruptedException {
+      while (startTs == 0 && !done) {
+        wait();
+      }
+      return startTs != 0;
+    }
+
+    public synchronized void waitForEnd() throws InterruptedException {
+      while (!done) {
+        wait();
+      }
+    }
+
+    boolean isPaused() {
+      return data != null && data.waitForLock != null;
+    }
+
+    /**
+     * adds up to frames frames to the mix
+     *
+     * @param heardTs
+     *          - when this block will be heard
+     * @return frames mixed
+     */
+    synchronized int mix(int[] acc, int frames, long heardTs) {
+      if (stopped) {
+        done = true;
+        notifyAll();
+        return 0;
+      }
+      int n = (int) Math.min(frames, (written - read) / 2);
+      double v = volume;
+      double left = v * ((balance > 0) ? 1.0 - balance : 1.0);
+      double right = v * ((balance < 0) ? 1.0 + balance : 1.0);
+      for (int f = 0; f < n; ++f) {
+        acc[f * 2] += (int) (ring[(int) ((read + f * 2) % ring.length)] * left);
+        acc[f * 2 + 1] += (int) (ring[(int) ((read + f * 2 + 1) % ring.length)] * right);
+      }
+      read += n * 2;
+      if (n > 0 && startTs == 0) {
+        startTs = heardTs;
+      }
+      if (ended && read == written) {
+        done = true;
+      }
+      notifyAll();
+      return n;
+    }
+
+    public boolean isDone() {
+      return done;
+    }
+  }
+
+  final String mixerName;
+
+  final List<Playback> playbacks = new CopyOnWriteArrayList<Playback>();
+
+  SourceDataLine line = null;
+
+  Thread worker = null;
+
+  long idleTimeoutMs = 30000;
+
+  // stats
+  long lastStartLatency = 0;
+  long maxStartLatency = 0;
+  long started = 0;
+  long underruns = 0;
+
+  /**
+   * engine of an output device
+   *
+   * @param mixerName
+   *          - name of the mixer as listed by getMixers, null is the default
+   *          device
+   */
+  public static synchronized AudioEngine getInstance(String mixerName) {
+    String key = (mixerName == null) ? "" : mixerName;
+    AudioEngine engine = engines.get(key);
+    if (engine == null) {
+      engine = new AudioEngine(mixerName);
+      engines.put(key, engine);
+    }
+    return engine;
+  }
+
+  /**
+   * names of the devices which can play the mix format
+   */
+  public static List<String> getMixers() {
+    List<String> names = new ArrayList<String>();
+    DataLine.Info info = new DataLine.Info(SourceDataLine.class, FORMAT);
+    for (Mixer.Info mixerInfo : AudioSystem.getMixerInfo()) {
+      if (AudioSystem.getMixer(mixerInfo).isLineSupported(info)) {
+        names.add(mixerInfo.getName());
+      }
+    }
+    return names;
+  }
+
+  AudioEngine(String mixerName) {
+    this.mixerName = mixerName;
+  }
+
+  /**
+   * starts a playback, opening the line if it is closed
+   *
+   * @param format
+   *          - 16 bit signed little endian PCM of any rate, mono or stereo
+   */
+  public Playback play(AudioData data, AudioFormat format) throws Exception {
+    Playback playback = new Playback(data, format, (int) FORMAT.getSampleRate() / 2);
+    synchronized (this) {
+      open();
+      playbacks.add(playback);
+      notifyAll();
+    }
+    return playback;
+  }
+
+  synchronized void open() throws Exception {
+    if (line != null) {
+      return;
+    }
+    DataLine.Info info = new DataLine.Info(SourceDataLine.class, FORMAT);
+    Line l = null;
+    if (mixerName == null) {
+      l = AudioSystem.getLine(info);
+    } else {
+      for (Mixer.Info mixerInfo : AudioSystem.getMixerInfo()) {
+        if (mixerInfo.getName().equals(mixerName)) {
+          l = AudioSystem.getMixer(mixerInfo).getLine(info);
+          break;
+        }
+      }
+      if (l == null) {
+        throw new IllegalArgumentException(String.format("mixer %s not found", mixerName));
+      }
+    }
+    line = (SourceDataLine) l;
+    line.open(FORMAT, BLOCK_FRAMES * LINE_BLOCKS * FORMAT.getFrameSize());
+    line.start();
+    log.info("audio engine {} opened line buffer {} bytes", (mixerName == null) ? "default" : mixerName, line.getBufferSize());
+    if (worker == null) {
+      worker = new Thread(this, String.format("audioEngine.%s", (mixerName == null) ? "default" : mixerName));
+      worker.setDaemon(true);
+      worker.setPriority(Thread.MAX_PRIORITY);
+      worker.start();
+    }
+  }
+
+  synchronized void close() {
+    if (line != null) {
+      line.drain();
+      line.stop();
+      line.close();
+      line = null;
+      log.info("audio engine {} closed line", (mixerName == null) ? "default" : mixerName);
+    }
+  }
+
+  @Override
+  public void run() {
+    int[] acc = new int[BLOCK_FRAMES * 2];
+    byte[] out = new byte[BLOCK_FRAMES * 4];
+    long idleSince = System.currentTimeMillis();
+    try {
+      while (true) {
+        SourceDataLine l;
+        synchronized (this) {
+          if (playbacks.isEmpty() && System.currentTimeMillis() - idleSince > idleTimeoutMs) {
+            close();
+            while (playbacks.isEmpty()) {
+              wait();
+            }
+          }
+          l = line;
+        }
+        if (!playbacks.isEmpty()) {
+          idleSince = System.currentTimeMillis();
+        }
+
+        // time until what is written now is heard
+        int queued = l.getBufferSize() - l.available();
+        long heardTs = System.currentTimeMillis() + (long) (queued / FORMAT.getFrameSize() * 1000 / FORMAT.getSampleRate());
+        mix(acc, heardTs);
+        pack(acc, out);
+        l.write(out, 0, out.length);
+      }
+    } catch (InterruptedException e) {
+    } catch (Exception e) {
+      log.error("audio engine {} stopped", mixerName, e);
+    }
+    synchronized (this) {
+      worker = null;
+      close();
+      for (Playback p : playbacks) {
+        p.stop();
+        synchronized (p) {
+          p.done = true;
+          p.notifyAll();
+        }
+      }
+      playbacks.clear();
+    }
+  }
+
+  /**
+   * mixes a block of every playing clip and drops the finished ones
+   */
+  void mix(int[] acc, long heardTs) {
+    Arrays.fill(acc, 0);
+    for (Playback p : playbacks) {
+      if (p.isPaused()) {
+        continue;
+      }
+      boolean wasStarted = p.isStarted();
+      int n = p.mix(acc, BLOCK_FRAMES, heardTs);
+      if (!wasStarted && p.isStarted()) {
+        lastStartLatency = p.getStartLatency();
+        maxStartLatency = Math.max(maxStartLatency, lastStartLatency);
+        ++started;
+      } else if (n < BLOCK_FRAMES && wasStarted && !p.ended) {
+        // the track could not decode fast enough
+        ++underruns;
+      }
+      if (p.isDone()) {
+        playbacks.remove(p);
+      }
+    }
+  }
+
+  /**
+   * clips the mix to 16 bit little endian
+   */
+  static void pack(int[] acc, byte[] out) {
+    for (int i = 0; i < acc.length; ++i) {
+      int s = acc[i];
+      if (s > Short.MAX_VALUE) {
+        s = Short.MAX_VALUE;
+      } else if (s < Short.MIN_VALUE) {
+        s = Short.MIN_VALUE;
+      }
+      out[i * 2] = (byte) s;
+      out[i * 2 + 1] = (byte) (s >> 8);
+    }
+  }
+
+  public void setIdleTimeout(long idleTimeoutMs) {
+    this.idleTimeoutMs = idleTimeoutMs;
+  }
+
+  public int getPlaybackCount() {
+    return playbacks.size();
+  }
+
+  public long getLastStartLatency() {
+    return lastStartLatency;
+  }
+
+  public String getStats() {
+    return String.format("%s playing %d started %d start latency %d ms (max %d ms) underruns %d", (mixerName == null) ? "default" : mixerName, playbacks.size(), started,
+        lastStartLatency, maxStartLatency, underruns);
+  }
+
+}
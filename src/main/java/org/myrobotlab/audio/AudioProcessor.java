@@ -1,5 +1,6 @@
 package org.myrobotlab.audio;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.util.concurrent.BlockingQueue;
@@ -8,13 +9,8 @@ import java.util.concurrent.LinkedBlockingQueue;
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
-import javax.sound.sampled.DataLine;
-import javax.sound.sampled.FloatControl;
-import javax.sound.sampled.SourceDataLine;
 
 import org.myrobotlab.logging.LoggerFactory;
-import org.myrobotlab.logging.Logging;
-import org.myrobotlab.math.MathUtils;
 import org.myrobotlab.service.AudioFile;
 import org.myrobotlab.service.data.AudioData;
 import org.slf4j.Logger;
@@ -54,8 +50,15 @@ public class AudioProcessor extends Thread {
 
   AudioData currentAudioData = null;
 
+  volatile AudioEngine.Playback currentPlayback = null;
+
   private int repeatCount;
 
+  /**
+   * decode buffer - one per track, reused for every clip
+   */
+  final byte[] buffer = new byte[4096];
+
   public AudioProcessor(AudioFile audioFile, String track) {
     super(String.format("%s:track", track));
     this.audioFile = audioFile;
@@ -65,6 +68,7 @@ public class AudioProcessor extends Thread {
   public AudioData pause(boolean b) {
     if (b) {
       isPlaying = false;
+      stopPlayback();
     }
     if (currentAudioData != null) {
       if (b) {
@@ -90,11 +94,15 @@ public class AudioProcessor extends Thread {
     // FileInputStream fis = null;
     // BufferedInputStream bis = null;
     AudioInputStream din = null;
+    AudioInputStream in = null;
     try {
 
-      AudioInputStream in = null;
+      // speech played often is already decoded in memory
+      AudioCache.Pcm pcm = AudioCache.getHot(data.getFileName());
 
-      if (data.getFileName() != null) {
+      if (pcm != null) {
+        din = new AudioInputStream(new ByteArrayInputStream(pcm.data), pcm.format, pcm.data.length / pcm.format.getFrameSize());
+      } else if (data.getFileName() != null) {
         File file = new File(data.getFileName());
         if (file.length() == 0) {
           audioFile.error(String.format("audio file %s 0 byte length", file.getName()));
@@ -111,117 +119,69 @@ public class AudioProcessor extends Thread {
         in = AudioSystem.getAudioInputStream(data.inputStream);
       }
 
-      AudioFormat baseFormat = in.getFormat();
-      AudioFormat decodedFormat = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, baseFormat.getSampleRate(), 16, baseFormat.getChannels(), baseFormat.getChannels() * 2,
-          baseFormat.getSampleRate(), false);
-      din = AudioSystem.getAudioInputStream(decodedFormat, in);
-      DataLine.Info info = new DataLine.Info(SourceDataLine.class, decodedFormat);
-      SourceDataLine line = (SourceDataLine) AudioSystem.getLine(info);
-
-      if (line != null) {
-        line.open(decodedFormat);
-        byte[] buffer = new byte[4096];
-
-        // Start
-        line.start();
-
-        int nBytesRead = 0;
-
-        isPlaying = true;
-
-        audioFile.invoke("publishAudioStart", data);
-
-        while (isPlaying && (nBytesRead = din.read(buffer, 0, buffer.length)) != -1) {
-          // byte[] goofy = new byte[4096];
-          /*
-           * HEE HEE .. if you want to make something sound "bad" i'm sure its
-           * clipping as 130 pushes some of the values over the high range for
-           * (int i = 0; i < data.length; ++i){ data[i] = (byte)(data[i] + 130);
-           * }
-           */
-
-          if (data.waitForLock != null) {
-            // Object lock = myService.getLock(queueName); // getLocks my lock
-            synchronized (data.waitForLock) {
-              log.info("pausing");
-              data.waitForLock.wait();
-            }
-          }
-
-          if (data.volume == null) {
-            data.volume = volume;
-          }
-
-          if (data.volume != null) {
+      if (din == null) {
+        AudioFormat baseFormat = in.getFormat();
+        AudioFormat decodedFormat = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, baseFormat.getSampleRate(), 16, baseFormat.getChannels(), baseFormat.getChannels() * 2,
+            baseFormat.getSampleRate(), false);
+        din = AudioSystem.getAudioInputStream(decodedFormat, in);
+      }
 
-            if (line.isControlSupported(FloatControl.Type.MASTER_GAIN)) {
+      // the line stays open in the engine - the clip is mixed in with the
+      // next block
+      AudioEngine.Playback playback = AudioEngine.getInstance(audioFile.getMixer()).play(data, din.getFormat());
+      currentPlayback = playback;
 
-              FloatControl ctrl = (FloatControl) line.getControl(FloatControl.Type.MASTER_GAIN);
-              // float scaled = (float) (Math.log(data.volume) / Math.log(10.0)
-              // * 20.0);
+      isPlaying = true;
+      boolean started = false;
 
-              if (MathUtils.round(ctrl.getValue(), 3) != MathUtils.round((float) (ctrl.getMinimum() + ((double) (ctrl.getMaximum() - ctrl.getMinimum()) * data.volume)), 3)) {
-                if (data.volume <= 1.0f && data.volume >= 0) {
+      int nBytesRead = 0;
+      while (isPlaying && (nBytesRead = din.read(buffer, 0, buffer.length)) != -1) {
 
-                  ctrl.setValue((float) (ctrl.getMinimum() + ((double) (ctrl.getMaximum() - ctrl.getMinimum()) * data.volume)));
-                  log.debug("Audioprocessor set volume to : " + ctrl.getValue());
-                } else {
-                  log.error("Requested volume value " + data.volume.toString() + " not allowed");
-                  data.volume = 1.0;
-                }
-              }
-              // volume.setValue(scaled);
-            }
+        if (data.waitForLock != null) {
+          // Object lock = myService.getLock(queueName); // getLocks my lock
+          synchronized (data.waitForLock) {
+            log.info("pausing");
+            data.waitForLock.wait();
           }
+        }
 
-          if (balance != targetBalance) {
-            try {
-              FloatControl control = (FloatControl) line.getControl(FloatControl.Type.BALANCE);
-              control.setValue(balance);
-              balance = targetBalance;
-            } catch (Exception e) {
-              Logging.logError(e);
-            }
-          }
+        if (data.volume == null) {
+          data.volume = volume;
+        }
 
-          // BooleanControl
-          // muteControl=(BooleanControl)source.getControl(BooleanControl.Type.MUTE);
-          /*
-           * if (volume == 0) { muteControl.setValue(true); }
-           */
+        if (data.volume < 0 || data.volume > 1.0) {
+          log.error("Requested volume value " + data.volume.toString() + " not allowed");
+          data.volume = 1.0;
+        }
 
-          // the buffer of raw data could be published from here
-          // if a reference of the service is passed in
+        // volume and balance are applied in the mix
+        playback.setVolume(audioFile.isMute() ? 0 : data.volume);
+        balance = targetBalance;
+        playback.setBalance(balance);
 
-          if (audioFile.isMute()) {
-            // NoOp for a mute audioFile.
-          } else {
-            line.write(buffer, 0, nBytesRead);
-          }
+        playback.write(buffer, 0, nBytesRead);
 
+        if (!started && playback.isStarted()) {
+          started = publishStart(playback, data);
         }
-        // Stop
-
-        line.drain();
-        line.stop();
-        line.close();
-        din.close();
-        in.close();
-        /*
-         * if (bis != null) bis.close(); if (fis != null) fis.close();
-         */
+      }
 
-        // System.gc();
+      if (isPlaying) {
+        playback.end();
+      } else {
+        playback.stop();
+      }
 
-        audioFile.invoke("publishAudioEnd", data);
+      if (!started && playback.waitForStart()) {
+        publishStart(playback, data);
+      }
+      playback.waitForEnd();
 
-        synchronized (data) {
-          log.debug("notifying others");
-          data.notifyAll();
-        }
+      audioFile.invoke("publishAudioEnd", data);
 
-      } else {
-        log.error("line is null !");
+      synchronized (data) {
+        log.debug("notifying others");
+        data.notifyAll();
       }
     } catch (Exception e) {
       audioFile.warn("%s - %s output audio line was not found - is audio enabled?", e.getClass().getSimpleName(), e.getMessage());
@@ -235,17 +195,36 @@ public class AudioProcessor extends Thread {
         audioFile.error("%s - %s", e.getMessage(), data.getFileName());
       }
     } finally {
-      if (din != null) {
-        try {
+      currentPlayback = null;
+      try {
+        if (din != null) {
           din.close();
-        } catch (IOException e) {
         }
+        if (in != null) {
+          in.close();
+        }
+      } catch (IOException e) {
       }
     }
 
     return data;
   }
 
+  /**
+   * publishes the start of a clip when it is heard rather than when it is
+   * handed to the engine, so mouth movement starts with the sound
+   */
+  boolean publishStart(AudioEngine.Playback playback, AudioData data) throws InterruptedException {
+    long wait = playback.getStartTs() - System.currentTimeMillis();
+    if (wait > 0) {
+      Thread.sleep(wait);
+    }
+    data.startLatency = playback.getStartLatency();
+    audioFile.invoke("publishStartLatency", data.startLatency);
+    audioFile.invoke("publishAudioStart", data);
+    return true;
+  }
+
   @Override
   public void run() {
     isRunning = true;
@@ -328,6 +307,14 @@ public class AudioProcessor extends Thread {
   public void stopPlaying() {
     isPlaying = false;
     isRunning = false;
+    stopPlayback();
+  }
+
+  void stopPlayback() {
+    AudioEngine.Playback playback = currentPlayback;
+    if (playback != null) {
+      playback.stop();
+    }
   }
 
 }
@@ -1,87 +1,342 @@
 package org.myrobotlab.document;
 
+import java.util.AbstractSet;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 /**
  * The basic class that represents a document flowing through the myrobotlab.
- * 
+ *
  * Basic idea is that a document had a unique id and a map of key to list of
  * object pairs.
- * 
+ *
+ * Fields are stored compactly in parallel arrays rather than a map of lists.
+ * Field names are interned through FieldNames, a single value is stored
+ * inline and only becomes a list once a second value is added (or the list is
+ * asked for with getField), and numeric values set with setLongField /
+ * setDoubleField are kept as primitives.
+ *
  * @author kwatters
  *
  */
 public class Document {
 
+  // slot types
+  private static final byte OBJECT = 0;
+  private static final byte LIST = 1;
+  private static final byte LONG = 2;
+  private static final byte DOUBLE = 3;
+
+  private static final int INITIAL_CAPACITY = 4;
+
+  // documents with more fields look them up in a map instead of a scan
+  private static final int INDEX_THRESHOLD = 16;
+
   private String id;
-  private HashMap<String, ArrayList<Object>> data;
+  private int size = 0;
+  private String[] names;
+  private byte[] types;
+  private Object[] values;
+  // only allocated when a primitive value is set
+  private long[] primitives;
   private ProcessingStatus status;
+  // read only view of the field names, created by the first getFields
+  private transient Set<String> fields;
+  // field name to slot - built on demand for wide documents, dropped when
+  // slots move
+  private transient HashMap<String, Integer> index;
 
   public Document(String id) {
     this.id = id;
-    data = new HashMap<String, ArrayList<Object>>();
+    names = new String[INITIAL_CAPACITY];
+    types = new byte[INITIAL_CAPACITY];
+    values = new Object[INITIAL_CAPACITY];
     status = ProcessingStatus.OK;
   }
 
+  private int indexOf(String fieldName) {
+    if (size > INDEX_THRESHOLD) {
+      if (index == null) {
+        index = new HashMap<String, Integer>(size * 2);
+        for (int i = 0; i < size; i++) {
+          index.put(names[i], i);
+        }
+      }
+      Integer i = index.get(fieldName);
+      return (i == null) ? -1 : i;
+    }
+    // interned names - reference compare hits first
+    for (int i = 0; i < size; i++) {
+      if (names[i] == fieldName) {
+        return i;
+      }
+    }
+    if (fieldName == null) {
+      return -1;
+    }
+    for (int i = 0; i < size; i++) {
+      if (fieldName.equals(names[i])) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  // index of fieldName, adding an empty slot if it does not exist
+  private int slot(String fieldName) {
+    int i = indexOf(fieldName);
+    if (i >= 0) {
+      return i;
+    }
+    if (size == names.length) {
+      int capacity = size * 2;
+      String[] n = new String[capacity];
+      byte[] t = new byte[capacity];
+      Object[] v = new Object[capacity];
+      System.arraycopy(names, 0, n, 0, size);
+      System.arraycopy(types, 0, t, 0, size);
+      System.arraycopy(values, 0, v, 0, size);
+      names = n;
+      types = t;
+      values = v;
+      if (primitives != null) {
+        long[] p = new long[capacity];
+        System.arraycopy(primitives, 0, p, 0, size);
+        primitives = p;
+      }
+    }
+    names[size] = FieldNames.intern(fieldName);
+    if (index != null) {
+      index.put(names[size], size);
+    }
+    return size++;
+  }
+
+  private void set(int i, byte type, Object value) {
+    types[i] = type;
+    values[i] = value;
+  }
+
+  private void setPrimitive(int i, byte type, long bits) {
+    if (primitives == null) {
+      primitives = new long[names.length];
+    }
+    types[i] = type;
+    values[i] = null;
+    primitives[i] = bits;
+  }
+
+  private Object boxed(int i) {
+    switch (types[i]) {
+      case LONG:
+        return primitives[i];
+      case DOUBLE:
+        return Double.longBitsToDouble(primitives[i]);
+      default:
+        return values[i];
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private ArrayList<Object> list(int i) {
+    return (ArrayList<Object>) values[i];
+  }
+
+  // turns a single valued slot into a list so it can be handed out and
+  // modified
+  private ArrayList<Object> promote(int i) {
+    if (types[i] == LIST) {
+      return list(i);
+    }
+    ArrayList<Object> list = new ArrayList<Object>(2);
+    list.add(boxed(i));
+    set(i, LIST, list);
+    return list;
+  }
+
+  private void remove(int i) {
+    index = null;
+    int moved = size - i - 1;
+    if (moved > 0) {
+      System.arraycopy(names, i + 1, names, i, moved);
+      System.arraycopy(types, i + 1, types, i, moved);
+      System.arraycopy(values, i + 1, values, i, moved);
+      if (primitives != null) {
+        System.arraycopy(primitives, i + 1, primitives, i, moved);
+      }
+    }
+    --size;
+    names[size] = null;
+    values[size] = null;
+  }
+
+  /**
+   * The values of a field as a modifiable list. A single valued field is
+   * converted to list storage by this call, readers which do not modify the
+   * values should use getFieldValues.
+   *
+   * @param fieldName
+   * @return the values or null if the field does not exist
+   */
   public ArrayList<Object> getField(String fieldName) {
-    if (data.containsKey(fieldName)) {
-      return data.get(fieldName);
-    } else {
+    int i = indexOf(fieldName);
+    if (i < 0) {
+      return null;
+    }
+    return promote(i);
+  }
+
+  /**
+   * read only view of the values of a field - does not allocate storage for
+   * single valued fields
+   *
+   * @param fieldName
+   * @return the values or null if the field does not exist
+   */
+  public List<Object> getFieldValues(String fieldName) {
+    int i = indexOf(fieldName);
+    if (i < 0) {
       return null;
     }
+    if (types[i] == LIST) {
+      return Collections.unmodifiableList(list(i));
+    }
+    return Collections.singletonList(boxed(i));
   }
 
   public void setField(String fieldName, ArrayList<Object> value) {
     if (value == null) {
-      data.remove(fieldName);
+      removeField(fieldName);
     } else {
-      data.put(fieldName, value);
+      set(slot(fieldName), LIST, value);
     }
   }
 
   public void setField(String fieldName, Object value) {
     // set field overwrites existing values in the field.
     if (value == null) {
-      data.remove(fieldName);
+      removeField(fieldName);
     } else {
-      ArrayList<Object> values = new ArrayList<Object>();
-      values.add(value);
-      data.put(fieldName, values);
+      set(slot(fieldName), OBJECT, value);
+    }
+  }
+
+  /**
+   * set a single long value without boxing it
+   *
+   * @param fieldName
+   * @param value
+   */
+  public void setLongField(String fieldName, long value) {
+    setPrimitive(slot(fieldName), LONG, value);
+  }
+
+  /**
+   * set a single double value without boxing it
+   *
+   * @param fieldName
+   * @param value
+   */
+  public void setDoubleField(String fieldName, double value) {
+    setPrimitive(slot(fieldName), DOUBLE, Double.doubleToRawLongBits(value));
+  }
+
+  /**
+   * @param fieldName
+   * @param defaultValue
+   * @return the first value of the field as a long, defaultValue if it does
+   *         not exist or is not a number
+   */
+  public long getLong(String fieldName, long defaultValue) {
+    int i = indexOf(fieldName);
+    if (i < 0) {
+      return defaultValue;
+    }
+    switch (types[i]) {
+      case LONG:
+        return primitives[i];
+      case DOUBLE:
+        return (long) Double.longBitsToDouble(primitives[i]);
+      default:
+        Object o = getValue(fieldName);
+        return (o instanceof Number) ? ((Number) o).longValue() : defaultValue;
+    }
+  }
+
+  /**
+   * @param fieldName
+   * @param defaultValue
+   * @return the first value of the field as a double, defaultValue if it does
+   *         not exist or is not a number
+   */
+  public double getDouble(String fieldName, double defaultValue) {
+    int i = indexOf(fieldName);
+    if (i < 0) {
+      return defaultValue;
+    }
+    switch (types[i]) {
+      case LONG:
+        return primitives[i];
+      case DOUBLE:
+        return Double.longBitsToDouble(primitives[i]);
+      default:
+        Object o = getValue(fieldName);
+        return (o instanceof Number) ? ((Number) o).doubleValue() : defaultValue;
     }
   }
 
   /**
    * helper for expected single value fields
-   * 
+   *
    * @param fieldName - incoming filename
    * @return
    */
   public Object getValue(String fieldName) {
-    List<Object> ret = getField(fieldName);
-    if (ret != null && ret.size() > 0) {
-      return (Object) ret.get(0);
+    int i = indexOf(fieldName);
+    if (i < 0) {
+      return null;
+    }
+    if (types[i] == LIST) {
+      List<Object> ret = list(i);
+      return (ret.size() > 0) ? ret.get(0) : null;
     }
-    return null;
+    return boxed(i);
   }
 
   public void renameField(String oldField, String newField) {
-    if (data.containsKey(oldField)) {
-      // TODO: test me to make sure this is correct.
-      data.put(newField, data.get(oldField));
-      data.remove(oldField);
+    int i = indexOf(oldField);
+    if (i >= 0) {
+      // rename replaces any existing newField
+      int existing = indexOf(newField);
+      if (existing >= 0 && existing != i) {
+        remove(existing);
+        if (existing < i) {
+          --i;
+        }
+      }
+      String name = FieldNames.intern(newField);
+      if (index != null) {
+        index.remove(names[i]);
+        index.put(name, i);
+      }
+      names[i] = name;
     }
   }
 
   public void addToField(String fieldName, Object value) {
-    if (data.containsKey(fieldName) && (data.get(fieldName) != null)) {
-      data.get(fieldName).add(value);
+    int i = indexOf(fieldName);
+    if (i < 0) {
+      // the first value is stored inline
+      set(slot(fieldName), OBJECT, value);
     } else {
-      ArrayList<Object> values = new ArrayList<Object>();
-      values.add(value);
-      data.put(fieldName, values);
+      promote(i).add(value);
     }
   }
 
@@ -94,23 +349,65 @@ public class Document {
   }
 
   public boolean hasField(String fieldName) {
-    return data.containsKey(fieldName);
+    return indexOf(fieldName) >= 0;
   }
 
   /**
-   * Return a set of all fields on a given document. This is unordered.
-   * 
+   * Return a set of all fields on a given document. The fields are in the
+   * order they were added. The set is a read only view backed by the document,
+   * copy it before adding, renaming or removing fields while iterating.
+   *
    * @return a list of all field names that have been set of the document.
    */
   public Set<String> getFields() {
-    // TODO Auto-generated method stub
-    return data.keySet();
-    // return null;
+    if (fields == null) {
+      fields = new FieldSet();
+    }
+    return fields;
   }
 
-  public void removeField(String fieldName) {
-    data.remove(fieldName);
+  private class FieldSet extends AbstractSet<String> {
+
+    @Override
+    public Iterator<String> iterator() {
+      return new Iterator<String>() {
+        int next = 0;
+
+        @Override
+        public boolean hasNext() {
+          return next < size;
+        }
 
+        @Override
+        public String next() {
+          if (next >= size) {
+            throw new NoSuchElementException();
+          }
+          return names[next++];
+        }
+      };
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+      return (o instanceof String) && indexOf((String) o) >= 0;
+    }
+  }
+
+  public int getFieldCount() {
+    return size;
+  }
+
+  public void removeField(String fieldName) {
+    int i = indexOf(fieldName);
+    if (i >= 0) {
+      remove(i);
+    }
   }
 
   public ProcessingStatus getStatus() {
@@ -121,11 +418,20 @@ public class Document {
     this.status = status;
   }
 
+  // the map of lists view the document used to be stored as
+  private Map<String, List<Object>> getData() {
+    Map<String, List<Object>> data = new LinkedHashMap<String, List<Object>>();
+    for (int i = 0; i < size; i++) {
+      data.put(names[i], (types[i] == LIST) ? list(i) : Collections.singletonList(boxed(i)));
+    }
+    return data;
+  }
+
   @Override
   public int hashCode() {
     final int prime = 31;
     int result = 1;
-    result = prime * result + ((data == null) ? 0 : data.hashCode());
+    result = prime * result + getData().hashCode();
     result = prime * result + ((id == null) ? 0 : id.hashCode());
     result = prime * result + ((status == null) ? 0 : status.hashCode());
     return result;
@@ -140,10 +446,7 @@ public class Document {
     if (getClass() != obj.getClass())
       return false;
     Document other = (Document) obj;
-    if (data == null) {
-      if (other.data != null)
-        return false;
-    } else if (!data.equals(other.data))
+    if (!getData().equals(other.getData()))
       return false;
     if (id == null) {
       if (other.id != null)
@@ -157,7 +460,7 @@ public class Document {
 
   @Override
   public String toString() {
-    return "Document [id=" + id + ", data=" + data + ", status=" + status + "]";
+    return "Document [id=" + id + ", data=" + getData() + ", status=" + status + "]";
   }
 
 }
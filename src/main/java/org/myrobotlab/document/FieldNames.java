@@ -0,0 +1,59 @@
+package org.myrobotlab.document;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Symbol table for document field names. Every document that sets a field
+ * stores the same canonical String instance for its name, so millions of
+ * documents with the same columns share one copy of each name and field
+ * lookups mostly succeed on a reference compare.
+ *
+ * The table is never cleaned up, so it is bounded - pipelines which make field
+ * names from data would grow it forever. Once it is full new names are not
+ * interned, they still work but are compared with equals.
+ */
+public class FieldNames {
+
+  private static final ConcurrentHashMap<String, String> names = new ConcurrentHashMap<String, String>();
+
+  private static volatile int maxNames = 10000;
+
+  /**
+   * @param fieldName
+   *          a field name
+   * @return the canonical instance of fieldName - or fieldName itself if it
+   *         is not in the table and the table is full
+   */
+  public static String intern(String fieldName) {
+    if (fieldName == null) {
+      return null;
+    }
+    String canonical = names.get(fieldName);
+    if (canonical != null) {
+      return canonical;
+    }
+    if (names.size() >= maxNames) {
+      return fieldName;
+    }
+    canonical = names.putIfAbsent(fieldName, fieldName);
+    return (canonical == null) ? fieldName : canonical;
+  }
+
+  /**
+   * @param max
+   *          number of names interned at most - names already in the table
+   *          stay
+   */
+  public static void setMaxNames(int max) {
+    maxNames = max;
+  }
+
+  public static int getMaxNames() {
+    return maxNames;
+  }
+
+  public static int size() {
+    return names.size();
+  }
+
+}
@@ -1,8 +1,8 @@
 package org.myrobotlab.document.connector;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.myrobotlab.document.Document;
 import org.myrobotlab.document.transformer.ConnectorConfig;
@@ -22,14 +22,21 @@ public abstract class AbstractConnector extends Service implements DocumentPubli
   private static final long serialVersionUID = 1L;
   protected ConnectorState state = ConnectorState.STOPPED;
   private int batchSize = 1;
-  private List<Document> batch = Collections.synchronizedList(new ArrayList<Document>());
+  // guards batch and feedCount - not the service monitor, which the
+  // framework needs while feed is blocked publishing
+  private final transient Object feedLock = new Object();
+  private List<Document> batch = new ArrayList<Document>();
   private String docIdPrefix = "";
-  private Integer feedCount = 0;
+  // only written under feedLock, volatile so the metrics getters do not wait
+  // on it
+  private volatile long feedCount = 0;
   private long lastUpdate = System.currentTimeMillis();
   private long start = System.currentTimeMillis();
 
   // private long maxFeedCount = 10000;
   private long maxFeedCount = -1;
+  // time feed spent blocked because everything downstream was full
+  private final AtomicLong blockedNanos = new AtomicLong();
 
   public AbstractConnector(String name, String id) {
     super(name, id);
@@ -39,46 +46,72 @@ public abstract class AbstractConnector extends Service implements DocumentPubli
 
   public abstract void setConfig(ConnectorConfig config);
 
+  /**
+   * feed a document downstream. Connectors which parse in parallel call this
+   * from several threads, so the batch and counters are guarded - publishing,
+   * which blocks when downstream is full, is done outside the lock.
+   * 
+   * @param doc
+   */
   public void feed(Document doc) {
     // log.info("Feeding document " + doc.getId());
-    // TODO: add batching and change this to publishDocuments (as a list)
-    // Batching for this sort of stuff is a very good thing.
-    if (batchSize <= 1) {
-      feedCount++;
-      invoke("publishDocument", doc);
-    } else {
-      // handle the batch
-      // TODO: make this synchronized and thread safe!
-      batch.add(doc);
-      if (batch.size() >= batchSize) {
-        feedCount += batch.size();
-        //
-        synchronized (batch) {
-          invoke("publishDocuments", batch);
-          batch = Collections.synchronizedList(new ArrayList<Document>());
+    List<Document> full = null;
+    long count;
+    boolean report = false;
+    synchronized (feedLock) {
+      if (batchSize <= 1) {
+        feedCount++;
+      } else {
+        // handle the batch
+        batch.add(doc);
+        if (batch.size() >= batchSize) {
+          feedCount += batch.size();
+          full = batch;
+          batch = new ArrayList<Document>();
         }
-        // flush();
       }
+      count = feedCount;
+      // update and report timing metrics every 10 seconds
+      long now = System.currentTimeMillis();
+      if (now - lastUpdate > 10000) {
+        lastUpdate = now;
+        report = true;
+      }
+    }
+
+    if (batchSize <= 1) {
+      publish("publishDocument", doc);
+    } else if (full != null) {
+      publish("publishDocuments", full);
     }
 
-    // update and report timing metrics
-    long now = System.currentTimeMillis();
-    long lastReport = now - lastUpdate;
-    // every 10 seconds
-    if (lastReport > 10000) {
+    if (report) {
       // log the throughput
-      double speed = feedCount / (double) (now - start) * 1000;
-      log.info("Feed {} docs.  Current rate {}", feedCount, speed);
-      lastUpdate = now;
+      double speed = count / (double) (System.currentTimeMillis() - start) * 1000;
+      log.info("Feed {} docs.  Current rate {}", count, speed);
     }
 
     // // test the max feed count
-    if (feedCount > maxFeedCount && maxFeedCount >= 0) {
+    if (count > maxFeedCount && maxFeedCount >= 0) {
       // stop this connector.
       setState(ConnectorState.INTERRUPTED);
     }
   }
 
+  /**
+   * The outbox is blocking and bounded, and so are the inboxes and workflow
+   * queues downstream - when they are all full this blocks, which is the back
+   * pressure that throttles the crawl. Time spent blocked is recorded.
+   */
+  private void publish(String method, Object data) {
+    boolean full = getOutbox().size() >= getOutbox().getMaxQueueSize();
+    long begin = System.nanoTime();
+    invoke(method, data);
+    if (full) {
+      blockedNanos.addAndGet(System.nanoTime() - begin);
+    }
+  }
+
   public void publishFlush() {
     // NoOp
     // Here for the framework to invoke it on the down stream services.
@@ -86,26 +119,35 @@ public abstract class AbstractConnector extends Service implements DocumentPubli
 
   public void flush() {
     // flush any partial batch
-    // TODO: make this thread safe!
     // invoke("publishFlush");
     // reset/clear the batch.
-    synchronized (batch) {
-      invoke("publishDocuments", batch);
-      batch = Collections.synchronizedList(new ArrayList<Document>());
+    List<Document> partial;
+    synchronized (feedLock) {
+      partial = batch;
+      batch = new ArrayList<Document>();
+    }
+    invoke("publishDocuments", partial);
+    if (!state.equals(ConnectorState.RUNNING)) {
+      awaitOutboxDrained();
+    }
+  }
+
+  /**
+   * block until everything published has been taken off the outbox. The outbox
+   * signals every removal, so this returns as soon as it is drained.
+   */
+  protected void awaitOutboxDrained() {
+    if (!getOutbox().isRunning()) {
+      // nothing is draining it
+      return;
     }
-    // TODO: I worry there's a race condition here.. but maybe not... more
-    // testing will show.
-    while (getOutbox().size() > 0 && !state.equals(ConnectorState.RUNNING)) {
-      // TODO: wait until the outbox is empty... perhaps we also need to
-      // validate if we've been interrupted?
-      log.info("Draining out box Size: {} Connector State: {}", getOutbox().size(), state);
-      try {
-        Thread.sleep(10);
-      } catch (InterruptedException e) {
-        // TODO Auto-generated catch block
-        e.printStackTrace();
+    try {
+      if (getOutbox().size() > 0) {
+        log.info("Draining out box Size: {} Connector State: {}", getOutbox().size(), state);
       }
-      continue;
+      getOutbox().waitForEmpty(0);
+    } catch (InterruptedException e) {
+      log.info("interrupted while waiting for the outbox to drain");
     }
   }
 
@@ -135,6 +177,34 @@ public abstract class AbstractConnector extends Service implements DocumentPubli
     return state;
   }
 
+  /**
+   * bound of the outbox - how many published messages can be waiting before
+   * feed blocks
+   * 
+   * @param size
+   */
+  public void setMaxQueueSize(int size) {
+    getOutbox().setMaxQueueSize(size);
+  }
+
+  /**
+   * @return published messages waiting in the outbox
+   */
+  public int getQueueDepth() {
+    return getOutbox().size();
+  }
+
+  public long getFeedCount() {
+    return feedCount;
+  }
+
+  /**
+   * @return time feed spent blocked by back pressure
+   */
+  public long getBlockedMs() {
+    return blockedNanos.get() / 1000000;
+  }
+
   public int getBatchSize() {
     return batchSize;
   }
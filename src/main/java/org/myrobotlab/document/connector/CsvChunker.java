@@ -0,0 +1,194 @@
+package org.myrobotlab.document.connector;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CsvChunker splits a csv file into chunks which can be parsed independently.
+ * Chunks always start on a record boundary - a newline that is not inside a
+ * quoted value - so multi-line quoted values are never cut in half. Finding
+ * the boundaries is a single quote aware byte scan of the file, which is much
+ * cheaper than parsing it, and it also counts the records so each chunk knows
+ * the row number of its first record.
+ *
+ */
+public class CsvChunker {
+
+  public static class Chunk {
+    public final int index;
+    public final long start;
+    public final long end;
+    /**
+     * number of records in the file before this chunk (not counting a header)
+     */
+    public final int firstRow;
+
+    public Chunk(int index, long start, long end, int firstRow) {
+      this.index = index;
+      this.start = start;
+      this.end = end;
+      this.firstRow = firstRow;
+    }
+
+    public long length() {
+      return end - start;
+    }
+
+    /**
+     * @param file
+     * @return a reader over only this chunk of the file
+     * @throws IOException
+     */
+    public Reader openReader(File file) throws IOException {
+      FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+      channel.position(start);
+      InputStream in = new LimitedInputStream(Channels.newInputStream(channel), length());
+      return new InputStreamReader(new BufferedInputStream(in, 1 << 16));
+    }
+
+    @Override
+    public String toString() {
+      return String.format("chunk %d [%d - %d) first row %d", index, start, end, firstRow);
+    }
+  }
+
+  /**
+   * split file into at most numChunks chunks of roughly the same size
+   *
+   * @param file
+   *          the csv file
+   * @param skipHeader
+   *          the first record is a header and not part of any chunk
+   * @param numChunks
+   *          number of chunks wanted
+   * @param quote
+   *          quote character
+   * @param escape
+   *          escape character inside quotes
+   * @return the chunks in file order
+   * @throws IOException
+   */
+  public static List<Chunk> split(File file, boolean skipHeader, int numChunks, char quote, char escape) throws IOException {
+    List<Chunk> chunks = new ArrayList<Chunk>();
+    long length = file.length();
+    long dataStart = 0;
+    long chunkStart = 0;
+    int chunkFirstRow = 0;
+    long target = -1;
+    int rows = 0;
+    boolean inQuotes = false;
+    boolean escaped = false;
+    boolean headerDone = !skipHeader;
+    byte[] buffer = new byte[1 << 16];
+    long pos = 0;
+
+    try (InputStream in = new FileInputStream(file)) {
+      if (headerDone) {
+        target = nextTarget(dataStart, length, numChunks, 1);
+      }
+      int n;
+      while ((n = in.read(buffer)) > 0) {
+        for (int i = 0; i < n; i++, pos++) {
+          byte b = buffer[i];
+          if (escaped) {
+            escaped = false;
+            continue;
+          }
+          if (inQuotes && b == escape && escape != quote) {
+            escaped = true;
+          } else if (b == quote) {
+            inQuotes = !inQuotes;
+          } else if (b == '\n' && !inQuotes) {
+            long boundary = pos + 1;
+            if (!headerDone) {
+              headerDone = true;
+              dataStart = boundary;
+              chunkStart = boundary;
+              target = nextTarget(dataStart, length, numChunks, 1);
+              continue;
+            }
+            ++rows;
+            if (boundary >= target && boundary < length && chunks.size() < numChunks - 1) {
+              chunks.add(new Chunk(chunks.size(), chunkStart, boundary, chunkFirstRow));
+              chunkStart = boundary;
+              chunkFirstRow = rows;
+              target = nextTarget(dataStart, length, numChunks, chunks.size() + 1);
+            }
+          }
+        }
+      }
+    }
+    if (!headerDone) {
+      // only a header - nothing to parse
+      return chunks;
+    }
+    if (chunkStart < length) {
+      chunks.add(new Chunk(chunks.size(), chunkStart, length, chunkFirstRow));
+    }
+    return chunks;
+  }
+
+  private static long nextTarget(long dataStart, long length, int numChunks, int chunk) {
+    return dataStart + (length - dataStart) * chunk / numChunks;
+  }
+
+  /**
+   * stream which ends after limit bytes
+   */
+  static class LimitedInputStream extends FilterInputStream {
+    long remaining;
+
+    LimitedInputStream(InputStream in, long limit) {
+      super(in);
+      remaining = limit;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (remaining <= 0) {
+        return -1;
+      }
+      int b = super.read();
+      if (b >= 0) {
+        --remaining;
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (remaining <= 0) {
+        return -1;
+      }
+      int n = super.read(b, off, (int) Math.min(len, remaining));
+      if (n > 0) {
+        remaining -= n;
+      }
+      return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = super.skip(Math.min(n, remaining));
+      remaining -= skipped;
+      return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+      return (int) Math.min(super.available(), remaining);
+    }
+  }
+
+}
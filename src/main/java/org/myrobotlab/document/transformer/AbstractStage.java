@@ -1,5 +1,6 @@
 package org.myrobotlab.document.transformer;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.myrobotlab.document.Document;
@@ -14,6 +15,31 @@ public abstract class AbstractStage {
 
   public abstract List<Document> processDocument(Document doc);
 
+  /**
+   * Process a batch of documents. The default adapter calls processDocument
+   * for each document, stages with a per call overhead (remote calls, model
+   * setup) should override this to amortize it over the batch. Documents
+   * which should be dropped must have their status set to DROP, the same as
+   * with processDocument.
+   * 
+   * @param docs
+   *          the batch
+   * @return the child documents of all the documents in the batch or null
+   */
+  public List<Document> processDocuments(List<Document> docs) {
+    List<Document> children = null;
+    for (Document doc : docs) {
+      List<Document> childDocs = processDocument(doc);
+      if (childDocs != null && childDocs.size() > 0) {
+        if (children == null) {
+          children = new ArrayList<Document>();
+        }
+        children.addAll(childDocs);
+      }
+    }
+    return children;
+  }
+
   public abstract void stopStage();
 
   public abstract void flush();
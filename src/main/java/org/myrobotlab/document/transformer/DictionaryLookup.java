@@ -58,7 +58,7 @@ public class DictionaryLookup extends AbstractStage {
     }
 
     ArrayList<List<String>> lookedupValues = new ArrayList<List<String>>();
-    for (Object o : doc.getField(inputField)) {
+    for (Object o : doc.getFieldValues(inputField)) {
       if (o == null) {
         continue;
       }
@@ -29,7 +29,7 @@ public class DropDocument extends AbstractStage {
   public List<Document> processDocument(Document doc) {
     // TODO Auto-generated method stub
     if (doc.hasField(field)) {
-      for (Object o : doc.getField(field)) {
+      for (Object o : doc.getFieldValues(field)) {
         if (o.equals(value)) {
           doc.setStatus(ProcessingStatus.DROP);
           break;
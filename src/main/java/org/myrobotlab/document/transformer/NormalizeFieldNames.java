@@ -1,7 +1,6 @@
 package org.myrobotlab.document.transformer;
 
 import java.util.List;
-import java.util.Set;
 
 import org.myrobotlab.document.Document;
 
@@ -23,7 +22,7 @@ public class NormalizeFieldNames extends AbstractStage {
   @Override
   public List<Document> processDocument(Document doc) {
 
-    Set<String> fieldNames = doc.getFields();
+    String[] fieldNames = doc.getFields().toArray(new String[doc.getFieldCount()]);
     for (String fieldName : fieldNames) {
       doc.renameField(fieldName, normalizeFieldName(fieldName));
     }
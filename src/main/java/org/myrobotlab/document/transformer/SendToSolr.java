@@ -72,12 +72,38 @@ public class SendToSolr extends AbstractStage {
 
   @Override
   public List<Document> processDocument(Document doc) {
+    addToBatch(toSolrDocument(doc));
+    // TODO: NO COMMITS HERE!
+    // solrServer.commit();
+    return null;
+  }
+
+  /**
+   * converts the whole batch before taking the batch lock once, and sends as
+   * many full solr batches as are ready.
+   */
+  @Override
+  public List<Document> processDocuments(List<Document> docs) {
+    List<SolrInputDocument> solrDocs = new ArrayList<SolrInputDocument>(docs.size());
+    for (Document doc : docs) {
+      solrDocs.add(toSolrDocument(doc));
+    }
+    synchronized (batch) {
+      batch.addAll(solrDocs);
+      if (batch.size() >= batchSize) {
+        sendBatch();
+      }
+    }
+    return null;
+  }
+
+  private SolrInputDocument toSolrDocument(Document doc) {
     SolrInputDocument solrDoc = new SolrInputDocument();
 
     // set the id field on the solr doc
     String docId = doc.getId();
     for (String fieldName : doc.getFields()) {
-      for (Object value : doc.getField(fieldName)) {
+      for (Object value : doc.getFieldValues(fieldName)) {
         solrDoc.addField(fieldName, value);
       }
       if (addFieldsField) {
@@ -89,25 +115,25 @@ public class SendToSolr extends AbstractStage {
     solrDoc.removeField(idField);
     // make sure we add it back
     solrDoc.setField(idField, docId);
-    // I guess we have the full document, we should send it
-    // ArrayList<SolrInputDocument> solrDocs = new
-    // ArrayList<SolrInputDocument>();
-    // solrDocs.add(solrDoc);
-    try {
-      synchronized (batch) {
-        batch.add(solrDoc);
-        if (batch.size() >= batchSize) {
-          // System.out.println("Solr Server Flush Batch...");
-          // you are blocking?
-          solrClient.add(batch);
-          log.info("Sending Batch to Solr. Size: {}", batch.size());
-          // System.out.println("Solr batch sent..");
-          // batch.clear();
-          batch = Collections.synchronizedList(new ArrayList<SolrInputDocument>());
-        } else {
-          // System.out.println("Batch Size " + batch.size());
-        }
+    return solrDoc;
+  }
+
+  private void addToBatch(SolrInputDocument solrDoc) {
+    synchronized (batch) {
+      batch.add(solrDoc);
+      if (batch.size() >= batchSize) {
+        sendBatch();
       }
+    }
+  }
+
+  // caller holds the batch lock
+  private void sendBatch() {
+    try {
+      // you are blocking?
+      solrClient.add(batch);
+      log.info("Sending Batch to Solr. Size: {}", batch.size());
+      batch = Collections.synchronizedList(new ArrayList<SolrInputDocument>());
     } catch (SolrServerException e) {
       // TODO Auto-generated catch block
       e.printStackTrace();
@@ -115,11 +141,6 @@ public class SendToSolr extends AbstractStage {
       // TODO Auto-generated catch block
       e.printStackTrace();
     }
-
-    // TODO: NO COMMITS HERE!
-    // solrServer.commit();
-    return null;
-
   }
 
   @Override
@@ -11,6 +11,12 @@ public class WorkflowConfiguration extends Configuration {
   private String name = "default";
   private int numWorkerThreads = 1;
   private int queueLength = 50;
+  // max documents a worker pulls off the queue and pushes through the stages
+  // together
+  private int batchSize = 10;
+  // how long a worker waits for a partial batch to fill up. 0 means only take
+  // what is already on the queue
+  private long batchLatencyMs = 0;
 
   public WorkflowConfiguration(String name) {
     this.name = name;
@@ -51,6 +57,22 @@ public class WorkflowConfiguration extends Configuration {
     this.queueLength = queueLength;
   }
 
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  public void setBatchSize(int batchSize) {
+    this.batchSize = batchSize;
+  }
+
+  public long getBatchLatencyMs() {
+    return batchLatencyMs;
+  }
+
+  public void setBatchLatencyMs(long batchLatencyMs) {
+    this.batchLatencyMs = batchLatencyMs;
+  }
+
   public static WorkflowConfiguration fromXML(String xml) {
     // TODO: move this to a utility to serialize/deserialize the config objects.
     // TODO: should override on the impl classes so they return a properly
@@ -0,0 +1,84 @@
+package org.myrobotlab.document.workflow;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * StageMetrics : throughput and latency counters for one stage of a workflow.
+ * One instance is shared by the copies of the stage on all worker threads.
+ */
+public class StageMetrics {
+
+  private final String stageName;
+  private final AtomicLong documents = new AtomicLong();
+  private final AtomicLong batches = new AtomicLong();
+  private final AtomicLong totalNanos = new AtomicLong();
+  private final AtomicLong maxBatchNanos = new AtomicLong();
+  private final long startTs = System.currentTimeMillis();
+
+  public StageMetrics(String stageName) {
+    this.stageName = stageName;
+  }
+
+  public void record(int batchSize, long nanos) {
+    documents.addAndGet(batchSize);
+    batches.incrementAndGet();
+    totalNanos.addAndGet(nanos);
+    long max = maxBatchNanos.get();
+    while (nanos > max && !maxBatchNanos.compareAndSet(max, nanos)) {
+      max = maxBatchNanos.get();
+    }
+  }
+
+  public String getStageName() {
+    return stageName;
+  }
+
+  public long getDocuments() {
+    return documents.get();
+  }
+
+  public long getBatches() {
+    return batches.get();
+  }
+
+  public double getAverageBatchSize() {
+    long b = batches.get();
+    return (b == 0) ? 0 : (double) documents.get() / b;
+  }
+
+  /**
+   * @return average time spent in the stage per document in ms
+   */
+  public double getAverageLatencyMs() {
+    long d = documents.get();
+    return (d == 0) ? 0 : totalNanos.get() / 1000000.0 / d;
+  }
+
+  public double getMaxBatchLatencyMs() {
+    return maxBatchNanos.get() / 1000000.0;
+  }
+
+  /**
+   * @return documents per second of time spent in the stage (summed over all
+   *         worker threads)
+   */
+  public double getThroughput() {
+    long nanos = totalNanos.get();
+    return (nanos == 0) ? 0 : documents.get() * 1000000000.0 / nanos;
+  }
+
+  /**
+   * @return documents per second since the workflow was started
+   */
+  public double getWallClockThroughput() {
+    long elapsed = System.currentTimeMillis() - startTs;
+    return (elapsed == 0) ? 0 : documents.get() * 1000.0 / elapsed;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s docs %d batches %d avg batch %.1f avg latency %.3f ms max batch latency %.3f ms throughput %.1f docs/s", stageName, getDocuments(), getBatches(),
+        getAverageBatchSize(), getAverageLatencyMs(), getMaxBatchLatencyMs(), getThroughput());
+  }
+
+}
@@ -1,6 +1,11 @@
 package org.myrobotlab.document.workflow;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.myrobotlab.document.Document;
 import org.myrobotlab.document.transformer.WorkflowConfiguration;
@@ -25,6 +30,15 @@ public class Workflow {
   // more thread poolesque?)
   private WorkflowWorker[] workers;
   private WorkflowConfiguration workflowConfig;
+  // per stage metrics shared by all workers, in stage order
+  private final Map<String, StageMetrics> stageMetrics = new LinkedHashMap<String, StageMetrics>();
+  // documents put on the queue which have not made it through all the stages
+  // yet - flush waits on this instead of polling the queue and workers
+  private final AtomicLong inFlight = new AtomicLong();
+  private final AtomicLong completed = new AtomicLong();
+  // time producers spent blocked on a full queue
+  private final AtomicLong blockedNanos = new AtomicLong();
+  private final Object completion = new Object();
   public final static Logger log = LoggerFactory.getLogger(Workflow.class);
 
   // constructor
@@ -52,7 +66,7 @@ public class Workflow {
   private void initializeWorkerThread(int threadNum) {
     WorkflowWorker worker = null;
     try {
-      worker = new WorkflowWorker(workflowConfig, queue, Integer.toString(threadNum));
+      worker = new WorkflowWorker(this, workflowConfig, queue, Integer.toString(threadNum), stageMetrics);
     } catch (ClassNotFoundException e) {
       // TODO: better handling?
       log.warn("Error starting the worker thread. {}", e.getLocalizedMessage());
@@ -63,12 +77,50 @@ public class Workflow {
     workers[threadNum] = worker;
   }
 
+  /**
+   * put the document on the processing queue. The queue is bounded, when it is
+   * full this blocks - which blocks the service feeding the workflow and in
+   * turn the connector feeding that service.
+   * 
+   * @param doc
+   * @throws InterruptedException
+   */
   public void processDocument(Document doc) throws InterruptedException {
-    // put the document on the processing queue.
-    if (doc != null) {
-      queue.put(doc);
-    } else {
-      queue.put(doc);
+    if (doc == null) {
+      log.warn("not queueing a null document");
+      return;
+    }
+    inFlight.incrementAndGet();
+    if (!queue.offer(doc)) {
+      long start = System.nanoTime();
+      try {
+        queue.put(doc);
+      } catch (InterruptedException e) {
+        documentsCompleted(1);
+        throw e;
+      } finally {
+        blockedNanos.addAndGet(System.nanoTime() - start);
+      }
+    }
+  }
+
+  public void processDocuments(List<Document> docs) throws InterruptedException {
+    for (Document doc : docs) {
+      processDocument(doc);
+    }
+  }
+
+  /**
+   * called by the workers when documents taken off the queue are done
+   * 
+   * @param count
+   */
+  void documentsCompleted(int count) {
+    completed.addAndGet(count);
+    if (inFlight.addAndGet(-count) <= 0) {
+      synchronized (completion) {
+        completion.notifyAll();
+      }
     }
   }
 
@@ -90,37 +142,19 @@ public class Workflow {
 
   // flush all the stages on each worker thread.
   public void flush() {
-    // TODO: Or make it block here.
-    while (!queue.isEmpty()) {
-      try {
-        // TODO: give a logger object to this class.
-        // TODO: review this for threading issues and concurrency
-        log.info("Waiting for workflow flush.");
-        Thread.sleep(500);
-      } catch (InterruptedException e) {
-        // TODO Auto-generated catch block
-        log.info("Interrupted while waiting for queue to drain. {}", e.getMessage());
-        e.printStackTrace();
-      }
-    }
-
-    // now wait for the threads to no longer be running
-    while (true) {
-      boolean oneIsRunning = false;
-      for (int i = 0; i < numWorkerThreads; i++) {
-        oneIsRunning |= workers[i].isProcessing();
-      }
-      if (!oneIsRunning) {
-        break;
-      }
-      try {
-        log.info("Workers are still running...");
-        Thread.sleep(1000);
-      } catch (InterruptedException e) {
-        // TODO Auto-generated catch block
-        e.printStackTrace();
+    // wait until every document queued so far has been through all the stages
+    // - the workers signal as they complete documents
+    try {
+      synchronized (completion) {
+        while (inFlight.get() > 0) {
+          log.info("Waiting for workflow flush. {} documents in flight", inFlight.get());
+          completion.wait();
+        }
       }
-
+    } catch (InterruptedException e) {
+      log.info("Interrupted while waiting for documents in flight. {}", e.getMessage());
+      Thread.currentThread().interrupt();
+      return;
     }
 
     // Each worker will get flushed.
@@ -136,4 +170,38 @@ public class Workflow {
     return name;
   }
 
+  /**
+   * @return documents waiting on the queue
+   */
+  public int getQueueDepth() {
+    return queue.size();
+  }
+
+  /**
+   * @return documents queued or being processed
+   */
+  public long getInFlight() {
+    return inFlight.get();
+  }
+
+  /**
+   * @return documents which made it through all the stages
+   */
+  public long getCompleted() {
+    return completed.get();
+  }
+
+  /**
+   * @return time producers spent blocked on a full queue
+   */
+  public long getBlockedMs() {
+    return blockedNanos.get() / 1000000;
+  }
+
+  public List<StageMetrics> getStageMetrics() {
+    synchronized (stageMetrics) {
+      return new ArrayList<StageMetrics>(stageMetrics.values());
+    }
+  }
+
 }
@@ -1,6 +1,9 @@
 package org.myrobotlab.document.workflow;
 
 import java.util.HashMap;
+import java.util.List;
+
+import org.myrobotlab.document.Document;
 
 import org.myrobotlab.document.transformer.WorkflowConfiguration;
 
@@ -46,6 +49,20 @@ public class WorkflowServer {
     w.processDocument(msg.getDoc());
   }
 
+  public void processDocuments(String workflow, List<Document> docs) throws InterruptedException {
+    Workflow w = workflowMap.get(workflow);
+    w.processDocuments(docs);
+  }
+
+  public Workflow getWorkflow(String workflow) {
+    return workflowMap.get(workflow);
+  }
+
+  public List<StageMetrics> getStageMetrics(String workflow) {
+    Workflow w = workflowMap.get(workflow);
+    return w.getStageMetrics();
+  }
+
   public void flush(String workflow) {
     // TODO Auto-generated method stub
     Workflow w = workflowMap.get(workflow);
@@ -1,8 +1,11 @@
 package org.myrobotlab.document.workflow;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import org.myrobotlab.document.Document;
 import org.myrobotlab.document.ProcessingStatus;
@@ -21,14 +24,24 @@ public class WorkflowWorker extends Thread {
   public final static Logger log = LoggerFactory.getLogger(WorkflowWorker.class);
   boolean processing = false;
   private ArrayList<AbstractStage> stages;
+  // metrics for each stage, same order as stages
+  private ArrayList<StageMetrics> metrics;
 
+  private final Workflow workflow;
   private final LinkedBlockingQueue<Document> queue;
+  private final int batchSize;
+  private final long batchLatencyMs;
 
-  WorkflowWorker(WorkflowConfiguration workflowConfig, LinkedBlockingQueue<Document> queue, String workerId) throws ClassNotFoundException {
+  WorkflowWorker(Workflow workflow, WorkflowConfiguration workflowConfig, LinkedBlockingQueue<Document> queue, String workerId, Map<String, StageMetrics> stageMetrics)
+      throws ClassNotFoundException {
     // set the thread name
     this.setName("WorkflowWorker-" + workflowConfig.getName() + "-" + workerId);
+    this.workflow = workflow;
     this.queue = queue;
+    this.batchSize = Math.max(1, workflowConfig.getBatchSize());
+    this.batchLatencyMs = workflowConfig.getBatchLatencyMs();
     stages = new ArrayList<AbstractStage>();
+    metrics = new ArrayList<StageMetrics>();
     for (StageConfiguration stageConf : workflowConfig.getStages()) {
       String stageClass = stageConf.getStageClass().trim();
       String stageName = stageConf.getStageName();
@@ -38,6 +51,15 @@ public class WorkflowWorker extends Thread {
         AbstractStage stageInst = (AbstractStage) sc.newInstance();
         stageInst.startStage(stageConf);
         addStage(stageInst);
+        String metricsName = (stageName == null) ? stageClass : stageName;
+        synchronized (stageMetrics) {
+          StageMetrics m = stageMetrics.get(metricsName);
+          if (m == null) {
+            m = new StageMetrics(metricsName);
+            stageMetrics.put(metricsName, m);
+          }
+          metrics.add(m);
+        }
       } catch (InstantiationException e) {
         // TODO Auto-generated catch block
         e.printStackTrace();
@@ -51,6 +73,7 @@ public class WorkflowWorker extends Thread {
   public void run() {
     Document doc;
     boolean running = true;
+    List<Document> batch = new ArrayList<Document>(batchSize);
     while (running) {
       try {
         doc = queue.take();
@@ -60,9 +83,18 @@ public class WorkflowWorker extends Thread {
           running = false;
         } else {
           processing = true;
-          // process from the start of the workflow
-          processDocumentInternal(doc, 0);
-          processing = false;
+          batch.add(doc);
+          fillBatch(batch);
+          int taken = batch.size();
+          try {
+            // process from the start of the workflow
+            processDocumentsInternal(batch, 0);
+          } finally {
+            // completed even if a stage threw - otherwise flush waits forever
+            workflow.documentsCompleted(taken);
+            batch = new ArrayList<Document>(batchSize);
+            processing = false;
+          }
         }
       } catch (Exception e) {
         // TODO: Why didn't I see this message before? because the exception was
@@ -74,6 +106,38 @@ public class WorkflowWorker extends Thread {
     }
   }
 
+  // top up the batch with whatever is on the queue, waiting at most
+  // batchLatencyMs for it to fill up
+  private void fillBatch(List<Document> batch) {
+    if (batchSize <= 1) {
+      return;
+    }
+    queue.drainTo(batch, batchSize - batch.size());
+    if (batchLatencyMs <= 0) {
+      return;
+    }
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchLatencyMs);
+    while (batch.size() < batchSize) {
+      long remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        break;
+      }
+      Document doc;
+      try {
+        doc = queue.poll(remaining, TimeUnit.NANOSECONDS);
+      } catch (InterruptedException e) {
+        // process what we have, the run loop sees the interrupt next
+        Thread.currentThread().interrupt();
+        break;
+      }
+      if (doc == null) {
+        break;
+      }
+      batch.add(doc);
+      queue.drainTo(batch, batchSize - batch.size());
+    }
+  }
+
   public boolean isProcessing() {
     return processing;
   }
@@ -101,6 +165,35 @@ public class WorkflowWorker extends Thread {
     }
   }
 
+  /**
+   * push a batch of documents through the stages starting at stageOffset. Child
+   * documents of a stage are processed (as a batch) through the rest of the
+   * stages before the parents continue, dropped documents leave the batch.
+   * 
+   * @param docs
+   * @param stageOffset
+   */
+  public void processDocumentsInternal(List<Document> docs, int stageOffset) {
+    for (int i = stageOffset; i < stages.size() && docs.size() > 0; i++) {
+      AbstractStage s = stages.get(i);
+      long start = System.nanoTime();
+      List<Document> childDocs = s.processDocuments(docs);
+      if (i < metrics.size()) {
+        metrics.get(i).record(docs.size(), System.nanoTime() - start);
+      }
+      if (childDocs != null && childDocs.size() > 0) {
+        // process the children down the rest of the pipeline
+        processDocumentsInternal(new ArrayList<Document>(childDocs), i + 1);
+      }
+      // if it's a drop, the doc stops here.
+      for (Iterator<Document> it = docs.iterator(); it.hasNext();) {
+        if (it.next().getStatus().equals(ProcessingStatus.DROP)) {
+          it.remove();
+        }
+      }
+    }
+  }
+
   public void addStage(AbstractStage stage) {
     stages.add(stage);
   }
@@ -52,6 +52,11 @@ public class Inbox implements Serializable {
   // support remote blocking... in-process blocking uses invoke
   public HashMap<String, Object[]> blockingList = new HashMap<>();
 
+  // the thread taking messages and whether it is still handling the last one
+  // it took - it is done when it comes back for the next
+  transient Thread consumer = null;
+  transient boolean handling = false;
+
   List<MessageListener> listeners = new ArrayList<MessageListener>();
 
   public Inbox() {
@@ -146,6 +151,8 @@ public class Inbox implements Serializable {
     Message msg = null;
 
     synchronized (msgBox) {
+      consumer = Thread.currentThread();
+      handling = false;
 
       while (msg == null) { // while no messages && no messages that are
         // blocking
@@ -182,6 +189,7 @@ public class Inbox implements Serializable {
 
         }
       }
+      handling = true;
       msgBox.notifyAll();
     }
     return msg;
@@ -199,6 +207,65 @@ public class Inbox implements Serializable {
     return msgBox.size();
   }
 
+  /**
+   * blocks until every message has been taken off the inbox - getMsg notifies
+   * on each removal so no polling is needed
+   * 
+   * @param timeoutMs
+   *          max time to wait, 0 waits forever
+   * @return true if the inbox is empty
+   * @throws InterruptedException
+   */
+  public boolean waitForEmpty(long timeoutMs) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + timeoutMs;
+    synchronized (msgBox) {
+      while (msgBox.size() > 0) {
+        if (timeoutMs <= 0) {
+          msgBox.wait();
+        } else {
+          long remaining = deadline - System.currentTimeMillis();
+          if (remaining <= 0) {
+            return false;
+          }
+          msgBox.wait(remaining);
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * blocks until the inbox is empty and the last message taken has been
+   * handled - the consumer is done with a message when it takes the next.
+   * Called from the consumer thread it can not wait and only checks the
+   * inbox is empty.
+   * 
+   * @param timeoutMs
+   *          max time to wait, 0 waits forever
+   * @return true if the inbox is idle
+   * @throws InterruptedException
+   */
+  public boolean waitForIdle(long timeoutMs) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + timeoutMs;
+    synchronized (msgBox) {
+      if (Thread.currentThread() == consumer) {
+        return msgBox.size() == 0;
+      }
+      while (msgBox.size() > 0 || handling) {
+        if (timeoutMs <= 0) {
+          msgBox.wait();
+        } else {
+          long remaining = deadline - System.currentTimeMillis();
+          if (remaining <= 0) {
+            return false;
+          }
+          msgBox.wait(remaining);
+        }
+      }
+    }
+    return true;
+  }
+
   public void addMessageListener(MessageListener ml) {
     // already attached.
     if (listeners.contains(ml))
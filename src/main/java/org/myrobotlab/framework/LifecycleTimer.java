@@ -0,0 +1,179 @@
+package org.myrobotlab.framework;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.RuntimeMXBean;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.myrobotlab.framework.repo.ServiceData;
+import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.service.data.StartupReport;
+import org.myrobotlab.service.data.StartupReport.Phase;
+import org.slf4j.Logger;
+
+/**
+ * Times the life cycle phases of services - create (with the repo check and
+ * the constructor in it), load of the config and start. Besides the duration
+ * each phase records the threads started and classes loaded while it ran.
+ *
+ * A report can be written as a trace - one tab separated line per service and
+ * phase with totals, sorted by name, without timestamps - so the traces of two
+ * releases can be compared with diff.
+ */
+public class LifecycleTimer {
+
+  public final static Logger log = LoggerFactory.getLogger(LifecycleTimer.class);
+
+  static final int MAX_PHASES = 8192;
+
+  /**
+   * the order phases are listed in a trace
+   */
+  static final List<String> ORDER = Arrays.asList("create", "repo", "construct", "load", "start");
+
+  private static final List<Phase> phases = new ArrayList<>();
+
+  private static volatile boolean enabled = true;
+
+  static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+  static final ClassLoadingMXBean classBean = ManagementFactory.getClassLoadingMXBean();
+  static final RuntimeMXBean runtimeBean = ManagementFactory.getRuntimeMXBean();
+
+  /**
+   * @return the started phase - or null when timing is disabled
+   */
+  public static Phase begin(String service, String type, String phase) {
+    if (!enabled) {
+      return null;
+    }
+    Phase p = new Phase();
+    p.service = service;
+    p.type = type;
+    p.phase = phase;
+    p.thread = Thread.currentThread().getName();
+    p.startMs = runtimeBean.getUptime();
+    p.threadsStartedAtStart = threadBean.getTotalStartedThreadCount();
+    p.classesAtStart = classBean.getTotalLoadedClassCount();
+    p.startNanos = System.nanoTime();
+    return p;
+  }
+
+  public static void end(Phase p) {
+    if (p == null) {
+      return;
+    }
+    p.durationMs = (System.nanoTime() - p.startNanos) / 1000000.0;
+    p.threads = threadBean.getThreadCount();
+    p.threadsStarted = threadBean.getTotalStartedThreadCount() - p.threadsStartedAtStart;
+    p.classesLoaded = classBean.getTotalLoadedClassCount() - p.classesAtStart;
+    synchronized (phases) {
+      if (phases.size() >= MAX_PHASES) {
+        phases.remove(0);
+      }
+      phases.add(p);
+    }
+  }
+
+  public static void setEnabled(boolean b) {
+    enabled = b;
+  }
+
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  public static void clear() {
+    synchronized (phases) {
+      phases.clear();
+    }
+  }
+
+  public static StartupReport getReport() {
+    StartupReport report = new StartupReport();
+    report.jvmUptimeMs = runtimeBean.getUptime();
+    report.threads = threadBean.getThreadCount();
+    report.peakThreads = threadBean.getPeakThreadCount();
+    report.classesLoaded = classBean.getTotalLoadedClassCount();
+    report.serviceData = ServiceData.getLoadTimes();
+    synchronized (phases) {
+      report.phases.addAll(phases);
+    }
+    for (Phase p : report.phases) {
+      Map<String, Double> totals = report.services.get(p.service);
+      if (totals == null) {
+        totals = new TreeMap<>();
+        report.services.put(p.service, totals);
+      }
+      totals.merge(p.phase, p.durationMs, Double::sum);
+    }
+    return report;
+  }
+
+  /**
+   * the report as diffable lines - totals per service and phase, then the jvm
+   * and the service data loading
+   */
+  public static List<String> toTrace(StartupReport report) {
+    // service + phase to count, ms, threads, classes
+    TreeMap<String, double[]> totals = new TreeMap<>();
+    Map<String, String> types = new TreeMap<>();
+    for (Phase p : report.phases) {
+      int order = ORDER.indexOf(p.phase);
+      String key = String.format(Locale.ROOT, "%s\t%d\t%s", p.service, (order < 0) ? ORDER.size() : order, p.phase);
+      double[] t = totals.get(key);
+      if (t == null) {
+        t = new double[4];
+        totals.put(key, t);
+      }
+      t[0]++;
+      t[1] += p.durationMs;
+      t[2] += p.threadsStarted;
+      t[3] += p.classesLoaded;
+      types.put(p.service, p.type);
+    }
+
+    List<String> lines = new ArrayList<>();
+    lines.add(String.format(Locale.ROOT, "# startup trace %s", report.version));
+    lines.add("# service\ttype\tphase\tcount\tms\tthreads\tclasses");
+    for (Map.Entry<String, double[]> e : totals.entrySet()) {
+      String[] key = e.getKey().split("\t");
+      double[] t = e.getValue();
+      lines.add(String.format(Locale.ROOT, "%s\t%s\t%s\t%d\t%.1f\t%d\t%d", key[0], types.get(key[0]), key[2], (int) t[0], t[1], (long) t[2], (long) t[3]));
+    }
+    lines.add(String.format(Locale.ROOT, "jvm\tthreads\t%d", report.threads));
+    lines.add(String.format(Locale.ROOT, "jvm\tpeakThreads\t%d", report.peakThreads));
+    lines.add(String.format(Locale.ROOT, "jvm\tclassesLoaded\t%d", report.classesLoaded));
+    if (report.serviceData != null) {
+      for (Map.Entry<String, Object> e : report.serviceData.entrySet()) {
+        lines.add(String.format(Locale.ROOT, "serviceData\t%s\t%s", e.getKey(), e.getValue()));
+      }
+    }
+    return lines;
+  }
+
+  public static void write(StartupReport report, File file) throws IOException {
+    if (file.getParentFile() != null) {
+      file.getParentFile().mkdirs();
+    }
+    try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+      for (String line : toTrace(report)) {
+        out.write(line);
+        out.write("\n");
+      }
+    }
+    log.info("wrote startup trace {}", file);
+  }
+
+}
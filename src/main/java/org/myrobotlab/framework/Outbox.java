@@ -208,6 +208,33 @@ public class Outbox implements Runnable, Serializable {
     return msgBox.size();
   }
 
+  /**
+   * blocks until every message has been taken off the outbox - the outbox
+   * threads notify on each removal so no polling is needed
+   * 
+   * @param timeoutMs
+   *          max time to wait, 0 waits forever
+   * @return true if the outbox is empty
+   * @throws InterruptedException
+   */
+  public boolean waitForEmpty(long timeoutMs) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + timeoutMs;
+    synchronized (msgBox) {
+      while (msgBox.size() > 0) {
+        if (timeoutMs <= 0) {
+          msgBox.wait();
+        } else {
+          long remaining = deadline - System.currentTimeMillis();
+          if (remaining <= 0) {
+            return false;
+          }
+          msgBox.wait(remaining);
+        }
+      }
+    }
+    return true;
+  }
+
   public void start() {
     for (int i = outboxThreadPool.size(); i < initialThreadCount; ++i) {
       Thread t = new Thread(this, myService.getName() + "_outbox_" + i);
@@ -45,6 +45,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -68,6 +69,7 @@ import org.myrobotlab.logging.LoggerFactory;
 import org.myrobotlab.logging.Logging;
 import org.myrobotlab.service.Runtime;
 import org.myrobotlab.service.data.Locale;
+import org.myrobotlab.service.data.StartupReport;
 import org.myrobotlab.service.interfaces.AuthorizationProvider;
 import org.myrobotlab.service.interfaces.QueueReporter;
 import org.myrobotlab.service.meta.abstracts.MetaData;
@@ -1287,7 +1289,12 @@ public abstract class Service implements Runnable, Serializable, ServiceInterfac
    */
   @Override
   public boolean load() {
-    return load(null, null);
+    StartupReport.Phase phase = LifecycleTimer.begin(getName(), getClass().getName(), "load");
+    try {
+      return load(null, null);
+    } finally {
+      LifecycleTimer.end(phase);
+    }
   }
 
   public boolean load(Object o, String inCfgFileName) {
@@ -1803,6 +1810,8 @@ public abstract class Service implements Runnable, Serializable, ServiceInterfac
 
   public ServiceInterface startPeer(String reservedKey) {
     ServiceInterface si = null;
+    ServiceReservation sr = serviceType.getPeers().get(reservedKey);
+    StartupPlanner.Span span = StartupPlanner.begin(getName(), (sr != null && sr.actualName != null) ? sr.actualName : reservedKey);
     try {
       si = createPeer(reservedKey);
       if (si == null) {
@@ -1811,7 +1820,12 @@ public abstract class Service implements Runnable, Serializable, ServiceInterfac
       }
 
       ServiceReservation sr2 = serviceType.getPeer(reservedKey);
-      si.startService();
+      StartupReport.Phase phase = LifecycleTimer.begin(si.getName(), si.getClass().getName(), "start");
+      try {
+        si.startService();
+      } finally {
+        LifecycleTimer.end(phase);
+      }
 
       if (sr2 != null) {
         sr2.state = "started";
@@ -1821,6 +1835,7 @@ public abstract class Service implements Runnable, Serializable, ServiceInterfac
       error(e.getMessage());
       log.error("startPeer threw", e);
     }
+    StartupPlanner.end(span);
     broadcastState();
     return si;
   }
@@ -1862,8 +1877,14 @@ public abstract class Service implements Runnable, Serializable, ServiceInterfac
     }
   }
 
+  /**
+   * starts the peers which have a field and are to be auto started - peers
+   * which do not share services are started concurrently by a StartupPlanner
+   */
   public void startPeers() {
     log.info("starting peers");
+    // peer key to the field it is assigned to
+    Map<String, Field> toStart = new LinkedHashMap<>();
     Map<String, ServiceReservation> peers = null;
 
     peers = serviceType.getPeers();
@@ -1920,10 +1941,9 @@ public abstract class Service implements Runnable, Serializable, ServiceInterfac
               log.info("peer {} already assigned", f.getName());
               continue;
             }
-            log.info("assinging {}.{} = startPeer({})", sourceClass.getSimpleName(), f.getName(), f.getName());
-            Object o = startPeer(f.getName());
-
-            targetField.set(this, o);
+            if (!toStart.containsKey(f.getName())) {
+              toStart.put(f.getName(), targetField);
+            }
           }
 
         } catch (Exception e) {
@@ -1931,6 +1951,26 @@ public abstract class Service implements Runnable, Serializable, ServiceInterfac
         }
       } // for each field in class
     }
+
+    Map<String, Object> started = new HashMap<>();
+    try {
+      started = new StartupPlanner(this).addPeers(new ArrayList<>(toStart.keySet())).run();
+    } catch (StartupPlanner.StartupException e) {
+      // the peers which did start are still assigned
+      log.error("starting peers threw", e);
+      started = e.getResults();
+    } catch (Exception e) {
+      log.error("starting peers threw", e);
+    }
+
+    for (Map.Entry<String, Field> entry : toStart.entrySet()) {
+      try {
+        log.info("assinging {}.{} = startPeer({})", getClass().getSimpleName(), entry.getKey(), entry.getKey());
+        entry.getValue().set(this, started.get(entry.getKey()));
+      } catch (Exception e) {
+        log.error("copy failed", e);
+      }
+    }
   }
 
   /**
@@ -0,0 +1,181 @@
+package org.myrobotlab.framework;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.myrobotlab.logging.LoggerFactory;
+import org.slf4j.Logger;
+
+/**
+ * Source of time for things which move on their own - time encoders, the
+ * virtual MrlComm and the jme scene.
+ *
+ * By default it is the wall clock. In simulation mode time only moves when
+ * step or run is called. Every step advances the clock by a fixed tick and
+ * then calls each registered Steppable in registration order on the stepping
+ * thread, so a simulation is repeatable and runs as fast as the cpu allows -
+ * a 10 minute gesture can be checked in seconds.
+ *
+ * Code which has not been converted to a Steppable can still use sleep, which
+ * waits for simulated time in simulation mode.
+ *
+ */
+public class SimClock {
+
+  public final static Logger log = LoggerFactory.getLogger(SimClock.class);
+
+  /**
+   * something advanced by the simulation clock
+   */
+  public interface Steppable {
+    /**
+     * called on the stepping thread after the clock has moved
+     *
+     * @param nowMs
+     *          simulated time
+     * @param deltaMs
+     *          simulated time since the last step
+     */
+    void step(long nowMs, long deltaMs);
+  }
+
+  private static volatile boolean simulation = false;
+
+  private static volatile long simTimeMs = 0;
+
+  private static final Object lock = new Object();
+
+  private static final List<Steppable> steppables = new CopyOnWriteArrayList<Steppable>();
+
+  private static long steps = 0;
+  private static long simulatedMs = 0;
+  private static long stepNanos = 0;
+
+  /**
+   * @return the simulated time in simulation mode, the wall clock otherwise
+   */
+  public static long currentTimeMillis() {
+    return simulation ? simTimeMs : System.currentTimeMillis();
+  }
+
+  /**
+   * @return like System.nanoTime, simulated time in simulation mode
+   */
+  public static long nanoTime() {
+    return simulation ? simTimeMs * 1000000 : System.nanoTime();
+  }
+
+  public static boolean isSimulation() {
+    return simulation;
+  }
+
+  /**
+   * switch to simulated time, starting from the current wall clock time
+   */
+  public static void startSimulation() {
+    startSimulation(System.currentTimeMillis());
+  }
+
+  public static synchronized void startSimulation(long startMs) {
+    simTimeMs = startMs;
+    steps = 0;
+    simulatedMs = 0;
+    stepNanos = 0;
+    simulation = true;
+    log.info("simulation started at {}", startMs);
+  }
+
+  /**
+   * back to the wall clock - threads waiting in sleep are released
+   */
+  public static synchronized void stopSimulation() {
+    simulation = false;
+    synchronized (lock) {
+      lock.notifyAll();
+    }
+    log.info("simulation stopped - {}", getStats());
+  }
+
+  public static void register(Steppable steppable) {
+    if (!steppables.contains(steppable)) {
+      steppables.add(steppable);
+    }
+  }
+
+  public static void unregister(Steppable steppable) {
+    steppables.remove(steppable);
+  }
+
+  /**
+   * Advances the simulated clock by deltaMs and steps everything registered.
+   * Does nothing outside of simulation mode.
+   */
+  public static synchronized void step(long deltaMs) {
+    if (!simulation) {
+      log.warn("step called while not in simulation mode");
+      return;
+    }
+    long start = System.nanoTime();
+    simTimeMs += deltaMs;
+    for (Steppable steppable : steppables) {
+      try {
+        steppable.step(simTimeMs, deltaMs);
+      } catch (Exception e) {
+        log.error("{} step threw", steppable, e);
+      }
+    }
+    synchronized (lock) {
+      lock.notifyAll();
+    }
+    ++steps;
+    simulatedMs += deltaMs;
+    stepNanos += System.nanoTime() - start;
+  }
+
+  /**
+   * step in ticks of tickMs until durationMs of simulated time have passed
+   *
+   * @return wall clock ms it took
+   */
+  public static long run(long durationMs, long tickMs) {
+    long start = System.currentTimeMillis();
+    for (long t = 0; t < durationMs && simulation; t += tickMs) {
+      step(Math.min(tickMs, durationMs - t));
+    }
+    return System.currentTimeMillis() - start;
+  }
+
+  /**
+   * Thread.sleep on the simulation clock - in simulation mode it returns once
+   * the clock has been stepped past now + ms (or the simulation is stopped)
+   */
+  public static void sleep(long ms) throws InterruptedException {
+    if (!simulation) {
+      Thread.sleep(ms);
+      return;
+    }
+    long wake = simTimeMs + ms;
+    synchronized (lock) {
+      while (simulation && simTimeMs < wake) {
+        lock.wait();
+      }
+    }
+  }
+
+  public static long getSteps() {
+    return steps;
+  }
+
+  /**
+   * @return simulated time per wall clock time spent stepping - 10 means the
+   *         simulation runs 10 times faster than real time
+   */
+  public static double getRealTimeFactor() {
+    return (stepNanos == 0) ? 0 : simulatedMs / (stepNanos / 1000000.0);
+  }
+
+  public static String getStats() {
+    return String.format("%d steps %d ms simulated in %.1f ms - %.1fx real time", steps, simulatedMs, stepNanos / 1000000.0, getRealTimeFactor());
+  }
+
+}
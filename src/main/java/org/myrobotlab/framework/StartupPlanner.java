@@ -0,0 +1,376 @@
+package org.myrobotlab.framework;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.myrobotlab.framework.repo.ServiceData;
+import org.myrobotlab.logging.LoggerFactory;
+import org.slf4j.Logger;
+
+/**
+ * Starts the peers of a service concurrently where it is safe to.
+ *
+ * Every peer key is expanded to the names in its subtree with the Plan of its
+ * ServiceReservation. Keys whose subtrees share a service - two arms on the
+ * same arduino - are put in one group and started one after the other in the
+ * order they were added, independent groups are started at the same time on a
+ * bounded pool. The thread which runs the plan starts any group no pool thread
+ * has taken yet, so a peer starting its own peers from a pool thread can not
+ * dead lock the pool.
+ *
+ * Every startPeer is recorded in the startup trace, from which the critical
+ * path - the chain of peer starts which decided how long a service took to
+ * start - can be read.
+ */
+public class StartupPlanner {
+
+  public final static Logger log = LoggerFactory.getLogger(StartupPlanner.class);
+
+  /**
+   * one startPeer - who started what, when and on which thread
+   */
+  public static class Span {
+    public String parent;
+    public String name;
+    public String thread;
+    public long start;
+    public long end;
+
+    public long getDuration() {
+      return end - start;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%s %d ms (%s)", name, end - start, thread);
+    }
+  }
+
+  /**
+   * thrown by run when starts failed - it has what the other starts returned
+   */
+  public static class StartupException extends MrlException {
+
+    private static final long serialVersionUID = 1L;
+
+    final Map<String, Object> results;
+
+    StartupException(String name, Map<String, Object> results, List<Exception> errors) {
+      super("%d peer starts of %s failed - %s", errors.size(), name, errors.get(0).getMessage());
+      this.results = results;
+      initCause(errors.get(0));
+      for (int i = 1; i < errors.size(); ++i) {
+        addSuppressed(errors.get(i));
+      }
+    }
+
+    /**
+     * @return what each start which did not fail returned by key
+     */
+    public Map<String, Object> getResults() {
+      return results;
+    }
+  }
+
+  static final int MAX_SPANS = 4096;
+
+  private static final List<Span> trace = new ArrayList<>();
+
+  private static volatile boolean parallel = true;
+
+  private static final int poolSize = Math.max(2, Math.min(8, java.lang.Runtime.getRuntime().availableProcessors()));
+
+  private static ExecutorService pool = null;
+
+  final Service parent;
+
+  final Map<String, Callable<?>> tasks = new LinkedHashMap<>();
+
+  final Map<String, Set<String>> names = new HashMap<>();
+
+  public StartupPlanner(Service parent) {
+    this.parent = parent;
+  }
+
+  /**
+   * adds the start of a peer
+   *
+   * @param key
+   *          - the peer key
+   * @param start
+   *          - what starts it
+   * @param shares
+   *          - keys of other peers of the parent the start uses too, e.g. the
+   *          arduino an arm is attached to
+   */
+  public StartupPlanner add(String key, Callable<?> start, String... shares) {
+    tasks.put(key, start);
+    Set<String> subtree = subtree(key);
+    for (String share : shares) {
+      subtree.addAll(subtree(share));
+    }
+    names.put(key, subtree);
+    return this;
+  }
+
+  /**
+   * adds a plain startPeer of each key
+   */
+  public StartupPlanner addPeers(List<String> keys) {
+    for (String key : keys) {
+      add(key, () -> parent.startPeer(key));
+    }
+    return this;
+  }
+
+  /**
+   * names of a peer and all the peers below it
+   */
+  Set<String> subtree(String key) {
+    Set<String> subtree = new HashSet<>();
+    ServiceReservation sr = (parent.serviceType == null) ? null : parent.serviceType.getPeers().get(key);
+    if (sr == null) {
+      subtree.add(ServiceData.getPeerKey(parent.getName(), key));
+      return subtree;
+    }
+    subtree.add((sr.actualName != null) ? sr.actualName : ServiceData.getPeerKey(parent.getName(), key));
+    try {
+      Plan plan = new Plan();
+      ServiceData.getPlan(plan, parent.getName(), sr);
+      subtree.addAll(plan.services.keySet());
+    } catch (Exception e) {
+      log.warn("could not plan {} of {} - {}", key, parent.getName(), e.getMessage());
+    }
+    return subtree;
+  }
+
+  /**
+   * keys whose subtrees overlap end up in one group - groups are in the order
+   * of their first key and keys in the order they were added
+   */
+  List<List<String>> getGroups() {
+    List<String> keys = new ArrayList<>(tasks.keySet());
+    int[] root = new int[keys.size()];
+    for (int i = 0; i < root.length; ++i) {
+      root[i] = i;
+    }
+    for (int i = 0; i < keys.size(); ++i) {
+      for (int j = i + 1; j < keys.size(); ++j) {
+        if (!Collections.disjoint(names.get(keys.get(i)), names.get(keys.get(j)))) {
+          root[find(root, j)] = find(root, i);
+        }
+      }
+    }
+    Map<Integer, List<String>> groups = new LinkedHashMap<>();
+    for (int i = 0; i < keys.size(); ++i) {
+      groups.computeIfAbsent(find(root, i), k -> new ArrayList<>()).add(keys.get(i));
+    }
+    return new ArrayList<>(groups.values());
+  }
+
+  static int find(int[] root, int i) {
+    while (root[i] != i) {
+      i = root[i];
+    }
+    return i;
+  }
+
+  /**
+   * starts all the peers and waits until they are started
+   *
+   * @return what each start returned by key
+   * @throws StartupException
+   *           after all groups are done if any start failed, with the results
+   *           of the others
+   */
+  public Map<String, Object> run() throws StartupException {
+    long ts = System.currentTimeMillis();
+    List<List<String>> groups = getGroups();
+    Map<String, Object> results = Collections.synchronizedMap(new LinkedHashMap<>());
+    List<Exception> errors = Collections.synchronizedList(new ArrayList<>());
+
+    List<FutureTask<Void>> futures = new ArrayList<>();
+    for (List<String> group : groups) {
+      futures.add(new FutureTask<Void>(() -> {
+        for (String key : group) {
+          try {
+            Object o = tasks.get(key).call();
+            if (o != null) {
+              results.put(key, o);
+            }
+          } catch (Exception e) {
+            log.error("starting {} of {} threw", key, parent.getName(), e);
+            errors.add(e);
+          }
+        }
+        return null;
+      }));
+    }
+
+    // a pool thread starting a peer of a parent this thread holds the lock of
+    // would block on createPeer - those stay on this thread
+    if (parallel && futures.size() > 1 && !Thread.holdsLock(parent)) {
+      // the first group is always run by this thread
+      for (int i = 1; i < futures.size(); ++i) {
+        getPool().execute(futures.get(i));
+      }
+    }
+    // runs the groups no pool thread has taken - a no-op for the others
+    for (FutureTask<Void> future : futures) {
+      future.run();
+    }
+    for (FutureTask<Void> future : futures) {
+      try {
+        future.get();
+      } catch (ExecutionException e) {
+        errors.add(e);
+      } catch (InterruptedException e) {
+        // what has been started so far
+        errors.add(e);
+        Thread.currentThread().interrupt();
+        break;
+      }
+    }
+
+    log.info("started {} peers of {} in {} groups in {} ms", tasks.size(), parent.getName(), groups.size(), System.currentTimeMillis() - ts);
+    if (log.isDebugEnabled()) {
+      log.debug("critical path {}", getCriticalPath(parent.getName()));
+    }
+    if (!errors.isEmpty()) {
+      throw new StartupException(parent.getName(), results, errors);
+    }
+    return results;
+  }
+
+  static synchronized ExecutorService getPool() {
+    if (pool == null) {
+      AtomicInteger count = new AtomicInteger();
+      pool = Executors.newFixedThreadPool(poolSize, r -> {
+        Thread t = new Thread(r, "peerStart-" + count.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      });
+    }
+    return pool;
+  }
+
+  /**
+   * false starts every group on the calling thread in order - the way peers
+   * were always started
+   */
+  public static void setParallel(boolean b) {
+    parallel = b;
+  }
+
+  public static boolean isParallel() {
+    return parallel;
+  }
+
+  static Span begin(String parent, String name) {
+    Span span = new Span();
+    span.parent = parent;
+    span.name = name;
+    span.thread = Thread.currentThread().getName();
+    span.start = System.currentTimeMillis();
+    return span;
+  }
+
+  static void end(Span span) {
+    span.end = System.currentTimeMillis();
+    synchronized (trace) {
+      if (trace.size() >= MAX_SPANS) {
+        trace.remove(0);
+      }
+      trace.add(span);
+    }
+  }
+
+  public static List<Span> getTrace() {
+    synchronized (trace) {
+      return new ArrayList<>(trace);
+    }
+  }
+
+  public static void clearTrace() {
+    synchronized (trace) {
+      trace.clear();
+    }
+  }
+
+  /**
+   * The chain of peer starts which decided how long the peers of a service
+   * took to start. Of the peers a service started the one which finished last
+   * is on the path, before it the peer started last before it on the same
+   * thread and so on - each of which is expanded the same way into the peers
+   * it started itself.
+   *
+   * @param name
+   *          - the service
+   * @return one line per peer start, indented by depth
+   */
+  public static List<String> getCriticalPath(String name) {
+    List<Span> spans = getTrace();
+    List<String> path = new ArrayList<>();
+    criticalPath(spans, name, Long.MIN_VALUE, Long.MAX_VALUE, 0, path, new HashSet<>());
+    return path;
+  }
+
+  static void criticalPath(List<Span> spans, String parent, long from, long to, int depth, List<String> path, Set<Span> visited) {
+    List<Span> children = new ArrayList<>();
+    for (Span span : spans) {
+      if (parent.equals(span.parent) && span.start >= from && span.end <= to && !visited.contains(span)) {
+        children.add(span);
+      }
+    }
+    if (children.isEmpty()) {
+      return;
+    }
+
+    Span last = children.get(0);
+    for (Span span : children) {
+      if (span.end > last.end) {
+        last = span;
+      }
+    }
+
+    List<Span> chain = new ArrayList<>();
+    chain.add(last);
+    Span current = last;
+    while (true) {
+      Span before = null;
+      for (Span span : children) {
+        if (span != current && span.thread.equals(current.thread) && span.end <= current.start && (before == null || span.end > before.end)) {
+          before = span;
+        }
+      }
+      if (before == null) {
+        break;
+      }
+      chain.add(0, before);
+      current = before;
+    }
+
+    StringBuilder indent = new StringBuilder();
+    for (int i = 0; i < depth; ++i) {
+      indent.append("  ");
+    }
+    for (Span span : chain) {
+      visited.add(span);
+      path.add(indent + span.toString());
+      criticalPath(spans, span.name, span.start, span.end, depth + 1, path, visited);
+    }
+  }
+
+}
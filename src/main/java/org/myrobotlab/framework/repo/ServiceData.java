@@ -7,11 +7,17 @@ import java.io.Serializable;
 import java.lang.reflect.Constructor;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.myrobotlab.codec.CodecUtils;
 import org.myrobotlab.framework.MrlException;
@@ -59,6 +65,13 @@ public class ServiceData implements Serializable {
 
   static private String serviceDataCacheFileName = FileIO.getCfgDir() + File.separator + "serviceData.json";
 
+  static private String serviceIndexCacheFileName = FileIO.getCfgDir() + File.separator + "serviceIndex.dat";
+
+  /**
+   * ms spent in each phase of loading the service data, and where it came from
+   */
+  transient static private final Map<String, Object> loadTimes = Collections.synchronizedMap(new LinkedHashMap<>());
+
   /**
    * clears all overrides. All services shall be using the standard hard co
    */
@@ -92,13 +105,23 @@ public class ServiceData implements Serializable {
     List<String> services = FileIO.getServiceList();
 
     log.info("found {} services", services.size());
+
+    // loading and instantiating the meta classes is the slow part - it is done
+    // in parallel, the results are added in order
+    ExecutorService pool = Executors.newFixedThreadPool(Math.max(2, java.lang.Runtime.getRuntime().availableProcessors()));
+    List<Future<MetaData>> metaData = new ArrayList<>();
+    for (String fullClassName : services) {
+      metaData.add(pool.submit(() -> getMetaData(fullClassName)));
+    }
+    pool.shutdown();
+
     for (int i = 0; i < services.size(); ++i) {
 
       String fullClassName = services.get(i);
       log.debug("querying {}", fullClassName);
       try {
 
-        MetaData serviceType = (MetaData) getMetaData(fullClassName);
+        MetaData serviceType = metaData.get(i).get();
 
         if (!fullClassName.equals(serviceType.getType())) {
           log.error("Class name {} not equal to the MetaData's name {}", fullClassName, serviceType.getType());
@@ -132,12 +155,12 @@ public class ServiceData implements Serializable {
   static public List<ServiceDependency> getDependencyKeys(String fullTypeName) {
     List<ServiceDependency> keys = new ArrayList<ServiceDependency>();
     ServiceData sd = getLocalInstance();
-    if (!sd.serviceTypes.containsKey(fullTypeName)) {
+    if (!sd.containsServiceType(fullTypeName)) {
       log.error("{} not defined in service types");
       return keys;
     }
 
-    MetaData st = localInstance.serviceTypes.get(fullTypeName);
+    MetaData st = sd.getServiceType(fullTypeName);
     return st.getDependencies();
   }
 
@@ -152,54 +175,81 @@ public class ServiceData implements Serializable {
     return type;
   }
 
-  static public ServiceData getLocalInstance() {
+  static public synchronized ServiceData getLocalInstance() {
     if (localInstance != null) {
       // return the already loaded copy.
       return localInstance;
-    } else {
-
-      // step 1 - try local file in the .myrobotlab directory
-      // step 2 - extract the file from the jar
-      // WE CAN NOT GENERATE THIS FILE DURING RUNTIME !!!
-
-      // step 3 - if 1 & 2 fail - then we can 'assume' were in develop
-      // time (we'll isJar check and error if not)
-      // - generate it and put it in
-      // getRoot()/resource/framework/serviceData.json
-
-      // if we're not in a jar we are in an IDE.
+    }
 
-      // First check the .myrobotlab/serviceData.json dir.
-      File jsonFile = new File(serviceDataCacheFileName);
-      if (jsonFile.exists()) {
-        // load it and return!
-        String data = null;
+    // step 1 - the index bundled with the build
+    // step 2 - the index cached in the .myrobotlab directory
+    // both are only used if they were built from the classes which are
+    // running
+    // step 3 - if 1 & 2 fail - then we can 'assume' were in develop
+    // time - generate it and cache the index
+    long start = System.currentTimeMillis();
+    String fingerprint = null;
+    try {
+      fingerprint = ServiceIndex.fingerprint(FileIO.getRoot());
+    } catch (Exception e) {
+      log.warn("could not fingerprint {} - {}", FileIO.getRoot(), e.getMessage());
+    }
+    loadTimes.put("fingerprint", System.currentTimeMillis() - start);
+
+    long ts = System.currentTimeMillis();
+    ServiceIndex index = ServiceIndex.readResource();
+    String source = "bundled index";
+    if (index == null || !index.getFingerprint().equals(fingerprint)) {
+      index = null;
+      File cached = new File(serviceIndexCacheFileName);
+      if (cached.exists()) {
         try {
-          data = FileIO.toString(jsonFile);
-        } catch (IOException e) {
-          log.warn("Error reading serviceData.json from location {}", jsonFile.getAbsolutePath());
+          index = ServiceIndex.read(cached);
+          source = "cached index";
+          if (!index.getFingerprint().equals(fingerprint)) {
+            log.info("{} is out of date", cached);
+            index = null;
+          }
+        } catch (Exception e) {
+          log.warn("could not read {} - {}", cached, e.getMessage());
         }
-        localInstance = CodecUtils.fromJson(data, ServiceData.class);
-        log.info("Returning serviceData.json from {}", jsonFile);
-        return localInstance;
-      } else {
+      }
+    }
+    loadTimes.put("index", System.currentTimeMillis() - ts);
 
-        // we are running in an IDE and haven't generated/saved the
-        // serviceData.json yet.
-        try {
-          // This must only be run as part of the build or from your IDE. It
-          // will not work when running from a jar.
-          localInstance = ServiceData.generate();
-          localInstance.save();
-          log.info("saved generated serviceData.json to {}", serviceDataCacheFileName);
-        } catch (IOException e1) {
-          log.error("Unable to generate the serivceData.json file!!");
-          // This is a fatal issue. I think we should exit the jvm here.
+    if (index != null) {
+      localInstance = new ServiceData(index);
+      localInstance.loadAllInBackground();
+    } else {
+      source = "generated";
+      ts = System.currentTimeMillis();
+      try {
+        localInstance = ServiceData.generate();
+        loadTimes.put("generate", System.currentTimeMillis() - ts);
+        if (fingerprint != null) {
+          ServiceIndex.write(localInstance, fingerprint, new File(serviceIndexCacheFileName));
+          log.info("saved generated service index to {}", serviceIndexCacheFileName);
         }
-        return localInstance;
-
+      } catch (IOException e) {
+        log.error("Unable to generate the service data!!", e);
+        // This is a fatal issue. I think we should exit the jvm here.
       }
     }
+    loadTimes.put("source", source);
+    loadTimes.put("total", System.currentTimeMillis() - start);
+    log.info("service data {}", loadTimes);
+    return localInstance;
+  }
+
+  /**
+   * ms of each phase of the first getLocalInstance - fingerprint, index,
+   * generate, total and parse (all meta data parsed in the background) - and
+   * the source of the data
+   */
+  static public Map<String, Object> getLoadTimes() {
+    synchronized (loadTimes) {
+      return new LinkedHashMap<>(loadTimes);
+    }
   }
 
   /**
@@ -319,22 +369,93 @@ public class ServiceData implements Serializable {
   TreeMap<String, Category> categoryTypes = new TreeMap<String, Category>();
 
   /**
-   * all services meta data is contained here
+   * all services meta data is contained here - with an index it is filled as
+   * types are asked for and by a background load
    */
-  TreeMap<String, MetaData> serviceTypes = new TreeMap<String, MetaData>();
+  ConcurrentSkipListMap<String, MetaData> serviceTypes = new ConcurrentSkipListMap<String, MetaData>();
+
+  transient ServiceIndex index = null;
+
+  transient boolean allLoaded = true;
 
   public ServiceData() {
   }
 
+  /**
+   * service data of an index - categories and type names come from the index,
+   * meta data is parsed when used
+   */
+  public ServiceData(ServiceIndex index) {
+    this.index = index;
+    allLoaded = false;
+    for (ServiceIndex.Entry entry : index.getEntries().values()) {
+      if (!entry.available) {
+        continue;
+      }
+      for (String cat : entry.categories) {
+        Category category = categoryTypes.get(cat);
+        if (category == null) {
+          category = new Category();
+          category.name = cat;
+          categoryTypes.put(cat, category);
+        }
+        category.serviceTypes.add(entry.type);
+      }
+    }
+  }
+
+  /**
+   * meta data of a type, parsed from the index the first time
+   */
+  public MetaData getServiceType(String type) {
+    MetaData metaData = serviceTypes.get(type);
+    if (metaData == null && index != null && index.contains(type)) {
+      metaData = index.load(type);
+      MetaData previous = serviceTypes.putIfAbsent(type, metaData);
+      if (previous != null) {
+        metaData = previous;
+      }
+    }
+    return metaData;
+  }
+
+  /**
+   * parses the meta data of every type not parsed yet - to be called before
+   * the service data is serialized
+   */
+  public synchronized void loadAll() {
+    if (allLoaded) {
+      return;
+    }
+    long ts = System.currentTimeMillis();
+    for (String type : index.getEntries().keySet()) {
+      getServiceType(type);
+    }
+    allLoaded = true;
+    loadTimes.put("parse", System.currentTimeMillis() - ts);
+  }
+
+  /**
+   * the web gui gets every type with the runtime's state - parse them while
+   * the rest of startup goes on
+   */
+  void loadAllInBackground() {
+    Thread t = new Thread(() -> loadAll(), "serviceData.load");
+    t.setDaemon(true);
+    t.setPriority(Thread.MIN_PRIORITY);
+    t.start();
+  }
+
   public void add(MetaData serviceType) {
     serviceTypes.put(serviceType.getType(), serviceType);
   }
 
   public boolean containsServiceType(String fullServiceName) {
-    return serviceTypes.containsKey(fullServiceName);
+    return serviceTypes.containsKey(fullServiceName) || (index != null && index.contains(fullServiceName));
   }
 
   public List<MetaData> getAvailableServiceTypes() {
+    loadAll();
     List<MetaData> ret = new ArrayList<MetaData>();
     for (Map.Entry<String, MetaData> o : serviceTypes.entrySet()) {
       if (o.getValue().isAvailable()) {
@@ -374,6 +495,7 @@ public class ServiceData implements Serializable {
   }
 
   public HashSet<ServiceDependency> getServiceTypeDependencyKeys() {
+    loadAll();
     HashSet<ServiceDependency> uniqueKeys = new HashSet<ServiceDependency>();
     for (Map.Entry<String, MetaData> o : serviceTypes.entrySet()) {
       MetaData st = o.getValue();
@@ -394,7 +516,7 @@ public class ServiceData implements Serializable {
   public String[] getServiceTypeNames(String categoryFilterName) {
 
     if (categoryFilterName == null || categoryFilterName.length() == 0 || categoryFilterName.equals("all")) {
-      String[] ret = serviceTypes.keySet().toArray(new String[0]);
+      String[] ret = (index != null) ? index.getEntries().keySet().toArray(new String[0]) : serviceTypes.keySet().toArray(new String[0]);
       Arrays.sort(ret);
       return ret;
     }
@@ -413,6 +535,7 @@ public class ServiceData implements Serializable {
   }
 
   public List<MetaData> getServiceTypes(boolean showUnavailable) {
+    loadAll();
     List<MetaData> ret = new ArrayList<MetaData>();
     for (Map.Entry<String, MetaData> o : serviceTypes.entrySet()) {
       if (!o.getValue().isAvailable() && !showUnavailable) {
@@ -0,0 +1,266 @@
+package org.myrobotlab.framework.repo;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.CRC32;
+
+import org.myrobotlab.codec.CodecUtils;
+import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.service.meta.abstracts.MetaData;
+import org.slf4j.Logger;
+
+/**
+ * Compact index of the service meta data, generated at build time and bundled
+ * as resource/framework/serviceIndex.dat. A header line per service type gives
+ * its categories, availability and where its meta data json is in the data
+ * section, so the service type list is read without parsing any json and each
+ * type's meta data is parsed the first time it is asked for.
+ *
+ * The index records the fingerprint of the classes it was built from - the
+ * names of the service classes and the crc of every meta class. For a jar the
+ * crcs come from its central directory, so checking an index against the jar
+ * which is running does not decompress anything.
+ *
+ * <pre>
+ * mrl-service-index 1 {fingerprint} {count}
+ * {type} TAB {available} TAB {category,category} TAB {offset} TAB {length}
+ * ...
+ * (empty line)
+ * {json}{json}...
+ * </pre>
+ */
+public class ServiceIndex {
+
+  public final static Logger log = LoggerFactory.getLogger(ServiceIndex.class);
+
+  public static final String RESOURCE = "/resource/framework/serviceIndex.dat";
+
+  static final String HEADER = "mrl-service-index";
+
+  static final int VERSION = 1;
+
+  static final String SERVICE_DIR = "org/myrobotlab/service/";
+
+  static final String META_DIR = "org/myrobotlab/service/meta/";
+
+  public static class Entry {
+    public String type;
+    public boolean available;
+    public String[] categories;
+    int offset;
+    int length;
+  }
+
+  final String fingerprint;
+
+  final Map<String, Entry> entries = new TreeMap<>();
+
+  final String data;
+
+  ServiceIndex(String fingerprint, String data) {
+    this.fingerprint = fingerprint;
+    this.data = data;
+  }
+
+  public String getFingerprint() {
+    return fingerprint;
+  }
+
+  public Map<String, Entry> getEntries() {
+    return entries;
+  }
+
+  public boolean contains(String type) {
+    return entries.containsKey(type);
+  }
+
+  /**
+   * parses the meta data of one type
+   */
+  public MetaData load(String type) {
+    Entry entry = entries.get(type);
+    if (entry == null) {
+      return null;
+    }
+    MetaData metaData = CodecUtils.fromJson(data.substring(entry.offset, entry.offset + entry.length), MetaData.class);
+    // categories are transient in the meta data json
+    metaData.categories = new HashSet<>(Arrays.asList(entry.categories));
+    return metaData;
+  }
+
+  /**
+   * fingerprint of the service and meta classes of a jar or class directory
+   */
+  public static String fingerprint(String root) throws IOException {
+    TreeMap<String, Long> classes = new TreeMap<>();
+    File file = new File(root);
+    if (file.isFile()) {
+      try (JarFile jar = new JarFile(file)) {
+        Enumeration<JarEntry> e = jar.entries();
+        while (e.hasMoreElements()) {
+          JarEntry entry = e.nextElement();
+          add(classes, entry.getName(), entry.getCrc());
+        }
+      }
+    } else {
+      File[] services = new File(file, SERVICE_DIR).listFiles();
+      File[] metas = new File(file, META_DIR).listFiles();
+      for (File[] files : new File[][] { services, metas }) {
+        if (files == null) {
+          continue;
+        }
+        for (File f : files) {
+          String name = f.getAbsolutePath().substring(file.getAbsolutePath().length() + 1).replace(File.separatorChar, '/');
+          if (isMeta(name)) {
+            CRC32 crc = new CRC32();
+            crc.update(Files.readAllBytes(f.toPath()));
+            add(classes, name, crc.getValue());
+          } else {
+            add(classes, name, 0);
+          }
+        }
+      }
+    }
+
+    CRC32 crc = new CRC32();
+    for (Map.Entry<String, Long> entry : classes.entrySet()) {
+      crc.update(entry.getKey().getBytes(StandardCharsets.UTF_8));
+      long value = entry.getValue();
+      for (int i = 0; i < 8; ++i) {
+        crc.update((int) (value >> (i * 8)));
+      }
+    }
+    return String.format("%d-%08x", classes.size(), crc.getValue());
+  }
+
+  static boolean isMeta(String name) {
+    return name.startsWith(META_DIR) && name.endsWith("Meta.class") && name.indexOf('/', META_DIR.length()) < 0;
+  }
+
+  static void add(Map<String, Long> classes, String name, long crc) {
+    if (isMeta(name)) {
+      classes.put(name, crc);
+    } else if (name.startsWith(SERVICE_DIR) && name.endsWith(".class") && !name.contains("$") && name.indexOf('/', SERVICE_DIR.length()) < 0) {
+      // only the list of services matters
+      classes.put(name, 0L);
+    }
+  }
+
+  public static ServiceIndex read(InputStream in) throws IOException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    byte[] buffer = new byte[65536];
+    int n;
+    while ((n = in.read(buffer)) != -1) {
+      bos.write(buffer, 0, n);
+    }
+    String text = new String(bos.toByteArray(), StandardCharsets.UTF_8);
+
+    int end = text.indexOf('\n');
+    String[] header = text.substring(0, end).split(" ");
+    if (header.length < 4 || !HEADER.equals(header[0]) || Integer.parseInt(header[1]) != VERSION) {
+      throw new IOException("not a service index");
+    }
+    int count = Integer.parseInt(header[3]);
+
+    List<Entry> entries = new ArrayList<>(count);
+    int pos = end + 1;
+    for (int i = 0; i < count; ++i) {
+      end = text.indexOf('\n', pos);
+      String[] parts = text.substring(pos, end).split("\t", -1);
+      Entry entry = new Entry();
+      entry.type = parts[0];
+      entry.available = Boolean.parseBoolean(parts[1]);
+      entry.categories = parts[2].isEmpty() ? new String[0] : parts[2].split(",");
+      entry.offset = Integer.parseInt(parts[3]);
+      entry.length = Integer.parseInt(parts[4]);
+      entries.add(entry);
+      pos = end + 1;
+    }
+    // empty line before the data
+    ServiceIndex index = new ServiceIndex(header[2], text.substring(pos + 1));
+    for (Entry entry : entries) {
+      index.entries.put(entry.type, entry);
+    }
+    return index;
+  }
+
+  public static ServiceIndex read(File file) throws IOException {
+    try (InputStream in = new FileInputStream(file)) {
+      return read(in);
+    }
+  }
+
+  /**
+   * the index bundled with the build, null if there is none
+   */
+  public static ServiceIndex readResource() {
+    try (InputStream in = ServiceIndex.class.getResourceAsStream(RESOURCE)) {
+      return (in == null) ? null : read(in);
+    } catch (Exception e) {
+      log.warn("could not read {} - {}", RESOURCE, e.getMessage());
+    }
+    return null;
+  }
+
+  public static void write(ServiceData sd, String fingerprint, File file) throws IOException {
+    StringBuilder header = new StringBuilder();
+    StringBuilder data = new StringBuilder();
+    List<MetaData> types = sd.getServiceTypes();
+    header.append(String.format("%s %d %s %d\n", HEADER, VERSION, fingerprint, types.size()));
+    for (MetaData metaData : types) {
+      String json = CodecUtils.toJson(metaData);
+      List<String> categories = new ArrayList<>(metaData.categories == null ? new HashSet<String>() : metaData.categories);
+      categories.sort(null);
+      header.append(String.format("%s\t%b\t%s\t%d\t%d\n", metaData.getType(), metaData.isAvailable(), String.join(",", categories), data.length(), json.length()));
+      data.append(json);
+    }
+    header.append("\n");
+
+    if (file.getParentFile() != null) {
+      file.getParentFile().mkdirs();
+    }
+    File tmp = new File(file.getPath() + ".tmp");
+    try (Writer out = new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8)) {
+      out.write(header.toString());
+      out.write(data.toString());
+    }
+    file.delete();
+    if (!tmp.renameTo(file)) {
+      throw new IOException(String.format("could not rename %s", tmp));
+    }
+  }
+
+  /**
+   * build time generation of the bundled index
+   *
+   * @param args
+   *          - the class directory to index and write the index into
+   * @throws IOException
+   *           the index could not be written - which fails the build
+   */
+  public static void main(String[] args) throws IOException {
+    String classes = (args.length > 0) ? args[0] : "target/classes";
+    ServiceData sd = ServiceData.generate();
+    File file = new File(classes + RESOURCE);
+    write(sd, fingerprint(classes), file);
+    log.info("wrote {} service types to {}", sd.getServiceTypes().size(), file);
+  }
+
+}
@@ -3,6 +3,7 @@ package org.myrobotlab.jme3;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
+import org.myrobotlab.framework.SimClock;
 import org.myrobotlab.logging.LoggerFactory;
 import org.myrobotlab.service.JMonkeyEngine;
 import org.slf4j.Logger;
@@ -60,7 +61,7 @@ public class Interpolator {
     // move.newPos = jme.getAngle(move.name) - newPos; // FIXME - this needs to
     // be the difference ??? - get current pos => find distance and direction
 
-    move.startTs = System.currentTimeMillis();
+    move.startTs = SimClock.currentTimeMillis();
 
     log.info("addAnimation {} {} from {} to {} @ {} degrees/sec", name, method, move.startPos, newPos, speed);
     futureMoves.put(name, move);
@@ -76,7 +77,7 @@ public class Interpolator {
     for (String name : futureMoves.keySet()) {
       Move move = futureMoves.get(name);
       // find the time into our move (total) vs last ..
-      long deltaTime = System.currentTimeMillis() - move.startTs; // milliseconds
+      long deltaTime = SimClock.currentTimeMillis() - move.startTs; // milliseconds
 
       // total difference in our move - degrees per second
       // TODO - add acceleration (currently 0)
@@ -0,0 +1,228 @@
+package org.myrobotlab.jme3;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.myrobotlab.logging.LoggerFactory;
+import org.slf4j.Logger;
+
+/**
+ * Coalescing front of the jme message queue for node rotations. A rotation is
+ * queued like any other Jme3Msg, so it is applied in order with the messages
+ * queued before it. While a rotation of a node (and axis) is still queued and
+ * no other message was added after it, a new angle for the same node replaces
+ * the queued one - a joint which got ten encoder updates between two frames
+ * is rotated once, to the last angle. Rotations of other nodes do not depend
+ * on it and do not stop that. Each node and axis gets a slot the first time it
+ * is rotated.
+ */
+public class TransformBuffer {
+
+  public final static Logger log = LoggerFactory.getLogger(TransformBuffer.class);
+
+  /**
+   * what queued rotations are applied to
+   */
+  public interface Target {
+    void rotateTo(String name, String axis, double degrees);
+  }
+
+  static class Slot {
+    final String name;
+    final String axis;
+    // the queued rotation new angles can still go to - guarded by the slot
+    Rotation pending;
+    boolean cleared;
+
+    Slot(String name, String axis) {
+      this.name = name;
+      this.axis = axis;
+    }
+  }
+
+  /**
+   * a queued rotation - its angle is replaced while it can be coalesced
+   */
+  public static class Rotation extends Jme3Msg {
+    final Slot slot;
+    // messages added before it was queued
+    final long barrier;
+    double degrees;
+
+    Rotation(Slot slot, long barrier, double degrees) {
+      super("rotateTo", null);
+      this.slot = slot;
+      this.barrier = barrier;
+      this.degrees = degrees;
+    }
+  }
+
+  private final Queue<Jme3Msg> queue;
+
+  private final ConcurrentHashMap<String, Slot[]> byName = new ConcurrentHashMap<String, Slot[]>();
+
+  // every slot - replaced when a slot is added
+  private volatile Slot[] slots = new Slot[0];
+
+  private final AtomicLong barrier = new AtomicLong();
+  private final AtomicLong puts = new AtomicLong();
+  private final AtomicLong coalesced = new AtomicLong();
+  private volatile long applied = 0;
+
+  /**
+   * @param queue
+   *          the message queue of the jme thread
+   */
+  public TransformBuffer(Queue<Jme3Msg> queue) {
+    this.queue = queue;
+  }
+
+  /**
+   * queue any other message - rotations queued before it are not changed
+   * after it
+   */
+  public void add(Jme3Msg msg) {
+    queue.add(msg);
+    barrier.incrementAndGet();
+  }
+
+  /**
+   * queue an absolute rotation, replacing the angle of a queued rotation of
+   * the same node and axis if no other message was added since
+   *
+   * @param name
+   *          node name
+   * @param axis
+   *          x, y, z or null for the node's default axis
+   * @param degrees
+   */
+  public void rotateTo(String name, String axis, double degrees) {
+    Slot slot = slot(name, axis);
+    puts.incrementAndGet();
+    synchronized (slot) {
+      Rotation pending = slot.pending;
+      long b = barrier.get();
+      if (pending != null && pending.barrier == b) {
+        pending.degrees = degrees;
+        coalesced.incrementAndGet();
+        return;
+      }
+      slot.pending = new Rotation(slot, b, degrees);
+      queue.add(slot.pending);
+    }
+  }
+
+  private Slot slot(String name, String axis) {
+    Slot[] named = byName.get(name);
+    if (named != null) {
+      for (Slot slot : named) {
+        if (Objects.equals(slot.axis, axis)) {
+          return slot;
+        }
+      }
+    }
+    return addSlot(name, axis);
+  }
+
+  private synchronized Slot addSlot(String name, String axis) {
+    Slot[] named = byName.get(name);
+    if (named != null) {
+      for (Slot slot : named) {
+        if (Objects.equals(slot.axis, axis)) {
+          return slot;
+        }
+      }
+    }
+    Slot slot = new Slot(name, axis);
+    named = (named == null) ? new Slot[1] : Arrays.copyOf(named, named.length + 1);
+    named[named.length - 1] = slot;
+    byName.put(name, named);
+    Slot[] all = Arrays.copyOf(slots, slots.length + 1);
+    all[all.length - 1] = slot;
+    slots = all;
+    return slot;
+  }
+
+  /**
+   * Applies a rotation taken from the queue to target - called from the
+   * render thread. A rotation which throws is logged.
+   *
+   * @return false if the rotation was dropped by clear
+   */
+  public boolean apply(Rotation rotation, Target target) {
+    Slot slot = rotation.slot;
+    double degrees;
+    synchronized (slot) {
+      if (slot.pending == rotation) {
+        slot.pending = null;
+      }
+      if (slot.cleared) {
+        return false;
+      }
+      degrees = rotation.degrees;
+    }
+    try {
+      target.rotateTo(slot.name, slot.axis, degrees);
+    } catch (Exception e) {
+      log.error("rotateTo {} {} failed", slot.name, slot.axis, e);
+    }
+    ++applied;
+    return true;
+  }
+
+  /**
+   * @return number of slots with a rotation which can still be coalesced
+   */
+  public int getPending() {
+    int count = 0;
+    for (Slot slot : slots) {
+      synchronized (slot) {
+        if (slot.pending != null) {
+          ++count;
+        }
+      }
+    }
+    return count;
+  }
+
+  /**
+   * @return number of node and axis slots
+   */
+  public int size() {
+    return slots.length;
+  }
+
+  /**
+   * forget all slots - rotations still in the queue are dropped
+   */
+  public synchronized void clear() {
+    for (Slot slot : slots) {
+      synchronized (slot) {
+        slot.cleared = true;
+        slot.pending = null;
+      }
+    }
+    byName.clear();
+    slots = new Slot[0];
+  }
+
+  public long getPuts() {
+    return puts.get();
+  }
+
+  public long getApplied() {
+    return applied;
+  }
+
+  /**
+   * @return rotations which were replaced by a newer one before they were
+   *         applied
+   */
+  public long getCoalesced() {
+    return coalesced.get();
+  }
+
+}
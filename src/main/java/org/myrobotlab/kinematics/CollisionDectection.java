@@ -4,6 +4,9 @@
 package org.myrobotlab.kinematics;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -17,6 +20,24 @@ public class CollisionDectection {
   private CollisionItem[] collisionItems = new CollisionItem[2];
   private double[] collisionLocation = new double[2];
 
+  // broad phase index - item ids are positions in index, rebuilt when items
+  // or ignore lists change
+  private transient volatile boolean dirty = true;
+  private transient CollisionItem[] index = new CollisionItem[0];
+  // one bit per item id for each item
+  private transient long[] ignoreBits = new long[0];
+  private transient int ignoreWords = 0;
+  // minX, maxX, minY, maxY, minZ, maxZ per id
+  private transient double[] bounds = new double[0];
+  // origin x,y,z and vector x,y,z per id
+  private transient double[] segments = new double[0];
+  private transient boolean[] degenerate = new boolean[0];
+  // ids sorted by minX
+  private transient int[] order = new int[0];
+  private transient final double[] closest = new double[6];
+  private transient final double[] st = new double[2];
+  private transient int pairsTested = 0;
+
   public class CollisionResults {
     boolean haveCollision = false;
     Point[] collisionPoints = new Point[2];
@@ -42,122 +63,91 @@ public class CollisionDectection {
       CollisionItem updateItem = items.get(item.getName());
       updateItem.setOrigin(item.getOrigin());
       updateItem.setEnd(item.getEnd());
+      // a moved item keeps its id - only a new ignore entry changes the index
       for (int i = 0; i < item.ignore.size(); i++) {
         if (!updateItem.ignore.contains(item.ignore.get(i))) {
           updateItem.ignore.add(item.ignore.get(i));
+          dirty = true;
         }
       }
       items.put(item.getName(), updateItem);
       return;
     }
     items.put(item.getName(), item);
+    dirty = true;
   }
 
+  /**
+   * Find a pair of items which collide.
+   * 
+   * Broad phase: the axis aligned bounding boxes of the items (capsules) are
+   * kept sorted along x (sweep and prune), only pairs whose boxes overlap on
+   * all three axes and which do not ignore each other reach the narrow phase.
+   * The sort order is kept between calls, items move little from one test to
+   * the next so re-sorting is close to linear.
+   * 
+   * Narrow phase: closest points of the two center segments, a collision if
+   * their distance is within the sum of the radii. As before a radius is not
+   * counted when the closest point is at the end of the segment, and items of
+   * zero length are not tested.
+   * 
+   * @return the first collision found
+   */
   public synchronized CollisionResults runTest() {
     collision = false;
-    for (CollisionItem item : items.values()) {
-      // vect1 = vector of the line between the extremity of the first item
-      // double[] vect1 = item.getVector();
-      // par1 = parametric formula of vect1
-      // double[][] par1 = item.calcPar(vect1, 1);//[x,y,z][c,t,k]
-      item.clearDone();
-      for (CollisionItem citem : items.values()) {
-        if (citem.getName().equals(item.getName())) {
-          // do not compared two time the same part
-          continue;
+    if (dirty || items.size() != index.length) {
+      rebuildIndex();
+    } else {
+      updateBounds();
+    }
+    int n = index.length;
+    sortByMinX();
+
+    pairsTested = 0;
+    double[] b = bounds;
+    for (int oi = 0; oi < n; oi++) {
+      int i = order[oi];
+      if (degenerate[i]) {
+        continue;
+      }
+      double maxX = b[i * 6 + 1];
+      for (int oj = oi + 1; oj < n; oj++) {
+        int j = order[oj];
+        if (b[j * 6] > maxX) {
+          // sorted by minX - nothing further along can overlap i
+          break;
         }
-        if (item.ignore.contains(citem.getName())) {
-          // item 2 is in the ignore list of item 1
+        if (degenerate[j]) {
           continue;
         }
-        if (citem.ignore.contains(item.getName())) {
-          // item 1 is in the ignore list of item 2
+        // y and z overlap
+        if (b[j * 6 + 2] > b[i * 6 + 3] || b[i * 6 + 2] > b[j * 6 + 3] || b[j * 6 + 4] > b[i * 6 + 5] || b[i * 6 + 4] > b[j * 6 + 5]) {
           continue;
         }
-        // need to not compare item already done;
-        if (citem.isDone(citem.getName())) {
+        if (isIgnored(i, j)) {
           continue;
         }
-        // //vect2 = vector of the line between the extremity of the second item
-        // double[] vect2 = calcVect(citem);
-        // //par2 = parametric formula of vect1;
-        // double[][] par2 = calcPar(citem, vect2, 2);
-        // //vectT = vector between the origin of the two part
-        // double[][] vectT = calcVectT(par1, par2);
-        // // vectT1/vectT2 = imposing perpendicularity with the item vector
-        // double[] vectT1 = calcPerpendicularity(vectT, vect1);
-        // double[] vectT2 = calcPerpendicularity(vectT, vect2);
-        // // resolve the formulas (vectT1[0] + vectT1[1]*t + vectT1[2]*k = 0
-        // and vectT2[0] + vectT2[1]*t + vectT2[2]*k = 0) we need
-        // to know value of t and k
-        // double[] tTemp = new double[3];
-        // tTemp[0] = vectT1[0]/(vectT1[1]*-1);
-        // tTemp[2] = vectT1[2]/(vectT1[1]*-1);
-        // double[] k = new double[3];
-        // k[0] = vectT2[0] + (tTemp[0] * vectT2[1]);
-        // k[2] = vectT2[2] + (tTemp[2] * vectT2[1]);
-        // k[0] = k[0] / (k[2] * -1);
-        Double[] tk = new Double[2];
-        // tk[0] = (vectT1[0] + (vectT1[2] * k[0])) / (vectT1[1] * -1);
-        // tk[1] = k[0];
-        // if(tk[0] < 0) tk[0] = 0;
-        // if(tk[0] > 1) tk[0] = 1;
-        // if(tk[1] < 0) tk[1] = 0;
-        // if(tk[1] > 1) tk[1] = 1;
-        //// get the equation of the line of the shortest distance between the
-        // center line of the items (Vt = (x, y, z))
-        // double[] vectTFinal = new double[3];
-        // vectTFinal[0] = vectT[0][0] + (vectT[0][1] * tk[0]) + (vectT[0][2] *
-        // tk[1]);
-        // vectTFinal[1] = vectT[1][0] + (vectT[1][1] * tk[0]) + (vectT[1][2] *
-        // tk[1]);
-        // vectTFinal[2] = vectT[2][0] + (vectT[2][1] * tk[0]) + (vectT[2][2] *
-        // tk[1]);
-        // //get the intersection point between Vt and V1;
-        // Point point1 = new Point(par1[0][0] + par1[0][1]*tk[0] + par1[0][2] *
-        // tk[1], par1[1][0] + par1[1][1]*tk[0] + par1[1][2] *
-        // tk[1], par1[2][0] + par1[2][1]*tk[0] + par1[2][2] * tk[1], 0, 0, 0);
-        // //get the intersection point between Vt and V2;
-        // Point point2 = new Point(par2[0][0] + par2[0][1]*tk[0] + par2[0][2] *
-        // tk[1], par2[1][0] + par2[1][1]*tk[0] + par2[1][2] *
-        // tk[1], par2[2][0] + par2[2][1]*tk[0] + par2[2][2] * tk[1], 0, 0, 0);
-        Point[] points = getClosestPoint(item, citem, tk, new Double[3]);
-        Point point1 = points[0];
-        Point point2 = points[1];
-        // calculate the distance between these two points
-        double d = Math.sqrt(((point2.getX() - point1.getX()) * (point2.getX() - point1.getX())) + ((point2.getY() - point1.getY()) * (point2.getY() - point1.getY()))
-            + ((point2.getZ() - point1.getZ()) * (point2.getZ() - point1.getZ())));
-        // if d < radius item 1 + radius item 2 then there is a possible
-        // collision
-        double rad1 = item.getRadius();
-        if (tk[0] <= (double) 0.0 || tk[0] >= (double) 1.0) {
-          rad1 = 0;
-        }
-        double rad2 = citem.getRadius();
-        if (tk[1] == (double) 0.0 || tk[1] == (double) 1.0) {
-          rad2 = 0;
-        }
-        item.haveDone(citem.getName());
-        if (d <= rad1 + rad2 /*
-                              * && ((tk[0] != 0 && tk[0] != 1.0) || (tk[1] != 0
-                              * && tk[1] != 1))
-                              */) {
-          // we got a potential collision
+        pairsTested++;
+        if (collide(i, j)) {
+          CollisionItem item = index[i];
+          CollisionItem citem = index[j];
+          Point point1 = new Point(closest[0], closest[1], closest[2], 0, 0, 0);
+          Point point2 = new Point(closest[3], closest[4], closest[5], 0, 0, 0);
           collision = true;
           collisionPoint[0] = point1;
           collisionPoint[1] = point2;
           collisionItems[0] = item;
           collisionItems[1] = citem;
-          collisionLocation[0] = tk[0];
-          collisionLocation[1] = tk[1];
+          collisionLocation[0] = st[0];
+          collisionLocation[1] = st[1];
           CollisionResults retval = new CollisionResults();
           retval.haveCollision = true;
           retval.collisionPoints[0] = point1;
           retval.collisionPoints[1] = point2;
           retval.collisionItems[0] = item;
           retval.collisionItems[1] = citem;
-          retval.collisionLocation[0] = tk[0];
-          retval.collisionLocation[1] = tk[1];
+          retval.collisionLocation[0] = st[0];
+          retval.collisionLocation[1] = st[1];
           return retval;
         }
       }
@@ -165,6 +155,147 @@ public class CollisionDectection {
     return new CollisionResults();
   }
 
+  // assign integer ids and build the ignore bitsets
+  private void rebuildIndex() {
+    dirty = false;
+    index = items.values().toArray(new CollisionItem[0]);
+    int n = index.length;
+    HashMap<String, Integer> ids = new HashMap<String, Integer>(n * 2);
+    for (int i = 0; i < n; i++) {
+      ids.put(index[i].getName(), i);
+    }
+    int words = (n + 63) >>> 6;
+    ignoreBits = new long[n * words];
+    ignoreWords = words;
+    for (int i = 0; i < n; i++) {
+      for (String name : index[i].ignore) {
+        Integer j = ids.get(name);
+        if (j != null) {
+          // ignoring is symmetric
+          ignoreBits[i * words + (j >>> 6)] |= 1L << (j & 63);
+          ignoreBits[j * words + (i >>> 6)] |= 1L << (i & 63);
+        }
+      }
+    }
+    bounds = new double[n * 6];
+    segments = new double[n * 6];
+    degenerate = new boolean[n];
+    order = new int[n];
+    updateBounds();
+    // initial order - a full sort, later calls re-sort incrementally
+    Integer[] sorted = new Integer[n];
+    for (int i = 0; i < n; i++) {
+      sorted[i] = i;
+    }
+    final double[] b = bounds;
+    Arrays.sort(sorted, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer o1, Integer o2) {
+        return Double.compare(b[o1 * 6], b[o2 * 6]);
+      }
+    });
+    for (int i = 0; i < n; i++) {
+      order[i] = sorted[i];
+    }
+  }
+
+  private boolean isIgnored(int i, int j) {
+    return (ignoreBits[i * ignoreWords + (j >>> 6)] & (1L << (j & 63))) != 0;
+  }
+
+  // segment and bounding box of every item
+  private void updateBounds() {
+    for (int i = 0; i < index.length; i++) {
+      CollisionItem item = index[i];
+      Point o = item.getOrigin();
+      Point e = item.getEnd();
+      double r = item.getRadius();
+      int k = i * 6;
+      segments[k] = o.getX();
+      segments[k + 1] = o.getY();
+      segments[k + 2] = o.getZ();
+      segments[k + 3] = e.getX() - o.getX();
+      segments[k + 4] = e.getY() - o.getY();
+      segments[k + 5] = e.getZ() - o.getZ();
+      degenerate[i] = segments[k + 3] == 0 && segments[k + 4] == 0 && segments[k + 5] == 0;
+      bounds[k] = Math.min(o.getX(), e.getX()) - r;
+      bounds[k + 1] = Math.max(o.getX(), e.getX()) + r;
+      bounds[k + 2] = Math.min(o.getY(), e.getY()) - r;
+      bounds[k + 3] = Math.max(o.getY(), e.getY()) + r;
+      bounds[k + 4] = Math.min(o.getZ(), e.getZ()) - r;
+      bounds[k + 5] = Math.max(o.getZ(), e.getZ()) + r;
+    }
+  }
+
+  // insertion sort of order by minX - near linear when almost sorted
+  private void sortByMinX() {
+    double[] b = bounds;
+    for (int i = 1; i < order.length; i++) {
+      int id = order[i];
+      double key = b[id * 6];
+      int j = i - 1;
+      while (j >= 0 && b[order[j] * 6] > key) {
+        order[j + 1] = order[j];
+        j--;
+      }
+      order[j + 1] = id;
+    }
+  }
+
+  /**
+   * narrow phase for items i and j - closest points of the two segments
+   * (fills closest and st)
+   * 
+   * @return true if the capsules collide
+   */
+  private boolean collide(int i, int j) {
+    double[] seg = segments;
+    int a = i * 6;
+    int c = j * 6;
+    double d1x = seg[a + 3], d1y = seg[a + 4], d1z = seg[a + 5];
+    double d2x = seg[c + 3], d2y = seg[c + 4], d2z = seg[c + 5];
+    double rx = seg[a] - seg[c], ry = seg[a + 1] - seg[c + 1], rz = seg[a + 2] - seg[c + 2];
+    double aa = d1x * d1x + d1y * d1y + d1z * d1z;
+    double ee = d2x * d2x + d2y * d2y + d2z * d2z;
+    double f = d2x * rx + d2y * ry + d2z * rz;
+    double cc = d1x * rx + d1y * ry + d1z * rz;
+    double bb = d1x * d2x + d1y * d2y + d1z * d2z;
+    double denom = aa * ee - bb * bb;
+    double s = (denom != 0) ? clamp01((bb * f - cc * ee) / denom) : 0;
+    double t = (bb * s + f) / ee;
+    if (t < 0) {
+      t = 0;
+      s = clamp01(-cc / aa);
+    } else if (t > 1) {
+      t = 1;
+      s = clamp01((bb - cc) / aa);
+    }
+    closest[0] = seg[a] + d1x * s;
+    closest[1] = seg[a + 1] + d1y * s;
+    closest[2] = seg[a + 2] + d1z * s;
+    closest[3] = seg[c] + d2x * t;
+    closest[4] = seg[c + 1] + d2y * t;
+    closest[5] = seg[c + 2] + d2z * t;
+    double dx = closest[3] - closest[0], dy = closest[4] - closest[1], dz = closest[5] - closest[2];
+    double d = Math.sqrt(dx * dx + dy * dy + dz * dz);
+    double rad1 = (s <= 0 || s >= 1) ? 0 : index[i].getRadius();
+    double rad2 = (t <= 0 || t >= 1) ? 0 : index[j].getRadius();
+    st[0] = s;
+    st[1] = t;
+    return d <= rad1 + rad2;
+  }
+
+  private static double clamp01(double v) {
+    return (v < 0) ? 0 : (v > 1) ? 1 : v;
+  }
+
+  /**
+   * @return number of pairs which reached the narrow phase in the last test
+   */
+  public int getPairsTested() {
+    return pairsTested;
+  }
+
   public double[] calcPerpendicularity(double[][] vectT, double[] vect) {
     double[] vectP = new double[3];
     vectP[0] = vectT[0][0] * vect[0] + vectT[1][0] * vect[1] + vectT[2][0] * vect[2];
@@ -191,6 +322,7 @@ public class CollisionDectection {
   public void clearItem() {
     // TODO Auto-generated method stub
     items.clear();
+    dirty = true;
   }
 
   public Point[] getCollisionPoint() {
@@ -200,12 +332,14 @@ public class CollisionDectection {
   public void addIgnore(String object1, String object2) {
     if (items.containsKey(object1)) {
       items.get(object1).addIgnore(object2);
+      dirty = true;
     }
   }
 
   public void removeIgnore(String object1, String object2) {
     if (items.containsKey(object1)) {
       items.get(object1).removeIgnore(object2);
+      dirty = true;
     }
   }
 
@@ -284,6 +418,7 @@ public class CollisionDectection {
     for (int i = 0; i < toRemove.size(); i++) {
       items.remove(toRemove.get(i));
     }
+    dirty = true;
 
   }
 
@@ -294,6 +429,7 @@ public class CollisionDectection {
   public void removeObject(String name) {
     if (items.containsKey(name)) {
       items.remove(name);
+      dirty = true;
     }
 
   }
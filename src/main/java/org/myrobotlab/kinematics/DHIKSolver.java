@@ -0,0 +1,591 @@
+package org.myrobotlab.kinematics;
+
+import java.util.List;
+import java.util.Random;
+
+import org.myrobotlab.logging.LoggerFactory;
+import org.slf4j.Logger;
+
+/**
+ * DHIKSolver - position only inverse kinematics for a DHRobotArm.
+ *
+ * The jacobian is computed analytically from the D-H parameters in a single
+ * forward pass over the links: for a revolute joint the column is the joint
+ * axis crossed with the vector from the joint to the palm. The joint update is
+ * a damped least squares step dTheta = J' (J J' + lambda^2 I)^-1 dP, which
+ * stays well behaved near singular configurations where the pseudo inverse
+ * blows up.
+ *
+ * Joint limits can trap the solver in a local minimum, so when the error
+ * stops improving the solve is restarted from a random configuration within
+ * the limits (at most maxRestarts times) and the best configuration found is
+ * kept. Restarts are drawn around the joint state the solve started from, the
+ * first ones close to it, so a nearby solution is found before one on the far
+ * side of the joint range and the arm does not flip between poses.
+ *
+ * All work is done in primitive arrays that are allocated once for the number
+ * of links, so a solve does not create any garbage. A solver is not thread
+ * safe, use one per arm.
+ */
+public class DHIKSolver {
+
+  transient public final static Logger log = LoggerFactory.getLogger(DHIKSolver.class);
+
+  private int maxIterations = 1000;
+  // we're in millimeters..
+  private double errorThreshold = 2.0;
+  // damping factor in mm
+  private double damping = 20.0;
+  // largest distance towards the goal attempted in one iteration
+  private double maxStep = 50.0;
+  // restarts from a random configuration when stuck in a local minimum
+  private int maxRestarts = 8;
+  // iterations without a 1% improvement before the solve counts as stuck
+  private int stallIterations = 20;
+
+  private int numLinks = -1;
+  private DHLinkType[] types;
+  private double[] d;
+  private double[] r;
+  private double[] theta;
+  private double[] alpha;
+  private double[] min;
+  private double[] max;
+
+  // 3x4 homogenous transform (the last row is always 0 0 0 1)
+  private final double[] frame = new double[12];
+  // per link rotation axis and a point on it in the base frame
+  private double[] axes;
+  private double[] origins;
+  // 3 x numLinks row major
+  private double[] jacobian;
+  private double[] dTheta;
+  private boolean[] locked;
+  private final double[] palm = new double[3];
+  private final double[] error = new double[3];
+  private final double[] a = new double[9];
+  private final double[] y = new double[3];
+  private double[] best;
+  // joint values the solve started from
+  private double[] startJoints;
+  private final Random random = new Random(0);
+
+  // stats
+  private int iterations;
+  private double lastError;
+  private long solves;
+  private long failures;
+  private long restarts;
+  private long totalIterations;
+  private long totalNanos;
+  private boolean seeded;
+
+  /**
+   * move the arm so the palm is at goal
+   *
+   * @param arm
+   *          the arm, its current joint angles are the starting point
+   * @param goal
+   *          x,y,z of the goal - orientation is ignored
+   * @return true if the palm is within errorThreshold of the goal
+   */
+  public boolean solve(DHRobotArm arm, Point goal) {
+    return solve(arm, goal, null);
+  }
+
+  /**
+   * move the arm so the palm is at goal, starting from seed if the palm is
+   * closer to the goal there than it is in the current pose
+   *
+   * @param arm
+   * @param goal
+   * @param seed
+   *          joint values (theta, or alpha for REVOLUTE_ALPHA links) for each
+   *          link, may be null
+   * @return true if the palm is within errorThreshold of the goal
+   */
+  public boolean solve(DHRobotArm arm, Point goal, double[] seed) {
+    long start = System.nanoTime();
+    load(arm.getLinks());
+    save(startJoints);
+    seeded = false;
+    if (seed != null) {
+      saveBest();
+      double current = distance(goal);
+      setJoints(seed);
+      if (distance(goal) < current) {
+        seeded = true;
+      } else {
+        restoreBest();
+      }
+    }
+    boolean solved = false;
+    iterations = 0;
+    int restart = 0;
+    int sinceImproved = 0;
+    double attemptBest = Double.MAX_VALUE;
+    double bestError = Double.MAX_VALUE;
+    while (true) {
+      forward();
+      error[0] = goal.getX() - palm[0];
+      error[1] = goal.getY() - palm[1];
+      error[2] = goal.getZ() - palm[2];
+      lastError = Math.sqrt(error[0] * error[0] + error[1] * error[1] + error[2] * error[2]);
+      if (lastError < bestError) {
+        bestError = lastError;
+        saveBest();
+      }
+      if (lastError < errorThreshold) {
+        solved = true;
+        break;
+      }
+      if (iterations >= maxIterations) {
+        break;
+      }
+      iterations++;
+      if (lastError < attemptBest * 0.99) {
+        attemptBest = lastError;
+        sinceImproved = 0;
+      } else {
+        sinceImproved++;
+      }
+      if (lastError > maxStep) {
+        double scale = maxStep / lastError;
+        error[0] *= scale;
+        error[1] *= scale;
+        error[2] *= scale;
+      }
+      if (!step() || sinceImproved > stallIterations) {
+        if (restart >= maxRestarts) {
+          break;
+        }
+        restart++;
+        restarts++;
+        randomize((double) restart / maxRestarts);
+        attemptBest = Double.MAX_VALUE;
+        sinceImproved = 0;
+      }
+    }
+    if (!solved) {
+      restoreBest();
+      lastError = bestError;
+    }
+    store(arm.getLinks());
+
+    solves++;
+    totalIterations += iterations;
+    totalNanos += System.nanoTime() - start;
+    if (solved) {
+      log.debug("Final Position ({}, {}, {}) Number of Iterations {}", palm[0], palm[1], palm[2], iterations);
+    } else {
+      failures++;
+      log.info("Attempted to iterate, didn't make it. Goal: {} Distance: {} Iterations {}", goal, lastError, iterations);
+    }
+    return solved;
+  }
+
+  /**
+   * @param arm
+   * @return the 3 x numLinks jacobian of the palm position for the current
+   *         joint angles
+   */
+  public Matrix getJacobian(DHRobotArm arm) {
+    load(arm.getLinks());
+    forward();
+    Matrix m = new Matrix(3, numLinks);
+    for (int row = 0; row < 3; row++) {
+      for (int j = 0; j < numLinks; j++) {
+        m.elements[row][j] = jacobian[row * numLinks + j];
+      }
+    }
+    return m;
+  }
+
+  /**
+   * load the D-H parameters of the arm for palmPosition
+   *
+   * @param arm
+   */
+  void prepare(DHRobotArm arm) {
+    load(arm.getLinks());
+  }
+
+  /**
+   * forward kinematics for the prepared arm with the given joint values, the
+   * arm itself is not changed
+   *
+   * @param joints
+   *          joint values (theta, or alpha for REVOLUTE_ALPHA links)
+   * @param out
+   *          x,y,z of the palm
+   */
+  void palmPosition(double[] joints, double[] out) {
+    setJoints(joints);
+    forward();
+    out[0] = palm[0];
+    out[1] = palm[1];
+    out[2] = palm[2];
+  }
+
+  /**
+   * @param arm
+   * @param out
+   *          the current joint value of each link (theta, or alpha for
+   *          REVOLUTE_ALPHA links)
+   */
+  static void getJoints(DHRobotArm arm, double[] out) {
+    List<DHLink> links = arm.getLinks();
+    for (int i = 0; i < out.length; i++) {
+      DHLink link = links.get(i);
+      out[i] = (DHLinkType.REVOLUTE_ALPHA.equals(link.getType())) ? link.getAlpha() : link.getTheta();
+    }
+  }
+
+  private void setJoints(double[] joints) {
+    for (int i = 0; i < numLinks; i++) {
+      if (DHLinkType.REVOLUTE.equals(types[i])) {
+        theta[i] = joints[i];
+      } else if (DHLinkType.REVOLUTE_ALPHA.equals(types[i])) {
+        alpha[i] = joints[i];
+      }
+    }
+  }
+
+  private double distance(Point goal) {
+    forward();
+    double dx = goal.getX() - palm[0];
+    double dy = goal.getY() - palm[1];
+    double dz = goal.getZ() - palm[2];
+    return Math.sqrt(dx * dx + dy * dy + dz * dz);
+  }
+
+  // copy the D-H parameters of the links into the workspace
+  private void load(List<DHLink> links) {
+    int n = links.size();
+    if (n != numLinks) {
+      numLinks = n;
+      types = new DHLinkType[n];
+      d = new double[n];
+      r = new double[n];
+      theta = new double[n];
+      alpha = new double[n];
+      min = new double[n];
+      max = new double[n];
+      axes = new double[3 * n];
+      origins = new double[3 * n];
+      jacobian = new double[3 * n];
+      dTheta = new double[n];
+      best = new double[n];
+      startJoints = new double[n];
+      locked = new boolean[n];
+    }
+    for (int i = 0; i < n; i++) {
+      DHLink link = links.get(i);
+      types[i] = link.getType();
+      d[i] = link.getD();
+      r[i] = link.getA();
+      theta[i] = link.getTheta();
+      alpha[i] = link.getAlpha();
+      min[i] = link.getMin();
+      max[i] = link.getMax();
+    }
+  }
+
+  private void saveBest() {
+    save(best);
+  }
+
+  private void save(double[] joints) {
+    for (int i = 0; i < numLinks; i++) {
+      joints[i] = (DHLinkType.REVOLUTE_ALPHA.equals(types[i])) ? alpha[i] : theta[i];
+    }
+  }
+
+  private void restoreBest() {
+    setJoints(best);
+  }
+
+  // random joint angles within the limits, at most spread times the range of
+  // a joint away from where the solve started
+  private void randomize(double spread) {
+    for (int i = 0; i < numLinks; i++) {
+      double value = startJoints[i] + (random.nextDouble() * 2 - 1) * spread * (max[i] - min[i]);
+      value = Math.max(min[i], Math.min(max[i], value));
+      if (DHLinkType.REVOLUTE.equals(types[i])) {
+        theta[i] = value;
+      } else if (DHLinkType.REVOLUTE_ALPHA.equals(types[i])) {
+        alpha[i] = value;
+      }
+    }
+  }
+
+  // write the solved joint angles back to the links
+  private void store(List<DHLink> links) {
+    for (int i = 0; i < numLinks; i++) {
+      DHLink link = links.get(i);
+      if (DHLinkType.REVOLUTE.equals(types[i])) {
+        link.setTheta(theta[i]);
+      } else if (DHLinkType.REVOLUTE_ALPHA.equals(types[i])) {
+        link.setAlpha(alpha[i]);
+      }
+    }
+  }
+
+  /**
+   * forward kinematics for the current joint angles - fills in the palm
+   * position, the joint axes and the jacobian
+   */
+  private void forward() {
+    double[] f = frame;
+    f[0] = 1;
+    f[1] = 0;
+    f[2] = 0;
+    f[3] = 0;
+    f[4] = 0;
+    f[5] = 1;
+    f[6] = 0;
+    f[7] = 0;
+    f[8] = 0;
+    f[9] = 0;
+    f[10] = 1;
+    f[11] = 0;
+    for (int i = 0; i < numLinks; i++) {
+      int k = 3 * i;
+      if (DHLinkType.REVOLUTE.equals(types[i])) {
+        // theta rotates about the z axis of the previous frame
+        axes[k] = f[2];
+        axes[k + 1] = f[6];
+        axes[k + 2] = f[10];
+        origins[k] = f[3];
+        origins[k + 1] = f[7];
+        origins[k + 2] = f[11];
+      }
+      double ct = Math.cos(theta[i]);
+      double st = Math.sin(theta[i]);
+      double ca = Math.cos(alpha[i]);
+      double sa = Math.sin(alpha[i]);
+      // same matrix as DHLink.resolveMatrix
+      double a00 = ct, a01 = -ca * st, a02 = sa * st, a03 = r[i] * ct;
+      double a10 = st, a11 = ca * ct, a12 = -sa * ct, a13 = r[i] * st;
+      double a21 = sa, a22 = ca, a23 = d[i];
+      for (int row = 0; row < 12; row += 4) {
+        double f0 = f[row], f1 = f[row + 1], f2 = f[row + 2];
+        f[row] = f0 * a00 + f1 * a10;
+        f[row + 1] = f0 * a01 + f1 * a11 + f2 * a21;
+        f[row + 2] = f0 * a02 + f1 * a12 + f2 * a22;
+        f[row + 3] += f0 * a03 + f1 * a13 + f2 * a23;
+      }
+      if (DHLinkType.REVOLUTE_ALPHA.equals(types[i])) {
+        // alpha rotates about the new x axis
+        axes[k] = f[0];
+        axes[k + 1] = f[4];
+        axes[k + 2] = f[8];
+        origins[k] = f[3];
+        origins[k + 1] = f[7];
+        origins[k + 2] = f[11];
+      }
+    }
+    palm[0] = f[3];
+    palm[1] = f[7];
+    palm[2] = f[11];
+
+    int n = numLinks;
+    for (int j = 0; j < n; j++) {
+      int k = 3 * j;
+      if (DHLinkType.PRISMATIC.equals(types[j])) {
+        // the solver only moves revolute joints
+        jacobian[j] = 0;
+        jacobian[n + j] = 0;
+        jacobian[2 * n + j] = 0;
+        continue;
+      }
+      double px = palm[0] - origins[k];
+      double py = palm[1] - origins[k + 1];
+      double pz = palm[2] - origins[k + 2];
+      double zx = axes[k], zy = axes[k + 1], zz = axes[k + 2];
+      jacobian[j] = zy * pz - zz * py;
+      jacobian[n + j] = zz * px - zx * pz;
+      jacobian[2 * n + j] = zx * py - zy * px;
+    }
+  }
+
+  /**
+   * one damped least squares step towards error. A joint which sits on a
+   * limit and is pushed further out is locked for this step and the step is
+   * solved again without it, so the other joints take up the motion instead of
+   * the solve stalling against the limit.
+   *
+   * @return false if no joint could move
+   */
+  private boolean step() {
+    int n = numLinks;
+    for (int i = 0; i < n; i++) {
+      locked[i] = DHLinkType.PRISMATIC.equals(types[i]);
+    }
+    for (int pass = 0; pass <= n; pass++) {
+      if (!solveStep()) {
+        return false;
+      }
+      boolean relock = false;
+      for (int i = 0; i < n; i++) {
+        if (locked[i]) {
+          continue;
+        }
+        double value = (DHLinkType.REVOLUTE_ALPHA.equals(types[i])) ? alpha[i] : theta[i];
+        if ((value <= min[i] && dTheta[i] < 0) || (value >= max[i] && dTheta[i] > 0)) {
+          locked[i] = true;
+          relock = true;
+        }
+      }
+      if (!relock) {
+        break;
+      }
+    }
+
+    // apply, clamped to the joint limits
+    boolean moved = false;
+    for (int i = 0; i < n; i++) {
+      if (locked[i]) {
+        continue;
+      }
+      if (DHLinkType.REVOLUTE.equals(types[i])) {
+        double next = clamp(theta[i] + dTheta[i], min[i], max[i]);
+        moved |= next != theta[i];
+        theta[i] = next;
+      } else if (DHLinkType.REVOLUTE_ALPHA.equals(types[i])) {
+        double next = clamp(alpha[i] + dTheta[i], min[i], max[i]);
+        moved |= next != alpha[i];
+        alpha[i] = next;
+      }
+    }
+    return moved;
+  }
+
+  // dTheta = J' (J J' + lambda^2 I)^-1 error over the unlocked joints
+  private boolean solveStep() {
+    int n = numLinks;
+    double[] j = jacobian;
+    // a = J J' + lambda^2 I (symmetric)
+    for (int row = 0; row < 3; row++) {
+      for (int col = row; col < 3; col++) {
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+          if (!locked[i]) {
+            sum += j[row * n + i] * j[col * n + i];
+          }
+        }
+        a[row * 3 + col] = sum;
+        a[col * 3 + row] = sum;
+      }
+    }
+    double lambda2 = damping * damping;
+    a[0] += lambda2;
+    a[4] += lambda2;
+    a[8] += lambda2;
+
+    // solve a y = error (3x3 - cramer's rule)
+    double c00 = a[4] * a[8] - a[5] * a[7];
+    double c01 = a[5] * a[6] - a[3] * a[8];
+    double c02 = a[3] * a[7] - a[4] * a[6];
+    double det = a[0] * c00 + a[1] * c01 + a[2] * c02;
+    if (det == 0 || Double.isNaN(det)) {
+      return false;
+    }
+    double inv = 1.0 / det;
+    double e0 = error[0], e1 = error[1], e2 = error[2];
+    y[0] = (c00 * e0 + (a[2] * a[7] - a[1] * a[8]) * e1 + (a[1] * a[5] - a[2] * a[4]) * e2) * inv;
+    y[1] = (c01 * e0 + (a[0] * a[8] - a[2] * a[6]) * e1 + (a[2] * a[3] - a[0] * a[5]) * e2) * inv;
+    y[2] = (c02 * e0 + (a[1] * a[6] - a[0] * a[7]) * e1 + (a[0] * a[4] - a[1] * a[3]) * e2) * inv;
+
+    for (int i = 0; i < n; i++) {
+      dTheta[i] = (locked[i]) ? 0 : j[i] * y[0] + j[n + i] * y[1] + j[2 * n + i] * y[2];
+    }
+    return true;
+  }
+
+  private static double clamp(double value, double min, double max) {
+    return (value < min) ? min : (value > max) ? max : value;
+  }
+
+  public int getMaxIterations() {
+    return maxIterations;
+  }
+
+  public void setMaxIterations(int maxIterations) {
+    this.maxIterations = maxIterations;
+  }
+
+  public double getErrorThreshold() {
+    return errorThreshold;
+  }
+
+  public void setErrorThreshold(double errorThreshold) {
+    this.errorThreshold = errorThreshold;
+  }
+
+  public double getDamping() {
+    return damping;
+  }
+
+  public void setDamping(double damping) {
+    this.damping = damping;
+  }
+
+  public double getMaxStep() {
+    return maxStep;
+  }
+
+  public void setMaxStep(double maxStep) {
+    this.maxStep = maxStep;
+  }
+
+  public int getMaxRestarts() {
+    return maxRestarts;
+  }
+
+  public void setMaxRestarts(int maxRestarts) {
+    this.maxRestarts = maxRestarts;
+  }
+
+  /**
+   * @return number of iterations of the last solve
+   */
+  public int getIterations() {
+    return iterations;
+  }
+
+  /**
+   * @return true if the last solve started from the seed it was given
+   */
+  public boolean isSeeded() {
+    return seeded;
+  }
+
+  /**
+   * @return distance to the goal at the end of the last solve
+   */
+  public double getLastError() {
+    return lastError;
+  }
+
+  public long getSolves() {
+    return solves;
+  }
+
+  public long getFailures() {
+    return failures;
+  }
+
+  public long getRestarts() {
+    return restarts;
+  }
+
+  public double getAverageIterations() {
+    return (solves == 0) ? 0 : (double) totalIterations / solves;
+  }
+
+  public double getAverageSolveMs() {
+    return (solves == 0) ? 0 : totalNanos / 1000000.0 / solves;
+  }
+
+}
@@ -22,6 +22,10 @@ public class DHRobotArm implements Serializable {
   // for debugging .. hmmm
   public transient InverseKinematics3D ik3D = null;
 
+  private transient DHIKSolver solver = null;
+
+  private transient ReachabilityMap reachabilityMap = null;
+
   public DHRobotArm() {
     super();
     links = new ArrayList<DHLink>();
@@ -230,7 +234,52 @@ public class DHRobotArm implements Serializable {
     }
   }
 
+  /**
+   * @return the analytic jacobian solver used by moveToGoal
+   */
+  public DHIKSolver getSolver() {
+    if (solver == null) {
+      solver = new DHIKSolver();
+    }
+    return solver;
+  }
+
+  /**
+   * @return the 3 x numLinks jacobian of the palm position computed
+   *         analytically from the D-H parameters
+   */
+  public Matrix getJacobian() {
+    return getSolver().getJacobian(this);
+  }
+
+  public ReachabilityMap getReachabilityMap() {
+    return reachabilityMap;
+  }
+
+  /**
+   * @param reachabilityMap
+   *          workspace index used by moveToGoal to reject unreachable goals
+   *          and warm start the solver, null to solve from the current pose
+   */
+  public void setReachabilityMap(ReachabilityMap reachabilityMap) {
+    this.reachabilityMap = reachabilityMap;
+  }
+
   public boolean moveToGoal(Point goal) {
+    if (reachabilityMap != null) {
+      return reachabilityMap.moveToGoal(this, goal);
+    }
+    return getSolver().solve(this, goal);
+  }
+
+  /**
+   * The original solver - finite difference jacobian and pseudo inverse.
+   * Slower than moveToGoal, kept for comparison.
+   * 
+   * @param goal
+   * @return true if the goal was reached
+   */
+  public boolean moveToGoalNumeric(Point goal) {
     // we know where we are.. we know where we want to go.
     int numSteps = 0;
     double iterStep = 0.05;
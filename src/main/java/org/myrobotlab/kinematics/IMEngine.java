@@ -26,7 +26,7 @@ public class IMEngine extends Thread implements Genetic {
   public final static Logger log = LoggerFactory.getLogger(IMEngine.class);
 
   DHRobotArm arm, computeArm;
-  public Point target = null;
+  public volatile Point target = null;
   private double maxDistance = 5.0;
   private Matrix inputMatrix = null;
   private transient IntegratedMovement service = null;
@@ -38,6 +38,27 @@ public class IMEngine extends Thread implements Genetic {
   private long lastTimeUpdate;
   private int Ai = IntegratedMovement.Ai.AVOID_COLLISION.value;
 
+  // the engine sleeps until there is something to do - a target, an encoder
+  // update or a change of settings - and ticks at most tickRate times a
+  // second. Motion nothing wakes it up for, like a collision item moved by
+  // another service, is still checked every idleRecheckMs
+  private volatile boolean running = false;
+  private final Object wakeup = new Object();
+  private boolean pending = true;
+  private double tickRate = 20.0;
+  private long idleRecheckMs = 500;
+  private long lastTickTs = 0;
+
+  // tick stats
+  private volatile long ticks = 0;
+  private volatile long lastTickNanos = 0;
+  private volatile long maxTickNanos = 0;
+  private long totalTickNanos = 0;
+  private long startTs = 0;
+  private long windowTs = 0;
+  private long windowTicks = 0;
+  private volatile double measuredTickRate = 0;
+
   public class MoveInfo {
     Point offset = null;
     CollisionItem targetItem = null;
@@ -77,43 +98,132 @@ public class IMEngine extends Thread implements Genetic {
     arm = dhArm;
   }
 
+  /**
+   * the engine is running from here, so a stopEngine called before the thread
+   * is scheduled is not undone by run
+   */
+  @Override
+  public synchronized void start() {
+    running = true;
+    super.start();
+  }
+
   public void run() {
-    while (true) {
-      Point currentPosition = arm.getPalmPosition(lastDHLink);
-      if (AiActive(IntegratedMovement.Ai.AVOID_COLLISION)) {
-        Point avoidPoint = checkCollision(arm, service.collisionItems);
-        if (avoidPoint != null) {
-          Point previousTarget = target;
-          target = avoidPoint;
-          move();
-          cogRetry = 0;
-          target = previousTarget;
+    startTs = System.currentTimeMillis();
+    windowTs = startTs;
+    while (running) {
+      try {
+        if (!awaitTick()) {
+          break;
         }
+      } catch (InterruptedException e) {
+        break;
+      }
+      long start = System.nanoTime();
+      try {
+        tick();
+      } catch (Exception e) {
+        log.error("{} tick failed", getName(), e);
       }
-      if (target == null && !isWaitingForServo() && AiActive(IntegratedMovement.Ai.KEEP_BALANCE)) {
-        target = checkCoG();
-        if (target != null) {
-          // move();
-          target = null;
+      recordTick(System.nanoTime() - start);
+    }
+    running = false;
+    log.info("{} engine stopped after {} ticks", getName(), ticks);
+  }
+
+  /**
+   * wait until a tick is due - when a target is set or the engine has been
+   * woken up it ticks at tickRate, otherwise every idleRecheckMs
+   * 
+   * @return false if the engine was stopped
+   * @throws InterruptedException
+   */
+  private boolean awaitTick() throws InterruptedException {
+    synchronized (wakeup) {
+      while (running) {
+        long period = (pending || target != null) ? getTickPeriodMs() : Math.max(idleRecheckMs, getTickPeriodMs());
+        long delay = lastTickTs + period - System.currentTimeMillis();
+        if (delay <= 0) {
+          pending = false;
+          lastTickTs = System.currentTimeMillis();
+          return true;
         }
+        wakeup.wait(delay);
       }
-      if (target != null && currentPosition
-          .distanceTo(target) > maxDistance /** && !isWaitingForServo() **/
-      ) {
-        log.info("distance to target {}", currentPosition.distanceTo(target));
-        log.info(currentPosition.toString());
-        move(lastDHLink);
+      return false;
+    }
+  }
+
+  /**
+   * schedule a tick - called when something the engine reacts to changed
+   */
+  public void wake() {
+    synchronized (wakeup) {
+      pending = true;
+      wakeup.notifyAll();
+    }
+  }
+
+  public void stopEngine() {
+    running = false;
+    wake();
+  }
+
+  public boolean isRunning() {
+    return running;
+  }
+
+  private void recordTick(long nanos) {
+    ticks++;
+    lastTickNanos = nanos;
+    totalTickNanos += nanos;
+    if (nanos > maxTickNanos) {
+      maxTickNanos = nanos;
+    }
+    windowTicks++;
+    long now = System.currentTimeMillis();
+    if (now - windowTs >= 1000) {
+      measuredTickRate = windowTicks * 1000.0 / (now - windowTs);
+      windowTs = now;
+      windowTicks = 0;
+    }
+  }
+
+  private void tick() {
+    Point currentPosition = arm.getPalmPosition(lastDHLink);
+    if (AiActive(IntegratedMovement.Ai.AVOID_COLLISION)) {
+      Point avoidPoint = checkCollision(arm, service.collisionItems);
+      if (avoidPoint != null) {
+        Point previousTarget = target;
+        target = avoidPoint;
+        move();
         cogRetry = 0;
-        continue;
+        target = previousTarget;
       }
-      if (target != null && currentPosition.distanceTo(target) < maxDistance && !AiActive(IntegratedMovement.Ai.HOLD_POSITION) && !isWaitingForServo()) {
-        Point cog = service.cog.computeCoG(null);
-        if (AiActive(IntegratedMovement.Ai.KEEP_BALANCE) && cog.distanceTo(service.cog.getCoGTarget()) > service.cog.getMaxDistanceToCog()) {
+    }
+    if (target == null && !isWaitingForServo() && AiActive(IntegratedMovement.Ai.KEEP_BALANCE)) {
+      target = checkCoG();
+      if (target != null) {
+        // move();
+        target = null;
+      }
+    }
+    if (target != null && currentPosition
+        .distanceTo(target) > maxDistance /** && !isWaitingForServo() **/
+    ) {
+      log.info("distance to target {}", currentPosition.distanceTo(target));
+      log.info(currentPosition.toString());
+      move(lastDHLink);
+      cogRetry = 0;
+      return;
+    }
+    if (target != null && currentPosition.distanceTo(target) < maxDistance && !AiActive(IntegratedMovement.Ai.HOLD_POSITION) && !isWaitingForServo()) {
+      Point cog = service.cog.computeCoG(null);
+      if (AiActive(IntegratedMovement.Ai.KEEP_BALANCE) && cog.distanceTo(service.cog.getCoGTarget()) > service.cog.getMaxDistanceToCog()) {
 
-        } else {
-          target = null;
-          moveInfo = null;
-        }
+      } else {
+        target = null;
+        moveInfo = null;
       }
     }
   }
@@ -533,10 +643,91 @@ public class IMEngine extends Thread implements Genetic {
   }
 
   public void moveTo(Point point, String lastDHLink) {
-    target = point;
     this.lastDHLink = lastDHLink;
     oldTarget = arm.getPalmPosition(lastDHLink);
     tryCount = 0;
+    target = point;
+    wake();
+  }
+
+  /**
+   * @return maximum number of control ticks per second
+   */
+  public double getTickRate() {
+    return tickRate;
+  }
+
+  /**
+   * @param tickRate
+   *          maximum number of control ticks per second while the engine has
+   *          a target
+   */
+  public void setTickRate(double tickRate) {
+    if (tickRate <= 0) {
+      log.error("tick rate must be > 0");
+      return;
+    }
+    this.tickRate = tickRate;
+    wake();
+  }
+
+  private long getTickPeriodMs() {
+    return (long) (1000.0 / tickRate);
+  }
+
+  public long getIdleRecheckMs() {
+    return idleRecheckMs;
+  }
+
+  /**
+   * @param idleRecheckMs
+   *          longest time the engine goes without a tick while it has no
+   *          target and nothing woke it up
+   */
+  public void setIdleRecheckMs(long idleRecheckMs) {
+    if (idleRecheckMs <= 0) {
+      log.error("idle recheck must be > 0 ms");
+      return;
+    }
+    this.idleRecheckMs = idleRecheckMs;
+    wake();
+  }
+
+  public long getTicks() {
+    return ticks;
+  }
+
+  /**
+   * @return ticks per second over the last second the engine was ticking
+   */
+  public double getMeasuredTickRate() {
+    if (System.currentTimeMillis() - windowTs > 2000) {
+      // idle
+      return 0;
+    }
+    return measuredTickRate;
+  }
+
+  public double getLastTickMs() {
+    return lastTickNanos / 1000000.0;
+  }
+
+  public double getAverageTickMs() {
+    long t = ticks;
+    return (t == 0) ? 0 : totalTickNanos / 1000000.0 / t;
+  }
+
+  public double getMaxTickMs() {
+    return maxTickNanos / 1000000.0;
+  }
+
+  /**
+   * @return fraction of the time since the engine started spent computing
+   *         ticks - roughly the share of a core it uses
+   */
+  public double getLoad() {
+    long elapsed = System.currentTimeMillis() - startTs;
+    return (startTs == 0 || elapsed == 0) ? 0 : totalTickNanos / 1000000.0 / elapsed;
   }
 
   /**
@@ -589,12 +780,12 @@ public class IMEngine extends Thread implements Genetic {
         l.setCurrentPos(data.pos);
       }
     }
-
+    wake();
   }
 
   public void holdTarget(boolean holdEnabled) {
     this.holdTargetEnabled = holdEnabled;
-
+    wake();
   }
 
   @Override
@@ -742,6 +933,7 @@ public class IMEngine extends Thread implements Genetic {
       return;
     }
     target = moveToObject();
+    wake();
     service.getJmeApp().addPoint(target);
   }
 
@@ -869,12 +1061,14 @@ public class IMEngine extends Thread implements Genetic {
 
   public void setAi(IntegratedMovement.Ai ai) {
     this.Ai |= ai.value;
+    wake();
   }
 
   public void removeAi(IntegratedMovement.Ai ai) {
     if ((Ai & ai.value) > 0) {
       Ai -= ai.value;
     }
+    wake();
   }
 
 }
@@ -4,7 +4,10 @@
 package org.myrobotlab.kinematics;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
+import java.util.stream.IntStream;
 
 import org.myrobotlab.logging.LoggerFactory;
 import org.myrobotlab.math.MathUtils;
@@ -15,7 +18,12 @@ import org.slf4j.Logger;
 /**
  * 
  * This class register the 3d environement detected by the kinect sensor
- * 
+ *
+ * The space around the kinect is kept in a VoxelGrid with a voxel size of
+ * skip. Every sampled depth pixel casts a ray: the voxels it passes through are
+ * EMPTY and the voxel where it hits a surface is FILL. Depth rows are cast in
+ * parallel, then the filled voxels are grouped into objects.
+ *
  * @author Christian
  *
  */
@@ -39,240 +47,162 @@ public class Map3D {
   public int fartestDistance = 1000;
 
   public int skip = 10;
-  HashMap<Integer, HashMap<Integer, HashMap<Integer, Map3DPoint>>> coordValue = new HashMap<Integer, HashMap<Integer, HashMap<Integer, Map3DPoint>>>();
   private Point kinectPosition;
-  // ArrayList<Map3DPoint> cloudMap = new ArrayList<Map3DPoint>();
-  HashMap<Integer[], Map3DPoint> cloudMap = new HashMap<Integer[], Map3DPoint>();
   ArrayList<HashMap<Integer[], Map3DPoint>> cloudMapGroup = new ArrayList<HashMap<Integer[], Map3DPoint>>();
 
   private int distanceBetweenPoints = 4 * skip;
 
+  transient private VoxelGrid grid;
+  // skip, fartestDistance and kinect position the grid was built for
+  private double[] gridKey;
+  // kinect to world transform for the current frame (3 rows of 4)
+  private final double[] transform = new double[12];
+  // world position of the surface hit by each ray, NaN if it hit nothing
+  private float[] hits;
+
+  private int raysCast = 0;
+  private double lastProcessMs = 0;
+
   public Map3D() {
 
   }
 
   public void processDepthMap(OpenNiData data) {
-    cloudMap.clear();
-    PVector[] depthData = data.depthMapRW;
-    for (int x = skip; x < widthImage - skip; x += skip) {
-      for (int y = skip; y < heighImage - skip; y += skip) {
-        int index = x + y * widthImage;
-        PVector loc = null;
-        if (depthData[index].z > closestDistance && depthData[index].z <= fartestDistance) {
-          for (float z = closestDistance; z < depthData[index].z - skip; z += (float) skip) {
-            loc = PVector.div(depthData[index], depthData[index].z);
-            loc = PVector.mult(loc, z);
-            addCoordValue(loc.x, loc.y, loc.z, CoordStateValue.EMPTY);
-          }
-          addCoordValue(depthData[index].x, depthData[index].y, depthData[index].z, CoordStateValue.FILL);
-          for (float z = depthData[index].z + (float) skip; z < fartestDistance; z += (float) skip) {
-            loc = PVector.div(depthData[index], depthData[index].z);
-            loc = PVector.mult(loc, z);
-            addCoordValue(loc.x, loc.y, loc.z, CoordStateValue.UNDEFINED);
-          }
-        }
-        if (depthData[index].z > fartestDistance) {
-          for (float z = closestDistance; z <= depthData[index].z && z <= fartestDistance; z += (float) skip) {
-            loc = PVector.div(depthData[index], depthData[index].z);
-            loc = PVector.mult(loc, z);
-            addCoordValue(loc.x, loc.y, loc.z, CoordStateValue.EMPTY);
-          }
-        }
+    long start = System.nanoTime();
+    prepareGrid();
+    final PVector[] depthData = data.depthMapRW;
+    final int columns = count(widthImage);
+    final int rows = count(heighImage);
+    if (hits == null || hits.length != rows * columns * 3) {
+      hits = new float[rows * columns * 3];
+    }
+    // free space - rows are independent, the grid only ever gets EMPTY written
+    // during this pass
+    IntStream.range(0, rows).parallel().forEach(row -> castRow(depthData, row, columns));
+    // then the surfaces, which win over free space from other rays
+    for (int i = 0; i < hits.length; i += 3) {
+      if (!Float.isNaN(hits[i])) {
+        grid.fill(hits[i], hits[i + 1], hits[i + 2]);
       }
     }
-    // for (Map3DPoint p : cloudMap.values()) {
-    // Log.info("x:", p.point.getX());
-    // Log.info("y:", p.point.getY());
-    // Log.info("z:", p.point.getZ());
-    // Log.info("-----------------");
-    // }
+    raysCast = rows * columns;
     groupPoints();
+    lastProcessMs = (System.nanoTime() - start) / 1000000.0;
     // buildMesh();
   }
 
-  private void groupPoints() {
-    cloudMapGroup.clear();
-    for (Map3DPoint point : cloudMap.values()) {
-      boolean found = false;
-      Integer[] newPoint = new Integer[] { (int) point.point.getX(), (int) point.point.getY(), (int) point.point.getZ() };
-      for (int i = 0; i < cloudMapGroup.size(); i++) {
-        HashMap<Integer[], Map3DPoint> group = cloudMapGroup.get(i);
-        if (group.size() > 0) {
-          for (Map3DPoint checkPoint : group.values()) {
-            if (checkPoint.point.distanceTo(point.point) < distanceBetweenPoints) {
-              Integer[] index = new Integer[] { (int) point.point.getX(), (int) point.point.getY(), (int) point.point.getZ() };
-              group.put(index, point);
-              cloudMapGroup.set(i, group);
-              found = true;
-              break;
-            }
-          }
-        }
-        // for (int x = (int)point.point.getX() - distanceBetweenPoints; x <
-        // (int)point.point.getX() + distanceBetweenPoints &&
-        // !found; x++) {
-        // for (int y = (int)point.point.getY() - distanceBetweenPoints; y <
-        // (int)point.point.getY() + distanceBetweenPoints &&
-        // !found; y++) {
-        // for (int z = (int)point.point.getZ() - distanceBetweenPoints; z <
-        // (int)point.point.getZ() + distanceBetweenPoints &&
-        // !found; z++) {
-        // Integer[] index = new Integer[]{x, y, z};
-        // if (cloudMapGroup.get(i).containsKey(index)) {
-        // cloudMapGroup.get(i).put(newPoint, point);
-        // found = true;
-        // }
-        // }
-        // }
-        // }
-      }
-      if (!found) {
-        HashMap<Integer[], Map3DPoint> e = new HashMap<Integer[], Map3DPoint>();
-        e.put(newPoint, point);
-        cloudMapGroup.add(e);
-      }
-    }
-    for (int i = 0; i < cloudMapGroup.size(); i++) {
-      if (cloudMapGroup.get(i).size() < 5) {
-        cloudMapGroup.remove(i);
-        i--;
-      }
-    }
-    // do a second pass
-    boolean merge = false;
-    for (int i = 0; i < cloudMapGroup.size(); i++) {
-      for (Map3DPoint p : cloudMapGroup.get(i).values()) {
-        for (int ii = i + 1; ii < cloudMapGroup.size(); ii++) {
-          for (Map3DPoint pp : cloudMapGroup.get(ii).values()) {
-            if (p.point.distanceTo(pp.point) < distanceBetweenPoints) {
-              HashMap<Integer[], Map3DPoint> group = cloudMapGroup.get(i);
-              group.putAll(cloudMapGroup.get(ii));
-              cloudMapGroup.set(i, group);
-              cloudMapGroup.remove(ii);
-              ii--;
-              merge = true;
-              break;
-            }
-          }
-          if (merge)
-            break;
-        }
-        if (merge)
-          break;
+  // number of sampled pixels along a side of the image
+  private int count(int size) {
+    return Math.max(0, (size - 2 * skip + skip - 1) / skip);
+  }
+
+  private void castRow(PVector[] depthData, int row, int columns) {
+    int y = skip + row * skip;
+    for (int column = 0; column < columns; column++) {
+      int x = skip + column * skip;
+      PVector v = depthData[x + y * widthImage];
+      int hit = (row * columns + column) * 3;
+      hits[hit] = Float.NaN;
+      if (v.z <= closestDistance) {
+        continue;
       }
-      if (merge) {
-        merge = false;
-        i = -1;
+      // ray from closestDistance to the surface or to fartestDistance
+      double near = closestDistance / v.z;
+      double far = (v.z <= fartestDistance) ? 1.0 : fartestDistance / v.z;
+      double x0 = worldX(v.x * near, v.y * near, v.z * near);
+      double y0 = worldY(v.x * near, v.y * near, v.z * near);
+      double z0 = worldZ(v.x * near, v.y * near, v.z * near);
+      double x1 = worldX(v.x * far, v.y * far, v.z * far);
+      double y1 = worldY(v.x * far, v.y * far, v.z * far);
+      double z1 = worldZ(v.x * far, v.y * far, v.z * far);
+      if (v.z <= fartestDistance) {
+        grid.markFree(x0, y0, z0, x1, y1, z1, false);
+        hits[hit] = (float) x1;
+        hits[hit + 1] = (float) y1;
+        hits[hit + 2] = (float) z1;
+      } else {
+        grid.markFree(x0, y0, z0, x1, y1, z1, true);
       }
     }
-    log.info("Found {} object(s)", cloudMapGroup.size());
   }
 
-  private void addCoordValue(double xpos, double ypos, double zpos, CoordStateValue value) {
-    addCoordValue((int) xpos, (int) ypos, (int) zpos, value);
+  // the kinect x, y, z (depth) are world x, z, y before rotation and
+  // translation
+  private double worldX(double x, double y, double z) {
+    return transform[0] * x + transform[1] * z + transform[2] * y + transform[3];
+  }
+
+  private double worldY(double x, double y, double z) {
+    return transform[4] * x + transform[5] * z + transform[6] * y + transform[7];
+  }
+
+  private double worldZ(double x, double y, double z) {
+    return transform[8] * x + transform[9] * z + transform[10] * y + transform[11];
   }
 
-  private void addCoordValue(int xpos, int ypos, int zpos, CoordStateValue value) {
+  private void prepareGrid() {
     // need to rotate and translate the location depending on the position of
     // the kinect
-    // rotate
-    // must change the x axis so the coordinate are in the right orientation
-    // xpos *= -1;
     double roll = MathUtils.degToRad(kinectPosition.getRoll());
     double pitch = MathUtils.degToRad(kinectPosition.getPitch());
     double yaw = MathUtils.degToRad(kinectPosition.getYaw());
     Matrix trMatrix = Matrix.translation(kinectPosition.getX(), kinectPosition.getY(), kinectPosition.getZ());
     Matrix rotMatrix = Matrix.xRotation(roll).multiply(Matrix.yRotation(pitch).multiply(Matrix.zRotation(yaw)));
-    Matrix coord = Matrix.translation(xpos, zpos, ypos);
-    Matrix inputMatrix = trMatrix.multiply(rotMatrix).multiply(coord);
-
-    Point pOut = new Point(inputMatrix.elements[0][3], inputMatrix.elements[1][3], inputMatrix.elements[2][3], 0, 0, 0);
+    Matrix m = trMatrix.multiply(rotMatrix);
+    for (int r = 0; r < 3; r++) {
+      for (int c = 0; c < 4; c++) {
+        transform[r * 4 + c] = m.elements[r][c];
+      }
+    }
 
-    // convert to the coordinate use by our ik engine and reduce the resolution
-    double posx = (int) ((int) pOut.getX() / skip * skip);
-    double posy = (int) ((int) pOut.getY() / skip * skip);
-    double posz = (int) ((int) pOut.getZ() / skip * skip);
+    double[] key = new double[] { skip, fartestDistance, kinectPosition.getX(), kinectPosition.getY(), kinectPosition.getZ() };
+    if (grid != null && Arrays.equals(key, gridKey)) {
+      grid.clear();
+      return;
+    }
+    // rays end at fartestDistance in depth, the corners of the image are a
+    // bit further away than that
+    grid = VoxelGrid.around(kinectPosition.getX(), kinectPosition.getY(), kinectPosition.getZ(), fartestDistance * 1.25, skip);
+    gridKey = key;
+  }
 
-    Map3DPoint map = new Map3DPoint();
-    map.point = pOut;
-    map.value = value;
-    Integer[] index = new Integer[] { (int) posx, (int) posy, (int) posz };
-    // int mapIndex = getCloudMapIndex((int)posx, (int)posy, (int)posz);
-    switch (value) {
-      case EMPTY: {
-        if (cloudMap.containsKey(index)) {
-          cloudMap.remove(index);
-        }
-        break;
-      }
-      case FILL: {
-        cloudMap.put(index, map);
-        break;
-      }
-      case UNDEFINED: {
-        // cloudMap.putIfAbsent(index, map);
-        break;
+  private void groupPoints() {
+    cloudMapGroup.clear();
+    // neighbouring rays are less than 2 voxels apart at fartestDistance
+    distanceBetweenPoints = 4 * skip;
+    List<long[]> components = grid.components(distanceBetweenPoints, 5);
+    for (long[] component : components) {
+      HashMap<Integer[], Map3DPoint> group = new HashMap<Integer[], Map3DPoint>();
+      for (long key : component) {
+        int ix = VoxelGrid.keyX(key);
+        int iy = VoxelGrid.keyY(key);
+        int iz = VoxelGrid.keyZ(key);
+        Map3DPoint map = new Map3DPoint();
+        map.point = new Point(grid.centerX(ix), grid.centerY(iy), grid.centerZ(iz), 0, 0, 0);
+        map.value = CoordStateValue.FILL;
+        group.put(new Integer[] { ix, iy, iz }, map);
       }
+      cloudMapGroup.add(group);
     }
-
-    // HashMap<Integer,HashMap<Integer,Map3DPoint>> y =
-    // coordValue.get((int)posx);
-    // if (y == null) {
-    // y = new HashMap<Integer,HashMap<Integer,Map3DPoint>>();
-    // }
-    // HashMap<Integer,Map3DPoint> z = y.get((int)posy);
-    // if (z == null) {
-    // z = new HashMap<Integer,Map3DPoint>();
-    // }
-    // switch (value){
-    // case EMPTY:
-    // if (z.get((int)posz) != null) {
-    // z.remove((int)posz);
-    // }
-    // break;
-    // case FILL: {
-    // Map3DPoint o = new Map3DPoint();
-    // o.value = value;
-    // z.put((int)posz, o);
-    // break;
-    // }
-    // case UNDEFINED:{
-    // if (z.get((int)posz) == null){
-    // Map3DPoint o = new Map3DPoint();
-    // o.value = value;
-    // z.put((int)posz, o);
-    // }
-    // break;
-    // }
-    // }
-    // y.put((int)posy, z);
-    // coordValue.put((int)posx, y);
+    log.info("Found {} object(s)", cloudMapGroup.size());
   }
 
   public CoordStateValue getCoordValue(double xpos, double ypos, double zpos) {
-    return getCoordValue((int) xpos, (int) ypos, (int) zpos);
+    if (grid == null) {
+      return CoordStateValue.UNDEFINED;
+    }
+    switch (grid.get(xpos, ypos, zpos)) {
+      case VoxelGrid.FILL:
+        return CoordStateValue.FILL;
+      case VoxelGrid.EMPTY:
+        return CoordStateValue.EMPTY;
+      default:
+        return CoordStateValue.UNDEFINED;
+    }
   }
 
   public CoordStateValue getCoordValue(int xpos, int ypos, int zpos) {
-    int posx = xpos / skip * skip;
-    int posy = ypos / skip * skip;
-    int posz = xpos / skip * skip;
-    Integer[] index = new Integer[] { posx, posy, posz };
-    if (cloudMap.containsKey(index)) {
-      return cloudMap.get(index).value;
-    }
-    return CoordStateValue.EMPTY;
-    // HashMap<Integer,HashMap<Integer,Map3DPoint>> y = coordValue.get(posx);
-    // if (y == null) {
-    // return CoordStateValue.EMPTY;
-    // }
-    // HashMap<Integer,Map3DPoint> z = y.get(posy);
-    // if (z == null) {
-    // return CoordStateValue.EMPTY;
-    // }
-    // return CoordStateValue.FILL; //return FILL even if it's undefined (we
-    // don't know if it's fill or not, better not go.
-    // //return z.get(posz);
+    return getCoordValue((double) xpos, (double) ypos, (double) zpos);
   }
 
   public void updateKinectPosition(Point currentPosition) {
@@ -283,4 +213,19 @@ public class Map3D {
     return cloudMapGroup;
   }
 
+  /**
+   * @return the occupancy grid of the last processed depth map
+   */
+  public VoxelGrid getGrid() {
+    return grid;
+  }
+
+  public int getRaysCast() {
+    return raysCast;
+  }
+
+  public double getLastProcessMs() {
+    return lastProcessMs;
+  }
+
 }
@@ -0,0 +1,573 @@
+package org.myrobotlab.kinematics;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.math.MathUtils;
+import org.slf4j.Logger;
+
+/**
+ * ReachabilityMap - a voxelized index of the workspace of a DHRobotArm.
+ *
+ * The joint space of the arm is sampled on a grid once and every palm position
+ * is binned into a voxel of voxelSize mm. Each reachable voxel keeps the joint
+ * values of the sample closest to its center, which is used as a starting
+ * point for the IK solver, and goals whose voxel (and neighbours) were never
+ * reached are rejected without iterating. Successful solves are written back
+ * into the map so recurring targets start from their previous solution.
+ *
+ * The map depends only on the D-H parameters and joint limits of the arm, it
+ * is saved to disk with a signature of those and rebuilt when they change.
+ */
+public class ReachabilityMap {
+
+  transient public final static Logger log = LoggerFactory.getLogger(ReachabilityMap.class);
+
+  private static final int MAGIC = 0x52454143; // "REAC"
+  private static final int VERSION = 1;
+
+  public static final double DEFAULT_VOXEL_SIZE = 25.0;
+  public static final double DEFAULT_ANGLE_STEP = 3.0;
+  public static final long MAX_SAMPLES = 4000000;
+  // goals used to measure the iterations of a solve without a seed
+  private static final int BASELINE_GOALS = 50;
+
+  private final int numLinks;
+  private final double voxelSize;
+  private final double angleStep;
+  private final long signature;
+  private double minX;
+  private double minY;
+  private double minZ;
+  private int nx;
+  private int ny;
+  private int nz;
+  // seed index + 1 for each voxel, 0 is unreachable
+  private int[] cells;
+  // numLinks joint values per seed
+  private double[] seeds;
+  // palm position of each seed
+  private float[] seedPositions;
+  private int seedCount;
+  private int samples;
+  private long buildMs;
+  // average iterations of a solve from the centered position
+  private double coldIterations;
+
+  private final double[] seed;
+  private final double[] joints;
+  private final double[] position = new double[3];
+
+  // stats
+  private long lookups;
+  private long rejected;
+  private long warmStarts;
+  private long warmIterations;
+  private long learned;
+
+  private ReachabilityMap(DHRobotArm arm, double voxelSize, double angleStep) {
+    this.numLinks = arm.getNumLinks();
+    this.voxelSize = voxelSize;
+    this.angleStep = angleStep;
+    this.signature = signature(arm, voxelSize, angleStep);
+    seed = new double[numLinks];
+    joints = new double[numLinks];
+  }
+
+  /**
+   * build the map with the default voxel size and angle step
+   *
+   * @param arm
+   * @return the map
+   */
+  public static ReachabilityMap build(DHRobotArm arm) {
+    return build(arm, DEFAULT_VOXEL_SIZE, DEFAULT_ANGLE_STEP);
+  }
+
+  /**
+   * sample the joint space of arm and index the palm positions
+   *
+   * @param arm
+   *          the arm - its joint angles are not changed
+   * @param voxelSize
+   *          edge of a voxel in mm
+   * @param angleStep
+   *          joint space sampling step in degrees, increased if the grid would
+   *          have more than MAX_SAMPLES points
+   * @return the map
+   */
+  public static ReachabilityMap build(DHRobotArm arm, double voxelSize, double angleStep) {
+    long start = System.currentTimeMillis();
+    ReachabilityMap map = new ReachabilityMap(arm, voxelSize, angleStep);
+    int n = map.numLinks;
+    List<DHLink> links = arm.getLinks();
+
+    // grid of joint values - from min to max of each joint, both included
+    double step = MathUtils.degToRad(angleStep);
+    int[] counts = new int[n];
+    while (true) {
+      long total = 1;
+      for (int i = 0; i < n; i++) {
+        DHLink link = links.get(i);
+        counts[i] = (DHLinkType.PRISMATIC.equals(link.getType())) ? 1 : (int) Math.ceil((link.getMax() - link.getMin()) / step - 1e-9) + 1;
+        total *= counts[i];
+      }
+      if (total <= MAX_SAMPLES) {
+        break;
+      }
+      step *= 1.25;
+    }
+    double[] initial = new double[n];
+    DHIKSolver.getJoints(arm, initial);
+
+    DHIKSolver solver = new DHIKSolver();
+    solver.prepare(arm);
+    double[] p = new double[3];
+
+    // pass 1 - bounds of the workspace
+    double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE, maxZ = -Double.MAX_VALUE;
+    map.minX = map.minY = map.minZ = Double.MAX_VALUE;
+    int[] index = new int[n];
+    double[] q = new double[n];
+    do {
+      map.sample(links, index, step, initial, q);
+      solver.palmPosition(q, p);
+      map.minX = Math.min(map.minX, p[0]);
+      map.minY = Math.min(map.minY, p[1]);
+      map.minZ = Math.min(map.minZ, p[2]);
+      maxX = Math.max(maxX, p[0]);
+      maxY = Math.max(maxY, p[1]);
+      maxZ = Math.max(maxZ, p[2]);
+      map.samples++;
+    } while (next(index, counts));
+
+    map.nx = (int) ((maxX - map.minX) / voxelSize) + 1;
+    map.ny = (int) ((maxY - map.minY) / voxelSize) + 1;
+    map.nz = (int) ((maxZ - map.minZ) / voxelSize) + 1;
+    map.cells = new int[map.nx * map.ny * map.nz];
+    map.seeds = new double[1024 * n];
+    map.seedPositions = new float[1024 * 3];
+    // distance of each seed to its voxel center
+    float[] centerDistance = new float[1024];
+
+    // pass 2 - the sample closest to the center of each voxel
+    Arrays.fill(index, 0);
+    do {
+      map.sample(links, index, step, initial, q);
+      solver.palmPosition(q, p);
+      int cell = map.cell(p[0], p[1], p[2]);
+      float dist = (float) map.centerDistance(cell, p);
+      int s = map.cells[cell] - 1;
+      if (s < 0) {
+        s = map.addSeed();
+        if (s >= centerDistance.length) {
+          centerDistance = Arrays.copyOf(centerDistance, centerDistance.length * 2);
+        }
+        map.cells[cell] = s + 1;
+        centerDistance[s] = Float.MAX_VALUE;
+      }
+      if (dist < centerDistance[s]) {
+        centerDistance[s] = dist;
+        map.setSeed(s, q, p);
+      }
+    } while (next(index, counts));
+
+    map.coldIterations = map.measureColdIterations(arm);
+    map.buildMs = System.currentTimeMillis() - start;
+    log.info("built reachability map for {} - {} samples {} reachable voxels of {} in {} ms, cold solve {} iterations", arm.name, map.samples, map.seedCount, map.cells.length,
+        map.buildMs, map.coldIterations);
+    return map;
+  }
+
+  // joint values of grid point index
+  private void sample(List<DHLink> links, int[] index, double step, double[] initial, double[] q) {
+    for (int i = 0; i < numLinks; i++) {
+      DHLink link = links.get(i);
+      q[i] = (DHLinkType.PRISMATIC.equals(link.getType())) ? initial[i] : Math.min(link.getMin() + index[i] * step, link.getMax());
+    }
+  }
+
+  // odometer increment of the grid index
+  private static boolean next(int[] index, int[] counts) {
+    for (int i = index.length - 1; i >= 0; i--) {
+      if (++index[i] < counts[i]) {
+        return true;
+      }
+      index[i] = 0;
+    }
+    return false;
+  }
+
+  // average iterations to solve to some of the seeds from the centered arm
+  private double measureColdIterations(DHRobotArm arm) {
+    if (seedCount == 0) {
+      return 0;
+    }
+    DHRobotArm copy = new DHRobotArm(arm);
+    DHIKSolver solver = copy.getSolver();
+    int stride = Math.max(1, seedCount / BASELINE_GOALS);
+    int goals = 0;
+    long iterations = 0;
+    for (int s = 0; s < seedCount; s += stride) {
+      copy.centerAllJoints();
+      solver.solve(copy, new Point(seedPositions[s * 3], seedPositions[s * 3 + 1], seedPositions[s * 3 + 2]));
+      iterations += solver.getIterations();
+      goals++;
+    }
+    return (double) iterations / goals;
+  }
+
+  private int addSeed() {
+    if ((seedCount + 1) * numLinks > seeds.length) {
+      seeds = Arrays.copyOf(seeds, seeds.length * 2);
+      seedPositions = Arrays.copyOf(seedPositions, seedPositions.length * 2);
+    }
+    return seedCount++;
+  }
+
+  private void setSeed(int s, double[] q, double[] p) {
+    System.arraycopy(q, 0, seeds, s * numLinks, numLinks);
+    seedPositions[s * 3] = (float) p[0];
+    seedPositions[s * 3 + 1] = (float) p[1];
+    seedPositions[s * 3 + 2] = (float) p[2];
+  }
+
+  /**
+   * @return the voxel index of x,y,z or -1 if it is outside the map
+   */
+  private int cell(double x, double y, double z) {
+    int ix = (int) Math.floor((x - minX) / voxelSize);
+    int iy = (int) Math.floor((y - minY) / voxelSize);
+    int iz = (int) Math.floor((z - minZ) / voxelSize);
+    if (ix < 0 || iy < 0 || iz < 0 || ix >= nx || iy >= ny || iz >= nz) {
+      return -1;
+    }
+    return (iz * ny + iy) * nx + ix;
+  }
+
+  private double centerDistance(int cell, double[] p) {
+    int ix = cell % nx;
+    int iy = (cell / nx) % ny;
+    int iz = cell / (nx * ny);
+    double dx = p[0] - (minX + (ix + 0.5) * voxelSize);
+    double dy = p[1] - (minY + (iy + 0.5) * voxelSize);
+    double dz = p[2] - (minZ + (iz + 0.5) * voxelSize);
+    return Math.sqrt(dx * dx + dy * dy + dz * dz);
+  }
+
+  /**
+   * the seed closest to x,y,z in its voxel or one of the 26 neighbours - the
+   * grid sampling can leave single voxels empty inside the workspace
+   *
+   * @return the seed index or -1 if the region was never reached
+   */
+  private int nearestSeed(double x, double y, double z) {
+    int ix = (int) Math.floor((x - minX) / voxelSize);
+    int iy = (int) Math.floor((y - minY) / voxelSize);
+    int iz = (int) Math.floor((z - minZ) / voxelSize);
+    int best = -1;
+    double bestDist = Double.MAX_VALUE;
+    for (int cz = iz - 1; cz <= iz + 1; cz++) {
+      if (cz < 0 || cz >= nz) {
+        continue;
+      }
+      for (int cy = iy - 1; cy <= iy + 1; cy++) {
+        if (cy < 0 || cy >= ny) {
+          continue;
+        }
+        for (int cx = ix - 1; cx <= ix + 1; cx++) {
+          if (cx < 0 || cx >= nx) {
+            continue;
+          }
+          int s = cells[(cz * ny + cy) * nx + cx] - 1;
+          if (s < 0) {
+            continue;
+          }
+          double dx = x - seedPositions[s * 3];
+          double dy = y - seedPositions[s * 3 + 1];
+          double dz = z - seedPositions[s * 3 + 2];
+          double dist = dx * dx + dy * dy + dz * dz;
+          if (dist < bestDist) {
+            bestDist = dist;
+            best = s;
+          }
+        }
+      }
+    }
+    return best;
+  }
+
+  /**
+   * @param goal
+   * @return false if no sample of the arm came near goal
+   */
+  public boolean isReachable(Point goal) {
+    return nearestSeed(goal.getX(), goal.getY(), goal.getZ()) >= 0;
+  }
+
+  /**
+   * @param goal
+   * @param out
+   *          joint values of the nearest seed
+   * @return false if goal is not reachable
+   */
+  public boolean getSeed(Point goal, double[] out) {
+    int s = nearestSeed(goal.getX(), goal.getY(), goal.getZ());
+    if (s < 0) {
+      return false;
+    }
+    System.arraycopy(seeds, s * numLinks, out, 0, numLinks);
+    return true;
+  }
+
+  /**
+   * solve IK for arm, rejecting unreachable goals and starting from the seed
+   * of the goal's voxel when that is closer than the current pose. A successful
+   * solution replaces the seed of its voxel.
+   *
+   * @param arm
+   * @param goal
+   * @return true if the goal was reached
+   */
+  public synchronized boolean moveToGoal(DHRobotArm arm, Point goal) {
+    lookups++;
+    if (!getSeed(goal, seed)) {
+      rejected++;
+      log.info("goal {} is outside the workspace of {}", goal, arm.name);
+      return false;
+    }
+    DHIKSolver solver = arm.getSolver();
+    boolean solved = solver.solve(arm, goal, seed);
+    if (solver.isSeeded()) {
+      warmStarts++;
+      warmIterations += solver.getIterations();
+    }
+    if (solved) {
+      learn(arm, goal);
+    }
+    return solved;
+  }
+
+  // store the current pose of arm as the seed for the voxel of goal
+  private void learn(DHRobotArm arm, Point goal) {
+    int cell = cell(goal.getX(), goal.getY(), goal.getZ());
+    if (cell < 0) {
+      return;
+    }
+    DHIKSolver.getJoints(arm, joints);
+    position[0] = goal.getX();
+    position[1] = goal.getY();
+    position[2] = goal.getZ();
+    int s = cells[cell] - 1;
+    if (s < 0) {
+      s = addSeed();
+      cells[cell] = s + 1;
+    }
+    setSeed(s, joints, position);
+    learned++;
+  }
+
+  /**
+   * @return a hash of everything the map depends on
+   */
+  static long signature(DHRobotArm arm, double voxelSize, double angleStep) {
+    long h = VERSION;
+    h = 31 * h + Double.doubleToLongBits(voxelSize);
+    h = 31 * h + Double.doubleToLongBits(angleStep);
+    for (DHLink link : arm.getLinks()) {
+      h = 31 * h + link.getType().ordinal();
+      h = 31 * h + Double.doubleToLongBits(link.getD());
+      h = 31 * h + Double.doubleToLongBits(link.getA());
+      // the angle which is not the joint variable is fixed
+      h = 31 * h + Double.doubleToLongBits((DHLinkType.REVOLUTE_ALPHA.equals(link.getType())) ? link.getTheta() : link.getAlpha());
+      h = 31 * h + Double.doubleToLongBits(link.getMin());
+      h = 31 * h + Double.doubleToLongBits(link.getMax());
+    }
+    return h;
+  }
+
+  public synchronized void save(File file) throws IOException {
+    File tmp = new File(file.getPath() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(signature);
+      out.writeInt(numLinks);
+      out.writeDouble(voxelSize);
+      out.writeDouble(angleStep);
+      out.writeDouble(minX);
+      out.writeDouble(minY);
+      out.writeDouble(minZ);
+      out.writeInt(nx);
+      out.writeInt(ny);
+      out.writeInt(nz);
+      out.writeInt(samples);
+      out.writeLong(buildMs);
+      out.writeDouble(coldIterations);
+      out.writeInt(seedCount);
+      // only the reachable voxels
+      for (int cell = 0; cell < cells.length; cell++) {
+        int s = cells[cell] - 1;
+        if (s < 0) {
+          continue;
+        }
+        out.writeInt(cell);
+        for (int i = 0; i < numLinks; i++) {
+          out.writeDouble(seeds[s * numLinks + i]);
+        }
+        for (int i = 0; i < 3; i++) {
+          out.writeFloat(seedPositions[s * 3 + i]);
+        }
+      }
+    }
+    if (file.exists() && !file.delete()) {
+      throw new IOException("could not replace " + file);
+    }
+    if (!tmp.renameTo(file)) {
+      throw new IOException("could not rename " + tmp + " to " + file);
+    }
+  }
+
+  /**
+   * @param file
+   * @param arm
+   * @param voxelSize
+   * @param angleStep
+   * @return the saved map, or null if there is none or it was built for
+   *         different D-H parameters or settings
+   */
+  public static ReachabilityMap load(File file, DHRobotArm arm, double voxelSize, double angleStep) {
+    if (!file.exists()) {
+      return null;
+    }
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        log.warn("{} is not a reachability map", file);
+        return null;
+      }
+      ReachabilityMap map = new ReachabilityMap(arm, voxelSize, angleStep);
+      if (in.readLong() != map.signature) {
+        log.info("reachability map {} was built for a different arm", file);
+        return null;
+      }
+      in.readInt(); // numLinks
+      in.readDouble(); // voxelSize
+      in.readDouble(); // angleStep
+      map.minX = in.readDouble();
+      map.minY = in.readDouble();
+      map.minZ = in.readDouble();
+      map.nx = in.readInt();
+      map.ny = in.readInt();
+      map.nz = in.readInt();
+      map.samples = in.readInt();
+      map.buildMs = in.readLong();
+      map.coldIterations = in.readDouble();
+      int count = in.readInt();
+      int n = map.numLinks;
+      map.cells = new int[map.nx * map.ny * map.nz];
+      map.seeds = new double[Math.max(count, 1) * n];
+      map.seedPositions = new float[Math.max(count, 1) * 3];
+      for (int s = 0; s < count; s++) {
+        map.cells[in.readInt()] = s + 1;
+        for (int i = 0; i < n; i++) {
+          map.seeds[s * n + i] = in.readDouble();
+        }
+        for (int i = 0; i < 3; i++) {
+          map.seedPositions[s * 3 + i] = in.readFloat();
+        }
+      }
+      map.seedCount = count;
+      return map;
+    } catch (IOException e) {
+      log.error("could not load reachability map {}", file, e);
+      return null;
+    }
+  }
+
+  /**
+   * load the map saved in file, or build it and save it there
+   *
+   * @param file
+   * @param arm
+   * @return the map
+   */
+  public static ReachabilityMap loadOrBuild(File file, DHRobotArm arm) {
+    ReachabilityMap map = load(file, arm, DEFAULT_VOXEL_SIZE, DEFAULT_ANGLE_STEP);
+    if (map != null) {
+      log.info("loaded reachability map {} with {} reachable voxels", file, map.seedCount);
+      return map;
+    }
+    map = build(arm);
+    try {
+      map.save(file);
+    } catch (IOException e) {
+      log.error("could not save reachability map {}", file, e);
+    }
+    return map;
+  }
+
+  public double getVoxelSize() {
+    return voxelSize;
+  }
+
+  public int getReachableVoxels() {
+    return seedCount;
+  }
+
+  public int getSamples() {
+    return samples;
+  }
+
+  public long getBuildMs() {
+    return buildMs;
+  }
+
+  public double getColdIterations() {
+    return coldIterations;
+  }
+
+  public long getLookups() {
+    return lookups;
+  }
+
+  public long getRejected() {
+    return rejected;
+  }
+
+  public long getWarmStarts() {
+    return warmStarts;
+  }
+
+  public long getLearned() {
+    return learned;
+  }
+
+  public double getAverageWarmIterations() {
+    return (warmStarts == 0) ? 0 : (double) warmIterations / warmStarts;
+  }
+
+  /**
+   * @return estimate of the solver iterations saved by warm starts - the
+   *         difference to the average cold solve measured when the map was
+   *         built
+   */
+  public double getIterationsSaved() {
+    return warmStarts * coldIterations - warmIterations;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("reachability map %d x %d x %d voxels of %.1f mm, %d reachable - lookups %d rejected %d warm starts %d (%.1f vs %.1f cold iterations) saved %.0f iterations",
+        nx, ny, nz, voxelSize, seedCount, lookups, rejected, warmStarts, getAverageWarmIterations(), coldIterations, getIterationsSaved());
+  }
+
+}
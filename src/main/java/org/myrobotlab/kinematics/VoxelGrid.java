@@ -0,0 +1,437 @@
+package org.myrobotlab.kinematics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Occupancy grid over a box of space. Each voxel is one byte (UNDEFINED, EMPTY
+ * or FILL) stored in chunks of 16x16x16 voxels, and a chunk is only allocated
+ * the first time something is written into it, so a big box which is mostly
+ * never seen costs very little memory.
+ *
+ * Rays are marched through the grid voxel by voxel without allocating
+ * anything, and markFree can be called from several threads at once. Marking
+ * free space never clears a FILL voxel, a surface seen by any ray stays
+ * filled.
+ *
+ * Voxels are addressed with integer coordinates, or with a long key (see key)
+ * which packs the three coordinates.
+ *
+ */
+public class VoxelGrid {
+
+  public static final byte UNDEFINED = 0;
+  public static final byte EMPTY = 1;
+  public static final byte FILL = 2;
+
+  // set on FILL voxels while components are labelled
+  private static final byte VISITED = 0x40;
+
+  static final int CHUNK_BITS = 4;
+  static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+  static final int CHUNK_MASK = CHUNK_SIZE - 1;
+  static final int KEY_BITS = 21;
+  static final long KEY_MASK = (1L << KEY_BITS) - 1;
+
+  final double originX;
+  final double originY;
+  final double originZ;
+  final double voxelSize;
+  final int sizeX;
+  final int sizeY;
+  final int sizeZ;
+
+  final int chunksX;
+  final int chunksY;
+  final int chunksZ;
+  final AtomicReferenceArray<byte[]> chunks;
+
+  // work queue for components, reused between calls
+  private long[] queue = new long[1024];
+
+  /**
+   * @param originX
+   *          world position of the low corner of the box
+   * @param originY
+   * @param originZ
+   * @param voxelSize
+   *          edge length of a voxel
+   * @param sizeX
+   *          number of voxels along x
+   * @param sizeY
+   * @param sizeZ
+   */
+  public VoxelGrid(double originX, double originY, double originZ, double voxelSize, int sizeX, int sizeY, int sizeZ) {
+    if (voxelSize <= 0 || sizeX <= 0 || sizeY <= 0 || sizeZ <= 0) {
+      throw new IllegalArgumentException("voxel size and grid size must be > 0");
+    }
+    if (sizeX > KEY_MASK || sizeY > KEY_MASK || sizeZ > KEY_MASK) {
+      throw new IllegalArgumentException(String.format("grid of %d x %d x %d voxels is too large", sizeX, sizeY, sizeZ));
+    }
+    this.originX = originX;
+    this.originY = originY;
+    this.originZ = originZ;
+    this.voxelSize = voxelSize;
+    this.sizeX = sizeX;
+    this.sizeY = sizeY;
+    this.sizeZ = sizeZ;
+    chunksX = (sizeX + CHUNK_MASK) >> CHUNK_BITS;
+    chunksY = (sizeY + CHUNK_MASK) >> CHUNK_BITS;
+    chunksZ = (sizeZ + CHUNK_MASK) >> CHUNK_BITS;
+    long count = (long) chunksX * chunksY * chunksZ;
+    if (count > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException(String.format("grid of %d x %d x %d voxels is too large", sizeX, sizeY, sizeZ));
+    }
+    chunks = new AtomicReferenceArray<byte[]>((int) count);
+  }
+
+  /**
+   * grid of cubic voxels centered on a point
+   *
+   * @param x
+   * @param y
+   * @param z
+   * @param halfSize
+   *          distance from the center to the sides of the box
+   * @param voxelSize
+   * @return the grid
+   */
+  public static VoxelGrid around(double x, double y, double z, double halfSize, double voxelSize) {
+    int size = (int) Math.ceil(2 * halfSize / voxelSize);
+    double half = size * voxelSize / 2;
+    return new VoxelGrid(x - half, y - half, z - half, voxelSize, size, size, size);
+  }
+
+  /**
+   * packs voxel coordinates into a single long
+   */
+  public static long key(int ix, int iy, int iz) {
+    return ((long) ix << (2 * KEY_BITS)) | ((long) iy << KEY_BITS) | iz;
+  }
+
+  public static int keyX(long key) {
+    return (int) (key >>> (2 * KEY_BITS));
+  }
+
+  public static int keyY(long key) {
+    return (int) ((key >>> KEY_BITS) & KEY_MASK);
+  }
+
+  public static int keyZ(long key) {
+    return (int) (key & KEY_MASK);
+  }
+
+  public int toVoxelX(double x) {
+    return (int) Math.floor((x - originX) / voxelSize);
+  }
+
+  public int toVoxelY(double y) {
+    return (int) Math.floor((y - originY) / voxelSize);
+  }
+
+  public int toVoxelZ(double z) {
+    return (int) Math.floor((z - originZ) / voxelSize);
+  }
+
+  /**
+   * @return world x of the center of voxel ix
+   */
+  public double centerX(int ix) {
+    return originX + (ix + 0.5) * voxelSize;
+  }
+
+  public double centerY(int iy) {
+    return originY + (iy + 0.5) * voxelSize;
+  }
+
+  public double centerZ(int iz) {
+    return originZ + (iz + 0.5) * voxelSize;
+  }
+
+  public boolean contains(int ix, int iy, int iz) {
+    return ix >= 0 && iy >= 0 && iz >= 0 && ix < sizeX && iy < sizeY && iz < sizeZ;
+  }
+
+  private int chunkIndex(int ix, int iy, int iz) {
+    return ((ix >> CHUNK_BITS) * chunksY + (iy >> CHUNK_BITS)) * chunksZ + (iz >> CHUNK_BITS);
+  }
+
+  private static int offset(int ix, int iy, int iz) {
+    return ((ix & CHUNK_MASK) << (2 * CHUNK_BITS)) | ((iy & CHUNK_MASK) << CHUNK_BITS) | (iz & CHUNK_MASK);
+  }
+
+  // chunk holding the voxel, allocated if needed - safe to call from several
+  // threads
+  private byte[] chunk(int ix, int iy, int iz) {
+    int i = chunkIndex(ix, iy, iz);
+    byte[] chunk = chunks.get(i);
+    if (chunk == null) {
+      chunk = new byte[CHUNK_SIZE * CHUNK_SIZE * CHUNK_SIZE];
+      if (!chunks.compareAndSet(i, null, chunk)) {
+        chunk = chunks.get(i);
+      }
+    }
+    return chunk;
+  }
+
+  /**
+   * @return state of the voxel, UNDEFINED if it is outside of the grid
+   */
+  public byte get(int ix, int iy, int iz) {
+    if (!contains(ix, iy, iz)) {
+      return UNDEFINED;
+    }
+    byte[] chunk = chunks.get(chunkIndex(ix, iy, iz));
+    return (chunk == null) ? UNDEFINED : (byte) (chunk[offset(ix, iy, iz)] & ~VISITED);
+  }
+
+  /**
+   * @return state of the voxel holding the world position
+   */
+  public byte get(double x, double y, double z) {
+    return get(toVoxelX(x), toVoxelY(y), toVoxelZ(z));
+  }
+
+  /**
+   * sets the state of a voxel, positions outside of the grid are ignored
+   */
+  public void set(int ix, int iy, int iz, byte state) {
+    if (contains(ix, iy, iz)) {
+      chunk(ix, iy, iz)[offset(ix, iy, iz)] = state;
+    }
+  }
+
+  /**
+   * marks the voxel holding the world position as FILL
+   */
+  public void fill(double x, double y, double z) {
+    set(toVoxelX(x), toVoxelY(y), toVoxelZ(z), FILL);
+  }
+
+  private void free(int ix, int iy, int iz) {
+    if (contains(ix, iy, iz)) {
+      byte[] chunk = chunk(ix, iy, iz);
+      int o = offset(ix, iy, iz);
+      if (chunk[o] == UNDEFINED) {
+        chunk[o] = EMPTY;
+      }
+    }
+  }
+
+  /**
+   * Marks every voxel the segment from (x0, y0, z0) to (x1, y1, z1) passes
+   * through as EMPTY, stepping from voxel to voxel along the ray
+   * (Amanatides-Woo). Voxels which are already FILL are left alone.
+   *
+   * @param includeEnd
+   *          false when the segment ends on a surface, the voxel holding the
+   *          end point is not marked
+   */
+  public void markFree(double x0, double y0, double z0, double x1, double y1, double z1, boolean includeEnd) {
+    double gx0 = (x0 - originX) / voxelSize;
+    double gy0 = (y0 - originY) / voxelSize;
+    double gz0 = (z0 - originZ) / voxelSize;
+    double dx = (x1 - originX) / voxelSize - gx0;
+    double dy = (y1 - originY) / voxelSize - gy0;
+    double dz = (z1 - originZ) / voxelSize - gz0;
+
+    int ix = (int) Math.floor(gx0);
+    int iy = (int) Math.floor(gy0);
+    int iz = (int) Math.floor(gz0);
+    int steps = Math.abs((int) Math.floor(gx0 + dx) - ix) + Math.abs((int) Math.floor(gy0 + dy) - iy) + Math.abs((int) Math.floor(gz0 + dz) - iz);
+
+    int stepX = (dx > 0) ? 1 : -1;
+    int stepY = (dy > 0) ? 1 : -1;
+    int stepZ = (dz > 0) ? 1 : -1;
+    double deltaX = (dx != 0) ? Math.abs(1 / dx) : Double.POSITIVE_INFINITY;
+    double deltaY = (dy != 0) ? Math.abs(1 / dy) : Double.POSITIVE_INFINITY;
+    double deltaZ = (dz != 0) ? Math.abs(1 / dz) : Double.POSITIVE_INFINITY;
+    // ray parameter at which the next voxel boundary on each axis is crossed
+    double maxX = (dx > 0) ? (ix + 1 - gx0) * deltaX : (dx < 0) ? (gx0 - ix) * deltaX : Double.POSITIVE_INFINITY;
+    double maxY = (dy > 0) ? (iy + 1 - gy0) * deltaY : (dy < 0) ? (gy0 - iy) * deltaY : Double.POSITIVE_INFINITY;
+    double maxZ = (dz > 0) ? (iz + 1 - gz0) * deltaZ : (dz < 0) ? (gz0 - iz) * deltaZ : Double.POSITIVE_INFINITY;
+
+    for (int i = 0; i < steps; i++) {
+      free(ix, iy, iz);
+      if (maxX < maxY) {
+        if (maxX < maxZ) {
+          ix += stepX;
+          maxX += deltaX;
+        } else {
+          iz += stepZ;
+          maxZ += deltaZ;
+        }
+      } else {
+        if (maxY < maxZ) {
+          iy += stepY;
+          maxY += deltaY;
+        } else {
+          iz += stepZ;
+          maxZ += deltaZ;
+        }
+      }
+    }
+    if (includeEnd) {
+      free(ix, iy, iz);
+    }
+  }
+
+  /**
+   * sets every voxel back to UNDEFINED, allocated chunks are kept for reuse
+   */
+  public void clear() {
+    for (int i = 0; i < chunks.length(); i++) {
+      byte[] chunk = chunks.get(i);
+      if (chunk != null) {
+        Arrays.fill(chunk, UNDEFINED);
+      }
+    }
+  }
+
+  /**
+   * @return number of voxels in the given state
+   */
+  public int count(byte state) {
+    int count = 0;
+    for (int i = 0; i < chunks.length(); i++) {
+      byte[] chunk = chunks.get(i);
+      if (chunk != null) {
+        for (byte b : chunk) {
+          if ((b & ~VISITED) == state) {
+            ++count;
+          }
+        }
+      }
+    }
+    return count;
+  }
+
+  public int getAllocatedChunks() {
+    int count = 0;
+    for (int i = 0; i < chunks.length(); i++) {
+      if (chunks.get(i) != null) {
+        ++count;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Groups the FILL voxels into connected components, two voxels are connected
+   * when their centers are closer than linkDistance. Every voxel is visited
+   * once and looks at a fixed neighbourhood, so the cost is linear in the
+   * number of filled voxels. Not thread safe.
+   *
+   * @param linkDistance
+   *          world distance below which two filled voxels are in the same
+   *          component
+   * @param minSize
+   *          components with fewer voxels are dropped
+   * @return the voxel keys of each component
+   */
+  public List<long[]> components(double linkDistance, int minSize) {
+    int[] neighbours = neighbours(linkDistance / voxelSize);
+    List<long[]> components = new ArrayList<long[]>();
+    int tail = 0;
+    for (int c = 0; c < chunks.length(); c++) {
+      byte[] chunk = chunks.get(c);
+      if (chunk == null) {
+        continue;
+      }
+      int cx = c / (chunksY * chunksZ) << CHUNK_BITS;
+      int cy = (c / chunksZ) % chunksY << CHUNK_BITS;
+      int cz = c % chunksZ << CHUNK_BITS;
+      for (int o = 0; o < chunk.length; o++) {
+        if (chunk[o] != FILL) {
+          continue;
+        }
+        // flood fill the component starting at this voxel
+        int start = tail;
+        chunk[o] |= VISITED;
+        tail = push(tail, key(cx + (o >> (2 * CHUNK_BITS)), cy + ((o >> CHUNK_BITS) & CHUNK_MASK), cz + (o & CHUNK_MASK)));
+        for (int head = start; head < tail; head++) {
+          long key = queue[head];
+          int ix = keyX(key);
+          int iy = keyY(key);
+          int iz = keyZ(key);
+          for (int n = 0; n < neighbours.length; n += 3) {
+            int nx = ix + neighbours[n];
+            int ny = iy + neighbours[n + 1];
+            int nz = iz + neighbours[n + 2];
+            if (!contains(nx, ny, nz)) {
+              continue;
+            }
+            byte[] nchunk = chunks.get(chunkIndex(nx, ny, nz));
+            if (nchunk == null) {
+              continue;
+            }
+            int no = offset(nx, ny, nz);
+            if (nchunk[no] == FILL) {
+              nchunk[no] |= VISITED;
+              tail = push(tail, key(nx, ny, nz));
+            }
+          }
+        }
+        if (tail - start >= minSize) {
+          components.add(Arrays.copyOfRange(queue, start, tail));
+        }
+      }
+    }
+    // take the visited flags off again
+    for (int i = 0; i < tail; i++) {
+      long key = queue[i];
+      int ix = keyX(key);
+      int iy = keyY(key);
+      int iz = keyZ(key);
+      chunks.get(chunkIndex(ix, iy, iz))[offset(ix, iy, iz)] &= ~VISITED;
+    }
+    return components;
+  }
+
+  private int push(int tail, long key) {
+    if (tail == queue.length) {
+      queue = Arrays.copyOf(queue, queue.length * 2);
+    }
+    queue[tail] = key;
+    return tail + 1;
+  }
+
+  // voxel offsets (dx, dy, dz triples) closer than radius voxels
+  static int[] neighbours(double radius) {
+    int r = (int) Math.ceil(radius);
+    double r2 = radius * radius;
+    int[] offsets = new int[3 * (2 * r + 1) * (2 * r + 1) * (2 * r + 1)];
+    int n = 0;
+    for (int dx = -r; dx <= r; dx++) {
+      for (int dy = -r; dy <= r; dy++) {
+        for (int dz = -r; dz <= r; dz++) {
+          if ((dx != 0 || dy != 0 || dz != 0) && dx * dx + dy * dy + dz * dz < r2) {
+            offsets[n++] = dx;
+            offsets[n++] = dy;
+            offsets[n++] = dz;
+          }
+        }
+      }
+    }
+    return Arrays.copyOf(offsets, n);
+  }
+
+  public double getVoxelSize() {
+    return voxelSize;
+  }
+
+  public int getSizeX() {
+    return sizeX;
+  }
+
+  public int getSizeY() {
+    return sizeY;
+  }
+
+  public int getSizeZ() {
+    return sizeZ;
+  }
+
+}
@@ -0,0 +1,571 @@
+package org.myrobotlab.logging;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.myrobotlab.service.Log.LogEntry;
+import org.myrobotlab.service.data.LogPage;
+import org.slf4j.Logger;
+
+/**
+ * Structured on-disk log store. Entries are appended to binary segment files
+ * which are rolled at segmentBytes, the oldest segments are deleted to stay
+ * within maxBytes.
+ *
+ * Each segment has an index, kept in memory and written next to it as .idx
+ * when it is rolled - its time range, entry counts per level, the loggers and
+ * threads which logged into it, and a sparse block index with the time,
+ * offset and levels of every BLOCK_ENTRIES entries. A query skips segments by
+ * time, level, logger and thread, seeks to the first block in its time range
+ * and skips blocks without its levels.
+ *
+ * Records are a type byte followed by either a logger or thread definition
+ * (short id, name) or an entry (long ts, byte level, short logger id, short
+ * thread id, body).
+ */
+public class LogStore {
+
+  public final static Logger log = LoggerFactory.getLogger(LogStore.class);
+
+  static final int MAGIC = 0x4D524C47;
+  static final short VERSION = 1;
+  static final int HEADER_SIZE = 6;
+
+  static final byte ENTRY = 0;
+  static final byte LOGGER = 1;
+  static final byte THREAD = 2;
+
+  public static final int BLOCK_ENTRIES = 128;
+
+  static final int MAX_BODY = 16384;
+
+  public static final String[] LEVELS = { "TRACE", "DEBUG", "INFO", "WARN", "ERROR" };
+
+  /**
+   * size of the next string in modified UTF-8, without reading it
+   */
+  static int utfSize(DataInputStream in) throws IOException {
+    in.mark(2);
+    int size = in.readUnsignedShort();
+    in.reset();
+    return size;
+  }
+
+  public static int toLevel(String level) {
+    if (level != null) {
+      for (int i = 0; i < LEVELS.length; ++i) {
+        if (LEVELS[i].equalsIgnoreCase(level)) {
+          return i;
+        }
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * a segment file and its index
+   */
+  static class Segment {
+    final long id;
+    final File file;
+    long length = HEADER_SIZE;
+    long minTs = Long.MAX_VALUE;
+    long maxTs = Long.MIN_VALUE;
+    int count = 0;
+    final int[] levelCounts = new int[LEVELS.length];
+
+    final List<String> loggers = new ArrayList<>();
+    final List<String> threads = new ArrayList<>();
+    final Map<String, Integer> loggerIds = new HashMap<>();
+    final Map<String, Integer> threadIds = new HashMap<>();
+
+    // sparse block index
+    long[] blockTs = new long[16];
+    long[] blockOffsets = new long[16];
+    byte[] blockLevels = new byte[16];
+    int blocks = 0;
+
+    Segment(long id, File file) {
+      this.id = id;
+      this.file = file;
+    }
+
+    File indexFile() {
+      return new File(file.getPath().replaceAll("\\.seg$", ".idx"));
+    }
+
+    /**
+     * updates the index with an entry written at offset
+     */
+    void indexed(long offset, long ts, int level) {
+      if (count % BLOCK_ENTRIES == 0) {
+        if (blocks == blockTs.length) {
+          blockTs = Arrays.copyOf(blockTs, blocks * 2);
+          blockOffsets = Arrays.copyOf(blockOffsets, blocks * 2);
+          blockLevels = Arrays.copyOf(blockLevels, blocks * 2);
+        }
+        blockTs[blocks] = ts;
+        blockOffsets[blocks] = offset;
+        blockLevels[blocks] = 0;
+        ++blocks;
+      }
+      blockLevels[blocks - 1] |= 1 << level;
+      minTs = Math.min(minTs, ts);
+      maxTs = Math.max(maxTs, ts);
+      ++levelCounts[level];
+      ++count;
+    }
+
+    void define(byte type, int id, String name) {
+      if (type == LOGGER) {
+        loggers.add(name);
+        loggerIds.put(name, id);
+      } else {
+        threads.add(name);
+        threadIds.put(name, id);
+      }
+    }
+
+    boolean hasLevel(int minLevel) {
+      for (int i = minLevel; i < levelCounts.length; ++i) {
+        if (levelCounts[i] > 0) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    void saveIndex() throws IOException {
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile())))) {
+        out.writeInt(MAGIC);
+        out.writeLong(length);
+        out.writeLong(minTs);
+        out.writeLong(maxTs);
+        out.writeInt(count);
+        for (int c : levelCounts) {
+          out.writeInt(c);
+        }
+        out.writeInt(loggers.size());
+        for (String name : loggers) {
+          out.writeUTF(name);
+        }
+        out.writeInt(threads.size());
+        for (String name : threads) {
+          out.writeUTF(name);
+        }
+        out.writeInt(blocks);
+        for (int i = 0; i < blocks; ++i) {
+          out.writeLong(blockTs[i]);
+          out.writeLong(blockOffsets[i]);
+          out.writeByte(blockLevels[i]);
+        }
+      }
+    }
+
+    /**
+     * @return false if there is no index or it is not of this segment
+     */
+    boolean loadIndex() {
+      File idx = indexFile();
+      if (!idx.exists()) {
+        return false;
+      }
+      try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(idx)))) {
+        if (in.readInt() != MAGIC || in.readLong() != file.length()) {
+          return false;
+        }
+        length = file.length();
+        minTs = in.readLong();
+        maxTs = in.readLong();
+        count = in.readInt();
+        for (int i = 0; i < levelCounts.length; ++i) {
+          levelCounts[i] = in.readInt();
+        }
+        int n = in.readInt();
+        for (int i = 0; i < n; ++i) {
+          define(LOGGER, i, in.readUTF());
+        }
+        n = in.readInt();
+        for (int i = 0; i < n; ++i) {
+          define(THREAD, i, in.readUTF());
+        }
+        blocks = in.readInt();
+        blockTs = new long[Math.max(blocks, 16)];
+        blockOffsets = new long[blockTs.length];
+        blockLevels = new byte[blockTs.length];
+        for (int i = 0; i < blocks; ++i) {
+          blockTs[i] = in.readLong();
+          blockOffsets[i] = in.readLong();
+          blockLevels[i] = in.readByte();
+        }
+        return true;
+      } catch (Exception e) {
+        log.warn("could not read index {} - {}", idx, e.getMessage());
+        return false;
+      }
+    }
+
+    /**
+     * rebuilds the index from the records, a record cut off by a crash is
+     * truncated
+     */
+    void scan() throws IOException {
+      long offset = HEADER_SIZE;
+      try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+        if (in.readInt() != MAGIC || in.readShort() != VERSION) {
+          throw new IOException(String.format("%s is not a log segment", file));
+        }
+        while (true) {
+          byte type = in.readByte();
+          if (type == ENTRY) {
+            long ts = in.readLong();
+            int level = in.readByte();
+            in.readShort();
+            in.readShort();
+            int size = in.readUnsignedShort();
+            if (in.skipBytes(size) < size) {
+              break;
+            }
+            indexed(offset, ts, level);
+            offset += 16 + size;
+          } else {
+            int id = in.readShort();
+            int size = utfSize(in);
+            define(type, id, in.readUTF());
+            offset += 5 + size;
+          }
+        }
+      } catch (EOFException e) {
+      }
+      if (offset < file.length()) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+          raf.setLength(offset);
+        }
+      }
+      length = offset;
+    }
+  }
+
+  final File dir;
+
+  final TreeMap<Long, Segment> segments = new TreeMap<>();
+
+  Segment active = null;
+
+  DataOutputStream out = null;
+
+  long maxBytes = 64 * 1024 * 1024;
+
+  long segmentBytes = 4 * 1024 * 1024;
+
+  long totalBytes = 0;
+
+  public LogStore(File dir) {
+    this.dir = dir;
+    dir.mkdirs();
+    open();
+  }
+
+  /**
+   * loads the indexes of the segments on disk - writing continues in a new
+   * segment
+   */
+  synchronized void open() {
+    File[] files = dir.listFiles((d, name) -> name.endsWith(".seg"));
+    if (files == null) {
+      return;
+    }
+    for (File file : files) {
+      try {
+        long id = Long.parseLong(file.getName().replace(".seg", ""));
+        Segment segment = new Segment(id, file);
+        if (!segment.loadIndex()) {
+          segment = new Segment(id, file);
+          segment.scan();
+          segment.saveIndex();
+        }
+        segments.put(id, segment);
+        totalBytes += segment.length;
+      } catch (Exception e) {
+        log.warn("skipping log segment {} - {}", file, e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * appends entries in the order given - called by the one thread which drains
+   * the log buffer
+   */
+  public synchronized void append(List<LogEntry> entries) throws IOException {
+    for (LogEntry entry : entries) {
+      if (active == null || active.length >= segmentBytes || active.loggers.size() >= Short.MAX_VALUE || active.threads.size() >= Short.MAX_VALUE) {
+        roll(entry.ts);
+      }
+      int logger = id(LOGGER, entry.className);
+      int thread = id(THREAD, entry.threadName);
+      String body = (entry.body == null) ? "" : entry.body;
+      if (body.length() > MAX_BODY) {
+        body = body.substring(0, MAX_BODY);
+      }
+      int level = toLevel(entry.level);
+      long offset = active.length;
+      int start = out.size();
+      out.writeByte(ENTRY);
+      out.writeLong(entry.ts);
+      out.writeByte(level);
+      out.writeShort(logger);
+      out.writeShort(thread);
+      out.writeUTF(body);
+      active.length += out.size() - start;
+      active.indexed(offset, entry.ts, level);
+    }
+    if (out != null) {
+      out.flush();
+    }
+  }
+
+  int id(byte type, String name) throws IOException {
+    if (name == null) {
+      name = "";
+    }
+    Map<String, Integer> ids = (type == LOGGER) ? active.loggerIds : active.threadIds;
+    Integer id = ids.get(name);
+    if (id != null) {
+      return id;
+    }
+    id = ids.size();
+    int start = out.size();
+    out.writeByte(type);
+    out.writeShort(id);
+    out.writeUTF(name);
+    active.length += out.size() - start;
+    active.define(type, id, name);
+    return id;
+  }
+
+  void roll(long ts) throws IOException {
+    closeActive();
+    long id = Math.max(ts, segments.isEmpty() ? 0 : segments.lastKey() + 1);
+    File file = new File(dir, String.format("%d.seg", id));
+    active = new Segment(id, file);
+    out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+    out.writeInt(MAGIC);
+    out.writeShort(VERSION);
+    segments.put(id, active);
+    totalBytes += HEADER_SIZE;
+    evict();
+  }
+
+  /**
+   * deletes the oldest segments until the store is within the disk budget -
+   * the newest is always kept
+   */
+  void evict() {
+    while (getTotalBytes() > maxBytes && segments.size() > 1) {
+      Segment oldest = segments.pollFirstEntry().getValue();
+      totalBytes -= oldest.length;
+      oldest.file.delete();
+      oldest.indexFile().delete();
+      log.debug("deleted log segment {}", oldest.file);
+    }
+  }
+
+  void closeActive() throws IOException {
+    if (active == null) {
+      return;
+    }
+    out.close();
+    out = null;
+    totalBytes += active.length - HEADER_SIZE;
+    active.saveIndex();
+    active = null;
+  }
+
+  public synchronized void close() {
+    try {
+      closeActive();
+    } catch (IOException e) {
+      log.error("could not close log store {}", dir, e);
+    }
+  }
+
+  /**
+   * entries in time order which match all given filters
+   *
+   * @param from
+   *          - ms, null for the beginning
+   * @param to
+   *          - ms, null for now
+   * @param minLevel
+   *          - lowest level, e.g. WARN for WARN and ERROR
+   * @param logger
+   *          - part of the logger name, e.g. Arduino
+   * @param thread
+   *          - part of the thread name
+   * @param text
+   *          - part of the message
+   * @param cursor
+   *          - next of the previous page, null for the first page
+   * @param limit
+   *          - entries per page
+   */
+  public synchronized LogPage query(Long from, Long to, String minLevel, String logger, String thread, String text, String cursor, int limit) throws IOException {
+    long startTs = System.currentTimeMillis();
+    limit = Math.max(1, limit);
+    long fromTs = (from == null) ? Long.MIN_VALUE : from;
+    long toTs = (to == null) ? Long.MAX_VALUE : to;
+    int level = toLevel(minLevel);
+    LogPage page = new LogPage();
+
+    if (out != null) {
+      out.flush();
+    }
+
+    long cursorSegment = Long.MIN_VALUE;
+    long cursorOffset = 0;
+    if (cursor != null) {
+      String[] parts = cursor.split(":");
+      cursorSegment = Long.parseLong(parts[0]);
+      cursorOffset = Long.parseLong(parts[1]);
+    }
+
+    for (Segment segment : segments.tailMap(cursorSegment, true).values()) {
+      if (segment.count == 0 || segment.maxTs < fromTs || segment.minTs > toTs || !segment.hasLevel(level)) {
+        ++page.segmentsSkipped;
+        continue;
+      }
+      boolean[] loggers = match(segment.loggers, logger);
+      boolean[] threads = match(segment.threads, thread);
+      if (loggers == null || threads == null) {
+        ++page.segmentsSkipped;
+        continue;
+      }
+      ++page.segmentsScanned;
+      long offset = (segment.id == cursorSegment) ? cursorOffset : 0;
+      long next = scan(segment, offset, fromTs, toTs, level, loggers, threads, text, page, limit);
+      if (next >= 0) {
+        page.next = String.format("%d:%d", segment.id, next);
+        break;
+      }
+    }
+    page.elapsedMs = System.currentTimeMillis() - startTs;
+    return page;
+  }
+
+  /**
+   * @return which ids match the filter, all for no filter, null if none do
+   */
+  static boolean[] match(List<String> names, String filter) {
+    boolean[] match = new boolean[names.size()];
+    boolean any = false;
+    for (int i = 0; i < match.length; ++i) {
+      match[i] = filter == null || filter.isEmpty() || names.get(i).contains(filter);
+      any |= match[i];
+    }
+    return any ? match : null;
+  }
+
+  /**
+   * reads the matching entries of a segment into the page
+   *
+   * @return offset to continue at if the page is full, -1 if the segment is
+   *         done
+   */
+  long scan(Segment segment, long offset, long fromTs, long toTs, int level, boolean[] loggers, boolean[] threads, String text, LogPage page, int limit) throws IOException {
+    int levelMask = 0;
+    for (int i = level; i < LEVELS.length; ++i) {
+      levelMask |= 1 << i;
+    }
+
+    try (RandomAccessFile raf = new RandomAccessFile(segment.file, "r")) {
+      for (int b = 0; b < segment.blocks; ++b) {
+        long blockEnd = (b + 1 < segment.blocks) ? segment.blockOffsets[b + 1] : segment.length;
+        if (blockEnd <= offset || (segment.blockLevels[b] & levelMask) == 0) {
+          continue;
+        }
+        if (b + 1 < segment.blocks && segment.blockTs[b + 1] < fromTs) {
+          continue;
+        }
+        if (segment.blockTs[b] > toTs) {
+          break;
+        }
+        long pos = Math.max(offset, segment.blockOffsets[b]);
+        raf.seek(pos);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(raf.getChannel()), 8192));
+        while (pos < blockEnd) {
+          byte type = in.readByte();
+          if (type != ENTRY) {
+            // definitions are already in the index
+            in.readShort();
+            int size = in.readUnsignedShort();
+            in.skipBytes(size);
+            pos += 5 + size;
+            continue;
+          }
+          if (page.entries.size() >= limit) {
+            return pos;
+          }
+          long ts = in.readLong();
+          int l = in.readByte();
+          int logger = in.readShort();
+          int thread = in.readShort();
+          int size = utfSize(in);
+          pos += 16 + size;
+          if (ts < fromTs || ts > toTs || l < level || !loggers[logger] || !threads[thread]) {
+            in.skipBytes(size + 2);
+            continue;
+          }
+          String body = in.readUTF();
+          if (text != null && !text.isEmpty() && !body.contains(text)) {
+            continue;
+          }
+          LogEntry entry = new LogEntry();
+          entry.ts = ts;
+          entry.level = LEVELS[l];
+          entry.className = segment.loggers.get(logger);
+          entry.threadName = segment.threads.get(thread);
+          entry.body = body;
+          page.entries.add(entry);
+        }
+      }
+    }
+    return -1;
+  }
+
+  public synchronized void setMaxBytes(long maxBytes) {
+    this.maxBytes = maxBytes;
+    evict();
+  }
+
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  public synchronized void setSegmentBytes(long segmentBytes) {
+    this.segmentBytes = segmentBytes;
+  }
+
+  public synchronized long getTotalBytes() {
+    return totalBytes + ((active == null) ? 0 : active.length - HEADER_SIZE);
+  }
+
+  public synchronized int getSegmentCount() {
+    return segments.size();
+  }
+
+}
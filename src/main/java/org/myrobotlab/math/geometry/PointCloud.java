@@ -1,32 +1,363 @@
 package org.myrobotlab.math.geometry;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
 /**
  * TODO - add more meta data ?
- * 
+ *
+ * Points are stored in direct (off heap) float buffers, x y z packed in one
+ * buffer and r g b a in an optional second one. That is the layout of the jME
+ * Position and Color vertex buffers, so a cloud can be handed to a mesh
+ * without copying, and a depth frame is two buffers instead of an object per
+ * point.
+ *
+ * An organized cloud (width x height) keeps the layout of the depth image,
+ * point index = row * width + column.
+ *
+ * The buffers are not serialized, and neither is the size - a serialized cloud
+ * comes back empty instead of claiming points it does not have.
+ *
  * @author GroG
  *
  */
 public class PointCloud {
-  int width = 0;
-  int height = 0;
-  // FloatBuffer data = null;
-  Point3df[] data;
-  float[] colors;
+  transient int width = 0;
+  transient int height = 0;
+  transient int size = 0;
+  transient FloatBuffer points;
+  transient FloatBuffer colors;
+
+  /**
+   * empty cloud
+   *
+   * @param capacity
+   *          number of points before the buffers have to grow
+   * @param hasColors
+   *          allocate a color buffer
+   */
+  public PointCloud(int capacity, boolean hasColors) {
+    points = createBuffer(Math.max(1, capacity) * 3);
+    if (hasColors) {
+      colors = createBuffer(Math.max(1, capacity) * 4);
+    }
+  }
+
+  /**
+   * organized cloud of width * height points, all at 0,0,0
+   */
+  public PointCloud(int width, int height, boolean hasColors) {
+    this(width * height, hasColors);
+    this.width = width;
+    this.height = height;
+    size = width * height;
+  }
 
   public PointCloud(Point3df[] data) {
-    this.data = data;
+    this(data.length, false);
+    for (Point3df p : data) {
+      add(p.x, p.y, p.z);
+    }
+  }
+
+  /**
+   * @return a direct float buffer in native byte order
+   */
+  public static FloatBuffer createBuffer(int floats) {
+    return ByteBuffer.allocateDirect(floats * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public int capacity() {
+    return (points == null) ? 0 : points.capacity() / 3;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  public boolean isOrganized() {
+    return width > 0 && width * height == size;
+  }
+
+  public boolean hasColors() {
+    return colors != null;
+  }
+
+  /**
+   * removes all points, the buffers are kept
+   */
+  public void clear() {
+    size = 0;
+    width = 0;
+    height = 0;
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (capacity <= capacity()) {
+      return;
+    }
+    int newCapacity = Math.max(capacity, capacity() * 2);
+    if (points == null) {
+      // a deserialized cloud
+      points = createBuffer(newCapacity * 3);
+      return;
+    }
+    points = grow(points, newCapacity * 3, size * 3);
+    if (colors != null) {
+      colors = grow(colors, newCapacity * 4, size * 4);
+    }
+  }
+
+  private static FloatBuffer grow(FloatBuffer buffer, int floats, int used) {
+    FloatBuffer grown = createBuffer(floats);
+    buffer.position(0).limit(used);
+    grown.put(buffer);
+    buffer.clear();
+    grown.clear();
+    return grown;
+  }
+
+  /**
+   * appends a point
+   *
+   * @return the index of the point
+   */
+  public int add(float x, float y, float z) {
+    ensureCapacity(size + 1);
+    set(size, x, y, z);
+    return size++;
   }
 
+  public int add(float x, float y, float z, float r, float g, float b, float a) {
+    int i = add(x, y, z);
+    setColor(i, r, g, b, a);
+    return i;
+  }
+
+  /**
+   * sets a point - absolute puts, so different threads can fill different
+   * points of the same cloud
+   */
+  public void set(int i, float x, float y, float z) {
+    int o = i * 3;
+    points.put(o, x);
+    points.put(o + 1, y);
+    points.put(o + 2, z);
+  }
+
+  public void setColor(int i, float r, float g, float b, float a) {
+    if (colors == null) {
+      colors = createBuffer(capacity() * 4);
+    }
+    int o = i * 4;
+    colors.put(o, r);
+    colors.put(o + 1, g);
+    colors.put(o + 2, b);
+    colors.put(o + 3, a);
+  }
+
+  public float getX(int i) {
+    return points.get(i * 3);
+  }
+
+  public float getY(int i) {
+    return points.get(i * 3 + 1);
+  }
+
+  public float getZ(int i) {
+    return points.get(i * 3 + 2);
+  }
+
+  /**
+   * The x y z buffer itself, position 0 and limit at the last point - it can
+   * be used directly as a jME Position buffer. It is not a copy, later changes
+   * to the cloud show up in it.
+   */
+  public FloatBuffer getPoints() {
+    ensureCapacity(1);
+    points.clear();
+    points.limit(size * 3);
+    return points;
+  }
+
+  /**
+   * the r g b a buffer, like getPoints, null if the cloud has no colors
+   */
+  public FloatBuffer getColorBuffer() {
+    if (colors == null) {
+      return null;
+    }
+    colors.clear();
+    colors.limit(size * 4);
+    return colors;
+  }
+
+  /**
+   * @return a copy of the points as objects
+   */
   public Point3df[] getData() {
+    Point3df[] data = new Point3df[size];
+    for (int i = 0; i < size; i++) {
+      data[i] = new Point3df(getX(i), getY(i), getZ(i));
+    }
     return data;
   }
 
+  /**
+   * copies rgba colors (4 floats per point) into the color buffer
+   */
   public void setColors(float[] colors) {
-    this.colors = colors;
+    if (colors == null) {
+      this.colors = null;
+      return;
+    }
+    if (this.colors == null || this.colors.capacity() < colors.length) {
+      this.colors = createBuffer(Math.max(colors.length, capacity() * 4));
+    }
+    this.colors.clear();
+    this.colors.put(colors);
+    this.colors.clear();
   }
 
+  /**
+   * @return a copy of the colors, null if the cloud has no colors
+   */
   public float[] getColors() {
-    return colors;
+    if (colors == null) {
+      return null;
+    }
+    float[] copy = new float[size * 4];
+    getColorBuffer().get(copy);
+    colors.clear();
+    return copy;
+  }
+
+  /**
+   * Keeps every step-th point. An organized cloud keeps every step-th row and
+   * column and stays organized.
+   */
+  public PointCloud downsample(int step) {
+    if (step <= 1) {
+      step = 1;
+    }
+    PointCloud out;
+    if (isOrganized()) {
+      int w = (width + step - 1) / step;
+      int h = (height + step - 1) / step;
+      out = new PointCloud(w, h, colors != null);
+      int o = 0;
+      for (int row = 0; row < height; row += step) {
+        for (int column = 0; column < width; column += step) {
+          copyPoint(row * width + column, out, o++);
+        }
+      }
+    } else {
+      out = new PointCloud((size + step - 1) / step, colors != null);
+      for (int i = 0; i < size; i += step) {
+        copyPoint(i, out, out.size++);
+      }
+    }
+    return out;
+  }
+
+  private void copyPoint(int i, PointCloud out, int o) {
+    out.set(o, getX(i), getY(i), getZ(i));
+    if (colors != null) {
+      int c = i * 4;
+      out.setColor(o, colors.get(c), colors.get(c + 1), colors.get(c + 2), colors.get(c + 3));
+    }
+  }
+
+  /**
+   * Replaces the points in each cube of voxelSize by their centroid (colors
+   * are averaged too). One pass over the buffers with an open addressing hash
+   * of the voxel coordinates, points which are not finite are dropped. Voxel
+   * coordinates are taken modulo 2^21, so the cloud should be less than 2
+   * million voxels across.
+   *
+   * @return unorganized cloud with a point per occupied voxel, in the order
+   *         the voxels were first seen
+   */
+  public PointCloud voxelFilter(float voxelSize) {
+    int slots = Integer.highestOneBit(Math.max(16, size * 2) - 1) << 1;
+    int mask = slots - 1;
+    long[] keys = new long[slots];
+    // voxel number + 1 per slot, 0 is empty
+    int[] voxelOf = new int[slots];
+    int components = (colors != null) ? 7 : 3;
+    double[] sums = new double[Math.max(1, size) * components];
+    int[] counts = new int[Math.max(1, size)];
+    int voxels = 0;
+    float scale = 1 / voxelSize;
+
+    for (int i = 0; i < size; i++) {
+      float x = getX(i);
+      float y = getY(i);
+      float z = getZ(i);
+      if (!isFinite(x) || !isFinite(y) || !isFinite(z)) {
+        continue;
+      }
+      long key = (((long) Math.floor(x * scale) & 0x1FFFFF) << 42) | (((long) Math.floor(y * scale) & 0x1FFFFF) << 21) | ((long) Math.floor(z * scale) & 0x1FFFFF);
+      int slot = (int) mix(key) & mask;
+      while (voxelOf[slot] != 0 && keys[slot] != key) {
+        slot = (slot + 1) & mask;
+      }
+      if (voxelOf[slot] == 0) {
+        keys[slot] = key;
+        voxelOf[slot] = ++voxels;
+      }
+      int v = voxelOf[slot] - 1;
+      int s = v * components;
+      ++counts[v];
+      sums[s] += x;
+      sums[s + 1] += y;
+      sums[s + 2] += z;
+      if (colors != null) {
+        int c = i * 4;
+        sums[s + 3] += colors.get(c);
+        sums[s + 4] += colors.get(c + 1);
+        sums[s + 5] += colors.get(c + 2);
+        sums[s + 6] += colors.get(c + 3);
+      }
+    }
+
+    PointCloud out = new PointCloud(voxels, colors != null);
+    for (int v = 0; v < voxels; v++) {
+      int s = v * components;
+      double n = counts[v];
+      out.set(v, (float) (sums[s] / n), (float) (sums[s + 1] / n), (float) (sums[s + 2] / n));
+      if (colors != null) {
+        out.setColor(v, (float) (sums[s + 3] / n), (float) (sums[s + 4] / n), (float) (sums[s + 5] / n), (float) (sums[s + 6] / n));
+      }
+    }
+    out.size = voxels;
+    return out;
+  }
+
+  private static boolean isFinite(float f) {
+    return !Float.isNaN(f) && !Float.isInfinite(f);
+  }
+
+  // spreads the bits of a voxel key over the hash table
+  private static long mix(long key) {
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+    return key;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("PointCloud %d points%s%s", size, isOrganized() ? String.format(" (%d x %d)", width, height) : "", (colors != null) ? " with colors" : "");
   }
 
 }
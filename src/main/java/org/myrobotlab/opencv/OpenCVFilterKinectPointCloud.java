@@ -103,8 +103,10 @@ public class OpenCVFilterKinectPointCloud extends OpenCVFilter {
   float cameraHeading = 0;
   float cameraTilt = 0;// degrees ?
   double r, theta, phi;
-  Point3df[] depthBuffer;
-  float[] colorBuffer;
+  // two clouds used in turn - the one published last frame can still be in
+  // use by the renderer while the next one is filled
+  transient PointCloud[] clouds = new PointCloud[2];
+  int frame = 0;
   IplImage color;
   // double focalLength = h / 2 * Math.tan((43 * 0.0174533)/2);
   // BoofCv
@@ -172,11 +174,11 @@ public class OpenCVFilterKinectPointCloud extends OpenCVFilter {
     // xy = y world coordinate
     // zy = z world coordinate
 
-    // buffer = FloatBuffer.allocate(depth.width() * depth.height());
-    depthBuffer = new Point3df[width * height];
-    if (colorBuffer == null) {
-      colorBuffer = new float[width * height * 4]; // RGBA
+    int slot = frame++ & 1;
+    if (clouds[slot] == null || clouds[slot].getWidth() != width || clouds[slot].getHeight() != height) {
+      clouds[slot] = new PointCloud(width, height, true); // RGBA
     }
+    final PointCloud cloud = clouds[slot];
 
     /**
      * <pre>
@@ -204,7 +206,7 @@ public class OpenCVFilterKinectPointCloud extends OpenCVFilter {
             // zw = D * f / sqrt(xv² + yv² + f²)
             // https://hub.jmonkeyengine.org/t/point-cloud-visualization/25838
 
-            int index = yv * height + xv;
+            int index = xv * width + yv;
             // colorIdx.put(index, 33);
             // colorIdx.put(index+1, 33);
 
@@ -224,7 +226,7 @@ public class OpenCVFilterKinectPointCloud extends OpenCVFilter {
 
             // points[index] = new Point3df((float)xw,(float)yw,(float)zw);
             // jmonkey has a flipped y/x
-            depthBuffer[index] = new Point3df((float) yw, (float) xw, (float) zw);
+            cloud.set(index, (float) yw, (float) xw, (float) zw);
             if (color != null) {
 
             }
@@ -233,8 +235,7 @@ public class OpenCVFilterKinectPointCloud extends OpenCVFilter {
       }
     });
 
-    pointCloud = new PointCloud(depthBuffer);
-    pointCloud.setColors(colorBuffer);
+    pointCloud = cloud;
 
     // NO MORE PUBLISHING - just put into OpenCVData !!!
     // publishPointCloud(pointCloud);
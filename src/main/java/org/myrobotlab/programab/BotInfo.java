@@ -24,6 +24,7 @@ public class BotInfo {
   private transient Bot bot;
   public Properties properties = new Properties();
   private transient ProgramAB programab;
+  private transient PredicateStore predicateStore;
 
   /**
    * base64 png
@@ -75,6 +76,18 @@ public class BotInfo {
     return getBot();
   }
 
+  /**
+   * the write-behind predicate store shared by all sessions of this bot
+   * 
+   * @return
+   */
+  public synchronized PredicateStore getPredicateStore() {
+    if (predicateStore == null) {
+      predicateStore = new PredicateStore(name, path);
+    }
+    return predicateStore;
+  }
+
   public boolean isActive() {
     return bot != null;
   }
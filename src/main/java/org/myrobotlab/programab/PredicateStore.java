@@ -0,0 +1,325 @@
+package org.myrobotlab.programab;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.myrobotlab.io.FileIO;
+import org.myrobotlab.logging.LoggerFactory;
+import org.slf4j.Logger;
+
+/**
+ * PredicateStore is a write-behind store for the predicates of all sessions of
+ * a single bot. Instead of rewriting every users predicates file, only changed
+ * predicates are appended to a per-bot log (config/predicates.log). Pending
+ * changes are written to the log on flush() - how often that happens and
+ * whether the log is fsync'd decides how much state can be lost on a crash.
+ *
+ * When the log grows beyond compactThreshold records compact() folds it into
+ * the regular config/{userName}.predicates.txt files and truncates it.
+ *
+ * log record format - one per line, tab separated, values escaped
+ *
+ * <pre>
+ * + userName predicateName value
+ * - userName predicateName
+ * </pre>
+ *
+ */
+public class PredicateStore {
+
+  transient public final static Logger log = LoggerFactory.getLogger(PredicateStore.class);
+
+  final static String SET = "+";
+  final static String REMOVE = "-";
+
+  final String botName;
+
+  final File botPath;
+
+  final File logFile;
+
+  /**
+   * changes recorded but not yet written to the log
+   */
+  List<String> pending = new ArrayList<>();
+
+  /**
+   * number of records currently in the log file
+   */
+  int logSize = -1;
+
+  /**
+   * fsync the log on every flush - survives os crashes and power loss at the
+   * cost of flush latency
+   */
+  public boolean sync = false;
+
+  /**
+   * when the log has more records than this it is folded back into the
+   * predicates files
+   */
+  public int compactThreshold = 1000;
+
+  public PredicateStore(String botName, File botPath) {
+    this.botName = botName;
+    this.botPath = botPath;
+    this.logFile = new File(FileIO.gluePaths(botPath.getAbsolutePath(), "config/predicates.log"));
+  }
+
+  public File getPredicatesFile(String userName) {
+    return new File(FileIO.gluePaths(botPath.getAbsolutePath(), String.format("config/%s.predicates.txt", userName)));
+  }
+
+  /**
+   * record a changed predicate - a null value records a removal
+   *
+   * @param userName
+   * @param predicateName
+   * @param value
+   */
+  public synchronized void record(String userName, String predicateName, String value) {
+    if (value == null) {
+      pending.add(String.format("%s\t%s\t%s", REMOVE, escape(userName), escape(predicateName)));
+    } else {
+      pending.add(String.format("%s\t%s\t%s\t%s", SET, escape(userName), escape(predicateName), escape(value)));
+    }
+  }
+
+  public synchronized int getPendingCount() {
+    return pending.size();
+  }
+
+  public synchronized int getLogSize() {
+    if (logSize < 0) {
+      logSize = readLog().size();
+    }
+    return logSize;
+  }
+
+  /**
+   * append all pending changes to the log
+   *
+   * @return number of records written
+   */
+  public synchronized int flush() {
+    if (pending.size() == 0) {
+      return 0;
+    }
+    StringBuilder sb = new StringBuilder();
+    for (String record : pending) {
+      sb.append(record).append("\n");
+    }
+    logFile.getParentFile().mkdirs();
+    int count = pending.size();
+    int before = getLogSize();
+    try (FileOutputStream fos = new FileOutputStream(logFile, true)) {
+      fos.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+      if (sync) {
+        fos.getFD().sync();
+      }
+      pending.clear();
+      logSize = before + count;
+    } catch (IOException e) {
+      // pending is kept - next flush will retry
+      log.error("writing predicate log {} threw", logFile, e);
+      return 0;
+    }
+    return count;
+  }
+
+  /**
+   * apply all logged changes for userName to predicates - used when a session
+   * is loaded after its predicates file has been read
+   *
+   * @param userName
+   * @param predicates
+   */
+  public synchronized void replay(String userName, Map<String, String> predicates) {
+    for (String[] record : readLog()) {
+      if (!userName.equals(record[1])) {
+        continue;
+      }
+      if (REMOVE.equals(record[0])) {
+        predicates.remove(record[2]);
+      } else {
+        predicates.put(record[2], record[3]);
+      }
+    }
+  }
+
+  /**
+   * fold the log into the users predicates files and truncate it
+   *
+   * @return number of predicates files rewritten
+   */
+  public synchronized int compact() {
+    flush();
+    List<String[]> records = readLog();
+    if (records.size() == 0) {
+      return 0;
+    }
+
+    Map<String, Map<String, String>> users = new TreeMap<>();
+    for (String[] record : records) {
+      Map<String, String> predicates = users.get(record[1]);
+      if (predicates == null) {
+        predicates = readPredicatesFile(getPredicatesFile(record[1]));
+        users.put(record[1], predicates);
+      }
+      if (REMOVE.equals(record[0])) {
+        predicates.remove(record[2]);
+      } else {
+        predicates.put(record[2], record[3]);
+      }
+    }
+
+    for (String userName : users.keySet()) {
+      try {
+        writePredicatesFile(getPredicatesFile(userName), users.get(userName), false);
+      } catch (IOException e) {
+        // leave the log alone - nothing is lost, compaction is retried later
+        log.error("compacting predicates for {} threw", userName, e);
+        return 0;
+      }
+    }
+
+    if (!logFile.delete()) {
+      log.error("could not truncate {}", logFile);
+    }
+    logSize = 0;
+    log.info("compacted {} predicate records of bot {} into {} files", records.size(), botName, users.size());
+    return users.size();
+  }
+
+  /**
+   * compact only if the log has grown past compactThreshold
+   *
+   * @return true if compacted
+   */
+  public synchronized boolean compactIfNeeded() {
+    if (getLogSize() + getPendingCount() > compactThreshold) {
+      compact();
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * write a full predicates file - this is the format
+   * Predicates.getPredicateDefaults reads
+   *
+   * @param file
+   * @param predicates
+   * @param sync
+   * @throws IOException
+   */
+  static public void writePredicatesFile(File file, Map<String, String> predicates, boolean sync) throws IOException {
+    StringBuilder sb = new StringBuilder();
+    for (String predicate : predicates.keySet()) {
+      sb.append(predicate + ":" + predicates.get(predicate) + "\n");
+    }
+    file.getParentFile().mkdirs();
+    // write then rename so a crash mid-write does not leave a partial file
+    File tmp = new File(file.getAbsolutePath() + ".tmp");
+    try (FileOutputStream fos = new FileOutputStream(tmp)) {
+      fos.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+      if (sync) {
+        fos.getFD().sync();
+      }
+    }
+    if (file.exists() && !file.delete()) {
+      throw new IOException(String.format("could not replace %s", file));
+    }
+    if (!tmp.renameTo(file)) {
+      throw new IOException(String.format("could not rename %s to %s", tmp, file));
+    }
+  }
+
+  static Map<String, String> readPredicatesFile(File file) {
+    Map<String, String> predicates = new LinkedHashMap<>();
+    if (!file.exists()) {
+      return predicates;
+    }
+    try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = br.readLine()) != null) {
+        int pos = line.indexOf(":");
+        if (pos > 0) {
+          predicates.put(line.substring(0, pos), line.substring(pos + 1));
+        }
+      }
+    } catch (IOException e) {
+      log.error("reading predicates {} threw", file, e);
+    }
+    return predicates;
+  }
+
+  List<String[]> readLog() {
+    List<String[]> records = new ArrayList<>();
+    if (!logFile.exists()) {
+      return records;
+    }
+    try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(logFile), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = br.readLine()) != null) {
+        String[] parts = line.split("\t", -1);
+        // a torn last line from a crash is skipped
+        if ((SET.equals(parts[0]) && parts.length == 4) || (REMOVE.equals(parts[0]) && parts.length == 3)) {
+          for (int i = 1; i < parts.length; ++i) {
+            parts[i] = unescape(parts[i]);
+          }
+          records.add(parts);
+        } else {
+          log.warn("skipping bad predicate log record \"{}\"", line);
+        }
+      }
+    } catch (IOException e) {
+      log.error("reading predicate log {} threw", logFile, e);
+    }
+    return records;
+  }
+
+  static String escape(String s) {
+    return s.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+  }
+
+  static String unescape(String s) {
+    if (s.indexOf('\\') < 0) {
+      return s;
+    }
+    StringBuilder sb = new StringBuilder(s.length());
+    for (int i = 0; i < s.length(); ++i) {
+      char c = s.charAt(i);
+      if (c == '\\' && i + 1 < s.length()) {
+        char n = s.charAt(++i);
+        switch (n) {
+          case 't':
+            sb.append('\t');
+            break;
+          case 'n':
+            sb.append('\n');
+            break;
+          case 'r':
+            sb.append('\r');
+            break;
+          default:
+            sb.append(n);
+        }
+      } else {
+        sb.append(c);
+      }
+    }
+    return sb.toString();
+  }
+
+}
@@ -1,9 +1,11 @@
 package org.myrobotlab.programab;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
 
 import org.alicebot.ab.Chat;
 import org.alicebot.ab.Predicates;
@@ -40,6 +42,17 @@ public class Session {
   // public Map<String,String> predicates = new TreeMap<>();
   public Predicates predicates = null;
 
+  /**
+   * predicates as last recorded in the PredicateStore - used to find what
+   * changed
+   */
+  transient Map<String, String> recorded = new HashMap<>();
+
+  /**
+   * the predicates of chat - they know which predicates changed
+   */
+  transient TrackedPredicates tracked = null;
+
   /**
    * Session for a user and bot
    * 
@@ -65,38 +78,74 @@ public class Session {
   private synchronized Chat getChat() {
     if (chat == null) {
       chat = new Chat(botInfo.getBot());
+      tracked = new TrackedPredicates(chat.predicates);
+      chat.predicates = tracked;
       // loading predefined predicates - if they exist
       File userPredicates = new File(FileIO.gluePaths(botInfo.path.getAbsolutePath(), String.format("config/%s.predicates.txt", userName)));
       if (userPredicates.exists()) {
         predicatesFile = userPredicates;
         chat.predicates.getPredicateDefaults(userPredicates.getAbsolutePath());
       }
+      // changes not yet compacted into the predicates file
+      botInfo.getPredicateStore().replay(userName, chat.predicates);
+      recorded = new HashMap<>(chat.predicates);
+      tracked.takeChanges();
     }
     predicates = chat.predicates;
     return chat;
   }
 
-  public void savePredicates() {
-    StringBuilder sb = new StringBuilder();
-    for (String predicate : getChat().predicates.keySet()) {
-      String value = getChat().predicates.get(predicate);
-      sb.append(predicate + ":" + value + "\n");
+  /**
+   * @return true if predicates were set or removed since they were last
+   *         recorded
+   */
+  public boolean hasChanges() {
+    return tracked != null && tracked.hasChanges();
+  }
+
+  /**
+   * compares the predicates changed since the last call with what was last
+   * recorded and records only the changed ones in the bots PredicateStore
+   * 
+   * @return number of changed predicates
+   */
+  public synchronized int recordChanges() {
+    if (chat == null) {
+      return 0;
     }
-    File predicates = new File(FileIO.gluePaths(botInfo.path.getAbsolutePath(), String.format("config/%s.predicates.txt", userName)));
-    predicates.getParentFile().mkdirs();
-    log.info("Bot : {} User : {} Predicates Filename : {} ", botInfo.name, userName, predicates);
-    try {
-      FileOutputStream fos = new FileOutputStream(predicates);
-      fos.write(sb.toString().getBytes());
-      fos.close();
-    } catch (Exception e) {
-      log.error("writing predicates threw", e);
+    PredicateStore store = botInfo.getPredicateStore();
+    int changes = 0;
+    Set<String> changed = tracked.takeChanges();
+    for (String predicate : changed) {
+      if (!chat.predicates.containsKey(predicate)) {
+        if (recorded.remove(predicate) != null) {
+          store.record(userName, predicate, null);
+          ++changes;
+        }
+        continue;
+      }
+      String value = chat.predicates.get(predicate);
+      if (value != null && !value.equals(recorded.get(predicate))) {
+        store.record(userName, predicate, value);
+        recorded.put(predicate, value);
+        ++changes;
+      }
     }
+    return changes;
+  }
+
+  /**
+   * record changed predicates and append them to the bots predicate log
+   */
+  public void savePredicates() {
+    recordChanges();
+    botInfo.getPredicateStore().flush();
   }
 
   public Response getResponse(String inText) {
 
     String text = getChat().multisentenceRespond(inText);
+    programab.onPredicatesChanged(this);
 
     // Find any oob tags
     ArrayList<OOBPayload> oobTags = OOBPayload.extractOOBPayloads(text, programab);
@@ -131,10 +180,12 @@ public class Session {
 
   public void remove(String predicateName) {
     getChat().predicates.remove(predicateName);
+    programab.onPredicatesChanged(this);
   }
 
   public void setPredicate(String predicateName, String predicateValue) {
     getChat().predicates.put(predicateName, predicateValue);
+    programab.onPredicatesChanged(this);
   }
 
   public String getPredicate(String predicateName) {
@@ -0,0 +1,76 @@
+package org.myrobotlab.programab;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.alicebot.ab.Predicates;
+
+/**
+ * Predicates of a chat which remember the names of the predicates set to a
+ * new value or removed since the changes were last taken, so a session can
+ * record its changes without comparing every predicate. Changes are tracked
+ * through put, remove and clear - which is what Program AB and the session
+ * use.
+ */
+public class TrackedPredicates extends Predicates {
+
+  private static final long serialVersionUID = 1L;
+
+  private final Set<String> changed = new HashSet<>();
+
+  public TrackedPredicates(Map<String, String> predicates) {
+    // copied without tracking
+    super.putAll(predicates);
+  }
+
+  @Override
+  public String put(String key, String value) {
+    String old = super.put(key, value);
+    if (!Objects.equals(old, value)) {
+      synchronized (changed) {
+        changed.add(key);
+      }
+    }
+    return old;
+  }
+
+  @Override
+  public String remove(Object key) {
+    boolean existed = containsKey(key);
+    String old = super.remove(key);
+    if (existed && key instanceof String) {
+      synchronized (changed) {
+        changed.add((String) key);
+      }
+    }
+    return old;
+  }
+
+  @Override
+  public void clear() {
+    synchronized (changed) {
+      changed.addAll(keySet());
+    }
+    super.clear();
+  }
+
+  public boolean hasChanges() {
+    synchronized (changed) {
+      return !changed.isEmpty();
+    }
+  }
+
+  /**
+   * @return names of the predicates changed since the last call
+   */
+  public Set<String> takeChanges() {
+    synchronized (changed) {
+      Set<String> ret = new HashSet<>(changed);
+      changed.clear();
+      return ret;
+    }
+  }
+
+}
@@ -7,6 +7,7 @@ import java.util.concurrent.ConcurrentHashMap;
 
 import org.myrobotlab.codec.CodecUtils;
 import org.myrobotlab.framework.Service;
+import org.myrobotlab.framework.SimClock;
 import org.myrobotlab.framework.interfaces.Attachable;
 import org.myrobotlab.framework.interfaces.Broadcaster;
 import org.myrobotlab.io.FileIO;
@@ -29,7 +30,7 @@ import org.slf4j.Logger;
  *         multiple calculations/trajectories/encoding for many other services
  *
  */
-public class TimeEncoder implements Runnable, EncoderControl {
+public class TimeEncoder implements Runnable, EncoderControl, SimClock.Steppable {
 
   public final static Logger log = LoggerFactory.getLogger(TimeEncoder.class);
 
@@ -88,6 +89,15 @@ public class TimeEncoder implements Runnable, EncoderControl {
 
   boolean enabled = true;
 
+  // servo started event not sent yet for the current move
+  boolean started = false;
+
+  // a move is being stepped by the simulation clock
+  volatile boolean simMoving = false;
+
+  // simulated time of the next encoder sample
+  long nextSampleTs;
+
   static class Positions implements Runnable {
 
     static Positions instance = null;
@@ -204,7 +214,7 @@ public class TimeEncoder implements Runnable, EncoderControl {
     speedDegreesPerMs = (beginPos > targetPos) ? -1 * tspeed : tspeed;
 
     moveTimeMs = Math.abs(distance / speedDegreesPerMs);
-    beginMoveTs = System.currentTimeMillis();
+    beginMoveTs = SimClock.currentTimeMillis();
     endMoveTs = beginMoveTs + (long) moveTimeMs;
 
     // log.debug("{}", this);
@@ -215,6 +225,9 @@ public class TimeEncoder implements Runnable, EncoderControl {
     // leave if timets > endMoveTs or if canceled with new move
     // while()
     now = beginMoveTs;
+    started = true;
+    nextSampleTs = beginMoveTs;
+    simMoving = SimClock.isSimulation() && speedDegreesPerMs != 0;
 
     if (autoProcess) { // vs buffer ?
       processTrajectory(name);
@@ -252,47 +265,19 @@ public class TimeEncoder implements Runnable, EncoderControl {
           continue;
         }
 
-        boolean started = true;
+        if (SimClock.isSimulation()) {
+          // the move is stepped by the simulation clock
+          continue;
+        }
 
         while (now < endMoveTs && isRunning) {
-
-          now = System.currentTimeMillis();
-          // speed has +/- direction
-          estimatedPos = beginPos + speedDegreesPerMs * (now - beginMoveTs);
-
-          if (beginPos < targetPos && estimatedPos > targetPos) {
-            estimatedPos = targetPos;
-          }
-          if (beginPos > targetPos && estimatedPos < targetPos) {
-            estimatedPos = targetPos;
-          }
-
-          // log.info(String.format("new pos %.2f", estimatedPos)); helpful to
-          // - Kwatters - SHOULD PROBABLY BE -> EncoderData(name, null,
-          // targetPos, estimatedPos) !!!
-          EncoderData d = new EncoderData(name, null, estimatedPos, estimatedPos);
-
-          positions.setPosition(name, estimatedPos);
-          if (enableServoEvents && started) {
-            // ((Broadcaster)servo).broadcast("publishedServoStopped",
-            // ServoStatus.SERVO_STOPPED, estimatedPos);
-            ((Broadcaster) servo).broadcast("publishServoStarted", servo.getName());
-            started = false;
-          }
-          servo.onEncoderData(d);// FIXME !! - broadcast this
+          now = SimClock.currentTimeMillis();
+          sample(now);
           Service.sleep(sampleIntervalMs);
         }
 
         // when we are leaving - its a "finished move"
-        // log.info("finished moved");
-        EncoderData d = new EncoderData(name, null, estimatedPos, estimatedPos);
-        servo.onEncoderData(d);
-        if (enableServoEvents) {
-          // ((Broadcaster)servo).broadcast("publishedServoStopped",
-          // ServoStatus.SERVO_STOPPED, estimatedPos);
-          ((Broadcaster) servo).broadcast("publishServoStopped", servo.getName());
-        }
-        positions.setPosition(name, estimatedPos);
+        finishMove();
       }
     } catch (InterruptedException e) {
       log.info("stopping TimeEncoder Timer ...");
@@ -300,6 +285,65 @@ public class TimeEncoder implements Runnable, EncoderControl {
     myThread = null;
   }
 
+  // estimate and publish the position at time ts
+  private void sample(long ts) {
+    // speed has +/- direction
+    estimatedPos = beginPos + speedDegreesPerMs * (ts - beginMoveTs);
+
+    if (beginPos < targetPos && estimatedPos > targetPos) {
+      estimatedPos = targetPos;
+    }
+    if (beginPos > targetPos && estimatedPos < targetPos) {
+      estimatedPos = targetPos;
+    }
+
+    // log.info(String.format("new pos %.2f", estimatedPos)); helpful to
+    // - Kwatters - SHOULD PROBABLY BE -> EncoderData(name, null,
+    // targetPos, estimatedPos) !!!
+    EncoderData d = new EncoderData(name, null, estimatedPos, estimatedPos);
+
+    positions.setPosition(name, estimatedPos);
+    if (enableServoEvents && started) {
+      // ((Broadcaster)servo).broadcast("publishedServoStopped",
+      // ServoStatus.SERVO_STOPPED, estimatedPos);
+      ((Broadcaster) servo).broadcast("publishServoStarted", servo.getName());
+      started = false;
+    }
+    servo.onEncoderData(d);// FIXME !! - broadcast this
+  }
+
+  private void finishMove() {
+    // log.info("finished moved");
+    EncoderData d = new EncoderData(name, null, estimatedPos, estimatedPos);
+    servo.onEncoderData(d);
+    if (enableServoEvents) {
+      // ((Broadcaster)servo).broadcast("publishedServoStopped",
+      // ServoStatus.SERVO_STOPPED, estimatedPos);
+      ((Broadcaster) servo).broadcast("publishServoStopped", servo.getName());
+    }
+    positions.setPosition(name, estimatedPos);
+  }
+
+  /**
+   * simulation mode - samples the current move every sampleIntervalMs of
+   * simulated time
+   */
+  @Override
+  public void step(long nowMs, long deltaMs) {
+    if (!simMoving) {
+      return;
+    }
+    now = nowMs;
+    if (nowMs >= nextSampleTs || nowMs >= endMoveTs) {
+      sample(Math.min(nowMs, endMoveTs));
+      nextSampleTs = nowMs + sampleIntervalMs;
+    }
+    if (nowMs >= endMoveTs) {
+      simMoving = false;
+      finishMove();
+    }
+  }
+
   public String toString() {
     return String.format("@ ts %d starting at position %.1f %s will travel %.1f degrees to position %.1f in %.1f ms ending at %d ts", beginMoveTs, beginPos, name, distance,
         targetPos, moveTimeMs, endMoveTs);
@@ -365,6 +409,8 @@ public class TimeEncoder implements Runnable, EncoderControl {
 
   @Override
   public void disable() {
+    SimClock.unregister(this);
+    simMoving = false;
     isRunning = false;
     if (myThread != null) {
       myThread.interrupt();
@@ -374,6 +420,7 @@ public class TimeEncoder implements Runnable, EncoderControl {
 
   @Override
   public void enable() {
+    SimClock.register(this);
     positions.start();
     if (myThread == null) {
       myThread = new Thread(this, String.format("%s.%s.time-encoder", servo.getName(), getName()));
@@ -24,6 +24,7 @@ import org.myrobotlab.logging.LoggerFactory;
 import org.myrobotlab.logging.LoggingFactory;
 import org.myrobotlab.math.MapperLinear;
 import org.myrobotlab.math.interfaces.Mapper;
+import org.myrobotlab.service.data.I2cTransaction;
 import org.myrobotlab.service.interfaces.I2CControl;
 import org.myrobotlab.service.interfaces.I2CController;
 import org.myrobotlab.service.interfaces.MotorControl;
@@ -343,6 +344,19 @@ public class Adafruit16CServoDriver extends Service implements I2CControl, Servo
     controller.i2cWrite(this, Integer.parseInt(deviceBus), Integer.decode(deviceAddress), buffer, buffer.length);
   }
 
+  /**
+   * Sets the pulsewidths of several pins at once - the writes go to the
+   * controller as one i2c transaction instead of one message per pin
+   */
+  public void setPWM(int[] pins, int[] pulseWidthOn, int[] pulseWidthOff) {
+    I2cTransaction transaction = new I2cTransaction();
+    for (int i = 0; i < pins.length; ++i) {
+      transaction.write(PCA9685_LED0_ON_L + (pins[i] * 4), pulseWidthOn[i] & 0xff, pulseWidthOn[i] >> 8, pulseWidthOff[i] & 0xff, pulseWidthOff[i] >> 8);
+    }
+    log.debug("Writing {} pins", pins.length);
+    controller.i2cTransaction(this, Integer.parseInt(deviceBus), Integer.decode(deviceAddress), transaction);
+  }
+
   public void setPWMFreq(Integer pin, Integer hz) {
     setPWMFreq(pin + "", hz);
   }
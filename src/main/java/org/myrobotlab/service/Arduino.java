@@ -39,6 +39,9 @@ import org.myrobotlab.math.interfaces.Mapper;
 import org.myrobotlab.sensor.EncoderData;
 import org.myrobotlab.service.abstracts.AbstractMicrocontroller;
 import org.myrobotlab.service.data.DeviceMapping;
+import org.myrobotlab.service.data.I2cPollData;
+import org.myrobotlab.service.data.I2cTransaction;
+import org.myrobotlab.service.data.I2cTransaction.Op;
 import org.myrobotlab.service.data.PinData;
 import org.myrobotlab.service.data.SerialRelayData;
 import org.myrobotlab.service.interfaces.EncoderControl;
@@ -78,6 +81,16 @@ public class Arduino extends AbstractMicrocontroller implements I2CBusController
     public String deviceAddress;
   }
 
+  public static class I2cPollMap {
+    public int pollId;
+    public int busAddress;
+    public int deviceAddress;
+    public int registerAddress;
+    public int size;
+    public int intervalMs;
+    public transient I2CControl control;
+  }
+
   public static class Sketch implements Serializable {
     private static final long serialVersionUID = 1L;
     public String data;
@@ -175,6 +188,23 @@ public class Arduino extends AbstractMicrocontroller implements I2CBusController
 
   Map<String, I2CDeviceMap> i2cDevices = new ConcurrentHashMap<String, I2CDeviceMap>();
 
+  /**
+   * scheduled i2c reads running on the board by poll id
+   */
+  Map<Integer, I2cPollMap> i2cPolls = new ConcurrentHashMap<Integer, I2cPollMap>();
+
+  transient int nextI2cPollId = 1;
+
+  /**
+   * bytes of i2c transaction ops which fit in one MrlComm message
+   */
+  public static final int MAX_I2C_TRANSACTION_OPS = Msg.MAX_MSG_SIZE - 8;
+
+  /**
+   * bytes one i2c transaction message can read - the Wire buffer
+   */
+  public static final int MAX_I2C_TRANSACTION_READ = 32;
+
   transient int[] ioCmd = new int[MAX_MSG_SIZE];
 
   @Deprecated /*
@@ -1216,6 +1246,139 @@ public class Arduino extends AbstractMicrocontroller implements I2CBusController
     }
   }
 
+  /**
+   * The ops are sent to MrlComm as one i2cTransaction message which is answered
+   * with everything read in one publishI2cData. Transactions larger than a
+   * message are split into as few messages as possible. Every op has to fit
+   * into the 32 byte Wire buffer, like with i2cWrite and i2cRead.
+   */
+  @Override
+  // > i2cTransaction/deviceId/deviceAddress/[] ops
+  synchronized public int i2cTransaction(I2CControl control, int busAddress, int deviceAddress, I2cTransaction transaction) {
+    Integer deviceId = getDeviceId(String.format("I2CBus%s", busAddress));
+    if (deviceId == null) {
+      error("i2c bus %d is not attached", busAddress);
+      return -1;
+    }
+    if (boardInfo == null || boardInfo.getVersion() == null || !boardInfo.getVersion().equals(MRLCOMM_VERSION)) {
+      return I2CController.super.i2cTransaction(control, busAddress, deviceAddress, transaction);
+    }
+
+    int encodedSize = 0;
+    for (Op op : transaction.ops) {
+      encodedSize += (op.type == I2cTransaction.WRITE) ? 1 + op.data.length : 1;
+    }
+    int[] ops = new int[encodedSize];
+    byte[] read = new byte[transaction.getReadSize()];
+    int readPos = 0;
+    int start = 0;
+    int pos = 0;
+    int chunkRead = 0;
+    for (Op op : transaction.ops) {
+      int size = (op.type == I2cTransaction.WRITE) ? 1 + op.data.length : 1;
+      int opRead = (op.type == I2cTransaction.READ) ? op.data.length : 0;
+      if (pos > start && (pos - start + size > MAX_I2C_TRANSACTION_OPS || chunkRead + opRead > MAX_I2C_TRANSACTION_READ)) {
+        int n = sendI2cTransaction(deviceId, deviceAddress, Arrays.copyOfRange(ops, start, pos), read, readPos);
+        if (n < 0) {
+          return -1;
+        }
+        readPos += n;
+        start = pos;
+        chunkRead = 0;
+      }
+      if (op.type == I2cTransaction.WRITE) {
+        ops[pos++] = op.data.length & 0x7F;
+        for (int i = 0; i < op.data.length; ++i) {
+          ops[pos++] = op.data[i] & 0xFF;
+        }
+      } else {
+        ops[pos++] = 0x80 | (op.data.length & 0x7F);
+      }
+      chunkRead += opRead;
+    }
+    if (pos > start) {
+      int n = sendI2cTransaction(deviceId, deviceAddress, Arrays.copyOfRange(ops, start, pos), read, readPos);
+      if (n < 0) {
+        return -1;
+      }
+      readPos += n;
+    }
+    transaction.setReadData(read, readPos);
+    return readPos;
+  }
+
+  /**
+   * sends one i2cTransaction message and waits for its publishI2cData
+   * 
+   * @return bytes read, -1 on time out
+   */
+  private int sendI2cTransaction(int deviceId, int deviceAddress, int[] ops, byte[] read, int readPos) {
+    i2cDataReturned = false;
+    msg.i2cTransaction(deviceId, deviceAddress, ops);
+    int retry = 0;
+    int retryMax = 1000;
+    try {
+      while ((retry < retryMax) && (!i2cDataReturned)) {
+        sleep(1);
+        ++retry;
+      }
+    } catch (Exception e) {
+      Logging.logError(e);
+    }
+    if (!i2cDataReturned) {
+      error("i2c transaction with 0x%02x timed out", deviceAddress);
+      return -1;
+    }
+    int size = Math.min(i2cDataSize, read.length - readPos);
+    for (int i = 0; i < size; i++) {
+      read[readPos + i] = i2cData[i];
+    }
+    return size;
+  }
+
+  @Override
+  // > i2cPollStart/deviceId/pollId/deviceAddress/registerAddress/size/b16
+  // intervalMs
+  synchronized public int i2cPollStart(I2CControl control, int busAddress, int deviceAddress, int registerAddress, int size, int intervalMs) {
+    Integer deviceId = getDeviceId(String.format("I2CBus%s", busAddress));
+    if (deviceId == null) {
+      error("i2c bus %d is not attached", busAddress);
+      return -1;
+    }
+    if (boardInfo == null || boardInfo.getVersion() == null || !boardInfo.getVersion().equals(MRLCOMM_VERSION)) {
+      log.info("{} MrlComm can not schedule i2c reads - {} has to poll", getName(), control.getName());
+      return -1;
+    }
+    I2cPollMap poll = new I2cPollMap();
+    // 1 - 255 the id is a byte
+    poll.pollId = nextI2cPollId;
+    nextI2cPollId = (nextI2cPollId % 255) + 1;
+    poll.busAddress = busAddress;
+    poll.deviceAddress = deviceAddress;
+    poll.registerAddress = registerAddress;
+    poll.size = size;
+    poll.intervalMs = intervalMs;
+    poll.control = control;
+    i2cPolls.put(poll.pollId, poll);
+    msg.i2cPollStart(deviceId, poll.pollId, deviceAddress, registerAddress, size, intervalMs);
+    log.info("{} i2c poll {} of {} register 0x{} {} bytes every {} ms", getName(), poll.pollId, control.getName(), Integer.toHexString(registerAddress), size,
+        intervalMs);
+    return poll.pollId;
+  }
+
+  @Override
+  // > i2cPollStop/deviceId/pollId
+  public void i2cPollStop(I2CControl control, int pollId) {
+    I2cPollMap poll = i2cPolls.remove(pollId);
+    if (poll == null) {
+      return;
+    }
+    Integer deviceId = getDeviceId(String.format("I2CBus%s", poll.busAddress));
+    if (deviceId != null) {
+      msg.i2cPollStop(deviceId, pollId);
+    }
+  }
+
   private void initSerial() {
     if (msg == null) {
       serial = (Serial) startPeer("serial");
@@ -1645,6 +1808,37 @@ public class Arduino extends AbstractMicrocontroller implements I2CBusController
     i2cReturnData(data);
   }
 
+  /**
+   * data of a scheduled i2c read, handed to the device which started the poll
+   * 
+   * @param deviceId
+   *          - mrl device identifier of the i2c bus
+   * @param pollId
+   *          - id returned by i2cPollStart
+   * @param timestamp
+   *          - micros() of the board when it read the device
+   * @param data
+   *          - the registers
+   * @return the poll data
+   */
+  // < publishI2cPollData/deviceId/pollId/bu32 timestamp/[] data
+  public I2cPollData publishI2cPollData(Integer deviceId, Integer pollId, Long timestamp, int[] data) {
+    I2cPollMap poll = i2cPolls.get(pollId);
+    if (poll == null) {
+      // stopped while the board was still sending
+      return null;
+    }
+    I2cPollData pollData = new I2cPollData(getName(), pollId, poll.busAddress, poll.deviceAddress, poll.registerAddress);
+    pollData.timestamp = timestamp;
+    pollData.ts = System.currentTimeMillis();
+    pollData.data = new byte[data.length];
+    for (int i = 0; i < data.length; ++i) {
+      pollData.data[i] = (byte) data[i];
+    }
+    poll.control.onI2cPollData(pollData);
+    return pollData;
+  }
+
   /**
    * error from mrlcom in string form
    * 
@@ -31,6 +31,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.myrobotlab.audio.AudioEngine;
 import org.myrobotlab.audio.AudioProcessor;
 import org.myrobotlab.framework.Service;
 import org.myrobotlab.io.FileIO;
@@ -92,6 +93,11 @@ public class AudioFile extends Service {
   // if set to true, playback will become a no-op
   private boolean mute = false;
 
+  /**
+   * output device, null is the default - see getMixers
+   */
+  String mixer = null;
+
   public AudioFile(String n, String id) {
     super(n, id);
   }
@@ -489,6 +495,33 @@ public class AudioFile extends Service {
     return data;
   }
 
+  /**
+   * ms from a sample being handed to the audio engine to it being heard -
+   * published with publishAudioStart, which is sent when the sample is heard
+   */
+  public Long publishStartLatency(Long latency) {
+    return latency;
+  }
+
+  /**
+   * output devices which can be used with setMixer
+   */
+  public List<String> getMixers() {
+    return AudioEngine.getMixers();
+  }
+
+  public void setMixer(String mixer) {
+    this.mixer = mixer;
+  }
+
+  public String getMixer() {
+    return mixer;
+  }
+
+  public String getEngineStats() {
+    return AudioEngine.getInstance(mixer).getStats();
+  }
+
   public void deleteFiles(String subDir) {
     // TODO Auto-generated method stub
     List<File> list = getFiles(subDir, true);
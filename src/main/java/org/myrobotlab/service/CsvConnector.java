@@ -4,13 +4,25 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
 
 import org.myrobotlab.document.Document;
 import org.myrobotlab.document.connector.AbstractConnector;
 import org.myrobotlab.document.connector.ConnectorState;
+import org.myrobotlab.document.connector.CsvChunker;
 import org.myrobotlab.document.transformer.ConnectorConfig;
 import org.myrobotlab.string.StringUtil;
 
+import au.com.bytecode.opencsv.CSVParser;
 import au.com.bytecode.opencsv.CSVReader;
 
 public class CsvConnector extends AbstractConnector {
@@ -25,6 +37,18 @@ public class CsvConnector extends AbstractConnector {
   private boolean useRowAsId = true;
   private int skipRows = 1;
   private boolean firstRowAsColumns = false;
+  // parallel ingestion - files smaller than minChunkSize are always read by a
+  // single thread
+  private int numThreads = 1;
+  private long minChunkSize = 64 * 1024 * 1024;
+  // feed documents in file order when parsing in parallel
+  private boolean preserveOrder = false;
+  private int orderBufferSize = 1000;
+  // if set the row number is stored in this field - an ordering key for
+  // downstream
+  private String rowNumberField = null;
+
+  private static final Document END_OF_CHUNK = new Document(null);
 
   public CsvConnector(String name, String id) {
     super(name, id);
@@ -48,6 +72,12 @@ public class CsvConnector extends AbstractConnector {
     useRowAsId = config.getBoolParam("useRowAsId", useRowAsId);
     skipRows = config.getIntegerParam("skipRows", skipRows);
     firstRowAsColumns = config.getBoolParam("firstRowAsColumns", firstRowAsColumns);
+    numThreads = config.getIntegerParam("numThreads", numThreads);
+    // bytes - can be larger than an int
+    minChunkSize = Long.parseLong(config.getStringParam("minChunkSize", Long.toString(minChunkSize)));
+    preserveOrder = config.getBoolParam("preserveOrder", preserveOrder);
+    orderBufferSize = config.getIntegerParam("orderBufferSize", orderBufferSize);
+    rowNumberField = config.getStringParam("rowNumberField", rowNumberField);
   }
 
   public void initialize() {
@@ -86,12 +116,32 @@ public class CsvConnector extends AbstractConnector {
       return;
     }
 
+    if (numThreads > 1 && fileToCrawl.length() >= minChunkSize) {
+      crawlParallel(fileToCrawl);
+    } else {
+      crawlSerial(fileToCrawl);
+    }
+
+    // wait until our outbox has been completely picked up.
+    awaitOutboxDrained();
+
+    // TODO: why the heck does this not block until we're done as we expect?!?!
+    if (state.equals(ConnectorState.RUNNING)) {
+      state = ConnectorState.STOPPED;
+    }
+    flush();
+    // TODO: push this state management to the base class?
+
+  }
+
+  private void crawlSerial(File fileToCrawl) {
     FileReader reader = null;
     try {
       reader = new FileReader(fileToCrawl);
     } catch (FileNotFoundException e) {
       // This should not happen
       e.printStackTrace();
+      return;
     }
     CSVReader csvReader = new CSVReader(reader, separator.charAt(0));
     if (firstRowAsColumns) {
@@ -106,64 +156,169 @@ public class CsvConnector extends AbstractConnector {
     // pick out which column has the primary key / id field.
     initialize();
 
-    int rowNum = 0;
-    String[] nextLine;
-
     try {
-
-      while ((nextLine = csvReader.readNext()) != null) {
-        // TODO: replace this with connector state, and make private isRunning
-        // again.
-        if (!state.equals(ConnectorState.RUNNING)) {
-          // we've been interrupted.
-          log.info("Crawl interrupted, stopping crawl.");
-          state = ConnectorState.INTERRUPTED;
-          break;
-        }
-        rowNum++;
-        if (rowNum <= skipRows) {
-          continue;
-        }
-        String id;
-        if (useRowAsId) {
-          id = getDocIdPrefix() + rowNum;
-        } else {
-          id = getDocIdPrefix() + nextLine[idColumn];
-        }
-        Document docToSend = new Document(id);
-        for (int i = 0; i < numFields; i++) {
-          String v = nextLine[i];
-          if (!StringUtil.isEmpty(v)) {
-            docToSend.addToField(columns[i], v);
-          }
-        }
-        feed(docToSend);
-      }
+      readRows(csvReader, 0, null);
     } catch (IOException e) {
       // TODO Auto-generated catch block
       // shouldn't see this.. but who knows.
       e.printStackTrace();
       log.error("IO Exception during crawl. {}", e.getMessage());
       // TODO: re-throw something else?
+    } catch (InterruptedException e) {
+      log.info("Crawl interrupted, stopping crawl.");
+      state = ConnectorState.INTERRUPTED;
+    } finally {
+      try {
+        csvReader.close();
+      } catch (IOException e) {
+      }
     }
+  }
 
-    // Lets poll until our outbox has been completely picked up.
-    while (outbox.size() > 0) {
-      // wait until our outbox has drained before going to stopped?
+  /**
+   * splits the file into chunks on record boundaries and parses the chunks on
+   * a pool of numThreads threads. With preserveOrder the documents are fed in
+   * file order, otherwise each thread feeds as it parses.
+   */
+  private void crawlParallel(final File fileToCrawl) {
+    if (firstRowAsColumns) {
       try {
-        log.info("Waiting for outbox to drain. Size: {}", outbox.size());
-        Thread.sleep(10);
-      } catch (InterruptedException e) {
-        // TODO Auto-generated catch block
-        e.printStackTrace();
+        CSVReader headerReader = new CSVReader(new FileReader(fileToCrawl), separator.charAt(0));
+        columns = headerReader.readNext();
+        headerReader.close();
+      } catch (IOException e) {
+        log.error("could not read header of {}", fileToCrawl, e);
+        return;
       }
     }
+    initialize();
 
-    // TODO: why the heck does this not block until we're done as we expect?!?!
-    state = ConnectorState.STOPPED;
-    flush();
-    // TODO: push this state management to the base class?
+    List<CsvChunker.Chunk> chunks;
+    try {
+      // a few chunks per thread keeps all threads busy to the end
+      chunks = CsvChunker.split(fileToCrawl, firstRowAsColumns, numThreads * 4, CSVParser.DEFAULT_QUOTE_CHARACTER, CSVParser.DEFAULT_ESCAPE_CHARACTER);
+    } catch (IOException e) {
+      log.error("could not split {}", fileToCrawl, e);
+      return;
+    }
+    log.info("crawling {} in {} chunks with {} threads", fileToCrawl, chunks.size(), numThreads);
+
+    ExecutorService pool = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+      int count = 0;
+
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, String.format("%s-csv-%d", getName(), count++));
+        t.setDaemon(true);
+        return t;
+      }
+    });
+
+    List<BlockingQueue<Document>> outputs = new ArrayList<BlockingQueue<Document>>();
+    List<Future<?>> results = new ArrayList<Future<?>>();
+    for (final CsvChunker.Chunk chunk : chunks) {
+      // bounded per chunk queues - a chunk which is parsed ahead of the one
+      // being fed blocks instead of buffering the whole file
+      final BlockingQueue<Document> output = (preserveOrder) ? new LinkedBlockingQueue<Document>(orderBufferSize) : null;
+      outputs.add(output);
+      results.add(pool.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          CSVReader csvReader = null;
+          try {
+            // opened in the try - a chunk which fails to open still ends its
+            // output or the ordered feed would wait for it forever
+            csvReader = new CSVReader(chunk.openReader(fileToCrawl), separator.charAt(0));
+            readRows(csvReader, chunk.firstRow, output);
+          } finally {
+            if (csvReader != null) {
+              csvReader.close();
+            }
+            if (output != null) {
+              output.put(END_OF_CHUNK);
+            }
+          }
+          return null;
+        }
+      }));
+    }
+    pool.shutdown();
+
+    try {
+      if (preserveOrder) {
+        // feed the chunks in order - each one is complete when its end marker
+        // arrives
+        for (BlockingQueue<Document> output : outputs) {
+          Document doc;
+          while ((doc = output.take()) != END_OF_CHUNK) {
+            feed(doc);
+          }
+        }
+      }
+      // completion is signalled by the futures - no polling
+      for (Future<?> result : results) {
+        try {
+          result.get();
+        } catch (ExecutionException e) {
+          log.error("IO Exception during crawl. {}", e.getCause().getMessage());
+        }
+      }
+    } catch (InterruptedException e) {
+      log.info("Crawl interrupted, stopping crawl.");
+      state = ConnectorState.INTERRUPTED;
+      pool.shutdownNow();
+    }
+  }
 
+  /**
+   * read csv records and turn them into documents
+   * 
+   * @param csvReader
+   * @param firstRow
+   *          number of records before the first one this reader returns
+   * @param output
+   *          where documents go, fed directly if null
+   * @throws IOException
+   * @throws InterruptedException
+   */
+  private void readRows(CSVReader csvReader, int firstRow, BlockingQueue<Document> output) throws IOException, InterruptedException {
+    int rowNum = firstRow;
+    String[] nextLine;
+    while ((nextLine = csvReader.readNext()) != null) {
+      // TODO: replace this with connector state, and make private isRunning
+      // again.
+      if (!state.equals(ConnectorState.RUNNING)) {
+        // we've been interrupted.
+        log.info("Crawl interrupted, stopping crawl.");
+        state = ConnectorState.INTERRUPTED;
+        break;
+      }
+      rowNum++;
+      if (rowNum <= skipRows) {
+        continue;
+      }
+      String id;
+      if (useRowAsId) {
+        id = getDocIdPrefix() + rowNum;
+      } else {
+        id = getDocIdPrefix() + nextLine[idColumn];
+      }
+      Document docToSend = new Document(id);
+      for (int i = 0; i < numFields && i < nextLine.length; i++) {
+        String v = nextLine[i];
+        if (!StringUtil.isEmpty(v)) {
+          docToSend.addToField(columns[i], v);
+        }
+      }
+      if (rowNumberField != null) {
+        docToSend.setLongField(rowNumberField, rowNum);
+      }
+      if (output == null) {
+        feed(docToSend);
+      } else {
+        output.put(docToSend);
+      }
+    }
   }
 
   @Override
@@ -212,6 +367,46 @@ public class CsvConnector extends AbstractConnector {
     this.numFields = numFields;
   }
 
+  public int getNumThreads() {
+    return numThreads;
+  }
+
+  public void setNumThreads(int numThreads) {
+    this.numThreads = numThreads;
+  }
+
+  public long getMinChunkSize() {
+    return minChunkSize;
+  }
+
+  public void setMinChunkSize(long minChunkSize) {
+    this.minChunkSize = minChunkSize;
+  }
+
+  public int getOrderBufferSize() {
+    return orderBufferSize;
+  }
+
+  public void setOrderBufferSize(int orderBufferSize) {
+    this.orderBufferSize = orderBufferSize;
+  }
+
+  public boolean isPreserveOrder() {
+    return preserveOrder;
+  }
+
+  public void setPreserveOrder(boolean preserveOrder) {
+    this.preserveOrder = preserveOrder;
+  }
+
+  public String getRowNumberField() {
+    return rowNumberField;
+  }
+
+  public void setRowNumberField(String rowNumberField) {
+    this.rowNumberField = rowNumberField;
+  }
+
   public int getIdColumn() {
     return idColumn;
   }
@@ -7,6 +7,7 @@ import org.myrobotlab.document.ProcessingStatus;
 import org.myrobotlab.document.connector.ConnectorState;
 import org.myrobotlab.document.transformer.StageConfiguration;
 import org.myrobotlab.document.transformer.WorkflowConfiguration;
+import org.myrobotlab.document.workflow.StageMetrics;
 import org.myrobotlab.document.workflow.WorkflowMessage;
 import org.myrobotlab.document.workflow.WorkflowServer;
 import org.myrobotlab.framework.Service;
@@ -77,19 +78,21 @@ public class DocumentPipeline extends Service implements DocumentListener, Docum
 
   public void flush() {
 
-    while (getInbox().size() > 0) {
-      // TODO: we've gotta wait until we've consumed our inbox if we're
-      // flushing?
-      // TODO: This seems dangerous if we want to flush while continously
-      // feeding
-      // we'll never get to flush unless data pauses while we catchup.
-      try {
+    // TODO: This seems dangerous if we want to flush while continously
+    // feeding
+    // we'll never get to flush unless data pauses while we catchup.
+    // the inbox signals as messages are taken off and handled - no polling.
+    // waiting for idle rather than empty, so the last documents taken have
+    // reached the workflow before it is flushed
+    try {
+      if (getInbox().size() > 0) {
         log.info("Waiting for inbox to drain...Size: {}", getInbox().size());
-        Thread.sleep(500);
-      } catch (InterruptedException e) {
-        // TODO Auto-generated catch block
-        e.printStackTrace();
       }
+      getInbox().waitForIdle(0);
+    } catch (InterruptedException e) {
+      log.info("interrupted waiting for the inbox to drain");
+      Thread.currentThread().interrupt();
+      return;
     }
 
     log.info("Inbox size is {}", getInbox().size());
@@ -156,15 +159,42 @@ public class DocumentPipeline extends Service implements DocumentListener, Docum
 
   // TODO: put this on a base class or something?
   public ProcessingStatus onDocuments(List<Document> docs) {
-    ProcessingStatus totalStat = ProcessingStatus.OK;
-    for (Document d : docs) {
-      ProcessingStatus stat = onDocument(d);
-      if (ProcessingStatus.ERROR.equals(stat)) {
-        totalStat = ProcessingStatus.ERROR;
-      }
-
+    // hand the whole batch to the workflow, the workers pick it up in batches
+    try {
+      workflowServer.processDocuments(workflowName, docs);
+    } catch (InterruptedException e) {
+      e.printStackTrace();
+      return ProcessingStatus.ERROR;
     }
-    return totalStat;
+    return ProcessingStatus.OK;
+  }
+
+  /**
+   * @return documents waiting on the workflow queue
+   */
+  public int getQueueDepth() {
+    return workflowServer.getWorkflow(workflowName).getQueueDepth();
+  }
+
+  /**
+   * @return documents queued or being processed by the workflow
+   */
+  public long getInFlight() {
+    return workflowServer.getWorkflow(workflowName).getInFlight();
+  }
+
+  /**
+   * @return time spent blocked on a full workflow queue (back pressure)
+   */
+  public long getBlockedMs() {
+    return workflowServer.getWorkflow(workflowName).getBlockedMs();
+  }
+
+  /**
+   * @return throughput and latency of each stage of the workflow
+   */
+  public List<StageMetrics> getStageMetrics() {
+    return workflowServer.getStageMetrics(workflowName);
   }
 
   @Override
@@ -1,12 +1,19 @@
 package org.myrobotlab.service;
 
 import java.io.IOException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.FileVisitResult;
 import java.nio.file.FileVisitor;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
 
 import org.myrobotlab.document.Document;
 import org.myrobotlab.document.connector.AbstractConnector;
@@ -23,7 +30,11 @@ public class FileConnector extends AbstractConnector implements DocumentPublishe
   private String directory;
   // TODO: add wildcard includes/excludes
   // TODO: add file path includes/excludes
-  private boolean interrupted = false;
+  private volatile boolean interrupted = false;
+  // number of threads walking the directory tree - 1 walks it serially
+  private int numThreads = 1;
+  // walk in the order Files.walkFileTree does - forces a serial walk
+  private boolean preserveOrder = false;
 
   public FileConnector(String name, String id) {
     super(name, id);
@@ -38,18 +49,82 @@ public class FileConnector extends AbstractConnector implements DocumentPublishe
   @Override
   public void startCrawling() {
     state = ConnectorState.RUNNING;
+    interrupted = false;
     Path startPath = Paths.get(directory);
-    try {
-      Files.walkFileTree(startPath, this);
-    } catch (IOException e) {
-      // TODO Auto-generated catch block
-      e.printStackTrace();
+    if (numThreads > 1 && !preserveOrder) {
+      walkParallel(startPath);
+    } else {
+      try {
+        Files.walkFileTree(startPath, this);
+      } catch (IOException e) {
+        // TODO Auto-generated catch block
+        e.printStackTrace();
+      }
     }
     log.info("File Connector finished walking the tree.");
     // TODO: should we flush here immediately?
     state = ConnectorState.STOPPED;
   }
 
+  /**
+   * walk the tree on a fork join pool - every directory is its own task, so
+   * wide and deep trees are spread over all threads. The pool returning from
+   * invoke is the completion signal.
+   */
+  private void walkParallel(Path startPath) {
+    ForkJoinPool pool = new ForkJoinPool(numThreads);
+    try {
+      pool.invoke(new WalkDirectory(startPath));
+    } catch (Exception e) {
+      log.error("parallel walk of {} threw", startPath, e);
+    } finally {
+      pool.shutdown();
+      try {
+        pool.awaitTermination(1, TimeUnit.MINUTES);
+      } catch (InterruptedException e) {
+        state = ConnectorState.INTERRUPTED;
+      }
+    }
+  }
+
+  class WalkDirectory extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    final Path dir;
+
+    WalkDirectory(Path dir) {
+      this.dir = dir;
+    }
+
+    @Override
+    protected void compute() {
+      if (interrupted) {
+        return;
+      }
+      List<WalkDirectory> subDirs = new ArrayList<WalkDirectory>();
+      try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+        for (Path entry : entries) {
+          if (interrupted) {
+            state = ConnectorState.INTERRUPTED;
+            break;
+          }
+          BasicFileAttributes attrs = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+          if (attrs.isDirectory()) {
+            WalkDirectory task = new WalkDirectory(entry);
+            task.fork();
+            subDirs.add(task);
+          } else {
+            visitFile(entry, attrs);
+          }
+        }
+      } catch (IOException e) {
+        log.warn("could not walk {} {}", dir, e.getMessage());
+      }
+      for (WalkDirectory task : subDirs) {
+        task.join();
+      }
+    }
+  }
+
   @Override
   public void stopCrawling() {
     interrupted = true;
@@ -101,4 +176,20 @@ public class FileConnector extends AbstractConnector implements DocumentPublishe
     this.directory = directory;
   }
 
+  public int getNumThreads() {
+    return numThreads;
+  }
+
+  public void setNumThreads(int numThreads) {
+    this.numThreads = numThreads;
+  }
+
+  public boolean isPreserveOrder() {
+    return preserveOrder;
+  }
+
+  public void setPreserveOrder(boolean preserveOrder) {
+    this.preserveOrder = preserveOrder;
+  }
+
 }
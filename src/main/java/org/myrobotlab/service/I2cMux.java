@@ -13,6 +13,7 @@ import org.myrobotlab.framework.interfaces.Attachable;
 import org.myrobotlab.logging.LoggerFactory;
 import org.myrobotlab.logging.Logging;
 import org.myrobotlab.logging.LoggingFactory;
+import org.myrobotlab.service.data.I2cTransaction;
 import org.myrobotlab.service.interfaces.I2CControl;
 import org.myrobotlab.service.interfaces.I2CController;
 import org.slf4j.Logger;
@@ -153,6 +154,15 @@ public class I2cMux extends Service implements I2CControl, I2CController {
     return readBuffer.length;
   }
 
+  /**
+   * selects the channel once and hands the whole transaction to the controller
+   */
+  @Override
+  synchronized public int i2cTransaction(I2CControl control, int busAddress, int deviceAddress, I2cTransaction transaction) {
+    setMuxBus(busAddress);
+    return controller.i2cTransaction(this, Integer.parseInt(this.deviceBus), deviceAddress, transaction);
+  }
+
   @Override
   public void attachI2CControl(I2CControl control) {
     // This part adds the service to the mapping between
@@ -12,6 +12,7 @@ import java.util.TreeSet;
 import org.apache.commons.io.FilenameUtils;
 import org.myrobotlab.framework.Platform;
 import org.myrobotlab.framework.Service;
+import org.myrobotlab.framework.StartupPlanner;
 import org.myrobotlab.framework.Status;
 import org.myrobotlab.framework.interfaces.Attachable;
 import org.myrobotlab.framework.interfaces.ServiceInterface;
@@ -1549,13 +1550,26 @@ public class InMoov2 extends Service implements TextListener, TextPublisher, Joy
   // }
   // }
 
+  /**
+   * starts the head, arms, hands and torso - the parts on one arduino are
+   * started in order, the two sides at the same time
+   */
   public void startServos(String leftPort, String rightPort) throws Exception {
-    startHead(leftPort);
-    startLeftArm(leftPort);
-    startLeftHand(leftPort);
-    startRightArm(rightPort);
-    startRightHand(rightPort);
-    startTorso(leftPort);
+    String[] left = (leftPort == null) ? new String[0] : new String[] { "left" };
+    String[] right = (rightPort == null) ? new String[0] : new String[] { "right" };
+    if (leftPort != null && leftPort.equals(rightPort)) {
+      // one serial port - the left and right arduino can not connect at once
+      right = left;
+    }
+    StartupPlanner planner = new StartupPlanner(this);
+    planner.add("head", () -> startHead(leftPort), left);
+    planner.add("leftArm", () -> startLeftArm(leftPort), left);
+    planner.add("leftHand", () -> startLeftHand(leftPort), left);
+    planner.add("rightArm", () -> startRightArm(rightPort), right);
+    planner.add("rightHand", () -> startRightHand(rightPort), right);
+    planner.add("torso", () -> startTorso(leftPort), left);
+    planner.run();
+    log.info("startServos critical path {}", StartupPlanner.getCriticalPath(getName()));
   }
 
   // FIXME .. externalize in a json file included in InMoov2
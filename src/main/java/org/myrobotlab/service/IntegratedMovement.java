@@ -496,11 +496,61 @@ public class IntegratedMovement extends Service implements IKJointAnglePublisher
   }
 
   public void startEngine(String arm) {
-    getEngine(arm).start();
-    addTask("publishPosition-" + arm, 1000, 0, "publishPosition", arm);
+    IMEngine engine = getEngine(arm);
+    if (engine != null) {
+      engine.start();
+      addTask("publishPosition-" + arm, 1000, 0, "publishPosition", arm);
+    }
+  }
+
+  /**
+   * stops the engine of arm and removes it - a stopped engine can not be
+   * started again, the arm has to be added again
+   */
+  public void stopEngine(String arm) {
+    IMEngine engine = engines.remove(arm);
+    if (engine != null) {
+      engine.stopEngine();
+      purgeTask("publishPosition-" + arm);
+    } else {
+      log.info("no engines found {}", arm);
+    }
+  }
+
+  /**
+   * @param hz
+   *          maximum control ticks per second of every arm engine
+   */
+  public void setTickRate(double hz) {
+    for (IMEngine engine : engines.values()) {
+      engine.setTickRate(hz);
+    }
+  }
+
+  public void setTickRate(String arm, double hz) {
+    IMEngine engine = getEngine(arm);
+    if (engine != null) {
+      engine.setTickRate(hz);
+    }
+  }
+
+  // engines re-check collisions and balance when the scene changes
+  private void wakeEngines() {
+    for (IMEngine engine : engines.values()) {
+      engine.wake();
+    }
+  }
+
+  @Override
+  public void releaseService() {
+    for (IMEngine engine : engines.values()) {
+      engine.stopEngine();
+    }
+    engines.clear();
+    super.releaseService();
   }
 
-  public Thread getEngine(String arm) {
+  public IMEngine getEngine(String arm) {
     if (engines.containsKey(arm)) {
       return engines.get(arm);
     } else {
@@ -587,6 +637,7 @@ public class IntegratedMovement extends Service implements IKJointAnglePublisher
     if (jmeApp != null) {
       jmeApp.addObject(item);
     }
+    wakeEngines();
     broadcastState();
     return item.getName();
   }
@@ -607,10 +658,12 @@ public class IntegratedMovement extends Service implements IKJointAnglePublisher
 
   public void clearObject() {
     collisionItems.clearItem();
+    wakeEngines();
   }
 
   public void removeObject(String name) {
     collisionItems.removeObject(name);
+    wakeEngines();
   }
 
   public void objectAddIgnore(String object1, String object2) {
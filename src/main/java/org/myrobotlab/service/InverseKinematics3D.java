@@ -1,5 +1,6 @@
 package org.myrobotlab.service;
 
+import java.io.File;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -11,6 +12,7 @@ import org.myrobotlab.kinematics.DHLink;
 import org.myrobotlab.kinematics.DHRobotArm;
 import org.myrobotlab.kinematics.Matrix;
 import org.myrobotlab.kinematics.Point;
+import org.myrobotlab.kinematics.ReachabilityMap;
 import org.myrobotlab.logging.LoggerFactory;
 import org.myrobotlab.logging.LoggingFactory;
 import org.myrobotlab.math.MathUtils;
@@ -277,6 +279,27 @@ public class InverseKinematics3D extends Service implements IKJointAnglePublishe
     this.arms.put(name, arm);
   }
 
+  /**
+   * load the reachability map of an arm from the data directory, building and
+   * saving it the first time. Once loaded moveTo rejects goals outside the
+   * workspace of the arm and starts the IK from the nearest precomputed pose.
+   * 
+   * @param name
+   *          the arm
+   * @return the map
+   */
+  public ReachabilityMap loadReachabilityMap(String name) {
+    DHRobotArm arm = arms.get(name);
+    if (arm == null) {
+      error("no arm named %s", name);
+      return null;
+    }
+    File file = new File(getDataInstanceDir() + fs + name + ".reach");
+    ReachabilityMap map = ReachabilityMap.loadOrBuild(file, arm);
+    arm.setReachabilityMap(map);
+    return map;
+  }
+
   public void attach(Attachable attachable) {
     if (attachable instanceof IKJointAngleListener) {
       addListener("publishJointAngle", attachable.getName(), "onJointAngle");
@@ -7,6 +7,7 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.FloatBuffer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -16,6 +17,9 @@ import java.util.TreeMap;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.myrobotlab.codec.CodecUtils;
@@ -25,6 +29,7 @@ import org.myrobotlab.framework.Message;
 import org.myrobotlab.framework.Platform;
 import org.myrobotlab.framework.Registration;
 import org.myrobotlab.framework.Service;
+import org.myrobotlab.framework.SimClock;
 import org.myrobotlab.framework.interfaces.Attachable;
 import org.myrobotlab.framework.interfaces.ServiceInterface;
 import org.myrobotlab.io.FileIO;
@@ -37,11 +42,11 @@ import org.myrobotlab.jme3.Jme3Util;
 import org.myrobotlab.jme3.MainMenuState;
 import org.myrobotlab.jme3.PhysicsTestHelper;
 import org.myrobotlab.jme3.Search;
+import org.myrobotlab.jme3.TransformBuffer;
 import org.myrobotlab.jme3.UserData;
 import org.myrobotlab.logging.LoggerFactory;
 import org.myrobotlab.logging.LoggingFactory;
 import org.myrobotlab.math.MapperLinear;
-import org.myrobotlab.math.geometry.Point3df;
 import org.myrobotlab.math.geometry.PointCloud;
 import org.myrobotlab.math.interfaces.Mapper;
 import org.myrobotlab.net.Connection;
@@ -100,7 +105,7 @@ import com.jme3.scene.plugins.blender.BlenderLoader;
 import com.jme3.scene.shape.Box;
 import com.jme3.scene.shape.Quad;
 import com.jme3.system.AppSettings;
-import com.jme3.util.BufferUtils;
+import com.jme3.system.JmeContext;
 import com.simsilica.lemur.GuiGlobals;
 import com.simsilica.lemur.style.BaseStyles;
 
@@ -170,7 +175,13 @@ public class JMonkeyEngine extends Service implements Gateway, ActionListener, S
 
   int height = 768;
 
-  List<Jme3Msg> history = new ArrayList<Jme3Msg>();
+  /**
+   * last historySize messages processed by the jme thread when saveHistory is
+   * set
+   */
+  transient ArrayDeque<Jme3Msg> history = new ArrayDeque<Jme3Msg>();
+
+  int historySize = 10000;
 
   transient AtomicInteger id = new AtomicInteger();
 
@@ -180,6 +191,57 @@ public class JMonkeyEngine extends Service implements Gateway, ActionListener, S
 
   protected Queue<Jme3Msg> jme3MsgQueue = new ConcurrentLinkedQueue<Jme3Msg>();
 
+  /**
+   * front of jme3MsgQueue - instant rotations of a node are coalesced while
+   * nothing else was queued after them
+   */
+  transient TransformBuffer transforms = new TransformBuffer(jme3MsgQueue);
+
+  transient TransformBuffer.Target transformTarget = (name, axis, degrees) -> {
+    if (this.saveHistory) {
+      addHistory(new Jme3Msg("rotateTo", new Object[] { name, axis, degrees }));
+    }
+    this.util.rotateTo(name, axis, degrees);
+  };
+
+  /**
+   * frames per second the render loop is limited to, -1 for no limit
+   */
+  int frameRate = 30;
+
+  boolean vsync = false;
+
+  /**
+   * frame limit of a headless simulation - the jme thread only runs the steps
+   * the clock queues, a high limit keeps them quick without spinning the cpu
+   */
+  int simFrameRate = 1000;
+
+  /**
+   * longest a simulation step waits for the jme thread
+   */
+  long simStepTimeoutMs = 5000;
+
+  /**
+   * in simulation mode the scene is updated by the simulation clock - each
+   * step runs one update on the jme thread and waits for it
+   */
+  transient SimClock.Steppable simStep = (nowMs, deltaMs) -> {
+    if (this.app == null) {
+      return;
+    }
+    try {
+      this.app.enqueue(() -> {
+        update();
+        return null;
+      }).get(simStepTimeoutMs, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      error("simulation step at %d ms timed out after %d ms", nowMs, simStepTimeoutMs);
+    } catch (Exception e) {
+      log.error("simulation step at {} ms (+{} ms) failed", nowMs, deltaMs, e);
+    }
+  };
+
   final public String KEY_SEPERATOR = "/";
 
   transient DisplayMode lastDisplayMode = null;
@@ -205,6 +267,13 @@ public class JMonkeyEngine extends Service implements Gateway, ActionListener, S
 
   transient Mesh pointCloudMesh = new Mesh();
 
+  // the front pair is bound to the mesh, the back pair is filled by
+  // onPointCloud
+  transient FloatBuffer[] pointCloudPositions = new FloatBuffer[2];
+  transient FloatBuffer[] pointCloudColors = new FloatBuffer[2];
+  transient volatile int pointCloudFront = 0;
+  transient final AtomicBoolean pointCloudSwapPending = new AtomicBoolean();
+
   transient Node rootNode;
 
   boolean saveHistory = false;
@@ -222,8 +291,6 @@ public class JMonkeyEngine extends Service implements Gateway, ActionListener, S
 
   boolean shiftLeftPressed = false;
 
-  long sleepMs;
-
   long startUpdateTs;
 
   transient AppStateManager stateManager;
@@ -361,7 +428,7 @@ public class JMonkeyEngine extends Service implements Gateway, ActionListener, S
   }
 
   public void addMsg(String method, Object... params) {
-    jme3MsgQueue.add(new Jme3Msg(method, params));
+    transforms.add(new Jme3Msg(method, params));
   }
 
   public void addNode(String name) {
@@ -1059,16 +1126,14 @@ public class JMonkeyEngine extends Service implements Gateway, ActionListener, S
   }
 
   public void initPointCloud(PointCloud pc) {
+    onPointCloud(pc);
+  }
 
-    Point3df[] points = pc.getData();
-    Vector3f[] lineVerticies = new Vector3f[points.length];
-
-    for (int i = 0; i < points.length; ++i) {
-      Point3df p = points[i];
-      lineVerticies[i] = new Vector3f(p.x, p.y, p.z);
-    }
-
-    pointCloudBuffer = BufferUtils.createFloatBuffer(lineVerticies);
+  /**
+   * builds the point cloud geometry on the jme thread
+   */
+  void initPointCloud(FloatBuffer positions, FloatBuffer colors) {
+    pointCloudBuffer = positions;
 
     // pointCloudMesh.setMode(Mesh.Mode.TriangleFan);
     pointCloudMesh.setMode(Mesh.Mode.Points);
@@ -1077,7 +1142,9 @@ public class JMonkeyEngine extends Service implements Gateway, ActionListener, S
 
     // https://hub.jmonkeyengine.org/t/how-to-render-a-3d-point-cloud/27341/11
     pointCloudMesh.setBuffer(VertexBuffer.Type.Position, 3, pointCloudBuffer);
-    pointCloudMesh.setBuffer(VertexBuffer.Type.Color, 4, pc.getColors());
+    if (colors != null) {
+      pointCloudMesh.setBuffer(VertexBuffer.Type.Color, 4, colors);
+    }
     pointCloudMesh.updateBound();
     pointCloudMesh.updateCounts();
     // pointCloudMesh.setPointSize(0.0003);
@@ -1151,7 +1218,7 @@ public class JMonkeyEngine extends Service implements Gateway, ActionListener, S
         Jme3Msg[] msgs = CodecUtils.fromJson(json, Jme3Msg[].class);
         log.info("adding {} msgs", msgs.length);
         for (Jme3Msg msg : msgs) {
-          jme3MsgQueue.add(msg);
+          transforms.add(msg);
         }
       }
     } catch (Exception e) {
@@ -1435,35 +1502,63 @@ public class JMonkeyEngine extends Service implements Gateway, ActionListener, S
     }
   }
 
+  /**
+   * The mesh has its own pair of position and color buffers - the producer of
+   * a cloud keeps filling its buffers for the next frames. A cloud is copied
+   * into the back pair here and the jme thread swaps it in, a cloud which
+   * comes before the last swap was done is dropped.
+   */
   public void onPointCloud(PointCloud pc) {
 
-    if (pc == null) {
+    if (pc == null || app == null) {
       return;
     }
     // pointCloudMat.setBoolean("VertexColor", false);
     // pointCloudMesh.setPointSize(0.01f);
 
-    if (pointCloudBuffer == null) {
-      initPointCloud(pc);
-      // addBox("box-1");
+    if (!pointCloudSwapPending.compareAndSet(false, true)) {
+      return;
     }
+    int back = 1 - pointCloudFront;
+    FloatBuffer positions = copyInto(pc.getPoints(), pointCloudPositions, back);
+    FloatBuffer colors = pc.hasColors() ? copyInto(pc.getColorBuffer(), pointCloudColors, back) : null;
 
-    pointCloudBuffer.rewind();
-    Point3df[] points = pc.getData();
+    app.enqueue(() -> {
+      try {
+        if (pointCloudBuffer == null) {
+          initPointCloud(positions, colors);
+          // addBox("box-1");
+          return null;
+        }
+        pointCloudBuffer = positions;
+        pointCloudMesh.getBuffer(VertexBuffer.Type.Position).updateData(positions);
+        if (colors != null) {
+          VertexBuffer colorBuffer = pointCloudMesh.getBuffer(VertexBuffer.Type.Color);
+          if (colorBuffer == null) {
+            pointCloudMesh.setBuffer(VertexBuffer.Type.Color, 4, colors);
+          } else {
+            colorBuffer.updateData(colors);
+          }
+        }
+        pointCloudMesh.updateCounts();
+        pointCloudMesh.updateBound();
+        return null;
+      } finally {
+        pointCloudFront = back;
+        pointCloudSwapPending.set(false);
+      }
+    });
+  }
 
-    for (int i = 0; i < points.length; ++i) {
-      Point3df p = points[i];
-      // log.info("p {}", p);
-      // pointCloudBuffer.put(480 - p.y);
-      // pointCloudBuffer.put(640 - p.x);
-      pointCloudBuffer.put(p.x);
-      pointCloudBuffer.put(p.y);
-      pointCloudBuffer.put(p.z);
-      // lineVerticies[index] = new Vector3f(480 - p.y, 640 - p.x, p.z);
+  private static FloatBuffer copyInto(FloatBuffer from, FloatBuffer[] buffers, int i) {
+    if (buffers[i] == null || buffers[i].capacity() < from.remaining()) {
+      buffers[i] = PointCloud.createBuffer(from.remaining());
     }
-
-    pointCloudMesh.setBuffer(VertexBuffer.Type.Position, 3, pointCloudBuffer);
-    pointCloudMesh.setBuffer(VertexBuffer.Type.Color, 4, pc.getColors());
+    FloatBuffer to = buffers[i];
+    to.clear();
+    to.put(from);
+    to.flip();
+    return to;
   }
 
   // auto Register
@@ -1627,7 +1722,7 @@ public class JMonkeyEngine extends Service implements Gateway, ActionListener, S
    * @param degrees
    */
   public void rotateOnAxis(String name, String axis, double degrees) {
-    addMsg("rotateTo", name, axis, degrees);
+    transforms.rotateTo(name, axis, degrees);
   }
 
   /**
@@ -1648,7 +1743,7 @@ public class JMonkeyEngine extends Service implements Gateway, ActionListener, S
    * @param degrees
    */
   public void rotateTo(String name, double degrees) {
-    addMsg("rotateTo", name, null, degrees);
+    transforms.rotateTo(name, null, degrees);
   }
 
   /**
@@ -1680,9 +1775,21 @@ public class JMonkeyEngine extends Service implements Gateway, ActionListener, S
     }
   }
 
+  private void addHistory(Jme3Msg msg) {
+    synchronized (history) {
+      while (history.size() >= historySize && !history.isEmpty()) {
+        history.removeFirst();
+      }
+      history.addLast(msg);
+    }
+  }
+
   public void saveMsgs() throws IOException {
-    List<Jme3Msg> temp = history;
-    history = new ArrayList<Jme3Msg>();
+    List<Jme3Msg> temp;
+    synchronized (history) {
+      temp = new ArrayList<Jme3Msg>(history);
+      history.clear();
+    }
     String data = CodecUtils.toJson(temp);
     FileIO.toFile(String.format("jme3-msg-history-%d.json", System.currentTimeMillis()), data);
   }
@@ -1782,6 +1889,76 @@ public class JMonkeyEngine extends Service implements Gateway, ActionListener, S
     defaultServoSpeed = speed;
   }
 
+  /**
+   * limit the render loop to fps frames per second, -1 renders as fast as
+   * possible
+   *
+   * @param fps
+   */
+  public void setFrameRate(int fps) {
+    frameRate = fps;
+    applyFramePacing();
+  }
+
+  public int getFrameRate() {
+    return frameRate;
+  }
+
+  /**
+   * sync frames to the display refresh rate
+   *
+   * @param b
+   */
+  public void setVSync(boolean b) {
+    vsync = b;
+    applyFramePacing();
+  }
+
+  /**
+   * a simulation should not wait for frames - unless there are no frames to
+   * render and the jme thread would spin
+   */
+  int getPacedFrameRate() {
+    if (!SimClock.isSimulation()) {
+      return frameRate;
+    }
+    return Runtime.isHeadless() ? simFrameRate : -1;
+  }
+
+  private void applyFramePacing() {
+    if (app == null || app.getContext() == null) {
+      // picked up when the app is started
+      return;
+    }
+    settings = app.getContext().getSettings();
+    if (settings.getFrameRate() == getPacedFrameRate() && settings.isVSync() == vsync) {
+      // restarting the context is expensive - only when something changed
+      return;
+    }
+    settings.setFrameRate(getPacedFrameRate());
+    settings.setVSync(vsync);
+    app.setSettings(settings);
+    app.restart();
+  }
+
+  /**
+   * @return the buffer of instant rotations waiting for the next frame
+   */
+  public TransformBuffer getTransformBuffer() {
+    return transforms;
+  }
+
+  /**
+   * @return time the last simpleUpdate took in ms
+   */
+  public long getUpdateMs() {
+    return deltaMs;
+  }
+
+  public void setHistorySize(int size) {
+    historySize = size;
+  }
+
   public void setDisplayFps(boolean b) {
     app.setDisplayFps(b);
   }
@@ -2110,6 +2287,19 @@ public class JMonkeyEngine extends Service implements Gateway, ActionListener, S
     // start the clock on how much time we will take
     startUpdateTs = System.currentTimeMillis();
 
+    if (!SimClock.isSimulation()) {
+      update();
+    }
+
+    // frame pacing is done by jme - see setFrameRate and setVSync
+    deltaMs = System.currentTimeMillis() - startUpdateTs;
+  }
+
+  /**
+   * moves the scene forward - once a frame, or once a step of the simulation
+   * clock in simulation mode
+   */
+  void update() {
     for (HudText hudTxt : guiText.values()) {
       hudTxt.update();
     }
@@ -2122,22 +2312,19 @@ public class JMonkeyEngine extends Service implements Gateway, ActionListener, S
 
         // TODO - support relative & absolute moves
         msg = jme3MsgQueue.remove();
+        if (msg instanceof TransformBuffer.Rotation) {
+          // history is saved by the target
+          transforms.apply((TransformBuffer.Rotation) msg, transformTarget);
+          continue;
+        }
         if (saveHistory) {
-          history.add(msg);
+          addHistory(msg);
         }
         util.invoke(msg);
       } catch (Exception e) {
         log.error("simpleUpdate failed for {} - targetName", msg, e);
       }
     }
-
-    deltaMs = System.currentTimeMillis() - startUpdateTs;
-    sleepMs = 33 - deltaMs;
-
-    if (sleepMs < 0) {
-      sleepMs = 0;
-    }
-    sleep(sleepMs);
   }
 
   public SimpleApplication start() {
@@ -2146,7 +2333,7 @@ public class JMonkeyEngine extends Service implements Gateway, ActionListener, S
 
   // dynamic create of type... TODO fix name start --> create
   synchronized public SimpleApplication start(String appName, String appType) {
-    if (Runtime.isHeadless()) {
+    if (Runtime.isHeadless() && !SimClock.isSimulation()) {
       log.warn("running in headless mode - will not start jmonkey app");
       return null;
     }
@@ -2173,6 +2360,8 @@ public class JMonkeyEngine extends Service implements Gateway, ActionListener, S
       // settings.setUseJoysticks(false);
       settings.setUseInput(true);
       settings.setAudioRenderer(null);
+      settings.setFrameRate(getPacedFrameRate());
+      settings.setVSync(vsync);
       app.setSettings(settings);
       app.setShowSettings(false); // resolution bps etc dialog
       app.setPauseOnLostFocus(false);
@@ -2180,7 +2369,12 @@ public class JMonkeyEngine extends Service implements Gateway, ActionListener, S
       // the all important "start" - anyone goofing around with the engine
       // before this is done will
       // will generate error from jmonkey - this should "block"
-      app.start();
+      if (Runtime.isHeadless()) {
+        // simulation without a display - scene graph only
+        app.start(JmeContext.Type.Headless);
+      } else {
+        app.start();
+      }
       Callable<String> callable = new Callable<String>() {
         public String call() throws Exception {
           System.out.println("Asynchronous Callable");
@@ -2210,6 +2404,7 @@ public class JMonkeyEngine extends Service implements Gateway, ActionListener, S
   public void startService() {
     try {
       super.startService();
+      SimClock.register(simStep);
       // start the jmonkey app - if you want a diferent Jme3App
       // config should be set at before this time
       SimpleApplication app = start();
@@ -2243,6 +2438,8 @@ public class JMonkeyEngine extends Service implements Gateway, ActionListener, S
         // why ?
         app.getRootNode().detachAllChildren();
         app.getGuiNode().detachAllChildren();
+        // the nodes are gone - so are their rotations
+        transforms.clear();
         app.stop(true);
         // app.destroy(); not for "us"
         app = null;
@@ -2255,6 +2452,7 @@ public class JMonkeyEngine extends Service implements Gateway, ActionListener, S
   @Override
   public void stopService() {
     super.stopService();
+    SimClock.unregister(simStep);
     try {
       stop();
     } catch (Exception e) {
@@ -2430,13 +2628,13 @@ public class JMonkeyEngine extends Service implements Gateway, ActionListener, S
         // rotateOnAxis(nodeName, null, data.angle/*, velocity - No speed
         // supplied*/);
         // util.rotateTo(nodeName, null, data.angle);
-        addMsg("rotateTo", nodeName, null, data.angle);
+        transforms.rotateTo(nodeName, null, data.angle);
       }
     } else {
       // wrong - uses interpolator - which does encoding/animation
       // rotateOnAxis(name, null, data.angle/*, velocity - No speed supplied*/);
       // util.rotateTo(name, null, data.angle);
-      addMsg("rotateTo", name, null, data.angle);
+      transforms.rotateTo(name, null, data.angle);
     }
   }
 
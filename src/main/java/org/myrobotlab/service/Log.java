@@ -25,17 +25,24 @@
 
 package org.myrobotlab.service;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
 
 import org.myrobotlab.framework.Service;
 import org.myrobotlab.io.FileIO;
+import org.myrobotlab.logging.LogStore;
 import org.myrobotlab.logging.LoggerFactory;
 import org.myrobotlab.logging.Logging;
 import org.myrobotlab.logging.LoggingFactory;
+import org.myrobotlab.service.data.LogPage;
 import org.slf4j.Logger;
 
+import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.core.Appender;
 import ch.qos.logback.core.Context;
@@ -52,7 +59,22 @@ public class Log extends Service implements Appender<ILoggingEvent> {
     public String className;
     public String body;
 
+    public LogEntry() {
+    }
+
     public LogEntry(ILoggingEvent event) {
+      set(event);
+    }
+
+    public LogEntry(LogEntry entry) {
+      ts = entry.ts;
+      level = entry.level;
+      threadName = entry.threadName;
+      className = entry.className;
+      body = entry.body;
+    }
+
+    void set(ILoggingEvent event) {
       ts = event.getTimeStamp();
       level = event.getLevel().toString();
       threadName = event.getThreadName();
@@ -65,6 +87,98 @@ public class Log extends Service implements Appender<ILoggingEvent> {
     }
   }
 
+  /**
+   * Fixed ring of preallocated entries. Any number of threads add to it
+   * without locking - a full ring drops the entry instead of blocking the
+   * logging thread. One thread at a time drains it.
+   */
+  public static class Ring {
+
+    final LogEntry[] entries;
+
+    /**
+     * sequence number of the entry in each slot, set once the entry is
+     * written
+     */
+    final AtomicLongArray sequences;
+
+    final int mask;
+
+    /**
+     * next sequence to be claimed by a writer
+     */
+    final AtomicLong head = new AtomicLong();
+
+    /**
+     * next sequence to be drained - only drain moves it
+     */
+    volatile long tail = 0;
+
+    final AtomicLong dropped = new AtomicLong();
+
+    public Ring(int size) {
+      int capacity = Integer.highestOneBit(Math.max(size, 2) - 1) << 1;
+      entries = new LogEntry[capacity];
+      sequences = new AtomicLongArray(capacity);
+      for (int i = 0; i < capacity; ++i) {
+        entries[i] = new LogEntry();
+        sequences.set(i, -1);
+      }
+      mask = capacity - 1;
+    }
+
+    /**
+     * @return number of entries waiting to be drained, -1 if the event was
+     *         dropped
+     */
+    public long add(ILoggingEvent event) {
+      long seq;
+      do {
+        seq = head.get();
+        if (seq - tail >= entries.length) {
+          dropped.incrementAndGet();
+          return -1;
+        }
+      } while (!head.compareAndSet(seq, seq + 1));
+
+      int slot = (int) seq & mask;
+      entries[slot].set(event);
+      sequences.set(slot, seq);
+      return seq - tail + 1;
+    }
+
+    /**
+     * copies the written entries out and frees their slots - an entry still
+     * being written ends the batch
+     */
+    public synchronized List<LogEntry> drain() {
+      long end = head.get();
+      List<LogEntry> batch = new ArrayList<>((int) (end - tail));
+      long seq = tail;
+      for (; seq < end; ++seq) {
+        int slot = (int) seq & mask;
+        if (sequences.get(slot) != seq) {
+          break;
+        }
+        batch.add(new LogEntry(entries[slot]));
+      }
+      tail = seq;
+      return batch;
+    }
+
+    public int getCapacity() {
+      return entries.length;
+    }
+
+    public long size() {
+      return head.get() - tail;
+    }
+
+    public long getDropped() {
+      return dropped.get();
+    }
+  }
+
   public final static Logger log = LoggerFactory.getLogger(Log.class);
 
   private static final long serialVersionUID = 1L;
@@ -78,7 +192,50 @@ public class Log extends Service implements Appender<ILoggingEvent> {
    * buffer of log event - made transient because the appropriate way to
    * broadcast logging is through publishLogEvent (not broadcastState)
    */
-  transient List<LogEntry> buffer = new ArrayList<>();
+  transient volatile Ring buffer = null;
+
+  /**
+   * the buffer setMaxSize replaced - a writer which read it before the swap
+   * may still add to it, so flush drains it too until it stays empty
+   */
+  transient volatile Ring retired = null;
+
+  /**
+   * drops of the buffer reported in a published batch so far
+   */
+  transient long reportedDropped = 0;
+
+  /**
+   * drops of the retired buffer reported so far
+   */
+  transient long reportedRetiredDropped = 0;
+
+  /**
+   * events below the publish level, not buffered
+   */
+  transient final AtomicLong filtered = new AtomicLong();
+
+  transient volatile Thread flusher = null;
+
+  /**
+   * queryable copy of the published entries on disk
+   */
+  transient volatile LogStore store = null;
+
+  /**
+   * orders the flushes - taken before the monitor of the service, never after
+   */
+  transient final Object flushLock = new Object();
+
+  /**
+   * keep the published entries in the log store
+   */
+  boolean storeEnabled = true;
+
+  /**
+   * disk budget of the log store, the oldest entries are deleted past it
+   */
+  long storeMaxBytes = 64 * 1024 * 1024;
 
   /**
    * logging state
@@ -96,17 +253,32 @@ public class Log extends Service implements Appender<ILoggingEvent> {
   String logLevel = null;
 
   /**
-   * max size of log buffer
+   * max size of log buffer - rounded up to a power of 2, entries past it are
+   * dropped until the next flush
    */
-  int maxSize = 1000;
+  int maxSize = 4096;
+
+  /**
+   * buffered entries which publish without waiting for the interval
+   */
+  int batchSize = 256;
 
   /**
    * minimal time between log broadcasts
    */
   long minIntervalMs = 1000;
 
+  /**
+   * lowest level published - more detailed events are filtered before they
+   * are buffered
+   */
+  String publishLevel = "DEBUG";
+
+  transient Level publishThreshold = Level.DEBUG;
+
   public Log(String n, String id) {
     super(n, id);
+    buffer = new Ring(maxSize);
     getLogLevel();
   }
 
@@ -172,27 +344,216 @@ public class Log extends Service implements Appender<ILoggingEvent> {
    */
   @Override
   public void doAppend(ILoggingEvent event) throws LogbackException {
-    String name = Thread.currentThread().getName();
-    buffer.add(new LogEntry(event));
-    // if (buffer.size() > maxSize || System.currentTimeMillis() -
-    // lastPublishLogTimeTs > minIntervalMs) {
-    // // event.get
-    // flush();
-    // }
+    Level threshold = publishThreshold;
+    if (threshold != null && !event.getLevel().isGreaterOrEqual(threshold)) {
+      filtered.incrementAndGet();
+      return;
+    }
+    if (buffer.add(event) >= batchSize) {
+      Thread t = flusher;
+      if (t != null) {
+        LockSupport.unpark(t);
+      }
+    }
   }
 
   /**
-   * flush publishes the current buffer and creates a new one. It can be called
-   * by either the thread adding a log entry or by a scheduled task which
-   * flushes automatically at some interval. The task is to keep from starving
-   * for information when the logging is sparse
+   * flush publishes the current buffer as one batch. It is called by the flush
+   * thread when batchSize entries are buffered or minIntervalMs has passed -
+   * the interval keeps from starving for information when the logging is
+   * sparse
+   *
+   * Batches are stored and published in order under their own lock, not the
+   * monitor of the service, so the disk writes do not hold up the rest of it.
    */
-  synchronized public void flush() {
-    if (buffer.size() > 0) {
-      invoke("publishLogEvents", buffer);
-      buffer = new ArrayList<>(maxSize);
-      lastPublishLogTimeTs = System.currentTimeMillis();
+  public void flush() {
+    synchronized (flushLock) {
+      Ring ring = buffer;
+      List<LogEntry> batch = ring.drain();
+      long ringDropped = ring.getDropped();
+      long dropped = ringDropped - reportedDropped;
+      reportedDropped = ringDropped;
+      Ring old = retired;
+      if (old != null) {
+        List<LogEntry> late = old.drain();
+        // late writers can drop into it too
+        long oldDropped = old.getDropped();
+        dropped += oldDropped - reportedRetiredDropped;
+        reportedRetiredDropped = oldDropped;
+        if (late.isEmpty()) {
+          retired = null;
+        } else {
+          batch.addAll(0, late);
+        }
+      }
+      LogStore s = store;
+      if (s != null && batch.size() > 0) {
+        try {
+          s.append(batch);
+        } catch (Exception e) {
+          // closed first - the error is then only published, not stored
+          closeStore();
+          error("log store failed - %s", e.getMessage());
+        }
+      }
+      if (dropped > 0) {
+        LogEntry entry = new LogEntry();
+        entry.ts = System.currentTimeMillis();
+        entry.level = "WARN";
+        entry.threadName = Thread.currentThread().getName();
+        entry.className = Log.class.getName();
+        entry.body = String.format("log buffer full - dropped %d entries", dropped);
+        batch.add(entry);
+      }
+      if (batch.size() > 0) {
+        invoke("publishLogEvents", batch);
+        lastPublishLogTimeTs = System.currentTimeMillis();
+      }
+    }
+  }
+
+  synchronized void startFlusher() {
+    if (flusher != null) {
+      return;
     }
+    flusher = new Thread(() -> {
+      while (flusher == Thread.currentThread()) {
+        LockSupport.parkNanos(minIntervalMs * 1000000L);
+        try {
+          flush();
+        } catch (Exception e) {
+          System.err.println(String.format("%s could not flush %s", getName(), e.getMessage()));
+        }
+      }
+    }, String.format("%s.flush", getName()));
+    flusher.setDaemon(true);
+    flusher.start();
+  }
+
+  synchronized void stopFlusher() {
+    Thread t = flusher;
+    flusher = null;
+    if (t != null) {
+      LockSupport.unpark(t);
+    }
+  }
+
+  /**
+   * size of the log buffer - the buffered entries are published first
+   */
+  public void setMaxSize(int maxSize) {
+    synchronized (flushLock) {
+      flush();
+      this.maxSize = maxSize;
+      // writers are not stopped - new ones add to the new buffer, late ones
+      // to the retired which the next flushes drain
+      retired = buffer;
+      reportedRetiredDropped = reportedDropped;
+      buffer = new Ring(maxSize);
+      reportedDropped = 0;
+    }
+    broadcastState();
+  }
+
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  public void setBatchSize(int batchSize) {
+    this.batchSize = batchSize;
+  }
+
+  public void setMinIntervalMs(long minIntervalMs) {
+    this.minIntervalMs = minIntervalMs;
+  }
+
+  /**
+   * lowest level which is published, e.g. "info" to keep debug logging in the
+   * log file only
+   */
+  public void setPublishLevel(String level) {
+    publishThreshold = Level.toLevel(level, Level.DEBUG);
+    publishLevel = publishThreshold.toString();
+    broadcastState();
+  }
+
+  public String getPublishLevel() {
+    return publishLevel;
+  }
+
+  /**
+   * entries of the log store in time order - e.g. all WARN and ERROR of Arduino
+   * between two times. The page has the cursor to get the next page with.
+   *
+   * @param from
+   *          - ms, null for the beginning
+   * @param to
+   *          - ms, null for now
+   * @param level
+   *          - lowest level
+   * @param logger
+   *          - part of the logger name
+   * @param thread
+   *          - part of the thread name
+   * @param text
+   *          - part of the message
+   * @param cursor
+   *          - next of the previous page, null for the first
+   * @param limit
+   *          - entries per page
+   */
+  public LogPage queryLog(Long from, Long to, String level, String logger, String thread, String text, String cursor, Integer limit) {
+    LogStore s = store;
+    if (s == null) {
+      error("log store is not enabled");
+      return null;
+    }
+    try {
+      flush();
+      return s.query(from, to, level, logger, thread, text, cursor, (limit == null) ? 200 : limit);
+    } catch (Exception e) {
+      error("query failed - %s", e.getMessage());
+    }
+    return null;
+  }
+
+  synchronized void openStore() {
+    if (storeEnabled && store == null) {
+      store = new LogStore(new File(getDataInstanceDir()));
+      store.setMaxBytes(storeMaxBytes);
+    }
+  }
+
+  synchronized void closeStore() {
+    if (store != null) {
+      store.close();
+      store = null;
+    }
+  }
+
+  public void setStoreEnabled(boolean b) {
+    storeEnabled = b;
+    if (b && isRunning()) {
+      openStore();
+    } else if (!b) {
+      closeStore();
+    }
+    broadcastState();
+  }
+
+  public void setStoreMaxBytes(long maxBytes) {
+    storeMaxBytes = maxBytes;
+    LogStore s = store;
+    if (s != null) {
+      s.setMaxBytes(maxBytes);
+    }
+  }
+
+  public String getStats() {
+    Ring ring = buffer;
+    LogStore s = store;
+    return String.format("buffered %d/%d dropped %d filtered %d store %s", ring.size(), ring.getCapacity(), ring.getDropped(), filtered.get(),
+        (s == null) ? "off" : String.format("%d segments %d bytes", s.getSegmentCount(), s.getTotalBytes()));
   }
 
   @Override
@@ -248,7 +609,7 @@ public class Log extends Service implements Appender<ILoggingEvent> {
     }
 
     if (!isLogging) {
-      root.addAppender(this);
+      startLogging();
     }
     // getting current level before broadcasting state
     getLogLevel();
@@ -265,11 +626,12 @@ public class Log extends Service implements Appender<ILoggingEvent> {
     // root.setLevel(ch.qos.logback.classic.Level.INFO);
     root.addAppender(this);
     isLogging = true;
-    addTask(minIntervalMs, "flush");
+    startFlusher();
   }
 
   public void startService() {
     super.startService();
+    openStore();
     startLogging();
   }
 
@@ -285,12 +647,14 @@ public class Log extends Service implements Appender<ILoggingEvent> {
     ch.qos.logback.classic.Logger root = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
     root.detachAppender(this);
     isLogging = false;
-    purgeTasks();
+    stopFlusher();
+    flush();
   }
 
   public void stopService() {
     super.stopService();
     stopLogging();
+    closeStore();
   }
 
   public static void main(String[] args) {
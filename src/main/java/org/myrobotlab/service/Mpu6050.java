@@ -35,6 +35,8 @@ import org.myrobotlab.framework.interfaces.Attachable;
 import org.myrobotlab.logging.LoggerFactory;
 import org.myrobotlab.logging.Logging;
 import org.myrobotlab.logging.LoggingFactory;
+import org.myrobotlab.service.data.I2cPollData;
+import org.myrobotlab.service.data.I2cTransaction;
 import org.myrobotlab.service.data.Orientation;
 import org.myrobotlab.service.interfaces.I2CControl;
 import org.myrobotlab.service.interfaces.I2CController;
@@ -84,6 +86,19 @@ public class Mpu6050 extends Service implements I2CControl, OrientationPublisher
 
   transient OrientationPublisher publisher;
 
+  /**
+   * time between samples of orientation tracking
+   */
+  public int sampleIntervalMs = 20;
+
+  /**
+   * id of the scheduled read on the controller, -1 when the
+   * OrientationPublisher thread polls
+   */
+  transient int pollId = -1;
+
+  transient long lastPollTimestamp = -1;
+
   public transient I2CController controller;
 
   public List<String> deviceAddressList = Arrays.asList("0x68", "0x69");
@@ -536,6 +551,7 @@ public class Mpu6050 extends Service implements I2CControl, OrientationPublisher
       while (isRunning) {
         refresh();
         invoke("publishOrientation", new Orientation(filtered_x_angle, filtered_y_angle, filtered_z_angle));
+        Mpu6050.sleep(sampleIntervalMs);
       }
     }
   }
@@ -621,14 +637,21 @@ public class Mpu6050 extends Service implements I2CControl, OrientationPublisher
   }
 
   public void getRaw() {
-    // Set the start address to read from
-    byte[] writebuffer = { MPU6050_RA_ACCEL_XOUT_H };
-    controller.i2cWrite(this, Integer.parseInt(deviceBus), Integer.decode(deviceAddress), writebuffer, writebuffer.length);
-    // The Arduino example executes a request_from()
-    // Not sure if this will do the trick
-    // Request 14 bytes from the MPU-6050
-    byte[] readbuffer = new byte[14];
-    controller.i2cRead(this, Integer.parseInt(deviceBus), Integer.decode(deviceAddress), readbuffer, readbuffer.length);
+    // Set the start address to read from and request 14 bytes from the
+    // MPU-6050 in one exchange with the controller
+    I2cTransaction transaction = new I2cTransaction().write(MPU6050_RA_ACCEL_XOUT_H).read(14);
+    if (controller.i2cTransaction(this, Integer.parseInt(deviceBus), Integer.decode(deviceAddress), transaction) == -1) {
+      // keep the last values rather than decode an empty buffer
+      log.error("{} could not read the raw values", getName());
+      return;
+    }
+    setRaw(transaction.getRead(0));
+  }
+
+  /**
+   * converts the 14 bytes starting at MPU6050_RA_ACCEL_XOUT_H
+   */
+  void setRaw(byte[] readbuffer) {
     // Fill the variables with the result from the read operation
     accelX = (byte) readbuffer[0] << 8 | readbuffer[1] & 0xFF;
     accelY = (byte) readbuffer[2] << 8 | readbuffer[3] & 0xFF;
@@ -668,7 +691,14 @@ public class Mpu6050 extends Service implements I2CControl, OrientationPublisher
     }
     double dt = (now - lastnow) / 1000;
     lastnow = now;
+    complementaryFilter(dt, gyro_x, gyro_y, gyro_z, acc_x, acc_y, acc_z);
+  }
 
+  /**
+   * @param dt
+   *          seconds since the previous sample
+   */
+  void complementaryFilter(double dt, double gyro_x, double gyro_y, double gyro_z, double acc_x, double acc_y, double acc_z) {
     double gyroPortion = .90;
     double accPortion = 1 - gyroPortion;
     // Calculate the rotations from the accelerometer
@@ -4874,10 +4904,22 @@ public class Mpu6050 extends Service implements I2CControl, OrientationPublisher
     return data;
   }
 
+  /**
+   * Starts publishing orientation every sampleIntervalMs. If the controller can
+   * schedule i2c reads the 14 sensor bytes are streamed from it with the
+   * time they were read, otherwise a thread polls with write and read round
+   * trips.
+   */
   @Override
   public void startOrientationTracking() {
-
-    if (publisher == null) {
+    if (pollId != -1 || publisher != null) {
+      return;
+    }
+    if (controller != null) {
+      lastPollTimestamp = -1;
+      pollId = controller.i2cPollStart(this, Integer.parseInt(deviceBus), Integer.decode(deviceAddress), MPU6050_RA_ACCEL_XOUT_H, 14, sampleIntervalMs);
+    }
+    if (pollId == -1) {
       publisher = new OrientationPublisher();
       publisher.start();
     }
@@ -4885,12 +4927,31 @@ public class Mpu6050 extends Service implements I2CControl, OrientationPublisher
 
   @Override
   public void stopOrientationTracking() {
+    if (pollId != -1) {
+      if (controller != null) {
+        controller.i2cPollStop(this, pollId);
+      }
+      pollId = -1;
+    }
     if (publisher != null) {
       publisher.isRunning = false;
       publisher = null;
     }
   }
 
+  @Override
+  public void onI2cPollData(I2cPollData data) {
+    if (data.pollId != pollId || data.data.length < 14) {
+      return;
+    }
+    setRaw(data.data);
+    // the controller's micros() wraps at 32 bits
+    double dt = (lastPollTimestamp == -1) ? sampleIntervalMs / 1000.0 : ((data.timestamp - lastPollTimestamp) & 0xFFFFFFFFL) / 1000000.0;
+    lastPollTimestamp = data.timestamp;
+    complementaryFilter(dt, gyroX, gyroY, gyroZ, accelX, accelY, accelZ);
+    invoke("publishOrientation", new Orientation(filtered_x_angle, filtered_y_angle, filtered_z_angle));
+  }
+
   @Override
   public void attach(OrientationListener listener) {
     listeners.add(listener);
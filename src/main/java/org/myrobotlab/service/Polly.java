@@ -57,6 +57,8 @@ public class Polly extends AbstractSpeechSynthesis {
 
   public Polly(String n, String id) {
     super(n, id);
+    // requests to the cloud service can run in parallel
+    synthesisThreads = 3;
   }
 
   /**
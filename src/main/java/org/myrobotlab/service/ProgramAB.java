@@ -74,10 +74,23 @@ public class ProgramAB extends Service implements TextListener, TextPublisher, L
   String currentUserName = "human";
 
   /**
-   * save predicates - default every 5 minutes
+   * compact the predicate logs into the predicates files - default every 5
+   * minutes
    */
   public int savePredicatesInterval = 300000;
 
+  /**
+   * how often changed predicates are appended to the predicate log - this is
+   * the most state which can be lost on a crash. 0 writes every change through
+   * immediately
+   */
+  public int predicateFlushInterval = 1000;
+
+  /**
+   * fsync the predicate log on every flush
+   */
+  public boolean predicateSync = false;
+
   /**
    * display processing and logging
    */
@@ -496,12 +509,68 @@ public class ProgramAB extends Service implements TextListener, TextPublisher, L
   }
 
   /**
-   * Save all the predicates for all known sessions.
+   * Save all the predicates for all known sessions. Changes are flushed to each
+   * bots predicate log and the logs are compacted into the predicates files.
    */
   public void savePredicates() throws IOException {
     for (Session session : sessions.values()) {
       session.savePredicates();
     }
+    for (BotInfo bot : bots.values()) {
+      bot.getPredicateStore().compact();
+    }
+  }
+
+  /**
+   * called by a session when its predicates might have changed - nothing is
+   * recorded unless a predicate was set to a new value or removed
+   * 
+   * @param session
+   */
+  public void onPredicatesChanged(Session session) {
+    if (!session.hasChanges()) {
+      return;
+    }
+    session.botInfo.getPredicateStore().sync = predicateSync;
+    if (predicateFlushInterval <= 0) {
+      session.savePredicates();
+    } else {
+      session.recordChanges();
+    }
+  }
+
+  /**
+   * append changed predicates of all sessions to the predicate logs
+   */
+  public void flushPredicates() {
+    for (Session session : sessions.values()) {
+      session.recordChanges();
+    }
+    for (BotInfo bot : bots.values()) {
+      bot.getPredicateStore().sync = predicateSync;
+      bot.getPredicateStore().flush();
+    }
+  }
+
+  /**
+   * compact predicate logs which have grown large - runs in the background
+   */
+  public void compactPredicates() {
+    for (BotInfo bot : bots.values()) {
+      bot.getPredicateStore().compactIfNeeded();
+    }
+  }
+
+  public void setPredicateFlushInterval(int intervalMs) {
+    predicateFlushInterval = intervalMs;
+    purgeTask("flushPredicates");
+    if (intervalMs > 0) {
+      addTask("flushPredicates", predicateFlushInterval, 0, "flushPredicates");
+    }
+  }
+
+  public void setPredicateSync(boolean b) {
+    predicateSync = b;
   }
 
   public void setEnableAutoConversation(boolean enableAutoConversation) {
@@ -924,7 +993,10 @@ public class ProgramAB extends Service implements TextListener, TextPublisher, L
       }
     }
 
-    addTask("savePredicates", savePredicatesInterval, 0, "savePredicates");
+    if (predicateFlushInterval > 0) {
+      addTask("flushPredicates", predicateFlushInterval, 0, "flushPredicates");
+    }
+    addTask("compactPredicates", savePredicatesInterval, 0, "compactPredicates");
     logPublisher = new SimpleLogPublisher(this);
     logPublisher.filterClasses(new String[] { "org.alicebot.ab.Graphmaster", "org.alicebot.ab.MagicBooleans", "class org.myrobotlab.programab.MrlSraixHandler" });
     logPublisher.start();
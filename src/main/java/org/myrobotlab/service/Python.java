@@ -8,7 +8,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.myrobotlab.codec.CodecUtils;
 import org.myrobotlab.framework.Message;
@@ -22,12 +24,14 @@ import org.myrobotlab.logging.Level;
 import org.myrobotlab.logging.LoggerFactory;
 import org.myrobotlab.logging.Logging;
 import org.myrobotlab.logging.LoggingFactory;
+import org.myrobotlab.service.data.PythonStats;
 import org.myrobotlab.service.data.Script;
 import org.myrobotlab.service.meta.abstracts.MetaData;
 import org.python.core.Py;
 import org.python.core.PyException;
 import org.python.core.PyObject;
 import org.python.core.PyString;
+import org.python.core.PyStringMap;
 import org.python.core.PySystemState;
 import org.python.modules.thread.thread;
 import org.python.util.PythonInterpreter;
@@ -61,51 +65,20 @@ public class Python extends Service {
     @Override
     public void run() {
       try {
+        // callbacks are called directly, not through interp.exec which would
+        // set up the interpreter's system state for this thread
+        Py.setSystemState(interp.getSystemState());
         while (isRunning()) {
 
-          Message msg = inputQueue.take();
+          QueuedMessage queued = inputQueue.take();
 
           try {
-            // FIXME - remove all msg_ .. its the old way .. :P
-
-            // serious bad bug in it which I think I fixed - the
-            // msgHandle is really the data coming from a callback
-            // it can originate from the same calling function such
-            // as Sphinx.send - but we want the callback to
-            // call a different method - this means the data needs
-            // to go to a data structure which is keyed by only the
-            // sending method, but must call the appropriate method
-            // in Sphinx
-            StringBuffer msgHandle = new StringBuffer().append("msg_").append(CodecUtils.getSafeReferenceName(msg.sender)).append("_").append(msg.sendingMethod);
-            PyObject compiledObject = null;
-
-            // TODO - getCompiledMethod(msg.method SHOULD BE
-            // getCompiledMethod(methodSignature
-            // without it - no overloading is possible
-
-            if (msg.data == null || msg.data.length == 0) {
-              compiledObject = getCompiledMethod(msg.method, String.format("%s()", msg.method), interp);
-            } else {
-              StringBuffer methodWithParams = new StringBuffer();
-              methodWithParams.append(String.format("%s(", msg.method));
-              for (int i = 0; i < msg.data.length; ++i) {
-                String paramHandle = String.format("%s_p%d", msgHandle, i);
-                interp.set(paramHandle.toString(), msg.data[i]);
-                methodWithParams.append(paramHandle);
-                if (i < msg.data.length - 1) {
-                  methodWithParams.append(",");
-                }
-              }
-              methodWithParams.append(")");
-              compiledObject = getCompiledMethod(msg.method, methodWithParams.toString(), interp);
-            }
-
-            interp.exec(compiledObject);
-
+            invokeCallback(queued.msg);
           } catch (Exception e) {
             log.error("InputQueueThread threw", e);
             python.error(String.format("%s %s", e.getClass().getSimpleName(), e.getMessage()));
           }
+          recordCallback(System.nanoTime() - queued.ts);
         }
       } catch (Exception e) {
         if (e instanceof InterruptedException) {
@@ -120,14 +93,22 @@ public class Python extends Service {
   class PIThread extends Thread {
     private String code;
     public boolean executing = false;
+    // interpreter the script runs in - null for the main one
+    private PythonInterpreter isolated;
 
     PIThread(String name, String code) {
       super(name);
       this.code = code;
     }
 
+    PIThread(String name, String code, PythonInterpreter isolated) {
+      this(name, code);
+      this.isolated = isolated;
+    }
+
     @Override
     public void run() {
+      PythonInterpreter interp = (isolated != null) ? isolated : Python.this.interp;
       try {
         if (interp == null) {
           log.warn("cannot run script - python interpreter is null - not initialized yet ?");
@@ -135,7 +116,17 @@ public class Python extends Service {
         }
 
         executing = true;
-        interp.exec(code);
+        if (isolated == null) {
+          scriptGeneration.incrementAndGet();
+        }
+        try {
+          interp.exec(code);
+        } finally {
+          if (isolated == null) {
+            // callbacks resolved while it ran can be stale
+            scriptGeneration.incrementAndGet();
+          }
+        }
 
       } catch (Exception e) {
         log.error("python exec threw", e);
@@ -163,6 +154,10 @@ public class Python extends Service {
 
       } finally {
         executing = false;
+        interpThreads.remove(getName());
+        if (isolated != null) {
+          releaseInterpreter(isolated);
+        }
         log.info("script completed");
         invoke("finishedExecutingScript");
       }
@@ -208,10 +203,78 @@ public class Python extends Service {
    */
   Map<String, String> exampleFiles = new TreeMap<String, String>();
 
-  transient LinkedBlockingQueue<Message> inputQueue = new LinkedBlockingQueue<Message>();
+  /**
+   * a callback waiting for the input queue thread
+   */
+  static class QueuedMessage {
+    final Message msg;
+    final long ts = System.nanoTime();
+
+    QueuedMessage(Message msg) {
+      this.msg = msg;
+    }
+  }
+
+  transient LinkedBlockingQueue<QueuedMessage> inputQueue = new LinkedBlockingQueue<QueuedMessage>();
   transient InputQueueThread inputQueueThread;
   transient PythonInterpreter interp = null;
-  transient Map<String, PIThread> interpThreads = new HashMap<String, PIThread>();
+  transient Map<String, PIThread> interpThreads = new ConcurrentHashMap<String, PIThread>();
+
+  /**
+   * callbacks call the python function directly with the message data instead
+   * of setting globals and executing a compiled call statement
+   */
+  boolean directCallbacks = true;
+
+  /**
+   * python functions resolved for callbacks, by method name - only used by the
+   * input queue thread
+   */
+  transient Map<String, Callback> callbacks = new HashMap<String, Callback>();
+
+  /**
+   * bumped before and after a script is executed, a script can redefine a
+   * callback function so the resolved ones are looked up again - also the ones
+   * resolved while the script ran
+   */
+  transient AtomicLong scriptGeneration = new AtomicLong();
+
+  /**
+   * number of idle isolated interpreters kept ready for execIsolated - 0
+   * creates a new one for every script
+   */
+  int interpreterPoolSize = 0;
+
+  transient LinkedBlockingQueue<PythonInterpreter> interpreterPool = new LinkedBlockingQueue<PythonInterpreter>();
+
+  /**
+   * Namespace every interpreter sees as the global "shared". Isolated
+   * interpreters share nothing else with each other or the main interpreter.
+   */
+  transient PyStringMap shared = new PyStringMap();
+
+  /**
+   * interpreter for callback functions - see execCallbackScript
+   */
+  transient PythonInterpreter callbackInterp = null;
+
+  // callback stats since the last getPythonStats
+  transient final Object statsLock = new Object();
+  transient long callbackCount = 0;
+  transient int intervalCallbacks = 0;
+  transient long intervalLatencyNs = 0;
+  transient long intervalMaxLatencyNs = 0;
+  transient long statsTs = System.currentTimeMillis();
+
+  static class Callback {
+    final PyObject function;
+    final long generation;
+
+    Callback(PyObject function, long generation) {
+      this.function = function;
+      this.generation = generation;
+    }
+  }
 
   int interpreterThreadCount = 0;
 
@@ -276,6 +339,7 @@ public class Python extends Service {
     // service :(
     PyObject compiled = getCompiledMethod("initializePython", selfReferenceScript, interp);
     interp.exec(compiled);
+    interp.set("shared", shared);
 
     Map<String, ServiceInterface> svcs = Runtime.getRegistry();
     StringBuffer initScript = new StringBuffer();
@@ -414,10 +478,16 @@ public class Python extends Service {
       if (!blocking) {
         String name = String.format("%s.interpreter.%d", getName(), ++interpreterThreadCount);
         PIThread interpThread = new PIThread(name, code);
-        interpThread.start();
+        // registered first - a short script removes itself when it finishes
         interpThreads.put(name, interpThread);
+        interpThread.start();
       } else {
-        interp.exec(code);
+        scriptGeneration.incrementAndGet();
+        try {
+          interp.exec(code);
+        } finally {
+          scriptGeneration.incrementAndGet();
+        }
       }
 
       // FIXME - TOO MANY DIFFERENT CODE-PATHS TO interp.exec ...
@@ -453,7 +523,12 @@ public class Python extends Service {
       createPythonInterpreter();
     }
     try {
-      pyOutput = interp.eval(code).toString();
+      scriptGeneration.incrementAndGet();
+      try {
+        pyOutput = interp.eval(code).toString();
+      } finally {
+        scriptGeneration.incrementAndGet();
+      }
     } catch (PyException pe) {
       // something specific with a python error
       error(pe.toString());
@@ -493,7 +568,277 @@ public class Python extends Service {
 
   public void execMethod(String method, Object... parms) {
     Message msg = Message.createMessage(getName(), getName(), method, parms);
-    inputQueue.add(msg);
+    inputQueue.add(new QueuedMessage(msg));
+  }
+
+  /**
+   * Runs a script in its own interpreter, in the background. It sees the
+   * services and the "shared" namespace, but none of the globals of the main
+   * interpreter or of other isolated scripts - so long running scripts do not
+   * step on each other. The interpreter is reset and returned to the pool when
+   * the script finishes.
+   * 
+   * @param code
+   *          the script
+   * @return name of the thread running it
+   */
+  public String execIsolated(String code) {
+    String name = String.format("%s.isolated.%d", getName(), ++interpreterThreadCount);
+    PIThread interpThread = new PIThread(name, code, takeInterpreter());
+    interpThreads.put(name, interpThread);
+    interpThread.start();
+    return name;
+  }
+
+  public String execFileIsolated(String filename) throws IOException {
+    return execIsolated(FileIO.toString(filename));
+  }
+
+  /**
+   * number of idle isolated interpreters to keep ready, they are created now
+   */
+  public void setInterpreterPoolSize(int size) {
+    interpreterPoolSize = Math.max(0, size);
+    // isolated interpreters share the system state of the main one, they are
+    // dropped rather than cleaned up
+    while (interpreterPool.size() > interpreterPoolSize) {
+      interpreterPool.poll();
+    }
+    while (interpreterPool.size() < interpreterPoolSize) {
+      interpreterPool.add(createIsolatedInterpreter());
+    }
+    broadcastState();
+  }
+
+  public int getInterpreterPoolSize() {
+    return interpreterPoolSize;
+  }
+
+  private PythonInterpreter takeInterpreter() {
+    PythonInterpreter pi = interpreterPool.poll();
+    return (pi != null) ? pi : createIsolatedInterpreter();
+  }
+
+  private void releaseInterpreter(PythonInterpreter pi) {
+    if (interpreterPool.size() >= interpreterPoolSize) {
+      return;
+    }
+    try {
+      // forget the script's globals
+      ((PyStringMap) pi.getLocals()).clear();
+      initInterpreter(pi);
+      interpreterPool.add(pi);
+    } catch (Exception e) {
+      log.error("could not reset interpreter", e);
+    }
+  }
+
+  private PythonInterpreter createIsolatedInterpreter() {
+    if (interp == null) {
+      createPythonInterpreter();
+    }
+    PythonInterpreter pi = new PythonInterpreter(new PyStringMap(), interp.getSystemState());
+    initInterpreter(pi);
+    return pi;
+  }
+
+  private void initInterpreter(PythonInterpreter pi) {
+    String init = "from org.myrobotlab.framework import Platform\n" + "from org.myrobotlab.service import Runtime\n" + "from org.myrobotlab.framework import Service\n"
+        + "from time import sleep\n" + String.format("%s = Runtime.getService(\"%s\")\n", CodecUtils.getSafeReferenceName(getName()), getName())
+        + "runtime = Runtime.getInstance()\n";
+    pi.exec(init);
+    pi.set("shared", shared);
+  }
+
+  /**
+   * put a value in the namespace all interpreters share
+   */
+  public void share(String name, Object value) {
+    shared.__setitem__(name, Py.java2py(value));
+  }
+
+  /**
+   * @return a shared value, converted to java where possible
+   */
+  public Object getShared(String name) {
+    PyObject value = shared.__finditem__(name);
+    return (value == null) ? null : value.__tojava__(Object.class);
+  }
+
+  /**
+   * Defines callback functions in a dedicated interpreter. Callbacks are
+   * looked up there before the main interpreter, so they are not replaced by
+   * scripts run in the main interpreter and do not share its globals.
+   * 
+   * @param code
+   *          script defining the callback functions
+   * @return true if it ran without error
+   */
+  public boolean execCallbackScript(String code) {
+    try {
+      if (callbackInterp == null) {
+        callbackInterp = createIsolatedInterpreter();
+      }
+      scriptGeneration.incrementAndGet();
+      try {
+        callbackInterp.exec(code);
+      } finally {
+        scriptGeneration.incrementAndGet();
+      }
+      return true;
+    } catch (PyException pe) {
+      error(pe.toString());
+      invoke("publishStdError", pe.toString());
+    } catch (Exception e) {
+      error(e);
+    }
+    return false;
+  }
+
+  /**
+   * drops the callback interpreter and the functions defined in it
+   */
+  public void clearCallbackScript() {
+    if (callbackInterp != null) {
+      scriptGeneration.incrementAndGet();
+      callbackInterp = null;
+    }
+  }
+
+  private void recordCallback(long latencyNs) {
+    synchronized (statsLock) {
+      ++callbackCount;
+      ++intervalCallbacks;
+      intervalLatencyNs += latencyNs;
+      if (latencyNs > intervalMaxLatencyNs) {
+        intervalMaxLatencyNs = latencyNs;
+      }
+    }
+  }
+
+  /**
+   * Callback queue depth and latency (queued until finished) since the last
+   * call - use with addTask(1000, "publishPythonStats") to report them.
+   */
+  public PythonStats getPythonStats() {
+    PythonStats stats = new PythonStats();
+    stats.name = getName();
+    stats.queueDepth = inputQueue.size();
+    stats.interpreterPoolSize = interpreterPoolSize;
+    stats.idleInterpreters = interpreterPool.size();
+    for (PIThread pt : interpThreads.values()) {
+      if (pt.isAlive()) {
+        ++stats.runningScripts;
+      }
+    }
+    synchronized (statsLock) {
+      stats.ts = System.currentTimeMillis();
+      stats.interval = stats.ts - statsTs;
+      stats.callbacks = callbackCount;
+      stats.intervalCallbacks = intervalCallbacks;
+      stats.meanLatencyMs = (intervalCallbacks == 0) ? 0 : intervalLatencyNs / 1000000.0 / intervalCallbacks;
+      stats.maxLatencyMs = intervalMaxLatencyNs / 1000000.0;
+      statsTs = stats.ts;
+      intervalCallbacks = 0;
+      intervalLatencyNs = 0;
+      intervalMaxLatencyNs = 0;
+    }
+    return stats;
+  }
+
+  public PythonStats publishPythonStats() {
+    return getPythonStats();
+  }
+
+  /**
+   * Calls the python function a callback message is for. The function is
+   * looked up in the interpreter once and called with the message data
+   * converted to python objects. Names which are not a plain global function
+   * (e.g. object.method) go through the compiled call statement.
+   */
+  void invokeCallback(Message msg) {
+    PyObject function = (directCallbacks) ? getCallback(msg.method) : null;
+    if (function == null) {
+      execCallback(msg);
+      return;
+    }
+    if (msg.data == null || msg.data.length == 0) {
+      function.__call__();
+      return;
+    }
+    PyObject[] args = new PyObject[msg.data.length];
+    for (int i = 0; i < args.length; ++i) {
+      args[i] = Py.java2py(msg.data[i]);
+    }
+    function.__call__(args);
+  }
+
+  private PyObject getCallback(String method) {
+    long generation = scriptGeneration.get();
+    Callback callback = callbacks.get(method);
+    if (callback != null && callback.generation == generation) {
+      return callback.function;
+    }
+    if (method.indexOf('.') >= 0) {
+      return null;
+    }
+    PythonInterpreter callbackInterp = this.callbackInterp;
+    PyObject function = (callbackInterp != null) ? callbackInterp.get(method) : null;
+    if (function == null) {
+      function = interp.get(method);
+    }
+    if (function == null || !function.isCallable()) {
+      // not defined (yet) - exec reports the NameError
+      callbacks.remove(method);
+      return null;
+    }
+    callbacks.put(method, new Callback(function, generation));
+    return function;
+  }
+
+  /**
+   * the callback as a compiled call statement, the parameters are set as
+   * globals
+   */
+  private void execCallback(Message msg) {
+    // FIXME - remove all msg_ .. its the old way .. :P
+
+    // serious bad bug in it which I think I fixed - the
+    // msgHandle is really the data coming from a callback
+    // it can originate from the same calling function such
+    // as Sphinx.send - but we want the callback to
+    // call a different method - this means the data needs
+    // to go to a data structure which is keyed by only the
+    // sending method, but must call the appropriate method
+    // in Sphinx
+    StringBuffer msgHandle = new StringBuffer().append("msg_").append(CodecUtils.getSafeReferenceName(msg.sender)).append("_").append(msg.sendingMethod);
+    PyObject compiledObject = null;
+
+    // TODO - getCompiledMethod(msg.method SHOULD BE
+    // getCompiledMethod(methodSignature
+    // without it - no overloading is possible
+
+    if (msg.data == null || msg.data.length == 0) {
+      String code = String.format("%s()", msg.method);
+      compiledObject = getCompiledMethod(code, code, interp);
+    } else {
+      StringBuffer methodWithParams = new StringBuffer();
+      methodWithParams.append(String.format("%s(", msg.method));
+      for (int i = 0; i < msg.data.length; ++i) {
+        String paramHandle = String.format("%s_p%d", msgHandle, i);
+        interp.set(paramHandle.toString(), msg.data[i]);
+        methodWithParams.append(paramHandle);
+        if (i < msg.data.length - 1) {
+          methodWithParams.append(",");
+        }
+      }
+      methodWithParams.append(")");
+      // keyed by the whole call - the parameter names depend on the sender
+      String code = methodWithParams.toString();
+      compiledObject = getCompiledMethod(code, code, interp);
+    }
+
+    interp.exec(compiledObject);
   }
 
   public void execResource(String filename) {
@@ -635,7 +980,7 @@ public class Python extends Service {
     // done by another thread - in case its doing blocking
     // or is executing long tasks - the inbox thread needs to
     // be freed of such tasks - it has to do all the inbound routing
-    inputQueue.add(msg);
+    inputQueue.add(new QueuedMessage(msg));
     return false;
   }
 
@@ -660,16 +1005,28 @@ public class Python extends Service {
     broadcastState();
   }
 
-  /*
-   * no longer needed
-   * 
-   * @Override public void startService() { super.startService(); }
+  public void setDirectCallbacks(boolean b) {
+    directCallbacks = b;
+  }
+
+  /**
+   * starts the thread which runs the callbacks into the script
    */
+  @Override
+  public void startService() {
+    super.startService();
+    if (inputQueueThread == null) {
+      inputQueueThread = new InputQueueThread(this);
+      inputQueueThread.start();
+    }
+  }
 
   @Override
   public void releaseService() {
     super.releaseService();
     stop();
+    clearCallbackScript();
+    interpreterPool.clear();
     if (interp != null) {
       // PySystemState.exit(); // the big hammar' throws like Thor
       interp.cleanup();
@@ -15,6 +15,8 @@ import org.myrobotlab.logging.LoggerFactory;
 import org.myrobotlab.logging.Logging;
 import org.myrobotlab.logging.LoggingFactory;
 import org.myrobotlab.service.abstracts.AbstractMicrocontroller;
+import org.myrobotlab.service.data.I2cTransaction;
+import org.myrobotlab.service.data.I2cTransaction.Op;
 import org.myrobotlab.service.data.PinData;
 import org.myrobotlab.service.interfaces.I2CControl;
 import org.myrobotlab.service.interfaces.I2CController;
@@ -305,11 +307,42 @@ public class RasPi extends AbstractMicrocontroller implements I2CController, Gpi
     }
   }
 
+  /**
+   * A write followed by a read is done as one combined transfer - the register
+   * pointer is set and read without releasing the bus in between.
+   */
+  @Override
+  public int i2cTransaction(I2CControl control, int busAddress, int deviceAddress, I2cTransaction transaction) {
+    int read = 0;
+    List<Op> ops = transaction.ops;
+    for (int i = 0; i < ops.size(); ++i) {
+      Op op = ops.get(i);
+      Op next = (i + 1 < ops.size()) ? ops.get(i + 1) : null;
+      if (op.type == I2cTransaction.WRITE && next != null && next.type == I2cTransaction.READ && (!wiringPi || op.data.length == 1)) {
+        int size = i2cWriteRead(control, busAddress, deviceAddress, op.data, op.data.length, next.data, next.data.length);
+        if (size < 0) {
+          return -1;
+        }
+        read += size;
+        ++i;
+      } else if (op.type == I2cTransaction.WRITE) {
+        i2cWrite(control, busAddress, deviceAddress, op.data, op.data.length);
+      } else {
+        int size = i2cRead(control, busAddress, deviceAddress, op.data, op.data.length);
+        if (size < 0) {
+          return -1;
+        }
+        read += size;
+      }
+    }
+    return read;
+  }
+
   @Override
   public int i2cWriteRead(I2CControl control, int busAddress, int deviceAddress, byte[] writeBuffer, int writeSize, byte[] readBuffer, int readSize) {
 
-    if (writeSize != 1) {
-      log.error("writeSize other than 1 is not yet supported in i2cWriteRead");
+    if (wiringPi && writeSize != 1) {
+      log.error("writeSize other than 1 is not yet supported in i2cWriteRead with wiringPi");
     }
     String key = String.format("%d.%d", busAddress, deviceAddress);
     I2CDeviceMap devicedata = i2cDevices.get(key);
@@ -325,12 +358,13 @@ public class RasPi extends AbstractMicrocontroller implements I2CController, Gpi
       }
     } else {
       try {
-        devicedata.device.read(writeBuffer, 0, writeBuffer.length, readBuffer, 0, readBuffer.length);
+        return devicedata.device.read(writeBuffer, 0, writeSize, readBuffer, 0, readSize);
       } catch (IOException e) {
         Logging.logError(e);
+        return -1;
       }
     }
-    return readBuffer.length;
+    return readSize;
   }
 
   public void pinMode(int pin, int mode) {
@@ -42,6 +42,7 @@ import org.myrobotlab.framework.CmdOptions;
 import org.myrobotlab.framework.DescribeQuery;
 import org.myrobotlab.framework.DescribeResults;
 import org.myrobotlab.framework.Instantiator;
+import org.myrobotlab.framework.LifecycleTimer;
 import org.myrobotlab.framework.MRLListener;
 import org.myrobotlab.framework.Message;
 import org.myrobotlab.framework.MethodCache;
@@ -50,6 +51,7 @@ import org.myrobotlab.framework.Plan;
 import org.myrobotlab.framework.Platform;
 import org.myrobotlab.framework.Registration;
 import org.myrobotlab.framework.Service;
+import org.myrobotlab.framework.StartupPlanner;
 import org.myrobotlab.framework.Status;
 import org.myrobotlab.framework.interfaces.MessageListener;
 import org.myrobotlab.framework.interfaces.ServiceInterface;
@@ -72,6 +74,8 @@ import org.myrobotlab.process.InProcessCli;
 import org.myrobotlab.process.Launcher;
 import org.myrobotlab.service.data.Locale;
 import org.myrobotlab.service.data.ServiceTypeNameResults;
+import org.myrobotlab.service.data.StartupReport;
+import org.myrobotlab.service.data.StartupReport.Phase;
 import org.myrobotlab.service.interfaces.ConnectionManager;
 import org.myrobotlab.service.interfaces.Gateway;
 import org.myrobotlab.service.interfaces.LocaleProvider;
@@ -271,10 +275,22 @@ public class Runtime extends Service implements MessageListener, ServiceLifeCycl
   static public ServiceInterface loadAndStart(String name, String type) {
     ServiceInterface s = create(name, type);
     s.load();
-    s.startService();
+    startTimed(s);
     return s;
   }
 
+  /**
+   * starts a service and times it
+   */
+  static private void startTimed(ServiceInterface s) {
+    Phase phase = LifecycleTimer.begin(s.getName(), s.getClass().getName(), "start");
+    try {
+      s.startService();
+    } finally {
+      LifecycleTimer.end(phase);
+    }
+  }
+
   static public ServiceInterface createAndStart(String name, String type) {
     ServiceInterface s = null;
     // framework level catch of all startServices
@@ -286,7 +302,7 @@ public class Runtime extends Service implements MessageListener, ServiceLifeCycl
     // going into the unknown - so we catch it !
     try {
       s = create(name, type);
-      s.startService();
+      startTimed(s);
     } catch (Exception e) {
       String error = String.format("createAndStart(%s, %s) %s", name, type, e.getClass().getCanonicalName());
       Runtime.getInstance().error(error);
@@ -394,6 +410,7 @@ public class Runtime extends Service implements MessageListener, ServiceLifeCycl
       return sw;
     }
 
+    Phase create = LifecycleTimer.begin(name, fullTypeName, "create");
     try {
 
       if (log.isDebugEnabled()) {
@@ -410,16 +427,27 @@ public class Runtime extends Service implements MessageListener, ServiceLifeCycl
         log.debug("thread context parent " + Thread.currentThread().getContextClassLoader().getParent().getClass().getCanonicalName());
       }
 
-      Repo repo = Runtime.getInstance().getRepo();
-      if (!repo.isServiceTypeInstalled(fullTypeName)) {
-        log.error("{} is not installed", fullTypeName);
-        if (autoAcceptLicense) {
-          repo.install(fullTypeName);
+      Phase phase = LifecycleTimer.begin(name, fullTypeName, "repo");
+      try {
+        Repo repo = Runtime.getInstance().getRepo();
+        if (!repo.isServiceTypeInstalled(fullTypeName)) {
+          log.error("{} is not installed", fullTypeName);
+          if (autoAcceptLicense) {
+            repo.install(fullTypeName);
+          }
         }
+      } finally {
+        LifecycleTimer.end(phase);
       }
 
       // create an instance
-      Object newService = Instantiator.getThrowableNewInstance(null, fullTypeName, name, id);
+      Object newService = null;
+      phase = LifecycleTimer.begin(name, fullTypeName, "construct");
+      try {
+        newService = Instantiator.getThrowableNewInstance(null, fullTypeName, name, id);
+      } finally {
+        LifecycleTimer.end(phase);
+      }
       log.debug("returning {}", fullTypeName);
       ServiceInterface si = (ServiceInterface) newService;
 
@@ -466,6 +494,8 @@ public class Runtime extends Service implements MessageListener, ServiceLifeCycl
       return (Service) newService;
     } catch (Exception e) {
       log.error("createService failed for {}@{} of type {}", name, id, fullTypeName, e);
+    } finally {
+      LifecycleTimer.end(create);
     }
     return null;
   }
@@ -992,6 +1022,66 @@ public class Runtime extends Service implements MessageListener, ServiceLifeCycl
     return uptime;
   }
 
+  /**
+   * create, load and start times of the services, the threads and classes
+   * each phase added and how the service data was loaded
+   */
+  public StartupReport getStartupReport() {
+    StartupReport report = LifecycleTimer.getReport();
+    report.version = getVersion();
+    return report;
+  }
+
+  public StartupReport publishStartupReport(StartupReport report) {
+    return report;
+  }
+
+  /**
+   * publishes the startup report to subscribers - e.g. the web gui
+   */
+  public StartupReport reportStartup() {
+    StartupReport report = getStartupReport();
+    invoke("publishStartupReport", report);
+    return report;
+  }
+
+  /**
+   * writes the startup report as a trace which can be diffed against the trace
+   * of another release
+   *
+   * @param filename
+   *          - null for startup-{version}.trace in the runtime's data directory
+   * @return the file written - null if it could not be
+   */
+  public String exportStartupReport(String filename) {
+    StartupReport report = getStartupReport();
+    if (filename == null) {
+      filename = getDataInstanceDir() + fs + String.format("startup-%s.trace", report.version);
+    }
+    try {
+      LifecycleTimer.write(report, new File(filename));
+      return filename;
+    } catch (Exception e) {
+      error("could not write %s - %s", filename, e.getMessage());
+    }
+    return null;
+  }
+
+  /**
+   * the chain of peer starts which decided how long the peers of a service took
+   * to start, one line per peer start indented by depth
+   */
+  public static List<String> getStartupCriticalPath(String name) {
+    return StartupPlanner.getCriticalPath(name);
+  }
+
+  /**
+   * false starts peers one after the other on the thread starting them
+   */
+  public static void setParallelPeerStart(boolean b) {
+    StartupPlanner.setParallel(b);
+  }
+
   public static String getDiffTime(long diff) {
 
     long diffSeconds = diff / 1000 % 60;
@@ -2343,9 +2433,23 @@ public class Runtime extends Service implements MessageListener, ServiceLifeCycl
   }
 
   public ServiceData getServiceData() {
+    serviceData.loadAll();
     return serviceData;
   }
 
+  /**
+   * the state goes out with every service type - parsed first when the service
+   * data came from an index
+   */
+  @Override
+  public Service publishState() {
+    // null while the base class constructor registers this runtime
+    if (serviceData != null) {
+      serviceData.loadAll();
+    }
+    return super.publishState();
+  }
+
   /**
    * Return supported system languages
    */
@@ -2478,6 +2582,8 @@ public class Runtime extends Service implements MessageListener, ServiceLifeCycl
 
     try {
 
+      // the registration of this runtime carries the service data
+      serviceData.loadAll();
       results.setId(getId());
       results.setPlatform(Platform.getLocalInstance());
 
@@ -3143,6 +3249,8 @@ public class Runtime extends Service implements MessageListener, ServiceLifeCycl
         // ===== I AM A SPAWNED INSTANCE =====
         // create service instances
         createAndStartServices(options.services);
+        StartupReport report = Runtime.getInstance().reportStartup();
+        log.info("started in {} ms - {} threads {} classes", report.jvmUptimeMs, report.threads, report.classesLoaded);
         // getInstance().startInteractiveMode();
 
         if (options.invoke != null) {
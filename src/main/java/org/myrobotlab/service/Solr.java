@@ -560,7 +560,7 @@ public class Solr extends Service implements DocumentListener, TextListener, Mes
     SolrInputDocument solrDoc = new SolrInputDocument();
     solrDoc.setField("id", doc.getId());
     for (String fieldName : doc.getFields()) {
-      for (Object o : doc.getField(fieldName)) {
+      for (Object o : doc.getFieldValues(fieldName)) {
         if (o != null) {
           solrDoc.addField(fieldName, o);
           // let's implicitly add a text_en version of the field.
@@ -11,6 +11,7 @@ import org.myrobotlab.arduino.virtual.Device;
 import org.myrobotlab.arduino.virtual.MrlComm;
 import org.myrobotlab.arduino.virtual.MrlCommIno;
 import org.myrobotlab.framework.Service;
+import org.myrobotlab.framework.SimClock;
 import org.myrobotlab.logging.LoggerFactory;
 import org.myrobotlab.logging.LoggingFactory;
 import org.myrobotlab.service.interfaces.PinDefinition;
@@ -66,10 +67,13 @@ public class VirtualArduino extends Service implements PortPublisher, PortListen
    * This class is a thread which runs a (port) of MrlComm.ino. It does what the
    * Arduino "OS" does .. It runs the "loop()" method forever..
    * 
+   * In simulation mode the thread leaves the loop alone and the simulation
+   * clock runs loop() once per step instead.
+   * 
    * @author GroG
    *
    */
-  public static class InoScriptRunner implements Runnable {
+  public static class InoScriptRunner implements Runnable, SimClock.Steppable {
     boolean isRunning = false;
     VirtualArduino virtual;
     MrlCommIno ino;
@@ -84,12 +88,14 @@ public class VirtualArduino extends Service implements PortPublisher, PortListen
       if (myThread == null) {
         myThread = new Thread(this, String.format("%s.mrlcomm", virtual.getName()));
         myThread.start();
+        SimClock.register(this);
         log.info("start called in virtual arduino.");
       }
     }
 
     synchronized public void stop() {
       log.info("stop called for mrlcomm ino script.");
+      SimClock.unregister(this);
       if (myThread != null) {
         isRunning = false;
         myThread.interrupt();
@@ -119,7 +125,7 @@ public class VirtualArduino extends Service implements PortPublisher, PortListen
       log.info("Starting loop");
       isRunning = true;
       while (isRunning) {
-        if (isRunning) {
+        if (isRunning && !SimClock.isSimulation()) {
           ino.loop();
         }
         try {
@@ -138,6 +144,13 @@ public class VirtualArduino extends Service implements PortPublisher, PortListen
       return isRunning;
     }
 
+    @Override
+    public void step(long nowMs, long deltaMs) {
+      if (isRunning) {
+        ino.loop();
+      }
+    }
+
   }
 
   public VirtualArduino(String n, String id) {
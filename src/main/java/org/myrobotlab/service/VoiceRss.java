@@ -52,6 +52,8 @@ public class VoiceRss extends AbstractSpeechSynthesis {
   public VoiceRss(String n, String id) {
     super(n, id);
     setReady(getKey(VOICERSS_API_KEY) != null);
+    // requests to the cloud service can run in parallel
+    synthesisThreads = 3;
   }
 
   public Integer getRate() {
@@ -8,7 +8,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+import org.myrobotlab.audio.AudioCache;
 import org.myrobotlab.framework.Service;
 import org.myrobotlab.framework.interfaces.Attachable;
 import org.myrobotlab.io.FileIO;
@@ -203,7 +209,40 @@ public abstract class AbstractSpeechSynthesis extends Service implements SpeechS
    */
   protected String lastUtterance;
 
-  transient HashMap<AudioData, String> utterances = new HashMap<AudioData, String>();
+  transient Map<AudioData, String> utterances = new ConcurrentHashMap<AudioData, String>();
+
+  /**
+   * number of sentences synthesized in parallel ahead of playback - local
+   * engines are not thread safe and synthesize one at a time, cloud services
+   * can raise it to hide their latency
+   */
+  protected int synthesisThreads = 1;
+
+  transient ExecutorService synthesisPool = null;
+
+  /**
+   * keeps the parts of one request together when several requests are spoken
+   * at once
+   */
+  transient final Object playLock = new Object();
+
+  /**
+   * ms from a speak request to its first audio being handed to AudioFile
+   */
+  protected Long lastTimeToFirstAudio = null;
+
+  static final Pattern sentenceBoundary = Pattern.compile("(?<=[.!?;])\\s+");
+
+  /**
+   * phrase lists generated into the cache when the service starts - text files
+   * with a phrase per line, gesture scripts (the text of their speak calls) or
+   * aiml files (their plain templates)
+   */
+  protected List<String> prewarmFiles = new ArrayList<String>();
+
+  static final Pattern scriptPhrase = Pattern.compile("speak(?:Blocking)?\\(\\s*u?[\"']([^\"'\\\\]+)[\"']");
+
+  static final Pattern aimlPhrase = Pattern.compile("<template>\\s*([^<]+?)\\s*</template>");
 
   /**
    * AudioFile peer for caching and playing effects
@@ -479,11 +518,7 @@ public abstract class AbstractSpeechSynthesis extends Service implements SpeechS
       filename += getClass().getSimpleName() + File.separator + FileIO.cleanFileName(getVoice().getName()) + File.separator + MathUtils.md5(toSpeak) + getAudioCacheExtension();
 
       // create subdirectories if necessary
-      File f = new File(filename);
-      File dir = f.getParentFile();
-      if (!dir.exists()) {
-        dir.mkdirs();
-      }
+      AudioCache.getInstance().prepare(filename);
 
       return filename;
 
@@ -501,12 +536,60 @@ public abstract class AbstractSpeechSynthesis extends Service implements SpeechS
     if (voices.size() > 0) {
       setReady(true);
     }
+
+    if (prewarmFiles.size() > 0) {
+      new Thread(() -> {
+        for (String filename : prewarmFiles) {
+          prewarmFile(filename);
+        }
+        log.info("{} prewarmed - {}", getName(), getCacheStats());
+      }, String.format("%s.prewarm", getName())).start();
+    }
   }
 
   public void stopService() {
     super.stopService();
     unsubscribe(audioFile.getName(), "publishAudioStart");
     unsubscribe(audioFile.getName(), "publishAudioEnd");
+    synchronized (this) {
+      if (synthesisPool != null) {
+        synthesisPool.shutdownNow();
+        synthesisPool = null;
+      }
+    }
+    AudioCache.getInstance().save();
+  }
+
+  synchronized ExecutorService getSynthesisPool() {
+    if (synthesisPool == null) {
+      final String threadName = String.format("%s.synthesis", getName());
+      synthesisPool = Executors.newFixedThreadPool(synthesisThreads, r -> {
+        Thread t = new Thread(r, threadName);
+        t.setDaemon(true);
+        return t;
+      });
+    }
+    return synthesisPool;
+  }
+
+  /**
+   * number of sentences synthesized in parallel ahead of playback
+   */
+  synchronized public int setSynthesisThreads(int threads) {
+    synthesisThreads = Math.max(1, threads);
+    if (synthesisPool != null) {
+      synthesisPool.shutdown();
+      synthesisPool = null;
+    }
+    return synthesisThreads;
+  }
+
+  public int getSynthesisThreads() {
+    return synthesisThreads;
+  }
+
+  public Long getLastTimeToFirstAudio() {
+    return lastTimeToFirstAudio;
   }
 
   AudioData play(String filename, boolean block) {
@@ -540,6 +623,11 @@ public abstract class AbstractSpeechSynthesis extends Service implements SpeechS
    * responsible for all parsing and pre-processing for the audio. Sound effect,
    * sound files, SSML, TarsosDsp would all be prepared here before the audio
    * data is generated
+   * 
+   * The text is split into sentences which are synthesized ahead of playback on
+   * the synthesis pool, while the audio of the earlier sentences is handed to
+   * AudioFile in order - a long reply starts playing after its first sentence
+   * is ready and the next ones are generated while it plays.
    *
    * @param toSpeak
    *          - phrase to speak
@@ -553,29 +641,17 @@ public abstract class AbstractSpeechSynthesis extends Service implements SpeechS
     // TODO - use SSML speech synthesis markup language
 
     log.info("{} processing {}", getName(), toSpeak);
+    long requestTs = System.currentTimeMillis();
 
     // broadcast the original text to be processed/parsed
     invoke("publishSpeechRequested", toSpeak);
 
-    // normalize to lower case
-    toSpeak = toSpeak.toLowerCase();
-
-    // process substitutions
-    if (substitutions != null) {
-      for (String substitute : substitutions.keySet()) {
-        toSpeak = toSpeak.replace(substitute, substitutions.get(substitute));
-      }
-    }
-
-    List<String> spokenParts = parseEffects(toSpeak);
-
-    toSpeak = filterText(toSpeak);
-
     // we generate a list of audio data to play to support
     // synthesizing this speech
     List<AudioData> playList = new ArrayList<AudioData>();
+    List<Future<AudioData>> generated = new ArrayList<Future<AudioData>>();
 
-    for (String speak : spokenParts) {
+    for (String speak : toSentences(toSpeak)) {
 
       AudioData audioData = null;
       if (speak.startsWith("#") && speak.endsWith("#")) {
@@ -590,7 +666,8 @@ public abstract class AbstractSpeechSynthesis extends Service implements SpeechS
       }
 
       if (!mute) {
-        process(audioData, speak, blocking);
+        final AudioData toGenerate = audioData;
+        generated.add(getSynthesisPool().submit(() -> generate(toGenerate, speak)));
       } else {
         log.info("not producing audio for {} - currently we are mute", speak);
       }
@@ -598,6 +675,29 @@ public abstract class AbstractSpeechSynthesis extends Service implements SpeechS
       // effect files are handled differently from generated audio
       playList.add(audioData);
     }
+
+    // hand the audio to AudioFile in order as soon as each part is ready
+    synchronized (playLock) {
+      boolean first = true;
+      for (Future<AudioData> future : generated) {
+        AudioData audioData = null;
+        try {
+          audioData = future.get();
+        } catch (Exception e) {
+          log.error("could not generate audio", e);
+          continue;
+        }
+        if (!isPlayable(audioData)) {
+          continue;
+        }
+        if (first) {
+          first = false;
+          lastTimeToFirstAudio = System.currentTimeMillis() - requestTs;
+          invoke("publishTimeToFirstAudio", lastTimeToFirstAudio);
+        }
+        play(audioData, blocking);
+      }
+    }
     // FIXME - in theory "speaking" means generating audio from some text
     // so starting speaking event is when the first audio is "started"
     // and finished speaking is when the last audio is finished
@@ -605,6 +705,46 @@ public abstract class AbstractSpeechSynthesis extends Service implements SpeechS
     return playList;
   }
 
+  /**
+   * lower case, substitutions, effects and sentences - the parts of a request
+   * which are generated and played one by one
+   */
+  List<String> toSentences(String toSpeak) {
+    // normalize to lower case
+    toSpeak = toSpeak.toLowerCase();
+
+    // process substitutions
+    if (substitutions != null) {
+      for (String substitute : substitutions.keySet()) {
+        toSpeak = toSpeak.replace(substitute, substitutions.get(substitute));
+      }
+    }
+
+    List<String> spokenParts = parseEffects(toSpeak);
+
+    toSpeak = filterText(toSpeak);
+
+    return splitSentences(spokenParts);
+  }
+
+  /**
+   * splits the parts of a request on sentence boundaries, effects are kept as
+   * they are
+   */
+  List<String> splitSentences(List<String> parts) {
+    List<String> sentences = new ArrayList<String>();
+    for (String part : parts) {
+      if (part.startsWith("#") && part.endsWith("#")) {
+        sentences.add(part);
+        continue;
+      }
+      for (String sentence : sentenceBoundary.split(part)) {
+        sentences.add(sentence);
+      }
+    }
+    return sentences;
+  }
+
   @Deprecated /* use replaceWord */
   public void addSubstitution(String key, String replacement) {
     substitutions.put(key.toLowerCase(), replacement.toLowerCase());
@@ -628,40 +768,93 @@ public abstract class AbstractSpeechSynthesis extends Service implements SpeechS
   }
 
   /**
-   * process speaking - generate the text to be spoken or play a cache file if
-   * appropriate
+   * ms from a speak request until its first audio is handed to AudioFile - the
+   * silence a listener hears before the reply starts
+   */
+  public Long publishTimeToFirstAudio(Long timeMs) {
+    return timeMs;
+  }
+
+  /**
+   * generate the audio of one part of a request or find it in the cache,
+   * called on the synthesis pool
    * 
    * @param audioData
    *          - the audoData for parameters
    * @param speak
    *          - the text to speak
-   * @return block - to block or not
+   * @return the audio data, not valid if it could not be generated
    */
-  public AudioData process(AudioData audioData, String speak, boolean block) {
-
+  AudioData generate(AudioData audioData, String speak) {
     try {
 
       long generateStartTs = System.currentTimeMillis();
       utterances.put(audioData, speak);
 
-      if (!audioData.isValid()) {
+      AudioCache cache = AudioCache.getInstance();
+      String filename = audioData.getFileName();
+      boolean effect = speak.startsWith("#") && speak.endsWith("#");
+
+      if (filename != null && !effect && cache.contains(filename)) {
+        // the index is trusted - a file deleted since is found by isPlayable
+        cache.touch(filename);
+      } else if (!audioData.isValid()) {
         log.debug("try generating audio data [{}] from [{}]", audioData, speak);
         generateAudioData(audioData, speak);
+        if (!audioData.isValid()) {
+          log.error("speech service could not generate audio data [{}]", audioData);
+        } else if (filename != null && !effect) {
+          cache.put(filename, speak);
+        }
       }
 
       invoke("publishGenerationTime", System.currentTimeMillis() - generateStartTs);
-
-      if (!audioData.isValid()) {
-        log.error("speech service could not generate audio data [{}]", audioData);
-        return audioData;
-      }
-
-      play(audioData, block);
     } catch (Exception e) {
       log.error("could not generate audio", e);
       error("%s %s", e.getClass().getSimpleName(), e.getMessage());
     }
+    return audioData;
+  }
 
+  /**
+   * checked before audio is played - a cached file which has been deleted is
+   * dropped from the cache and generated again
+   * 
+   * @param audioData
+   *          - the generated or cached audio
+   * @return true if there is audio to play
+   */
+  boolean isPlayable(AudioData audioData) {
+    if (audioData.isValid()) {
+      return true;
+    }
+    String speak = utterances.get(audioData);
+    String filename = audioData.getFileName();
+    AudioCache cache = AudioCache.getInstance();
+    if (speak == null || filename == null || (speak.startsWith("#") && speak.endsWith("#")) || !cache.contains(filename)) {
+      return false;
+    }
+    log.warn("cached audio {} is missing - generating it again", filename);
+    cache.remove(filename);
+    generate(audioData, speak);
+    return audioData.isValid();
+  }
+
+  /**
+   * process speaking - generate the text to be spoken or play a cache file if
+   * appropriate
+   * 
+   * @param audioData
+   *          - the audoData for parameters
+   * @param speak
+   *          - the text to speak
+   * @return block - to block or not
+   */
+  public AudioData process(AudioData audioData, String speak, boolean block) {
+    generate(audioData, speak);
+    if (isPlayable(audioData)) {
+      play(audioData, block);
+    }
     return audioData;
   }
 
@@ -737,12 +930,108 @@ public abstract class AbstractSpeechSynthesis extends Service implements SpeechS
   }
 
   public void purgeFile(String filename) {
-    audioFile.deleteFile(filename);
+    AudioCache.getInstance().remove(filename);
   }
 
   public void purgeCache() {
-    // audioFile.deleteFiles(String.format("%s%s, args)globalFileCacheDir);
-    audioFile.deleteFiles(this.getClass().getSimpleName());
+    AudioCache.getInstance().removeAll(System.getProperty("user.dir") + File.separator + globalFileCacheDir + File.separator + getClass().getSimpleName());
+  }
+
+  /**
+   * generates the phrases into the cache and decodes them into memory, so the
+   * first time they are spoken they start without synthesis or decoding
+   * 
+   * @param phrases
+   *          - text as it would be given to speak
+   * @return number of sentences warmed
+   */
+  public int prewarm(List<String> phrases) {
+    List<Future<AudioData>> generated = new ArrayList<Future<AudioData>>();
+    for (String phrase : phrases) {
+      for (String speak : toSentences(phrase)) {
+        if (speak.trim().length() == 0 || (speak.startsWith("#") && speak.endsWith("#"))) {
+          continue;
+        }
+        final AudioData audioData = new AudioData(getLocalFileName(speak));
+        generated.add(getSynthesisPool().submit(() -> generate(audioData, speak)));
+      }
+    }
+
+    int count = 0;
+    AudioCache cache = AudioCache.getInstance();
+    for (Future<AudioData> future : generated) {
+      try {
+        AudioData audioData = future.get();
+        if (audioData.isValid() && cache.warm(audioData.getFileName()) != null) {
+          ++count;
+        }
+      } catch (Exception e) {
+        log.error("could not prewarm", e);
+      }
+    }
+    return count;
+  }
+
+  /**
+   * prewarm the phrases of a file - a gesture script (.py) gives the literal
+   * text of its speak calls, an aiml file its plain templates, any other file
+   * a phrase per line
+   */
+  public int prewarmFile(String filename) {
+    try {
+      String text = FileIO.toString(filename);
+      List<String> phrases = new ArrayList<String>();
+      Pattern phrase = null;
+      if (filename.toLowerCase().endsWith(".py")) {
+        phrase = scriptPhrase;
+      } else if (filename.toLowerCase().endsWith(".aiml")) {
+        phrase = aimlPhrase;
+      }
+
+      if (phrase != null) {
+        Matcher m = phrase.matcher(text);
+        while (m.find()) {
+          phrases.add(m.group(1));
+        }
+      } else {
+        for (String line : text.split("\\r?\\n")) {
+          if (line.trim().length() > 0) {
+            phrases.add(line.trim());
+          }
+        }
+      }
+      int count = prewarm(phrases);
+      log.info("prewarmed {} sentences from {}", count, filename);
+      return count;
+    } catch (Exception e) {
+      error("could not prewarm %s - %s", filename, e.getMessage());
+    }
+    return 0;
+  }
+
+  /**
+   * file of phrases to prewarm each time the service starts
+   */
+  public void addPrewarmFile(String filename) {
+    if (!prewarmFiles.contains(filename)) {
+      prewarmFiles.add(filename);
+    }
+  }
+
+  public List<String> getPrewarmFiles() {
+    return prewarmFiles;
+  }
+
+  /**
+   * bound on disk space of the speech cache of all speech services, least
+   * recently used files are removed past it
+   */
+  public void setCacheSize(long maxBytes) {
+    AudioCache.getInstance().setMaxBytes(maxBytes);
+  }
+
+  public String getCacheStats() {
+    return AudioCache.getInstance().getStats();
   }
 
   public Voice getVoice() {
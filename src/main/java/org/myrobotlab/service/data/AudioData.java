@@ -63,6 +63,11 @@ public class AudioData implements Serializable {
   public Long startTs = null;
   public Long stopTs = null;
 
+  /**
+   * ms from handing the sample to the audio engine to it being heard
+   */
+  public Long startLatency = null;
+
   // public String state =
 
   public Double volume = null; // null == take processor volume | != null ==
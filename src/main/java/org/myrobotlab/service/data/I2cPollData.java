@@ -0,0 +1,45 @@
+package org.myrobotlab.service.data;
+
+/**
+ * One read of a scheduled i2c poll - the bytes read starting at registerAddress
+ * and the time the controller read them.
+ */
+public class I2cPollData {
+
+  public String controller;
+  public int pollId;
+  public int busAddress;
+  public int deviceAddress;
+  public int registerAddress;
+
+  /**
+   * micros() of the controller when it read the registers - it wraps after
+   * about 71 minutes, use differences between reads
+   */
+  public long timestamp;
+
+  /**
+   * System.currentTimeMillis() when the data arrived
+   */
+  public long ts;
+
+  public byte[] data;
+
+  public I2cPollData() {
+  }
+
+  public I2cPollData(String controller, int pollId, int busAddress, int deviceAddress, int registerAddress) {
+    this.controller = controller;
+    this.pollId = pollId;
+    this.busAddress = busAddress;
+    this.deviceAddress = deviceAddress;
+    this.registerAddress = registerAddress;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s poll %d bus %d device 0x%02x register 0x%02x at %d us %d bytes", controller, pollId, busAddress, deviceAddress, registerAddress, timestamp,
+        (data == null) ? 0 : data.length);
+  }
+
+}
@@ -0,0 +1,102 @@
+package org.myrobotlab.service.data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An ordered list of writes and reads to one i2c device, handed to
+ * I2CController.i2cTransaction to be done as one unit - setting the 16
+ * channels of a PCA9685 or reading the 14 byte sensor block of a MPU-6050 is
+ * one exchange with the controller instead of one per register.
+ *
+ * <pre>
+ * I2cTransaction tx = new I2cTransaction().write(0x3B).read(14);
+ * controller.i2cTransaction(this, bus, address, tx);
+ * byte[] data = tx.getRead(0);
+ * </pre>
+ */
+public class I2cTransaction {
+
+  public static final int WRITE = 0;
+  public static final int READ = 1;
+
+  public static class Op {
+    public int type;
+    /**
+     * bytes to write, or the buffer a read is filled into
+     */
+    public byte[] data;
+
+    public Op(int type, byte[] data) {
+      this.type = type;
+      this.data = data;
+    }
+  }
+
+  public List<Op> ops = new ArrayList<Op>();
+
+  public I2cTransaction write(byte[] data) {
+    ops.add(new Op(WRITE, data));
+    return this;
+  }
+
+  public I2cTransaction write(int... data) {
+    byte[] buffer = new byte[data.length];
+    for (int i = 0; i < data.length; ++i) {
+      buffer[i] = (byte) data[i];
+    }
+    return write(buffer);
+  }
+
+  public I2cTransaction read(int size) {
+    ops.add(new Op(READ, new byte[size]));
+    return this;
+  }
+
+  /**
+   * @return the buffer of the index'th read of the transaction
+   */
+  public byte[] getRead(int index) {
+    for (Op op : ops) {
+      if (op.type == READ && index-- == 0) {
+        return op.data;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return number of bytes all reads ask for
+   */
+  public int getReadSize() {
+    int size = 0;
+    for (Op op : ops) {
+      if (op.type == READ) {
+        size += op.data.length;
+      }
+    }
+    return size;
+  }
+
+  /**
+   * hands bytes read in one block to the reads, in order
+   *
+   * @return number of bytes used
+   */
+  public int setReadData(byte[] data, int size) {
+    int pos = 0;
+    for (Op op : ops) {
+      if (op.type == READ) {
+        int n = Math.min(op.data.length, size - pos);
+        System.arraycopy(data, pos, op.data, 0, n);
+        pos += n;
+      }
+    }
+    return pos;
+  }
+
+  public boolean isEmpty() {
+    return ops.isEmpty();
+  }
+
+}
@@ -0,0 +1,31 @@
+package org.myrobotlab.service.data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.myrobotlab.service.Log.LogEntry;
+
+/**
+ * One page of a log store query - the matching entries in time order and the
+ * cursor to ask for the next page with, null when there are no more.
+ */
+public class LogPage {
+
+  public List<LogEntry> entries = new ArrayList<>();
+
+  public String next;
+
+  /**
+   * segments read and skipped by their indexes
+   */
+  public int segmentsScanned;
+  public int segmentsSkipped;
+
+  public long elapsedMs;
+
+  @Override
+  public String toString() {
+    return String.format("%d entries scanned %d skipped %d segments in %d ms next %s", entries.size(), segmentsScanned, segmentsSkipped, elapsedMs, next);
+  }
+
+}
@@ -0,0 +1,40 @@
+package org.myrobotlab.service.data;
+
+/**
+ * callback and interpreter stats of a Python service, latencies are over the
+ * interval since the previous report
+ */
+public class PythonStats {
+
+  public String name;
+  public long ts;
+  public long interval;
+
+  /**
+   * callbacks waiting for the input queue thread
+   */
+  public int queueDepth;
+
+  /**
+   * callbacks run since the service started
+   */
+  public long callbacks;
+  public int intervalCallbacks;
+
+  /**
+   * time from queuing a callback to it being finished
+   */
+  public double meanLatencyMs;
+  public double maxLatencyMs;
+
+  public int runningScripts;
+  public int interpreterPoolSize;
+  public int idleInterpreters;
+
+  @Override
+  public String toString() {
+    return String.format("%s queue %d callbacks %d (%d in %d ms) latency mean %.3f ms max %.3f ms scripts %d interpreters %d/%d idle", name, queueDepth, callbacks,
+        intervalCallbacks, interval, meanLatencyMs, maxLatencyMs, runningScripts, idleInterpreters, interpreterPoolSize);
+  }
+
+}
@@ -0,0 +1,75 @@
+package org.myrobotlab.service.data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Where the time of creating, loading and starting services went - every timed
+ * phase in the order they ended, totals per service and what the jvm looked
+ * like when the report was made.
+ */
+public class StartupReport {
+
+  /**
+   * one timed phase of one service - create, construct, repo, load or start
+   */
+  public static class Phase {
+    public String service;
+    public String type;
+    public String phase;
+    public String thread;
+
+    /**
+     * ms since the jvm started
+     */
+    public long startMs;
+    public double durationMs;
+
+    /**
+     * live threads when the phase ended and threads started while it ran -
+     * phases running at the same time count each other's threads too
+     */
+    public int threads;
+    public long threadsStarted;
+
+    /**
+     * classes loaded during the phase - phases running at the same time count
+     * each other's classes too
+     */
+    public long classesLoaded;
+
+    transient public long startNanos;
+    transient public long threadsStartedAtStart;
+    transient public long classesAtStart;
+
+    @Override
+    public String toString() {
+      return String.format("%s %s %.1f ms threads %+d classes %+d", service, phase, durationMs, threadsStarted, classesLoaded);
+    }
+  }
+
+  public String version;
+
+  public long ts = System.currentTimeMillis();
+
+  public long jvmUptimeMs;
+
+  public int threads;
+  public int peakThreads;
+  public long classesLoaded;
+
+  public List<Phase> phases = new ArrayList<>();
+
+  /**
+   * service name to phase to total ms
+   */
+  public Map<String, Map<String, Double>> services = new TreeMap<>();
+
+  /**
+   * phases of loading the service meta data
+   */
+  public Map<String, Object> serviceData;
+
+}
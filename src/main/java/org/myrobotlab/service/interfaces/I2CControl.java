@@ -27,6 +27,7 @@ package org.myrobotlab.service.interfaces;
 
 import org.myrobotlab.framework.interfaces.Attachable;
 import org.myrobotlab.framework.interfaces.NameProvider;
+import org.myrobotlab.service.data.I2cPollData;
 
 public interface I2CControl extends NameProvider, Attachable {
 
@@ -45,4 +46,10 @@ public interface I2CControl extends NameProvider, Attachable {
   public void attachI2CController(I2CController controller);
 
   public void detachI2CController(I2CController controller);
+
+  /**
+   * data of a scheduled read started with I2CController.i2cPollStart
+   */
+  default void onI2cPollData(I2cPollData data) {
+  }
 }
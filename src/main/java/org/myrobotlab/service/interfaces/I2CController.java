@@ -1,6 +1,9 @@
 package org.myrobotlab.service.interfaces;
 
 import org.myrobotlab.framework.interfaces.Attachable;
+import org.myrobotlab.service.data.I2cPollData;
+import org.myrobotlab.service.data.I2cTransaction;
+import org.myrobotlab.service.data.I2cTransaction.Op;
 
 /*
  * This interface is based on the methods for i2c read and write in the Pi4J project
@@ -64,4 +67,71 @@ public interface I2CController extends Attachable {
    */
   int i2cWriteRead(I2CControl control, int busAddress, int deviceAddress, byte[] writeBuffer, int writeSize, byte[] readBuffer, int readSize);
 
-}
\ No newline at end of file
+  /**
+   * Does the writes and reads of a transaction in order as one unit, the reads
+   * are filled into the transaction. Controllers which can, do it in a single
+   * exchange - this default does one i2cWrite or i2cRead per op.
+   * 
+   * @param control
+   *          c
+   * @param busAddress
+   *          bus address
+   * @param deviceAddress
+   *          device address
+   * @param transaction
+   *          writes and reads
+   * @return number of bytes read, -1 if a read failed
+   */
+  default int i2cTransaction(I2CControl control, int busAddress, int deviceAddress, I2cTransaction transaction) {
+    int read = 0;
+    for (Op op : transaction.ops) {
+      if (op.type == I2cTransaction.WRITE) {
+        i2cWrite(control, busAddress, deviceAddress, op.data, op.data.length);
+      } else {
+        int size = i2cRead(control, busAddress, deviceAddress, op.data, op.data.length);
+        if (size < 0) {
+          return -1;
+        }
+        read += size;
+      }
+    }
+    return read;
+  }
+
+  /**
+   * Schedules a read on the controller: every intervalMs it reads size bytes
+   * starting at registerAddress and hands them to control.onI2cPollData as
+   * {@link I2cPollData}, timestamped by the controller. The device is asked
+   * once instead of a write and read round trip per sample.
+   * 
+   * @param control
+   *          c
+   * @param busAddress
+   *          bus address
+   * @param deviceAddress
+   *          device address
+   * @param registerAddress
+   *          first register to read
+   * @param size
+   *          number of bytes to read
+   * @param intervalMs
+   *          time between reads
+   * @return poll id for i2cPollStop, -1 if the controller can not schedule
+   *         reads - the device has to poll itself
+   */
+  default int i2cPollStart(I2CControl control, int busAddress, int deviceAddress, int registerAddress, int size, int intervalMs) {
+    return -1;
+  }
+
+  /**
+   * stops a scheduled read
+   * 
+   * @param control
+   *          c
+   * @param pollId
+   *          id returned by i2cPollStart
+   */
+  default void i2cPollStop(I2CControl control, int pollId) {
+  }
+
+}
@@ -2,6 +2,7 @@ package org.myrobotlab.service.interfaces;
 
 import org.myrobotlab.arduino.BoardInfo;
 import org.myrobotlab.sensor.EncoderData;
+import org.myrobotlab.service.data.I2cPollData;
 import org.myrobotlab.service.data.PinData;
 import org.myrobotlab.service.data.SerialRelayData;
 
@@ -32,6 +33,8 @@ public interface MrlCommPublisher {
 
   public void publishI2cData(Integer deviceId, int[] data);
 
+  public I2cPollData publishI2cPollData(Integer deviceId, Integer pollId, Long timestamp, int[] data);
+
   public SerialRelayData publishSerialData(Integer deviceId, int[] data);
 
   public Integer publishServoEvent(Integer deviceId, Integer eventType, Integer currentPos, Integer targetPos);
@@ -9,7 +9,7 @@
  * 							src\resource\Arduino\generate\ArduinoMsgCodec.template.h
  */
 
-#define MRLCOMM_VERSION			67
+#define MRLCOMM_VERSION			69
 #define MAGIC_NUMBER            170 // 10101010
 #define MAX_MSG_SIZE			64
 
@@ -137,6 +137,14 @@
 #define PUBLISH_MRL_COMM_BEGIN 55
 // > servoStop/deviceId
 #define SERVO_STOP 56
+// > i2cPollStart/deviceId/pollId/deviceAddress/registerAddress/size/b16 intervalMs
+#define I2C_POLL_START 57
+// > i2cPollStop/deviceId/pollId
+#define I2C_POLL_STOP 58
+// < publishI2cPollData/deviceId/pollId/bu32 timestamp/[] data
+#define PUBLISH_I2C_POLL_DATA 59
+// > i2cTransaction/deviceId/deviceAddress/[] ops
+#define I2C_TRANSACTION 60
 
 
 
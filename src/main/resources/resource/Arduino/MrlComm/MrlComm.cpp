@@ -331,6 +331,24 @@ void MrlComm::i2cWriteRead(byte deviceId, byte deviceAddress, byte readSize, byt
 	((MrlI2CBus *)getDevice(deviceId))->i2cWriteRead(deviceAddress, readSize, writeValue);
 }
 
+// > i2cPollStart/deviceId/pollId/deviceAddress/registerAddress/size/b16 intervalMs
+void MrlComm::i2cPollStart(byte deviceId, byte pollId, byte deviceAddress, byte registerAddress, byte size, int intervalMs)
+{
+	((MrlI2CBus *)getDevice(deviceId))->pollStart(pollId, deviceAddress, registerAddress, size, intervalMs);
+}
+
+// > i2cPollStop/deviceId/pollId
+void MrlComm::i2cPollStop(byte deviceId, byte pollId)
+{
+	((MrlI2CBus *)getDevice(deviceId))->pollStop(pollId);
+}
+
+// > i2cTransaction/deviceId/deviceAddress/[] ops
+void MrlComm::i2cTransaction(byte deviceId, byte deviceAddress, byte opsSize, const byte*ops)
+{
+	((MrlI2CBus *)getDevice(deviceId))->i2cTransaction(deviceAddress, opsSize, ops);
+}
+
 // > neoPixelAttach/pin/b16 numPixels
 void MrlComm::neoPixelAttach(byte deviceId, byte pin, long numPixels, byte depth)
 {
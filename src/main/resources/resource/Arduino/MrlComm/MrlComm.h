@@ -162,6 +162,12 @@ public:
   void setZeroPoint( byte deviceId);
   // > servoStop/deviceId
   void servoStop( byte deviceId);
+  // > i2cPollStart/deviceId/pollId/deviceAddress/registerAddress/size/b16 intervalMs
+  void i2cPollStart( byte deviceId,  byte pollId,  byte deviceAddress,  byte registerAddress,  byte size,  int intervalMs);
+  // > i2cPollStop/deviceId/pollId
+  void i2cPollStop( byte deviceId,  byte pollId);
+  // > i2cTransaction/deviceId/deviceAddress/[] ops
+  void i2cTransaction( byte deviceId,  byte deviceAddress,  byte opsSize, const byte*ops);
     // </generatedCallBacks>
   // end
 
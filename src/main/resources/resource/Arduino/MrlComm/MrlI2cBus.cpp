@@ -4,6 +4,9 @@
 
 MrlI2CBus::MrlI2CBus(int deviceId) :
 		Device(deviceId, DEVICE_TYPE_I2C) {
+	for (int i = 0; i < MAX_I2C_POLLS; i++) {
+		polls[i].active = false;
+	}
 //	if (TWCR == 0) { //// do this check so that Wire only gets initialized once
 		Wire.begin();
 	    // Force 400 KHz i2c
@@ -62,6 +65,93 @@ void MrlI2CBus::i2cWriteRead(byte deviceAddress, byte readSize, byte writeValue)
 	msg->publishI2cData(id, msg->getBuffer(), msg->getBufferSize());
 }
 
+// I2CTRANSACTION | DEVICE_INDEX | I2CADDRESS | OPSSIZE | OPS....
+// PUBLISH_SENSOR_DATA | DEVICE_INDEX | DATASIZE | DATA ....
+// every op is a header byte - high bit set for a read, the low 7 bits are the
+// size - followed by the bytes of a write. The ops are done in order and
+// everything read is published at once
+void MrlI2CBus::i2cTransaction(byte deviceAddress, byte opsSize, const byte*ops) {
+	int i = 0;
+	while (i < opsSize) {
+		byte header = ops[i++];
+		byte size = header & 0x7F;
+		if (header & 0x80) {
+			int answer = Wire.requestFrom(deviceAddress, size);
+			for (int j = 0; j < answer; j++) {
+				msg->add(Wire.read());
+			}
+		} else {
+			Wire.beginTransmission(deviceAddress);
+			for (int j = 0; j < size && i < opsSize; j++) {
+				Wire.write(ops[i++]);
+			}
+			Wire.endTransmission();
+		}
+	}
+	msg->publishI2cData(id, msg->getBuffer(), msg->getBufferSize());
+}
+
+// starts (or changes) a scheduled read - the first read is done on the next
+// update
+void MrlI2CBus::pollStart(byte pollId, byte deviceAddress, byte registerAddress, byte size, int intervalMs) {
+	int slot = -1;
+	for (int i = 0; i < MAX_I2C_POLLS; i++) {
+		if (polls[i].active && polls[i].pollId == pollId) {
+			slot = i;
+			break;
+		}
+		if (!polls[i].active && slot == -1) {
+			slot = i;
+		}
+	}
+	if (slot == -1) {
+		msg->publishError(F("too many i2c polls"));
+		return;
+	}
+	I2cPoll &p = polls[slot];
+	p.pollId = pollId;
+	p.deviceAddress = deviceAddress;
+	p.registerAddress = registerAddress;
+	p.size = (size > MAX_I2C_POLL_SIZE) ? MAX_I2C_POLL_SIZE : size;
+	p.intervalMs = intervalMs;
+	p.lastRead = millis() - intervalMs;
+	p.active = true;
+}
+
+void MrlI2CBus::pollStop(byte pollId) {
+	for (int i = 0; i < MAX_I2C_POLLS; i++) {
+		if (polls[i].pollId == pollId) {
+			polls[i].active = false;
+		}
+	}
+}
+
+// one register read of a scheduled poll, published with the time it was taken
+void MrlI2CBus::poll(I2cPoll &p) {
+	unsigned long timestamp = micros();
+	Wire.beginTransmission(p.deviceAddress);
+	Wire.write(p.registerAddress);
+	Wire.endTransmission();
+	int answer = Wire.requestFrom(p.deviceAddress, p.size);
+	byte data[MAX_I2C_POLL_SIZE];
+	for (int i = 0; i < answer; i++) {
+		data[i] = Wire.read();
+	}
+	msg->publishI2cPollData(id, p.pollId, timestamp, data, answer);
+}
+
 void MrlI2CBus::update() {
-	//Nothing to do
+	unsigned long now = millis();
+	for (int i = 0; i < MAX_I2C_POLLS; i++) {
+		I2cPoll &p = polls[i];
+		if (p.active && now - p.lastRead >= p.intervalMs) {
+			// keep the schedule - a late read does not push the next one back
+			p.lastRead += p.intervalMs;
+			if (now - p.lastRead >= p.intervalMs) {
+				// more than an interval behind, skip the missed reads
+				p.lastRead = now;
+			}
+			poll(p);
+		}
+	}
 }
@@ -3,6 +3,26 @@
 
 #include <Wire.h>
 
+// number of scheduled reads a bus can run
+#define MAX_I2C_POLLS 4
+// the Wire library buffers 32 bytes
+#define MAX_I2C_POLL_SIZE 32
+
+/**
+ * A scheduled read - size bytes starting at registerAddress of the device at
+ * deviceAddress, every intervalMs. Each read is published with its micros()
+ * timestamp without a request from MRL.
+ */
+struct I2cPoll {
+	bool active;
+	byte pollId;
+	byte deviceAddress;
+	byte registerAddress;
+	byte size;
+	unsigned int intervalMs;
+	unsigned long lastRead;
+};
+
 /**
  * I2C bus
  * TODO:KW? don't allow this class to write directly to the global serial port
@@ -23,12 +43,17 @@
 class MrlI2CBus : public Device {
   private:
 	int bus;
+	I2cPoll polls[MAX_I2C_POLLS];
+	void poll(I2cPoll &p);
   public:
     MrlI2CBus(int deviceId);
     bool attach(byte bus);
     void i2cRead(byte deviceAddress, byte size);
     void i2cWrite(byte deviceAddress, byte dataSize, const byte*data);
     void i2cWriteRead(byte deviceAddress, byte readSize, byte writeValue);
+    void pollStart(byte pollId, byte deviceAddress, byte registerAddress, byte size, int intervalMs);
+    void pollStop(byte pollId);
+    void i2cTransaction(byte deviceAddress, byte opsSize, const byte*ops);
     void update();
 };
 
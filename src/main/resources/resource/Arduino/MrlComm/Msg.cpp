@@ -138,6 +138,12 @@ Msg* Msg::getInstance() {
   void setZeroPoint( byte deviceId);
   // > servoStop/deviceId
   void servoStop( byte deviceId);
+  // > i2cPollStart/deviceId/pollId/deviceAddress/registerAddress/size/b16 intervalMs
+  void i2cPollStart( byte deviceId,  byte pollId,  byte deviceAddress,  byte registerAddress,  byte size,  int intervalMs);
+  // > i2cPollStop/deviceId/pollId
+  void i2cPollStop( byte deviceId,  byte pollId);
+  // > i2cTransaction/deviceId/deviceAddress/[] ops
+  void i2cTransaction( byte deviceId,  byte deviceAddress,  byte opsSize, const byte*ops);
 
  */
 
@@ -269,6 +275,18 @@ void Msg::publishMrlCommBegin( byte version) {
   write(1 + 1); // size
   write(PUBLISH_MRL_COMM_BEGIN); // msgType = 55
   write(version);
+  flush();
+  reset();
+}
+
+void Msg::publishI2cPollData( byte deviceId,  byte pollId,  unsigned long timestamp, const byte* data,  byte dataSize) {
+  write(MAGIC_NUMBER);
+  write(1 + 1 + 1 + 4 + (1 + dataSize)); // size
+  write(PUBLISH_I2C_POLL_DATA); // msgType = 59
+  write(deviceId);
+  write(pollId);
+  writebu32(timestamp);
+  write((byte*)data, dataSize);
   flush();
   reset();
 }
@@ -630,6 +648,41 @@ void Msg::processCommand() {
       byte deviceId = ioCmd[startPos+1]; // bu8
       startPos += 1;
       mrlComm->servoStop( deviceId);
+      break;
+	}
+  case I2C_POLL_START: { // i2cPollStart
+      byte deviceId = ioCmd[startPos+1]; // bu8
+      startPos += 1;
+      byte pollId = ioCmd[startPos+1]; // bu8
+      startPos += 1;
+      byte deviceAddress = ioCmd[startPos+1]; // bu8
+      startPos += 1;
+      byte registerAddress = ioCmd[startPos+1]; // bu8
+      startPos += 1;
+      byte size = ioCmd[startPos+1]; // bu8
+      startPos += 1;
+      int intervalMs = b16(ioCmd, startPos+1);
+      startPos += 2; //b16
+      mrlComm->i2cPollStart( deviceId,  pollId,  deviceAddress,  registerAddress,  size,  intervalMs);
+      break;
+	}
+  case I2C_POLL_STOP: { // i2cPollStop
+      byte deviceId = ioCmd[startPos+1]; // bu8
+      startPos += 1;
+      byte pollId = ioCmd[startPos+1]; // bu8
+      startPos += 1;
+      mrlComm->i2cPollStop( deviceId,  pollId);
+      break;
+	}
+  case I2C_TRANSACTION: { // i2cTransaction
+      byte deviceId = ioCmd[startPos+1]; // bu8
+      startPos += 1;
+      byte deviceAddress = ioCmd[startPos+1]; // bu8
+      startPos += 1;
+      const byte* ops = ioCmd+startPos+2;
+      byte opsSize = ioCmd[startPos+1];
+      startPos += 1 + ioCmd[startPos+1];
+      mrlComm->i2cTransaction( deviceId,  deviceAddress,  opsSize, ops);
       break;
 	}
 
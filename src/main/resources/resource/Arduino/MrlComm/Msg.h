@@ -105,6 +105,7 @@ public:
 	void publishUltrasonicSensorData( byte deviceId,  int echoTime);
 	void publishEncoderData( byte deviceId,  int position);
 	void publishMrlCommBegin( byte version);
+	void publishI2cPollData( byte deviceId,  byte pollId,  unsigned long timestamp, const byte* data,  byte dataSize);
 
 	// handles all (PC --> MrlComm) methods
 	// void handle(int[] ioCmd); // send size too ?
@@ -24,6 +24,18 @@ angular.module('mrlapp.service.LogGui', []).controller('LogGuiCtrl', ['$scope',
     $scope.maxRecords = 1000
     $scope.pauseText = "pause";
 
+    // server side query of the log store
+    $scope.query = {
+        from: null,
+        to: null,
+        level: "WARN",
+        logger: "",
+        thread: "",
+        text: "",
+        limit: 200
+    }
+    $scope.queryResult = null
+
     $scope.logLevelValue = {
         "DEBUG": 0,
         "INFO": 1,
@@ -93,6 +105,10 @@ angular.module('mrlapp.service.LogGui', []).controller('LogGuiCtrl', ['$scope',
 
             downloadLink.click();
             break
+        case 'onQueryLog':
+            $scope.queryResult = msg.data[0]
+            $scope.$apply()
+            break
         case 'onLogEvents':
 
             let events = msg.data[0]
@@ -146,6 +162,11 @@ angular.module('mrlapp.service.LogGui', []).controller('LogGuiCtrl', ['$scope',
         $scope.$apply()
     }
 
+    $scope.runQuery = function(cursor) {
+        let q = $scope.query
+        msg.send('queryLog', q.from ? q.from.getTime() : null, q.to ? q.to.getTime() : null, q.level, q.logger, q.thread, q.text, cursor, q.limit)
+    }
+
     $scope.pause = function() {
         $scope.pauseText = ($scope.pauseText == "pause")?"unpause":"pause"
     }
@@ -165,6 +186,7 @@ angular.module('mrlapp.service.LogGui', []).controller('LogGuiCtrl', ['$scope',
     msg.subscribe('getLog')
     msg.subscribe('getLogLevel')
     msg.subscribe('publishLogEvents')
+    msg.subscribe('queryLog')
     msg.subscribe(this)
 }
 ])
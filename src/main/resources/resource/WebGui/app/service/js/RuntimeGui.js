@@ -24,6 +24,8 @@ angular.module('mrlapp.service.RuntimeGui', []).controller('RuntimeGuiCtrl', ['$
     $scope.newType = ""
     $scope.heartbeatTs = null
     $scope.hosts = []
+    $scope.startupReport = null
+    $scope.startupTrace = null
 
     $scope.languages = {
         'en': {
@@ -91,6 +93,19 @@ angular.module('mrlapp.service.RuntimeGui', []).controller('RuntimeGuiCtrl', ['$
         msg.send("sendToCli", "runtime@" + mrl.getId(), cmd)
     }
 
+    $scope.getStartupReport = function() {
+        msg.send('getStartupReport')
+    }
+
+    $scope.exportStartupReport = function() {
+        msg.send('exportStartupReport', null)
+    }
+
+    // total ms of a service - repo and construct are part of create
+    $scope.startupTotal = function(phases) {
+        return (phases.create || 0) + (phases.load || 0) + (phases.start || 0)
+    }
+
     $scope.setServiceType = function(serviceType) {
         $scope.newType = serviceType
     }
@@ -199,6 +214,18 @@ angular.module('mrlapp.service.RuntimeGui', []).controller('RuntimeGuiCtrl', ['$
                 }
                 break
             }
+        case 'onStartupReport':
+            {
+                $scope.startupReport = inMsg.data[0]
+                $scope.$apply()
+                break
+            }
+        case 'onExportStartupReport':
+            {
+                $scope.startupTrace = inMsg.data[0]
+                $scope.$apply()
+                break
+            }
         case 'onReleased':
             {
                 console.info("runtime - onRelease" + inMsg.data[0])
@@ -292,6 +319,9 @@ angular.module('mrlapp.service.RuntimeGui', []).controller('RuntimeGuiCtrl', ['$
     msg.subscribe("getLocales")
     msg.subscribe("getHosts")
     msg.subscribe("publishStatus")
+    msg.subscribe("getStartupReport")
+    msg.subscribe("publishStartupReport")
+    msg.subscribe("exportStartupReport")
 
     //msg.send("getLocalServices")
     msg.send("getConnections")
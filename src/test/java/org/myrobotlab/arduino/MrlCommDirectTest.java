@@ -10,6 +10,7 @@ import org.myrobotlab.arduino.Msg;
 import org.myrobotlab.framework.QueueStats;
 import org.myrobotlab.logging.LoggerFactory;
 import org.myrobotlab.sensor.EncoderData;
+import org.myrobotlab.service.data.I2cPollData;
 import org.myrobotlab.serial.PortJSSC;
 import org.myrobotlab.service.data.PinData;
 import org.myrobotlab.service.data.SerialRelayData;
@@ -310,6 +311,12 @@ public class MrlCommDirectTest implements SerialDataListener , MrlCommPublisher,
     log.info("Publish I2C data");
   }
 
+  @Override
+  public I2cPollData publishI2cPollData(Integer deviceId, Integer pollId, Long timestamp, int[] data) {
+    log.info("Publish I2C poll data");
+    return null;
+  }
+
   @Override
   public SerialRelayData publishSerialData(Integer deviceId, int[] data) {
     // TODO Auto-generated method stub
@@ -0,0 +1,114 @@
+package org.myrobotlab.audio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.myrobotlab.test.AbstractTest;
+
+public class AudioCacheTest extends AbstractTest {
+
+  File root;
+
+  @Before
+  public void setUp() throws Exception {
+    root = Files.createTempDirectory("audioCache").toFile();
+  }
+
+  String file(String name, int size) throws Exception {
+    File f = new File(new File(root, "MarySpeech/voice"), name);
+    f.getParentFile().mkdirs();
+    try (FileOutputStream out = new FileOutputStream(f)) {
+      out.write(new byte[size]);
+    }
+    return f.getPath();
+  }
+
+  String wav(String name, int frames) throws Exception {
+    File f = new File(new File(root, "MarySpeech/voice"), name);
+    f.getParentFile().mkdirs();
+    AudioFormat format = new AudioFormat(16000, 16, 1, true, false);
+    byte[] data = new byte[frames * 2];
+    try (AudioInputStream in = new AudioInputStream(new ByteArrayInputStream(data), format, frames)) {
+      AudioSystem.write(in, AudioFileFormat.Type.WAVE, f);
+    }
+    return f.getPath();
+  }
+
+  @Test
+  public void testEvictLeastRecentlyUsed() throws Exception {
+    AudioCache cache = new AudioCache(root);
+    cache.setMaxBytes(2500);
+
+    String a = file("00000000000000000000000000000001.mp3", 1000);
+    String b = file("00000000000000000000000000000002.mp3", 1000);
+    String c = file("00000000000000000000000000000003.mp3", 1000);
+
+    cache.put(a, "one");
+    cache.put(b, "two");
+    assertTrue(cache.contains(a));
+    cache.put(c, "three");
+
+    // b was the least recently used
+    assertFalse(cache.contains(b));
+    assertFalse(new File(b).exists());
+    assertTrue(cache.contains(a));
+    assertTrue(cache.contains(c));
+    assertEquals(2000, cache.getBytes());
+  }
+
+  @Test
+  public void testIndexSaveLoad() throws Exception {
+    AudioCache cache = new AudioCache(root);
+    String a = file("00000000000000000000000000000001.mp3", 100);
+    cache.put(a, "hello\tthere");
+    cache.touch(a);
+    cache.save();
+
+    AudioCache reloaded = new AudioCache(root);
+    assertEquals(1, reloaded.size());
+    assertEquals(100, reloaded.getBytes());
+    assertTrue(reloaded.contains(a));
+
+    // without an index the generated files are scanned
+    new File(root, AudioCache.INDEX_FILE).delete();
+    file("00000000000000000000000000000002.mp3", 50);
+    file("notcached.txt", 50);
+    AudioCache scanned = new AudioCache(root);
+    assertEquals(2, scanned.size());
+    assertEquals(150, scanned.getBytes());
+  }
+
+  @Test
+  public void testWarm() throws Exception {
+    AudioCache cache = new AudioCache(root);
+    cache.setMaxHotBytes(1000);
+    String a = wav("00000000000000000000000000000001.wav", 1600);
+    cache.put(a, "warm");
+
+    AudioCache.Pcm pcm = cache.warm(a);
+    assertNotNull(pcm);
+    assertEquals(3200, pcm.data.length);
+    // pinned phrases stay in memory past the bound
+    assertNotNull(cache.getPcm(a));
+    assertEquals(1, cache.getHotSize());
+
+    cache.remove(a);
+    assertFalse(new File(a).exists());
+    assertEquals(0, cache.getHotSize());
+  }
+
+}
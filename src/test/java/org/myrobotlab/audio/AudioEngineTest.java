@@ -0,0 +1,80 @@
+package org.myrobotlab.audio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import javax.sound.sampled.AudioFormat;
+
+import org.junit.Test;
+import org.myrobotlab.service.data.AudioData;
+import org.myrobotlab.test.AbstractTest;
+
+public class AudioEngineTest extends AbstractTest {
+
+  static byte[] pcm(int frames, int channels, int value) {
+    byte[] data = new byte[frames * channels * 2];
+    for (int i = 0; i < frames * channels; ++i) {
+      data[i * 2] = (byte) value;
+      data[i * 2 + 1] = (byte) (value >> 8);
+    }
+    return data;
+  }
+
+  @Test
+  public void testResample() throws Exception {
+    // 22050 mono is doubled and made stereo
+    AudioEngine.Playback playback = new AudioEngine.Playback(new AudioData("test"), new AudioFormat(22050, 16, 1, true, false), 4096);
+    playback.write(pcm(1001, 1, 1000), 0, 1001 * 2);
+    playback.end();
+
+    int[] acc = new int[AudioEngine.BLOCK_FRAMES * 2 * 16];
+    int frames = playback.mix(acc, acc.length / 2, 1);
+    assertEquals(2000, frames);
+    assertEquals(1000, acc[0]);
+    assertEquals(1000, acc[1]);
+    assertEquals(1000, acc[3999]);
+    assertTrue(playback.isDone());
+    assertEquals(1, playback.getStartTs());
+  }
+
+  @Test
+  public void testMixVolumeBalance() throws Exception {
+    AudioFormat format = new AudioFormat(44100, 16, 2, true, false);
+    AudioEngine.Playback a = new AudioEngine.Playback(new AudioData("a"), format, 4096);
+    AudioEngine.Playback b = new AudioEngine.Playback(new AudioData("b"), format, 4096);
+    a.write(pcm(101, 2, 10000), 0, 101 * 4);
+    b.write(pcm(101, 2, 10000), 0, 101 * 4);
+    a.setVolume(0.5);
+    b.setBalance(1.0f);
+
+    int[] acc = new int[200];
+    assertEquals(100, a.mix(acc, 100, 1));
+    assertEquals(100, b.mix(acc, 100, 1));
+    // a at half volume on both sides, b only on the right
+    assertEquals(5000, acc[0]);
+    assertEquals(15000, acc[1]);
+    // not ended - more may come
+    assertFalse(a.isDone());
+
+    acc[0] = 40000;
+    acc[1] = -40000;
+    byte[] out = new byte[acc.length * 2];
+    AudioEngine.pack(acc, out);
+    assertEquals(Short.MAX_VALUE, (short) ((out[0] & 0xFF) | (out[1] << 8)));
+    assertEquals(Short.MIN_VALUE, (short) ((out[2] & 0xFF) | (out[3] << 8)));
+  }
+
+  @Test
+  public void testStop() throws Exception {
+    AudioEngine.Playback playback = new AudioEngine.Playback(new AudioData("test"), AudioEngine.FORMAT, 100);
+    playback.write(pcm(51, 2, 1), 0, 51 * 4);
+    playback.stop();
+    // a full buffer does not block a stopped playback
+    playback.write(pcm(500, 2, 1), 0, 500 * 4);
+    assertEquals(0, playback.mix(new int[200], 100, 1));
+    assertTrue(playback.isDone());
+    assertFalse(playback.waitForStart());
+  }
+
+}
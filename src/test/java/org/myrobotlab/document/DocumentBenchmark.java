@@ -0,0 +1,114 @@
+package org.myrobotlab.document;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.junit.Ignore;
+
+/**
+ * Ingestion benchmark for Document - builds documents the way CsvConnector
+ * does (one single valued field per column) and reports heap per document and
+ * documents per second, next to the map of lists storage Document used to
+ * have.
+ *
+ * run with a fixed heap for stable numbers e.g. -Xms2g -Xmx2g
+ */
+@Ignore
+public class DocumentBenchmark {
+
+  static final String[] columns = new String[] { "id", "name", "city", "state", "zip", "phone", "email", "company", "title", "created" };
+
+  // the storage Document used before the compact representation
+  static class MapDocument {
+    String id;
+    HashMap<String, ArrayList<Object>> data = new HashMap<String, ArrayList<Object>>();
+
+    MapDocument(String id) {
+      this.id = id;
+    }
+
+    void addToField(String fieldName, Object value) {
+      ArrayList<Object> values = data.get(fieldName);
+      if (values == null) {
+        values = new ArrayList<Object>();
+        data.put(fieldName, values);
+      }
+      values.add(value);
+    }
+  }
+
+  // keeps the documents reachable while the heap is measured
+  static Object[] sink;
+
+  static String[] row(int rowNum) {
+    String[] row = new String[columns.length];
+    for (int i = 0; i < columns.length; i++) {
+      row[i] = columns[i] + "_" + rowNum;
+    }
+    return row;
+  }
+
+  static long usedHeap() {
+    Runtime rt = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+      try {
+        Thread.sleep(100);
+      } catch (InterruptedException e) {
+      }
+    }
+    return rt.totalMemory() - rt.freeMemory();
+  }
+
+  static void report(String name, int numDocs, long bytes, long nanos) {
+    System.out.println(String.format("%-14s %10d docs %8.1f bytes/doc %12.0f docs/s", name, numDocs, (double) bytes / numDocs, numDocs * 1000000000.0 / nanos));
+  }
+
+  public static void main(String[] args) {
+    int numDocs = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+
+    // the values are shared by both runs so only the document overhead is
+    // measured
+    String[][] rows = new String[numDocs][];
+    for (int i = 0; i < numDocs; i++) {
+      rows[i] = row(i);
+    }
+
+    for (int round = 0; round < 3; round++) {
+      long before = usedHeap();
+      long start = System.nanoTime();
+      MapDocument[] mapDocs = new MapDocument[numDocs];
+      for (int i = 0; i < numDocs; i++) {
+        MapDocument doc = new MapDocument("doc_" + i);
+        for (int c = 0; c < columns.length; c++) {
+          doc.addToField(columns[c], rows[i][c]);
+        }
+        mapDocs[i] = doc;
+      }
+      long nanos = System.nanoTime() - start;
+      sink = mapDocs;
+      long bytes = usedHeap() - before;
+      report("map of lists", numDocs, bytes, nanos);
+      mapDocs = null;
+      sink = null;
+
+      before = usedHeap();
+      start = System.nanoTime();
+      Document[] docs = new Document[numDocs];
+      for (int i = 0; i < numDocs; i++) {
+        Document doc = new Document("doc_" + i);
+        for (int c = 0; c < columns.length; c++) {
+          doc.addToField(columns[c], rows[i][c]);
+        }
+        docs[i] = doc;
+      }
+      nanos = System.nanoTime() - start;
+      sink = docs;
+      bytes = usedHeap() - before;
+      report("Document", numDocs, bytes, nanos);
+      docs = null;
+      sink = null;
+    }
+  }
+
+}
@@ -0,0 +1,143 @@
+package org.myrobotlab.document;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import org.junit.Test;
+import org.myrobotlab.test.AbstractTest;
+
+public class DocumentTest extends AbstractTest {
+
+  @Test
+  public void testFields() {
+    Document doc = new Document("doc_1");
+    assertNull(doc.getField("title"));
+    doc.setField("title", "MRL Cookbook.");
+    doc.addToField("tags", "robots");
+    doc.addToField("tags", "java");
+    doc.setField("count", 2);
+
+    assertEquals("MRL Cookbook.", doc.getValue("title"));
+    assertEquals(1, doc.getField("title").size());
+    assertEquals(2, doc.getField("tags").size());
+    assertEquals("java", doc.getField("tags").get(1));
+    // boxed types are kept
+    assertEquals(Integer.valueOf(2), doc.getValue("count"));
+
+    // the list handed out by getField is the field storage
+    doc.getField("title").add("second edition");
+    assertEquals(2, doc.getFieldValues("title").size());
+
+    // field order is insertion order
+    Iterator<String> fields = doc.getFields().iterator();
+    assertEquals("title", fields.next());
+    assertEquals("tags", fields.next());
+    assertEquals("count", fields.next());
+    // the field set is a view - it follows the document
+    assertTrue(doc.getFields() == doc.getFields());
+    assertTrue(doc.getFields().contains("tags"));
+    assertEquals(3, doc.getFields().size());
+
+    doc.renameField("title", "tags");
+    assertFalse(doc.hasField("title"));
+    assertEquals("MRL Cookbook.", doc.getValue("tags"));
+    assertEquals(2, doc.getFieldCount());
+
+    doc.removeField("tags");
+    doc.setField("count", (Object) null);
+    assertEquals(0, doc.getFieldCount());
+
+    // grow past the initial capacity
+    for (int i = 0; i < 20; i++) {
+      doc.setField("field_" + i, i);
+    }
+    assertEquals(20, doc.getFieldCount());
+    assertEquals(19, doc.getValue("field_19"));
+  }
+
+  @Test
+  public void testWideDocument() {
+    // past the point where fields are found through a map
+    Document doc = new Document("doc_1");
+    for (int i = 0; i < 100; i++) {
+      doc.setField("field_" + i, i);
+    }
+    assertEquals(100, doc.getFieldCount());
+    assertEquals(42, doc.getValue("field_42"));
+    assertNull(doc.getValue("field_100"));
+
+    doc.removeField("field_10");
+    assertFalse(doc.hasField("field_10"));
+    assertEquals(11, doc.getValue("field_11"));
+    assertEquals(99, doc.getValue("field_99"));
+
+    doc.renameField("field_20", "renamed");
+    assertFalse(doc.hasField("field_20"));
+    assertEquals(20, doc.getValue("renamed"));
+    doc.renameField("renamed", "field_30");
+    assertEquals(20, doc.getValue("field_30"));
+    assertEquals(98, doc.getFieldCount());
+
+    doc.addToField("field_50", 500);
+    assertEquals(2, doc.getField("field_50").size());
+  }
+
+  @Test
+  public void testFieldNamesBound() {
+    int max = FieldNames.getMaxNames();
+    try {
+      FieldNames.setMaxNames(FieldNames.size());
+      String name = new String("not_interned_" + System.nanoTime());
+      assertTrue(FieldNames.intern(name) == name);
+      assertTrue(FieldNames.intern(new String(name)) != name);
+      // still found by equals
+      Document doc = new Document("doc_1");
+      doc.setField(name, 1);
+      assertEquals(1, doc.getValue(new String(name)));
+    } finally {
+      FieldNames.setMaxNames(max);
+    }
+  }
+
+  @Test
+  public void testPrimitives() {
+    Document doc = new Document("doc_1");
+    doc.setLongField("x", 42L);
+    doc.setDoubleField("y", 1.5);
+    doc.setField("z", "3");
+    assertEquals(42L, doc.getLong("x", 0));
+    assertEquals(1.5, doc.getDouble("y", 0), 0.0);
+    assertEquals(42.0, doc.getDouble("x", 0), 0.0);
+    assertEquals(-1L, doc.getLong("z", -1));
+    assertEquals(Long.valueOf(42L), doc.getValue("x"));
+    doc.addToField("y", 2.5);
+    assertEquals(2, doc.getField("y").size());
+    assertEquals(1.5, doc.getField("y").get(0));
+  }
+
+  @Test
+  public void testEquals() {
+    Document a = new Document("doc_1");
+    a.setField("title", "foo");
+    a.addToField("tags", "a");
+    a.addToField("tags", "b");
+
+    Document b = new Document("doc_1");
+    ArrayList<Object> tags = new ArrayList<Object>();
+    tags.add("a");
+    tags.add("b");
+    b.setField("tags", tags);
+    b.addToField("title", "foo");
+
+    assertTrue(a.equals(b));
+    assertEquals(a.hashCode(), b.hashCode());
+    b.setStatus(ProcessingStatus.DROP);
+    assertFalse(a.equals(b));
+  }
+
+}
@@ -0,0 +1,67 @@
+package org.myrobotlab.document.connector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.myrobotlab.test.AbstractTest;
+
+import au.com.bytecode.opencsv.CSVParser;
+import au.com.bytecode.opencsv.CSVReader;
+
+public class CsvChunkerTest extends AbstractTest {
+
+  @Rule
+  public TemporaryFolder testFolder = new TemporaryFolder();
+
+  @Test
+  public void testSplit() throws Exception {
+    File csv = testFolder.newFile("test.csv");
+    StringBuilder sb = new StringBuilder("id,text\n");
+    int numRows = 1000;
+    for (int i = 1; i <= numRows; i++) {
+      if (i % 7 == 0) {
+        // quoted values with newlines, separators and escaped quotes
+        sb.append(i).append(",\"multi\nline, \\\"quoted\\\"\n value ").append(i).append("\"\n");
+      } else {
+        sb.append(i).append(",plain value ").append(i).append("\n");
+      }
+    }
+    FileOutputStream fos = new FileOutputStream(csv);
+    fos.write(sb.toString().getBytes());
+    fos.close();
+
+    List<CsvChunker.Chunk> chunks = CsvChunker.split(csv, true, 8, CSVParser.DEFAULT_QUOTE_CHARACTER, CSVParser.DEFAULT_ESCAPE_CHARACTER);
+    assertTrue(chunks.size() > 1);
+    assertEquals(csv.length(), chunks.get(chunks.size() - 1).end);
+
+    List<String[]> rows = new ArrayList<String[]>();
+    long expectedStart = "id,text\n".length();
+    for (CsvChunker.Chunk chunk : chunks) {
+      assertEquals(expectedStart, chunk.start);
+      // each chunk knows how many rows came before it
+      assertEquals(rows.size(), chunk.firstRow);
+      CSVReader reader = new CSVReader(chunk.openReader(csv));
+      String[] row;
+      while ((row = reader.readNext()) != null) {
+        rows.add(row);
+      }
+      reader.close();
+      expectedStart = chunk.end;
+    }
+
+    assertEquals(numRows, rows.size());
+    for (int i = 0; i < numRows; i++) {
+      assertEquals(String.valueOf(i + 1), rows.get(i)[0]);
+      assertTrue(rows.get(i)[1].endsWith(" " + (i + 1)));
+    }
+  }
+
+}
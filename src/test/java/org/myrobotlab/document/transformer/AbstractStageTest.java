@@ -1,5 +1,8 @@
 package org.myrobotlab.document.transformer;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
@@ -27,6 +30,19 @@ public abstract class AbstractStageTest extends AbstractTest {
     validate(doc);
   }
 
+  @Test
+  public void testBatch() {
+    if (printMethods)System.out.println(String.format("Running %s.%s", getSimpleName(), getName()));
+    AbstractStage stage = createStage();
+    List<Document> docs = new ArrayList<Document>();
+    docs.add(createDocument());
+    docs.add(createDocument());
+    stage.processDocuments(docs);
+    for (Document doc : docs) {
+      validate(doc);
+    }
+  }
+
   public abstract void validate(Document doc);
 
 }
@@ -0,0 +1,81 @@
+package org.myrobotlab.document.workflow;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.myrobotlab.document.Document;
+import org.myrobotlab.document.ProcessingStatus;
+import org.myrobotlab.document.transformer.AbstractStage;
+import org.myrobotlab.document.transformer.StageConfiguration;
+import org.myrobotlab.document.transformer.WorkflowConfiguration;
+import org.myrobotlab.test.AbstractTest;
+
+public class WorkflowTest extends AbstractTest {
+
+  static final AtomicInteger processed = new AtomicInteger();
+  static final AtomicInteger flushed = new AtomicInteger();
+
+  /**
+   * a slow stage which drops every 10th document and counts the rest
+   */
+  public static class CountingStage extends AbstractStage {
+
+    @Override
+    public void startStage(StageConfiguration config) {
+    }
+
+    @Override
+    public List<Document> processDocument(Document doc) {
+      sleep(1);
+      if (doc.getId().endsWith("0")) {
+        doc.setStatus(ProcessingStatus.DROP);
+      } else {
+        processed.incrementAndGet();
+      }
+      return null;
+    }
+
+    @Override
+    public void stopStage() {
+    }
+
+    @Override
+    public void flush() {
+      flushed.incrementAndGet();
+    }
+  }
+
+  @Test
+  public void testFlushWaitsForDocumentsInFlight() throws Exception {
+    WorkflowConfiguration config = new WorkflowConfiguration("test");
+    config.setNumWorkerThreads(2);
+    config.setQueueLength(8);
+    config.setBatchSize(4);
+    config.addStage(new StageConfiguration("count1", CountingStage.class.getName()));
+    config.addStage(new StageConfiguration("count2", CountingStage.class.getName()));
+    Workflow workflow = new Workflow(config);
+    workflow.initialize();
+
+    int numDocs = 200;
+    for (int i = 0; i < numDocs; i++) {
+      // blocks when the queue of 8 is full
+      workflow.processDocument(new Document("doc_" + i));
+    }
+    workflow.flush();
+
+    assertEquals(0, workflow.getInFlight());
+    assertEquals(numDocs, workflow.getCompleted());
+    // dropped documents never reach the second stage
+    assertEquals(numDocs * 9 / 10 * 2, processed.get());
+    // each worker has its own copy of each stage
+    assertEquals(4, flushed.get());
+    List<StageMetrics> metrics = workflow.getStageMetrics();
+    assertEquals(2, metrics.size());
+    assertEquals(numDocs, metrics.get(0).getDocuments());
+    assertEquals(numDocs * 9 / 10, metrics.get(1).getDocuments());
+  }
+
+}
@@ -0,0 +1,59 @@
+package org.myrobotlab.framework;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.myrobotlab.service.data.StartupReport;
+import org.myrobotlab.service.data.StartupReport.Phase;
+import org.myrobotlab.test.AbstractTest;
+
+public class LifecycleTimerTest extends AbstractTest {
+
+  static Phase phase(String service, String phase, double ms, int classes) {
+    Phase p = new Phase();
+    p.service = service;
+    p.type = "org.myrobotlab.service.Servo";
+    p.phase = phase;
+    p.durationMs = ms;
+    p.classesLoaded = classes;
+    return p;
+  }
+
+  @Test
+  public void testTrace() throws Exception {
+    StartupReport report = new StartupReport();
+    report.version = "1.1.0";
+    report.phases.add(phase("servo", "start", 2.0, 1));
+    report.phases.add(phase("servo", "create", 10.0, 100));
+    report.phases.add(phase("arm", "load", 1.0, 0));
+    report.phases.add(phase("servo", "start", 3.0, 2));
+
+    List<String> trace = LifecycleTimer.toTrace(report);
+    assertEquals("# startup trace 1.1.0", trace.get(0));
+    // sorted by service then phase order - no timestamps
+    assertEquals("arm\torg.myrobotlab.service.Servo\tload\t1\t1.0\t0\t0", trace.get(2));
+    assertEquals("servo\torg.myrobotlab.service.Servo\tcreate\t1\t10.0\t0\t100", trace.get(3));
+    assertEquals("servo\torg.myrobotlab.service.Servo\tstart\t2\t5.0\t0\t3", trace.get(4));
+    assertTrue(trace.get(5).startsWith("jvm\tthreads\t"));
+  }
+
+  @Test
+  public void testBeginEnd() throws Exception {
+    LifecycleTimer.clear();
+    Phase p = LifecycleTimer.begin("test", "org.myrobotlab.service.Test", "start");
+    Thread.sleep(10);
+    LifecycleTimer.end(p);
+    assertTrue(p.durationMs >= 10);
+    assertEquals(Thread.currentThread().getName(), p.thread);
+
+    LifecycleTimer.setEnabled(false);
+    assertNull(LifecycleTimer.begin("test", "org.myrobotlab.service.Test", "load"));
+    LifecycleTimer.end(null);
+    LifecycleTimer.setEnabled(true);
+  }
+
+}
@@ -0,0 +1,132 @@
+package org.myrobotlab.framework;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+import org.myrobotlab.framework.SimClock.Steppable;
+import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.test.AbstractTest;
+import org.slf4j.Logger;
+
+public class SimClockTest extends AbstractTest {
+
+  public final static Logger log = LoggerFactory.getLogger(SimClockTest.class);
+
+  final List<Steppable> registered = new ArrayList<Steppable>();
+
+  @After
+  public void tearDown() {
+    for (Steppable steppable : registered) {
+      SimClock.unregister(steppable);
+    }
+    SimClock.stopSimulation();
+  }
+
+  Steppable register(Steppable steppable) {
+    registered.add(steppable);
+    SimClock.register(steppable);
+    return steppable;
+  }
+
+  @Test
+  public void wallClockByDefault() {
+    assertFalse(SimClock.isSimulation());
+    long now = System.currentTimeMillis();
+    assertTrue(Math.abs(SimClock.currentTimeMillis() - now) < 1000);
+  }
+
+  @Test
+  public void stepsInOrder() {
+    final List<String> calls = new ArrayList<String>();
+    register((now, delta) -> calls.add("a " + now + " " + delta));
+    register((now, delta) -> calls.add("b " + now + " " + delta));
+
+    SimClock.startSimulation(1000);
+    assertEquals(1000, SimClock.currentTimeMillis());
+    SimClock.step(20);
+    SimClock.step(5);
+
+    assertEquals(1025, SimClock.currentTimeMillis());
+    assertEquals(4, calls.size());
+    assertEquals("a 1020 20", calls.get(0));
+    assertEquals("b 1020 20", calls.get(1));
+    assertEquals("a 1025 5", calls.get(2));
+    assertEquals("b 1025 5", calls.get(3));
+  }
+
+  @Test
+  public void failingSteppable() {
+    final long[] last = new long[1];
+    register((now, delta) -> {
+      throw new RuntimeException("boom");
+    });
+    register((now, delta) -> last[0] = now);
+
+    SimClock.startSimulation(0);
+    SimClock.step(10);
+    assertEquals(10, last[0]);
+  }
+
+  @Test
+  public void fasterThanRealTime() {
+    final long[] count = new long[1];
+    register((now, delta) -> ++count[0]);
+
+    SimClock.startSimulation(0);
+    // 10 minutes in 20 ms ticks
+    long wallMs = SimClock.run(10 * 60 * 1000, 20);
+
+    assertEquals(30000, count[0]);
+    assertEquals(30000, SimClock.getSteps());
+    assertEquals(10 * 60 * 1000, SimClock.currentTimeMillis());
+    log.info("10 minutes simulated in {} ms - {}", wallMs, SimClock.getStats());
+    assertTrue(wallMs < 60 * 1000);
+  }
+
+  @Test
+  public void sleepWaitsForSimulatedTime() throws InterruptedException {
+    SimClock.startSimulation(0);
+    final long[] wokeAt = new long[] { -1 };
+    Thread sleeper = new Thread(() -> {
+      try {
+        SimClock.sleep(100);
+        wokeAt[0] = SimClock.currentTimeMillis();
+      } catch (InterruptedException e) {
+      }
+    });
+    sleeper.start();
+    // let the sleeper start waiting
+    Thread.sleep(50);
+    SimClock.step(60);
+    Thread.sleep(50);
+    assertTrue(sleeper.isAlive());
+    SimClock.step(60);
+    sleeper.join(1000);
+    assertFalse(sleeper.isAlive());
+    assertEquals(120, wokeAt[0]);
+  }
+
+  @Test
+  public void stopReleasesSleepers() throws InterruptedException {
+    SimClock.startSimulation(0);
+    Thread sleeper = new Thread(() -> {
+      try {
+        SimClock.sleep(1000000);
+      } catch (InterruptedException e) {
+      }
+    });
+    sleeper.start();
+    Thread.sleep(50);
+    assertTrue(sleeper.isAlive());
+    SimClock.stopSimulation();
+    sleeper.join(1000);
+    assertFalse(sleeper.isAlive());
+  }
+
+}
@@ -0,0 +1,189 @@
+package org.myrobotlab.framework;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.myrobotlab.framework.StartupPlanner.Span;
+import org.myrobotlab.framework.StartupPlanner.StartupException;
+import org.myrobotlab.service.Runtime;
+import org.myrobotlab.service.TestCatcher;
+import org.myrobotlab.test.AbstractTest;
+
+public class StartupPlannerTest extends AbstractTest {
+
+  static TestCatcher parent = null;
+
+  @Before
+  public void setUp() throws Exception {
+    // no peers - every key is its own subtree
+    parent = (TestCatcher) Runtime.start("planner", "TestCatcher");
+    StartupPlanner.setParallel(true);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    StartupPlanner.setParallel(true);
+  }
+
+  static String thread() {
+    return Thread.currentThread().getName();
+  }
+
+  static Span span(String parent, String name, String thread, long start, long end) {
+    Span span = new Span();
+    span.parent = parent;
+    span.name = name;
+    span.thread = thread;
+    span.start = start;
+    span.end = end;
+    return span;
+  }
+
+  static List<String> criticalPath(List<Span> spans, String name) {
+    List<String> path = new ArrayList<>();
+    StartupPlanner.criticalPath(spans, name, Long.MIN_VALUE, Long.MAX_VALUE, 0, path, new HashSet<>());
+    return path;
+  }
+
+  @Test
+  public void testCriticalPath() throws Exception {
+    List<Span> spans = new ArrayList<>();
+    spans.add(span("i01", "i01.mouth", "main", 0, 100));
+    spans.add(span("i01", "i01.head", "main", 100, 300));
+    spans.add(span("i01.head", "i01.head.jaw", "main", 110, 150));
+    spans.add(span("i01.head", "i01.head.neck", "main", 150, 290));
+    spans.add(span("i01", "i01.leftArm", "peerStart-1", 0, 400));
+    spans.add(span("i01.leftArm", "i01.leftArm.bicep", "peerStart-1", 10, 390));
+
+    // the arm took longest
+    assertEquals(Arrays.asList("i01.leftArm 400 ms (peerStart-1)", "  i01.leftArm.bicep 380 ms (peerStart-1)"), criticalPath(spans, "i01"));
+
+    // now the head - and everything before it on its thread
+    spans.get(1).end = 500;
+    assertEquals(Arrays.asList("i01.mouth 100 ms (main)", "i01.head 400 ms (main)", "  i01.head.jaw 40 ms (main)", "  i01.head.neck 140 ms (main)"),
+        criticalPath(spans, "i01"));
+
+    assertEquals(0, criticalPath(spans, "nobody").size());
+  }
+
+  @Test
+  public void testFind() throws Exception {
+    int[] root = new int[] { 0, 0, 1, 3 };
+    assertEquals(0, StartupPlanner.find(root, 2));
+    assertEquals(3, StartupPlanner.find(root, 3));
+  }
+
+  @Test
+  public void testGetGroups() throws Exception {
+    StartupPlanner planner = new StartupPlanner(parent);
+    planner.add("head", () -> null);
+    planner.add("leftArm", () -> null, "left");
+    planner.add("rightArm", () -> null);
+    planner.add("left", () -> null);
+    // shares the head
+    planner.add("neck", () -> null, "head");
+    planner.add("leftHand", () -> null, "left");
+    // overlap only through a key which is not added
+    planner.add("torso", () -> null, "mid");
+    planner.add("spine", () -> null, "mid");
+
+    assertEquals(Arrays.asList(Arrays.asList("head", "neck"), Arrays.asList("leftArm", "left", "leftHand"), Arrays.asList("rightArm"),
+        Arrays.asList("torso", "spine")), planner.getGroups());
+  }
+
+  @Test
+  public void testConcurrentGroups() throws Exception {
+    // each start waits for the other - only returns if they run at once
+    CyclicBarrier barrier = new CyclicBarrier(2);
+    StartupPlanner planner = new StartupPlanner(parent);
+    planner.add("left", () -> {
+      barrier.await(10, TimeUnit.SECONDS);
+      return thread();
+    });
+    planner.add("right", () -> {
+      barrier.await(10, TimeUnit.SECONDS);
+      return thread();
+    });
+    Map<String, Object> started = planner.run();
+    assertEquals(thread(), started.get("left"));
+    assertNotEquals(started.get("left"), started.get("right"));
+  }
+
+  @Test
+  public void testNestedPlans() throws Exception {
+    // more groups than pool threads, each starting peers of its own on the
+    // pool - the threads running a plan start what the pool does not take
+    int groups = 20;
+    StartupPlanner planner = new StartupPlanner(parent);
+    for (int i = 0; i < groups; ++i) {
+      planner.add("peer" + i, () -> {
+        StartupPlanner nested = new StartupPlanner(parent);
+        for (int j = 0; j < 3; ++j) {
+          nested.add("sub" + j, () -> {
+            Thread.sleep(10);
+            return thread();
+          });
+        }
+        return nested.run().size();
+      });
+    }
+    FutureTask<Map<String, Object>> outer = new FutureTask<>(planner::run);
+    new Thread(outer, "outer").start();
+    Map<String, Object> started = outer.get(30, TimeUnit.SECONDS);
+    assertEquals(groups, started.size());
+    for (Object o : started.values()) {
+      assertEquals(3, o);
+    }
+  }
+
+  @Test
+  public void testHoldsLock() throws Exception {
+    StartupPlanner planner = new StartupPlanner(parent);
+    planner.add("left", () -> thread());
+    planner.add("right", () -> thread());
+    planner.add("torso", () -> thread());
+    Map<String, Object> started;
+    // a pool thread would block on the parent - everything stays here
+    synchronized (parent) {
+      started = planner.run();
+    }
+    assertEquals(3, started.size());
+    for (Object o : started.values()) {
+      assertEquals(thread(), o);
+    }
+  }
+
+  @Test
+  public void testPartialResults() throws Exception {
+    StartupPlanner planner = new StartupPlanner(parent);
+    planner.add("left", () -> "left");
+    planner.add("right", () -> {
+      throw new IllegalStateException("no port");
+    });
+    planner.add("torso", () -> "torso");
+    try {
+      planner.run();
+      fail("failed start did not throw");
+    } catch (StartupException e) {
+      assertTrue(e.getCause() instanceof IllegalStateException);
+      assertEquals(2, e.getResults().size());
+      assertEquals("left", e.getResults().get("left"));
+      assertEquals("torso", e.getResults().get("torso"));
+    }
+  }
+
+}
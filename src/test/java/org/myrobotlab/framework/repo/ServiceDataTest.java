@@ -1,13 +1,18 @@
 package org.myrobotlab.framework.repo;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.List;
 
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.myrobotlab.io.FileIO;
 import org.myrobotlab.logging.LoggerFactory;
 import org.myrobotlab.service.meta.abstracts.MetaData;
 import org.myrobotlab.test.AbstractTest;
@@ -39,6 +44,30 @@ public class ServiceDataTest extends AbstractTest {
     assertNotNull(generated);
   }
 
+  @Test
+  public void testIndex() throws IOException {
+    if (printMethods)System.out.println(String.format("Running %s.%s", getSimpleName(), getName()));
+    ServiceData generated = ServiceData.generate();
+    String fingerprint = ServiceIndex.fingerprint(FileIO.getRoot());
+    assertEquals(fingerprint, ServiceIndex.fingerprint(FileIO.getRoot()));
+
+    File file = new File(Files.createTempDirectory("serviceIndex").toFile(), "serviceIndex.dat");
+    ServiceIndex.write(generated, fingerprint, file);
+    ServiceIndex index = ServiceIndex.read(file);
+    assertEquals(fingerprint, index.getFingerprint());
+
+    ServiceData sd = new ServiceData(index);
+    assertArrayEquals(generated.getServiceTypeNames(), sd.getServiceTypeNames());
+    assertArrayEquals(generated.getCategoryNames(), sd.getCategoryNames());
+
+    MetaData expected = generated.getServiceType("org.myrobotlab.service.Runtime");
+    MetaData loaded = sd.getServiceType("org.myrobotlab.service.Runtime");
+    assertEquals(expected.getType(), loaded.getType());
+    assertEquals(expected.getDependencies().size(), loaded.getDependencies().size());
+    assertEquals(expected.categories, loaded.categories);
+    assertEquals(generated.getServiceTypes().size(), sd.getServiceTypes().size());
+  }
+
   @Test
   public void testGetLocalInstance() {
     if (printMethods)System.out.println(String.format("Running %s.%s", getSimpleName(), getName()));
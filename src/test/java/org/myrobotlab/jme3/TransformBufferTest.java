@@ -0,0 +1,159 @@
+package org.myrobotlab.jme3;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.junit.Test;
+import org.myrobotlab.test.AbstractTest;
+
+public class TransformBufferTest extends AbstractTest {
+
+  static class Recorder implements TransformBuffer.Target {
+    Map<String, Double> angles = new HashMap<String, Double>();
+    int calls = 0;
+
+    @Override
+    public void rotateTo(String name, String axis, double degrees) {
+      angles.put(name + "/" + axis, degrees);
+      ++calls;
+    }
+  }
+
+  // what the jme thread does with the queue - returns the rotations applied
+  static int drain(Queue<Jme3Msg> queue, TransformBuffer buffer, TransformBuffer.Target target, List<String> order) {
+    int count = 0;
+    Jme3Msg msg;
+    while ((msg = queue.poll()) != null) {
+      if (msg instanceof TransformBuffer.Rotation) {
+        if (buffer.apply((TransformBuffer.Rotation) msg, target)) {
+          ++count;
+        }
+      } else if (order != null) {
+        order.add(msg.method);
+      }
+    }
+    return count;
+  }
+
+  @Test
+  public void testLatestValueWins() {
+    Queue<Jme3Msg> queue = new ConcurrentLinkedQueue<Jme3Msg>();
+    TransformBuffer buffer = new TransformBuffer(queue);
+    Recorder target = new Recorder();
+    for (int i = 0; i <= 10; i++) {
+      buffer.rotateTo("i01.head.neck", null, i * 10);
+    }
+    buffer.rotateTo("i01.head.rothead", "y", 45);
+    buffer.rotateTo("i01.head.rothead", "x", 5);
+    assertEquals(3, buffer.getPending());
+    assertEquals(3, queue.size());
+
+    assertEquals(3, drain(queue, buffer, target, null));
+    assertEquals(3, target.calls);
+    assertEquals(100.0, target.angles.get("i01.head.neck/null"), 0);
+    assertEquals(45.0, target.angles.get("i01.head.rothead/y"), 0);
+    assertEquals(5.0, target.angles.get("i01.head.rothead/x"), 0);
+    assertEquals(13, buffer.getPuts());
+    assertEquals(10, buffer.getCoalesced());
+
+    // nothing new - nothing applied
+    assertEquals(0, drain(queue, buffer, target, null));
+    buffer.rotateTo("i01.head.neck", null, 90);
+    assertEquals(1, drain(queue, buffer, target, null));
+    assertEquals(90.0, target.angles.get("i01.head.neck/null"), 0);
+    assertEquals(3, buffer.size());
+  }
+
+  @Test
+  public void testQueueOrder() {
+    Queue<Jme3Msg> queue = new ConcurrentLinkedQueue<Jme3Msg>();
+    TransformBuffer buffer = new TransformBuffer(queue);
+    List<String> order = new ArrayList<String>();
+    TransformBuffer.Target target = (name, axis, degrees) -> order.add(name + " " + degrees);
+    buffer.rotateTo("a", null, 1);
+    buffer.rotateTo("b", null, 1);
+    buffer.rotateTo("a", null, 2);
+    buffer.add(new Jme3Msg("attach", new Object[] { "a" }));
+    // not coalesced into the rotation before attach
+    buffer.rotateTo("a", null, 3);
+    buffer.rotateTo("a", null, 4);
+    assertEquals(4, queue.size());
+    assertEquals(3, drain(queue, buffer, target, order));
+    assertEquals("[a 2.0, b 1.0, attach, a 4.0]", order.toString());
+    assertEquals(2, buffer.getCoalesced());
+  }
+
+  @Test
+  public void testClear() {
+    Queue<Jme3Msg> queue = new ConcurrentLinkedQueue<Jme3Msg>();
+    TransformBuffer buffer = new TransformBuffer(queue);
+    Recorder target = new Recorder();
+    buffer.rotateTo("a", null, 1);
+    buffer.clear();
+    assertEquals(0, buffer.size());
+    assertEquals(0, drain(queue, buffer, target, null));
+    buffer.rotateTo("a", null, 2);
+    assertEquals(1, drain(queue, buffer, target, null));
+    assertEquals(2.0, target.angles.get("a/null"), 0);
+  }
+
+  @Test
+  public void testFailingTarget() {
+    Queue<Jme3Msg> queue = new ConcurrentLinkedQueue<Jme3Msg>();
+    TransformBuffer buffer = new TransformBuffer(queue);
+    buffer.rotateTo("a", null, 1);
+    buffer.rotateTo("b", null, 2);
+    Recorder recorder = new Recorder();
+    int applied = drain(queue, buffer, (name, axis, degrees) -> {
+      if (name.equals("a")) {
+        throw new IllegalStateException("no node a");
+      }
+      recorder.rotateTo(name, axis, degrees);
+    }, null);
+    assertEquals(2, applied);
+    assertEquals(2.0, recorder.angles.get("b/null"), 0);
+    assertEquals(0, buffer.getPending());
+  }
+
+  @Test
+  public void testConcurrentProducers() throws InterruptedException {
+    final Queue<Jme3Msg> queue = new ConcurrentLinkedQueue<Jme3Msg>();
+    final TransformBuffer buffer = new TransformBuffer(queue);
+    final int joints = 20;
+    Thread[] producers = new Thread[4];
+    for (int t = 0; t < producers.length; t++) {
+      final int thread = t;
+      producers[t] = new Thread(() -> {
+        for (int i = 0; i < 10000; i++) {
+          buffer.rotateTo("joint" + (i % joints) + "-" + thread, null, i);
+        }
+      });
+      producers[t].start();
+    }
+    Recorder target = new Recorder();
+    boolean running = true;
+    while (running) {
+      drain(queue, buffer, target, null);
+      running = false;
+      for (Thread producer : producers) {
+        running |= producer.isAlive();
+      }
+    }
+    drain(queue, buffer, target, null);
+    // every joint ends on the last angle it was sent
+    assertEquals(joints * producers.length, target.angles.size());
+    for (int t = 0; t < producers.length; t++) {
+      for (int j = 0; j < joints; j++) {
+        assertEquals(10000 - joints + j, target.angles.get("joint" + j + "-" + t + "/null"), 0);
+      }
+    }
+    assertEquals(40000, buffer.getPuts());
+  }
+
+}
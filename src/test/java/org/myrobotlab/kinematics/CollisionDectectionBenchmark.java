@@ -0,0 +1,75 @@
+package org.myrobotlab.kinematics;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Ignore;
+
+/**
+ * Collision test benchmark at 50, 500 and 5000 items - random capsules in a 2
+ * m cube (colliding ones removed, so every test has to look at the whole
+ * scene) with the sweep and prune runTest and with the all pairs loop runTest
+ * used before.
+ */
+@Ignore
+public class CollisionDectectionBenchmark {
+
+  static CollisionDectection scene(int size, Random random) {
+    CollisionDectection cd = new CollisionDectection();
+    for (int i = 0; i < size; i++) {
+      cd.addItem(CollisionDectectionTest.randomItem(random, "item" + i, 2000, 150, 10));
+    }
+    // remove items until nothing collides
+    while (cd.runTest().haveCollision) {
+      cd.removeObject(cd.getCollisionItem()[1].getName());
+    }
+    return cd;
+  }
+
+  // the all pairs test CollisionDectection used to run
+  static boolean allPairs(CollisionDectection cd) {
+    ArrayList<CollisionItem> items = new ArrayList<CollisionItem>(cd.getItems().values());
+    for (CollisionItem item : items) {
+      for (CollisionItem citem : items) {
+        if (citem.getName().equals(item.getName()) || item.ignore.contains(citem.getName()) || citem.ignore.contains(item.getName())) {
+          continue;
+        }
+        Double[] tk = new Double[2];
+        Point[] points = cd.getClosestPoint(item, citem, tk, new Double[3]);
+        double d = points[0].distanceTo(points[1]);
+        double rad1 = (tk[0] <= 0.0 || tk[0] >= 1.0) ? 0 : item.getRadius();
+        double rad2 = (tk[1] == 0.0 || tk[1] == 1.0) ? 0 : citem.getRadius();
+        if (d <= rad1 + rad2) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  public static void main(String[] args) {
+    Random random = new Random(5);
+    for (int size : new int[] { 50, 500, 5000 }) {
+      CollisionDectection cd = scene(size, random);
+      int n = cd.getItems().size();
+      int rounds = Math.max(1, 2000000 / (n * n));
+
+      long start = System.nanoTime();
+      for (int r = 0; r < rounds; r++) {
+        allPairs(cd);
+      }
+      double allPairsMs = (System.nanoTime() - start) / 1000000.0 / rounds;
+
+      int sapRounds = rounds * 20;
+      start = System.nanoTime();
+      for (int r = 0; r < sapRounds; r++) {
+        cd.runTest();
+      }
+      double sapMs = (System.nanoTime() - start) / 1000000.0 / sapRounds;
+
+      System.out.println(String.format("%5d items  all pairs %10.3f ms  sweep and prune %8.3f ms (%d narrow phase pairs)  %.0fx", n, allPairsMs, sapMs, cd.getPairsTested(),
+          allPairsMs / sapMs));
+    }
+  }
+
+}
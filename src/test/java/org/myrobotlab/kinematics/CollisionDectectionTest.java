@@ -0,0 +1,83 @@
+package org.myrobotlab.kinematics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.myrobotlab.kinematics.CollisionDectection.CollisionResults;
+import org.myrobotlab.test.AbstractTest;
+
+public class CollisionDectectionTest extends AbstractTest {
+
+  static CollisionItem randomItem(Random random, String name, double space, double length, double radius) {
+    double x = random.nextDouble() * space;
+    double y = random.nextDouble() * space;
+    double z = random.nextDouble() * space;
+    Point origin = new Point(x, y, z, 0, 0, 0);
+    Point end = new Point(x + (random.nextDouble() - 0.5) * length, y + (random.nextDouble() - 0.5) * length, z + (random.nextDouble() - 0.5) * length, 0, 0, 0);
+    return new CollisionItem(origin, end, name, radius * (0.5 + random.nextDouble()), false);
+  }
+
+  @Test
+  public void testCollision() {
+    CollisionDectection cd = new CollisionDectection();
+    cd.addItem(new CollisionItem(new Point(0, 0, 0, 0, 0, 0), new Point(100, 0, 0, 0, 0, 0), "one", 10, false));
+    cd.addItem(new CollisionItem(new Point(50, -50, 15, 0, 0, 0), new Point(50, 50, 15, 0, 0, 0), "two", 10, false));
+    CollisionResults results = cd.runTest();
+    assertTrue(results.haveCollision);
+    assertTrue(cd.haveCollision());
+    assertEquals(15.0, cd.getCollisionPoint()[0].distanceTo(cd.getCollisionPoint()[1]), 0.0001);
+
+    // ignore works in both directions
+    cd.addIgnore("two", "one");
+    assertFalse(cd.runTest().haveCollision);
+    cd.removeIgnore("two", "one");
+    assertTrue(cd.runTest().haveCollision);
+
+    // moved apart
+    cd.getItem("two").setOrigin(new Point(50, -50, 25, 0, 0, 0));
+    cd.getItem("two").setEnd(new Point(50, 50, 25, 0, 0, 0));
+    assertFalse(cd.runTest().haveCollision);
+    assertEquals(0, cd.getPairsTested());
+  }
+
+  @Test
+  public void testBroadPhaseMatchesAllPairs() {
+    Random random = new Random(11);
+    for (int scene = 0; scene < 20; scene++) {
+      List<CollisionItem> all = new ArrayList<CollisionItem>();
+      CollisionDectection cd = new CollisionDectection();
+      for (int i = 0; i < 60; i++) {
+        CollisionItem item = randomItem(random, "item" + i, 2000, 300, 15);
+        if (i > 0 && random.nextInt(4) == 0) {
+          item.addIgnore("item" + (i - 1));
+        }
+        all.add(item);
+        cd.addItem(item);
+      }
+      // every pair on its own
+      boolean expected = false;
+      for (int i = 0; i < all.size() && !expected; i++) {
+        for (int j = i + 1; j < all.size() && !expected; j++) {
+          CollisionItem a = all.get(i);
+          CollisionItem b = all.get(j);
+          if (a.getIgnore().contains(b.getName()) || b.getIgnore().contains(a.getName())) {
+            continue;
+          }
+          CollisionDectection pair = new CollisionDectection();
+          pair.addItem(new CollisionItem(a));
+          pair.addItem(new CollisionItem(b));
+          expected = pair.runTest().haveCollision;
+        }
+      }
+      assertEquals(expected, cd.runTest().haveCollision);
+      assertTrue(cd.getPairsTested() < 60 * 59 / 2);
+    }
+  }
+
+}
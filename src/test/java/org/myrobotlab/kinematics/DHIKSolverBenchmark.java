@@ -0,0 +1,66 @@
+package org.myrobotlab.kinematics;
+
+import java.util.Random;
+
+import org.junit.Ignore;
+import org.myrobotlab.service.InMoovArm;
+
+/**
+ * IK benchmark for the InMoov left arm - solves the same set of reachable
+ * goals from the centered position with the finite difference solver
+ * InverseKinematics3D used to call (moveToGoalNumeric) and with the analytic
+ * jacobian solver (moveToGoal), then again with a ReachabilityMap warm start,
+ * and reports solves per second, iterations and the success rate of each.
+ */
+@Ignore
+public class DHIKSolverBenchmark {
+
+  static final int GOALS = 200;
+  static final int ROUNDS = 5;
+
+  static Point[] goals(DHRobotArm arm) {
+    Random random = new Random(1234);
+    Point[] goals = new Point[GOALS];
+    for (int i = 0; i < GOALS; i++) {
+      DHIKSolverTest.randomPose(arm, random);
+      goals[i] = arm.getPalmPosition();
+    }
+    return goals;
+  }
+
+  static void run(String name, DHRobotArm arm, Point[] goals, boolean numeric) {
+    int solved = 0;
+    long start = System.nanoTime();
+    for (Point goal : goals) {
+      arm.centerAllJoints();
+      boolean ok = (numeric) ? arm.moveToGoalNumeric(goal) : arm.moveToGoal(goal);
+      if (ok) {
+        ++solved;
+      }
+    }
+    long nanos = System.nanoTime() - start;
+    System.out.println(String.format("%-10s %5d goals %5d solved %10.1f solves/s %8.3f ms/solve", name, goals.length, solved, goals.length * 1000000000.0 / nanos,
+        nanos / 1000000.0 / goals.length));
+  }
+
+  public static void main(String[] args) {
+    DHRobotArm arm = InMoovArm.getDHRobotArm("i01", "left");
+    Point[] goals = goals(arm);
+    for (int round = 0; round < ROUNDS; round++) {
+      System.out.println("round " + round);
+      run("numeric", arm, goals, true);
+      run("analytic", arm, goals, false);
+    }
+    DHIKSolver solver = arm.getSolver();
+    System.out.println(String.format("analytic avg iterations %.1f avg solve %.3f ms failures %d", solver.getAverageIterations(), solver.getAverageSolveMs(), solver.getFailures()));
+
+    ReachabilityMap map = ReachabilityMap.build(arm);
+    System.out.println(String.format("reachability map built in %d ms from %d samples", map.getBuildMs(), map.getSamples()));
+    arm.setReachabilityMap(map);
+    for (int round = 0; round < ROUNDS; round++) {
+      run("warm", arm, goals, false);
+    }
+    System.out.println(map);
+  }
+
+}
@@ -0,0 +1,62 @@
+package org.myrobotlab.kinematics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.myrobotlab.service.InMoovArm;
+import org.myrobotlab.test.AbstractTest;
+
+public class DHIKSolverTest extends AbstractTest {
+
+  // random joint angles inside the limits of each link
+  static void randomPose(DHRobotArm arm, Random random) {
+    for (DHLink link : arm.getLinks()) {
+      link.setTheta(link.getMin() + random.nextDouble() * (link.getMax() - link.getMin()));
+    }
+  }
+
+  @Test
+  public void testAnalyticJacobian() {
+    DHRobotArm arm = InMoovArm.getDHRobotArm("i01", "left");
+    Random random = new Random(42);
+    double delta = 0.000001;
+    for (int n = 0; n < 20; n++) {
+      randomPose(arm, random);
+      Matrix jacobian = arm.getJacobian();
+      Point base = arm.getPalmPosition();
+      for (int j = 0; j < arm.getNumLinks(); j++) {
+        DHLink link = arm.getLink(j);
+        double theta = link.getTheta();
+        link.setTheta(theta + delta);
+        Point moved = arm.getPalmPosition().subtract(base);
+        link.setTheta(theta);
+        // finite difference agrees with the analytic jacobian
+        assertEquals(moved.getX() / delta, jacobian.elements[0][j], 0.01);
+        assertEquals(moved.getY() / delta, jacobian.elements[1][j], 0.01);
+        assertEquals(moved.getZ() / delta, jacobian.elements[2][j], 0.01);
+      }
+    }
+  }
+
+  @Test
+  public void testSolveReachableGoals() {
+    DHRobotArm arm = InMoovArm.getDHRobotArm("i01", "left");
+    Random random = new Random(7);
+    for (int n = 0; n < 50; n++) {
+      randomPose(arm, random);
+      Point goal = arm.getPalmPosition();
+      arm.centerAllJoints();
+      assertTrue(arm.moveToGoal(goal));
+      assertTrue(goal.distanceTo(arm.getPalmPosition()) < arm.getSolver().getErrorThreshold());
+      for (DHLink link : arm.getLinks()) {
+        assertTrue(link.getTheta() >= link.getMin() && link.getTheta() <= link.getMax());
+      }
+    }
+    assertEquals(50, arm.getSolver().getSolves());
+    assertEquals(0, arm.getSolver().getFailures());
+  }
+
+}
@@ -0,0 +1,36 @@
+package org.myrobotlab.kinematics;
+
+import org.junit.Ignore;
+import org.myrobotlab.openni.OpenNiData;
+
+/**
+ * Map3D.processDepthMap on a 640x480 depth map with three boxes in front of a
+ * far background, at decreasing skip (smaller voxels, more rays and more
+ * filled voxels to group).
+ */
+@Ignore
+public class Map3DBenchmark {
+
+  public static void main(String[] args) {
+    OpenNiData data = Map3DTest.depthScene(Map3DTest.BOXES, 1500);
+    for (int skip : new int[] { 10, 5, 3, 2 }) {
+      Map3D map = new Map3D();
+      map.skip = skip;
+      map.updateKinectPosition(new Point(0, 0, 0, 0, 0, 0));
+      // warm up
+      for (int r = 0; r < 5; r++) {
+        map.processDepthMap(data);
+      }
+      int rounds = 20;
+      long start = System.nanoTime();
+      for (int r = 0; r < rounds; r++) {
+        map.processDepthMap(data);
+      }
+      double ms = (System.nanoTime() - start) / 1000000.0 / rounds;
+      VoxelGrid grid = map.getGrid();
+      System.out.println(String.format("skip %2d  %6d rays  %8.2f ms  %d objects  %d filled voxels  %d chunks", skip, map.getRaysCast(), ms, map.getObject().size(),
+          grid.count(VoxelGrid.FILL), grid.getAllocatedChunks()));
+    }
+  }
+
+}
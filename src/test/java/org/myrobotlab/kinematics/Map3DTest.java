@@ -0,0 +1,135 @@
+package org.myrobotlab.kinematics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.Test;
+import org.myrobotlab.kinematics.Map3D.CoordStateValue;
+import org.myrobotlab.openni.OpenNiData;
+import org.myrobotlab.openni.PVector;
+import org.myrobotlab.test.AbstractTest;
+
+public class Map3DTest extends AbstractTest {
+
+  /**
+   * depth map of boxes in front of a background
+   *
+   * @param boxes
+   *          { minX, maxX, minY, maxY, depth } in pixels and mm
+   * @param background
+   *          depth of the background
+   */
+  static OpenNiData depthScene(int[][] boxes, float background) {
+    OpenNiData data = new OpenNiData();
+    data.depthMapRW = new PVector[640 * 480];
+    for (int py = 0; py < 480; py++) {
+      for (int px = 0; px < 640; px++) {
+        float z = background;
+        for (int[] box : boxes) {
+          if (px >= box[0] && px < box[1] && py >= box[2] && py < box[3]) {
+            z = Math.min(z, box[4]);
+          }
+        }
+        data.depthMapRW[px + py * 640] = new PVector((float) ((px - Map3D.cx_d) * z * Map3D.fx_d), (float) ((Map3D.cy_d - py) * z * Map3D.fy_d), z);
+      }
+    }
+    return data;
+  }
+
+  static final int[][] BOXES = new int[][] { { 100, 200, 100, 200, 600 }, { 300, 420, 250, 350, 800 }, { 500, 600, 50, 150, 950 } };
+
+  @Test
+  public void testObjects() {
+    Map3D map = new Map3D();
+    map.updateKinectPosition(new Point(0, 0, 0, 0, 0, 0));
+    map.processDepthMap(depthScene(BOXES, 1500));
+    ArrayList<HashMap<Integer[], Map3DPoint>> objects = map.getObject();
+    assertEquals(3, objects.size());
+    assertEquals(map.getGrid().count(VoxelGrid.FILL), objects.get(0).size() + objects.get(1).size() + objects.get(2).size());
+
+    // kinect depth is world y - each object lies on its box
+    List<Double> depths = new ArrayList<Double>();
+    for (HashMap<Integer[], Map3DPoint> object : objects) {
+      double y = 0;
+      for (Map3DPoint p : object.values()) {
+        y += p.point.getY();
+      }
+      depths.add(y / object.size());
+    }
+    depths.sort(null);
+    assertEquals(600, depths.get(0), 10);
+    assertEquals(800, depths.get(1), 10);
+    assertEquals(950, depths.get(2), 10);
+
+    // a second frame with one box less reuses the grid
+    VoxelGrid grid = map.getGrid();
+    map.processDepthMap(depthScene(new int[][] { BOXES[0], BOXES[1] }, 1500));
+    assertEquals(2, map.getObject().size());
+    assertTrue(grid == map.getGrid());
+  }
+
+  @Test
+  public void testCoordValue() {
+    Map3D map = new Map3D();
+    map.updateKinectPosition(new Point(0, 0, 0, 0, 0, 0));
+    map.processDepthMap(depthScene(new int[][] { { 200, 440, 120, 360, 800 } }, 1500));
+    // straight ahead of the kinect is world y
+    assertEquals(CoordStateValue.EMPTY, map.getCoordValue(0, 600, 0));
+    assertEquals(CoordStateValue.FILL, map.getCoordValue(0, 805, 0));
+    assertEquals(CoordStateValue.UNDEFINED, map.getCoordValue(0, 900, 0));
+    // behind the kinect nothing is known
+    assertEquals(CoordStateValue.UNDEFINED, map.getCoordValue(0, -600, 0));
+    // the background is further than fartestDistance - free all the way
+    assertEquals(CoordStateValue.EMPTY, map.getCoordValue(-450, 900, 0));
+  }
+
+  @Test
+  public void testRayMarching() {
+    VoxelGrid grid = new VoxelGrid(0, 0, 0, 10, 20, 20, 20);
+    grid.markFree(5, 5, 5, 195, 5, 5, false);
+    for (int x = 0; x < 19; x++) {
+      assertEquals(VoxelGrid.EMPTY, grid.get(x, 0, 0));
+    }
+    assertEquals(VoxelGrid.UNDEFINED, grid.get(19, 0, 0));
+    assertEquals(19, grid.count(VoxelGrid.EMPTY));
+
+    // a diagonal ray visits one voxel per boundary crossed, and never clears
+    // a filled voxel
+    grid.clear();
+    grid.set(10, 10, 10, VoxelGrid.FILL);
+    grid.markFree(1, 2, 3, 199, 198, 197, true);
+    assertEquals(19 * 3 + 1 - 1, grid.count(VoxelGrid.EMPTY));
+    assertEquals(VoxelGrid.FILL, grid.get(10, 10, 10));
+    assertEquals(VoxelGrid.EMPTY, grid.get(19, 19, 19));
+
+    // outside of the grid is ignored
+    grid.markFree(-100, 5, 5, 300, 5, 5, true);
+    assertEquals(VoxelGrid.UNDEFINED, grid.get(-1, 0, 0));
+  }
+
+  @Test
+  public void testComponents() {
+    VoxelGrid grid = new VoxelGrid(0, 0, 0, 10, 100, 100, 100);
+    // two lines of voxels 3 apart, and a single voxel far away
+    for (int x = 0; x < 40; x += 3) {
+      grid.set(x, 5, 5, VoxelGrid.FILL);
+      grid.set(x, 60, 5, VoxelGrid.FILL);
+    }
+    grid.set(90, 90, 90, VoxelGrid.FILL);
+    assertEquals(3, grid.components(35, 1).size());
+    assertEquals(2, grid.components(35, 2).size());
+    // too short a link distance splits the lines up
+    assertEquals(29, grid.components(25, 1).size());
+    // components leave the grid as it was
+    assertEquals(29, grid.count(VoxelGrid.FILL));
+    long key = VoxelGrid.key(90, 90, 90);
+    assertEquals(90, VoxelGrid.keyX(key));
+    assertEquals(90, VoxelGrid.keyY(key));
+    assertEquals(90, VoxelGrid.keyZ(key));
+  }
+
+}
@@ -0,0 +1,78 @@
+package org.myrobotlab.kinematics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.myrobotlab.service.InMoovArm;
+import org.myrobotlab.test.AbstractTest;
+
+public class ReachabilityMapTest extends AbstractTest {
+
+  @Rule
+  public TemporaryFolder testFolder = new TemporaryFolder();
+
+  @Test
+  public void testWarmStartAndReject() throws Exception {
+    DHRobotArm arm = InMoovArm.getDHRobotArm("i01", "left");
+    ReachabilityMap map = ReachabilityMap.build(arm, 40, 6);
+    assertTrue(map.getReachableVoxels() > 0);
+    assertTrue(map.getColdIterations() > 0);
+    arm.setReachabilityMap(map);
+
+    // goals the arm can reach are never rejected
+    Random random = new Random(3);
+    for (int n = 0; n < 50; n++) {
+      DHIKSolverTest.randomPose(arm, random);
+      Point goal = arm.getPalmPosition();
+      assertTrue(map.isReachable(goal));
+      arm.centerAllJoints();
+      assertTrue(arm.moveToGoal(goal));
+    }
+    assertTrue(map.getWarmStarts() > 0);
+    assertTrue(map.getAverageWarmIterations() < map.getColdIterations());
+    assertTrue(map.getIterationsSaved() > 0);
+    assertEquals(50, map.getLearned());
+
+    // a goal far outside the workspace is rejected without solving
+    long solves = arm.getSolver().getSolves();
+    assertFalse(arm.moveToGoal(new Point(5000, 5000, 5000)));
+    assertEquals(1, map.getRejected());
+    assertEquals(solves, arm.getSolver().getSolves());
+  }
+
+  @Test
+  public void testSaveAndLoad() throws Exception {
+    DHRobotArm arm = InMoovArm.getDHRobotArm("i01", "left");
+    ReachabilityMap map = ReachabilityMap.build(arm, 40, 6);
+    File file = new File(testFolder.getRoot(), "leftArm.reach");
+    map.save(file);
+
+    ReachabilityMap loaded = ReachabilityMap.load(file, arm, 40, 6);
+    assertNotNull(loaded);
+    assertEquals(map.getReachableVoxels(), loaded.getReachableVoxels());
+    assertEquals(map.getColdIterations(), loaded.getColdIterations(), 0.0);
+    double[] expected = new double[arm.getNumLinks()];
+    double[] actual = new double[arm.getNumLinks()];
+    Point goal = arm.getPalmPosition();
+    assertTrue(map.getSeed(goal, expected));
+    assertTrue(loaded.getSeed(goal, actual));
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals(expected[i], actual[i], 0.0);
+    }
+
+    // different settings or D-H parameters need a new map
+    assertNull(ReachabilityMap.load(file, arm, 20, 6));
+    arm.getLink(1).setD(arm.getLink(1).getD() + 1);
+    assertNull(ReachabilityMap.load(file, arm, 40, 6));
+  }
+
+}
@@ -0,0 +1,123 @@
+package org.myrobotlab.logging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.myrobotlab.service.Log.LogEntry;
+import org.myrobotlab.service.data.LogPage;
+import org.myrobotlab.test.AbstractTest;
+
+public class LogStoreTest extends AbstractTest {
+
+  File dir;
+
+  @Before
+  public void setUp() throws Exception {
+    dir = Files.createTempDirectory("logStore").toFile();
+  }
+
+  static LogEntry entry(long ts, String level, String logger, String thread, String body) {
+    LogEntry entry = new LogEntry();
+    entry.ts = ts;
+    entry.level = level;
+    entry.className = logger;
+    entry.threadName = thread;
+    entry.body = body;
+    return entry;
+  }
+
+  /**
+   * 1000 entries 1 second apart - every 10th a WARN of Arduino
+   */
+  static List<LogEntry> entries() {
+    List<LogEntry> entries = new ArrayList<>();
+    for (int i = 0; i < 1000; ++i) {
+      if (i % 10 == 0) {
+        entries.add(entry(i * 1000L, "WARN", "org.myrobotlab.service.Arduino", "arduino", "warn " + i));
+      } else {
+        entries.add(entry(i * 1000L, "DEBUG", "org.myrobotlab.service.Servo", "servo", "debug " + i));
+      }
+    }
+    return entries;
+  }
+
+  @Test
+  public void testQuery() throws Exception {
+    LogStore store = new LogStore(dir);
+    store.setSegmentBytes(8192);
+    store.append(entries());
+    assertTrue(store.getSegmentCount() > 1);
+
+    LogPage page = store.query(100000L, 200000L, "WARN", "Arduino", null, null, null, 100);
+    assertEquals(11, page.entries.size());
+    assertEquals(100000L, page.entries.get(0).ts);
+    assertEquals("warn 200", page.entries.get(10).body);
+    assertEquals("org.myrobotlab.service.Arduino", page.entries.get(0).className);
+    assertEquals("arduino", page.entries.get(0).threadName);
+    assertNull(page.next);
+    assertTrue(page.segmentsSkipped > 0);
+
+    page = store.query(null, null, "DEBUG", null, "servo", "debug 99", null, 100);
+    // debug 99 and 991 to 999
+    assertEquals(10, page.entries.size());
+
+    page = store.query(null, null, "ERROR", null, null, null, null, 100);
+    assertEquals(0, page.entries.size());
+  }
+
+  @Test
+  public void testPaging() throws Exception {
+    LogStore store = new LogStore(dir);
+    store.setSegmentBytes(8192);
+    store.append(entries());
+
+    List<LogEntry> all = new ArrayList<>();
+    String cursor = null;
+    int pages = 0;
+    do {
+      LogPage page = store.query(null, null, "WARN", null, null, null, cursor, 7);
+      all.addAll(page.entries);
+      cursor = page.next;
+      ++pages;
+    } while (cursor != null);
+
+    assertEquals(100, all.size());
+    assertTrue(pages >= 15);
+    for (int i = 0; i < all.size(); ++i) {
+      assertEquals(i * 10000L, all.get(i).ts);
+    }
+  }
+
+  @Test
+  public void testReopenAndBudget() throws Exception {
+    LogStore store = new LogStore(dir);
+    store.setSegmentBytes(8192);
+    store.append(entries());
+    store.close();
+
+    // an index lost in a crash is rebuilt from the segment
+    File[] indexes = dir.listFiles((d, name) -> name.endsWith(".idx"));
+    assertNotNull(indexes);
+    indexes[0].delete();
+
+    store = new LogStore(dir);
+    LogPage page = store.query(null, null, "WARN", null, null, null, null, 1000);
+    assertEquals(100, page.entries.size());
+
+    long total = store.getTotalBytes();
+    store.setMaxBytes(total / 2);
+    store.setSegmentBytes(8192);
+    store.append(entries());
+    assertTrue(store.getTotalBytes() <= total / 2 + 8192);
+  }
+
+}
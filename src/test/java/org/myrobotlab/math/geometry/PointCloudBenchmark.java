@@ -0,0 +1,75 @@
+package org.myrobotlab.math.geometry;
+
+import java.nio.FloatBuffer;
+
+import org.junit.Ignore;
+
+/**
+ * A 640x480 depth frame as a point cloud: one Point3df per point copied into
+ * a vertex buffer (what the kinect filter and JMonkeyEngine did before)
+ * against filling the cloud's buffer which the mesh uses as is, plus
+ * downsample and voxel filter on the buffers.
+ */
+@Ignore
+public class PointCloudBenchmark {
+
+  static float depth(int row, int column) {
+    return 0.5f + ((row * 7 + column * 13) % 1000) / 1000.0f;
+  }
+
+  public static void main(String[] args) {
+    int width = 640;
+    int height = 480;
+    int rounds = 100;
+    FloatBuffer vertices = PointCloud.createBuffer(width * height * 3);
+
+    for (int warm = 0; warm < 2; warm++) {
+      long start = System.nanoTime();
+      for (int r = 0; r < rounds; r++) {
+        Point3df[] points = new Point3df[width * height];
+        for (int row = 0; row < height; row++) {
+          for (int column = 0; column < width; column++) {
+            points[row * width + column] = new Point3df(column, row, depth(row, column));
+          }
+        }
+        vertices.rewind();
+        for (Point3df p : points) {
+          vertices.put(p.x);
+          vertices.put(p.y);
+          vertices.put(p.z);
+        }
+      }
+      double objectsMs = (System.nanoTime() - start) / 1000000.0 / rounds;
+
+      PointCloud pc = new PointCloud(width, height, false);
+      start = System.nanoTime();
+      for (int r = 0; r < rounds; r++) {
+        for (int row = 0; row < height; row++) {
+          for (int column = 0; column < width; column++) {
+            pc.set(row * width + column, column, row, depth(row, column));
+          }
+        }
+        pc.getPoints();
+      }
+      double bufferMs = (System.nanoTime() - start) / 1000000.0 / rounds;
+
+      start = System.nanoTime();
+      PointCloud small = null;
+      for (int r = 0; r < rounds; r++) {
+        small = pc.downsample(4);
+      }
+      double downsampleMs = (System.nanoTime() - start) / 1000000.0 / rounds;
+
+      start = System.nanoTime();
+      PointCloud voxels = null;
+      for (int r = 0; r < rounds / 10; r++) {
+        voxels = pc.voxelFilter(10);
+      }
+      double voxelMs = (System.nanoTime() - start) / 1000000.0 / (rounds / 10);
+
+      System.out.println(String.format("objects + copy %.2f ms  buffer %.2f ms  downsample(4) %.2f ms (%d points)  voxelFilter %.2f ms (%d points)", objectsMs, bufferMs,
+          downsampleMs, small.size(), voxelMs, voxels.size()));
+    }
+  }
+
+}
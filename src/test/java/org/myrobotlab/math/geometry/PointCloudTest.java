@@ -0,0 +1,99 @@
+package org.myrobotlab.math.geometry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.FloatBuffer;
+
+import org.junit.Test;
+import org.myrobotlab.test.AbstractTest;
+
+public class PointCloudTest extends AbstractTest {
+
+  @Test
+  public void testBuffers() {
+    PointCloud pc = new PointCloud(2, false);
+    for (int i = 0; i < 10; i++) {
+      pc.add(i, i * 2, i * 3);
+    }
+    assertEquals(10, pc.size());
+    assertTrue(pc.capacity() >= 10);
+    assertEquals(9 * 3, pc.getZ(9), 0);
+
+    FloatBuffer points = pc.getPoints();
+    assertTrue(points.isDirect());
+    assertEquals(0, points.position());
+    assertEquals(30, points.limit());
+    // not a copy
+    pc.set(0, 7, 8, 9);
+    assertEquals(7, points.get(0), 0);
+
+    Point3df[] data = pc.getData();
+    assertEquals(10, data.length);
+    assertEquals(8, data[0].y, 0);
+    PointCloud copy = new PointCloud(data);
+    assertEquals(10, copy.size());
+    assertEquals(18, copy.getY(9), 0);
+
+    assertNull(pc.getColorBuffer());
+    pc.setColors(new float[40]);
+    assertEquals(40, pc.getColors().length);
+    assertEquals(40, pc.getColorBuffer().limit());
+  }
+
+  @Test
+  public void testDownsample() {
+    PointCloud pc = new PointCloud(640, 480, true);
+    for (int row = 0; row < 480; row++) {
+      for (int column = 0; column < 640; column++) {
+        pc.set(row * 640 + column, column, row, 1);
+        pc.setColor(row * 640 + column, 1, 0, 0, 1);
+      }
+    }
+    assertTrue(pc.isOrganized());
+    PointCloud small = pc.downsample(4);
+    assertTrue(small.isOrganized());
+    assertEquals(160, small.getWidth());
+    assertEquals(120, small.getHeight());
+    int i = 5 * 160 + 7;
+    assertEquals(28, small.getX(i), 0);
+    assertEquals(20, small.getY(i), 0);
+    assertEquals(1, small.getColorBuffer().get(i * 4), 0);
+
+    PointCloud list = new PointCloud(10, false);
+    for (int p = 0; p < 10; p++) {
+      list.add(p, 0, 0);
+    }
+    PointCloud every3 = list.downsample(3);
+    assertEquals(4, every3.size());
+    assertEquals(9, every3.getX(3), 0);
+  }
+
+  @Test
+  public void testVoxelFilter() {
+    PointCloud pc = new PointCloud(16, true);
+    // two points in one voxel, one in another, one not a number
+    pc.add(0.1f, 0.1f, 0.1f, 1, 0, 0, 1);
+    pc.add(0.3f, 0.5f, 0.1f, 0, 0, 1, 1);
+    pc.add(-0.5f, 0.5f, 0.5f, 0, 1, 0, 1);
+    pc.add(Float.NaN, 0, 0, 0, 0, 0, 1);
+    PointCloud voxels = pc.voxelFilter(1.0f);
+    assertEquals(2, voxels.size());
+    assertEquals(0.2f, voxels.getX(0), 0.0001);
+    assertEquals(0.3f, voxels.getY(0), 0.0001);
+    assertEquals(0.5f, voxels.getColorBuffer().get(0), 0.0001);
+    assertEquals(0.5f, voxels.getColorBuffer().get(2), 0.0001);
+    assertEquals(-0.5f, voxels.getX(1), 0.0001);
+
+    // a dense grid of points - one per 10 cm voxel
+    PointCloud grid = new PointCloud(1000, false);
+    for (int x = 0; x < 40; x++) {
+      for (int y = 0; y < 40; y++) {
+        grid.add(x * 0.025f + 0.001f, y * 0.025f + 0.001f, -1.0f);
+      }
+    }
+    assertEquals(100, grid.voxelFilter(0.1f).size());
+  }
+
+}
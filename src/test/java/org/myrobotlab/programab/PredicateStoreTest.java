@@ -0,0 +1,72 @@
+package org.myrobotlab.programab;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.myrobotlab.test.AbstractTest;
+
+public class PredicateStoreTest extends AbstractTest {
+
+  @Rule
+  public TemporaryFolder testFolder = new TemporaryFolder();
+
+  @Test
+  public void testRecordReplayAndCompact() throws Exception {
+    File botPath = testFolder.newFolder("testbot");
+    PredicateStore store = new PredicateStore("testbot", botPath);
+
+    store.record("human", "name", "grog");
+    store.record("human", "topic", "tabs\tand\nnewlines");
+    store.record("human", "mood", "happy");
+    store.record("human", "mood", null);
+    store.record("other", "name", "kwatters");
+    assertEquals(5, store.getPendingCount());
+
+    // nothing is written until flushed
+    Map<String, String> predicates = new HashMap<>();
+    store.replay("human", predicates);
+    assertTrue(predicates.isEmpty());
+
+    assertEquals(5, store.flush());
+    assertEquals(0, store.getPendingCount());
+    assertEquals(5, store.getLogSize());
+
+    predicates.put("mood", "sad");
+    store.replay("human", predicates);
+    assertEquals("grog", predicates.get("name"));
+    assertEquals("tabs\tand\nnewlines", predicates.get("topic"));
+    assertNull(predicates.get("mood"));
+
+    // a new store on the same bot sees the same log
+    PredicateStore reopened = new PredicateStore("testbot", botPath);
+    assertEquals(5, reopened.getLogSize());
+
+    store.compactThreshold = 10;
+    assertFalse(store.compactIfNeeded());
+    assertEquals(2, store.compact());
+    assertEquals(0, store.getLogSize());
+
+    Map<String, String> human = PredicateStore.readPredicatesFile(store.getPredicatesFile("human"));
+    assertEquals("grog", human.get("name"));
+    Map<String, String> other = PredicateStore.readPredicatesFile(store.getPredicatesFile("other"));
+    assertEquals("kwatters", other.get("name"));
+
+    // changes after compaction are replayed on top of the predicates file
+    store.record("human", "name", "mrl");
+    store.flush();
+    store.compact();
+    human = PredicateStore.readPredicatesFile(store.getPredicatesFile("human"));
+    assertEquals("mrl", human.get("name"));
+    assertEquals("kwatters", PredicateStore.readPredicatesFile(store.getPredicatesFile("other")).get("name"));
+  }
+
+}
@@ -0,0 +1,41 @@
+package org.myrobotlab.programab;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.myrobotlab.test.AbstractTest;
+
+public class TrackedPredicatesTest extends AbstractTest {
+
+  @Test
+  public void testChanges() throws Exception {
+    Map<String, String> initial = new HashMap<>();
+    initial.put("name", "grog");
+    initial.put("mood", "happy");
+    TrackedPredicates predicates = new TrackedPredicates(initial);
+    assertEquals("grog", predicates.get("name"));
+    assertFalse(predicates.hasChanges());
+
+    // same value - no change
+    predicates.put("name", "grog");
+    assertFalse(predicates.hasChanges());
+
+    predicates.put("name", "kwatters");
+    predicates.put("topic", "robots");
+    predicates.remove("mood");
+    predicates.remove("nothing");
+    assertTrue(predicates.hasChanges());
+    assertEquals(3, predicates.takeChanges().size());
+    assertFalse(predicates.hasChanges());
+    assertEquals(0, predicates.takeChanges().size());
+
+    predicates.clear();
+    assertEquals(2, predicates.takeChanges().size());
+  }
+
+}
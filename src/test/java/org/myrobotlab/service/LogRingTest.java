@@ -0,0 +1,205 @@
+package org.myrobotlab.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.myrobotlab.service.Log.LogEntry;
+import org.myrobotlab.service.Log.Ring;
+import org.myrobotlab.test.AbstractTest;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.LoggingEvent;
+
+public class LogRingTest extends AbstractTest {
+
+  static final int PRODUCERS = 8;
+
+  // the ring the producers add to - replaced by the resize test
+  volatile Ring ring = null;
+
+  final AtomicLong rejected = new AtomicLong();
+
+  static LoggingEvent event(int producer, int i) {
+    LoggingEvent event = new LoggingEvent();
+    event.setTimeStamp(System.currentTimeMillis());
+    event.setLevel(Level.INFO);
+    event.setLoggerName(LogRingTest.class.getName());
+    event.setThreadName("producer-" + producer);
+    event.setMessage(producer + ":" + i);
+    return event;
+  }
+
+  /**
+   * runs the producers to the end, each adding events in order
+   */
+  void produce(int events) throws InterruptedException {
+    CountDownLatch go = new CountDownLatch(1);
+    List<Thread> producers = new ArrayList<>();
+    for (int p = 0; p < PRODUCERS; ++p) {
+      final int producer = p;
+      Thread t = new Thread(() -> {
+        try {
+          go.await();
+        } catch (InterruptedException e) {
+          return;
+        }
+        for (int i = 0; i < events; ++i) {
+          if (ring.add(event(producer, i)) < 0) {
+            rejected.incrementAndGet();
+          }
+        }
+      });
+      t.start();
+      producers.add(t);
+    }
+    go.countDown();
+    for (Thread t : producers) {
+      t.join();
+    }
+  }
+
+  /**
+   * every entry drained once and each producer's entries in the order they
+   * were added
+   */
+  static void assertUniqueInOrder(List<LogEntry> drained) {
+    Set<String> bodies = new HashSet<>();
+    int[] last = new int[PRODUCERS];
+    for (int p = 0; p < PRODUCERS; ++p) {
+      last[p] = -1;
+    }
+    for (LogEntry entry : drained) {
+      assertTrue("duplicate " + entry.body, bodies.add(entry.body));
+      String[] parts = entry.body.split(":");
+      int producer = Integer.parseInt(parts[0]);
+      int i = Integer.parseInt(parts[1]);
+      assertEquals("producer-" + producer, entry.threadName);
+      assertTrue(entry.body + " after " + last[producer], i > last[producer]);
+      last[producer] = i;
+    }
+  }
+
+  @Test
+  public void testBelowCapacity() throws Exception {
+    int events = 2000;
+    ring = new Ring(PRODUCERS * events);
+    List<LogEntry> drained = new ArrayList<>();
+    AtomicBoolean producing = new AtomicBoolean(true);
+    Thread drainer = new Thread(() -> {
+      while (producing.get()) {
+        drained.addAll(ring.drain());
+      }
+    });
+    drainer.start();
+    produce(events);
+    producing.set(false);
+    drainer.join();
+    drained.addAll(ring.drain());
+
+    assertEquals(PRODUCERS * events, drained.size());
+    assertUniqueInOrder(drained);
+    assertEquals(0, ring.getDropped());
+    assertEquals(0, rejected.get());
+    assertEquals(0, ring.size());
+  }
+
+  @Test
+  public void testAboveCapacity() throws Exception {
+    int events = 1000;
+    ring = new Ring(64);
+    produce(events);
+
+    // nothing drained - the first 64 claimed are kept, the rest dropped
+    List<LogEntry> drained = ring.drain();
+    assertEquals(64, drained.size());
+    assertUniqueInOrder(drained);
+    assertEquals(PRODUCERS * events - 64, ring.getDropped());
+    assertEquals(ring.getDropped(), rejected.get());
+    assertEquals(0, ring.size());
+
+    // the freed slots take events again
+    ring.add(event(0, events));
+    assertEquals(1, ring.drain().size());
+  }
+
+  @Test
+  public void testDropWhileDraining() throws Exception {
+    int events = 5000;
+    ring = new Ring(128);
+    List<LogEntry> drained = new ArrayList<>();
+    AtomicBoolean producing = new AtomicBoolean(true);
+    Thread drainer = new Thread(() -> {
+      while (producing.get()) {
+        drained.addAll(ring.drain());
+      }
+    });
+    drainer.start();
+    produce(events);
+    producing.set(false);
+    drainer.join();
+    drained.addAll(ring.drain());
+
+    assertUniqueInOrder(drained);
+    assertEquals(ring.getDropped(), rejected.get());
+    assertEquals(PRODUCERS * events, drained.size() + ring.getDropped());
+  }
+
+  /**
+   * the rings are replaced while the producers add, the way Log.setMaxSize
+   * does - a producer which read the ring before the swap adds to the retired
+   * one, which is still drained
+   */
+  @Test
+  public void testRetireOnResize() throws Exception {
+    int events = 5000;
+    ring = new Ring(256);
+    List<Ring> rings = new ArrayList<>();
+    rings.add(ring);
+    List<LogEntry> drained = new ArrayList<>();
+    AtomicBoolean producing = new AtomicBoolean(true);
+    Thread resizer = new Thread(() -> {
+      int size = 256;
+      do {
+        Ring retired = ring;
+        drained.addAll(retired.drain());
+        size = (size == 256) ? 1024 : 256;
+        Ring next = new Ring(size);
+        rings.add(next);
+        ring = next;
+        drained.addAll(retired.drain());
+      } while (producing.get());
+    });
+    resizer.start();
+    produce(events);
+    producing.set(false);
+    resizer.join();
+
+    // the producers are done - whatever they added is drained now
+    long dropped = 0;
+    for (Ring r : rings) {
+      drained.addAll(r.drain());
+      assertEquals(0, r.size());
+      dropped += r.getDropped();
+    }
+    assertTrue(rings.size() > 1);
+    assertEquals(dropped, rejected.get());
+    assertEquals(PRODUCERS * events, drained.size() + dropped);
+
+    // a late entry of the retired ring can be drained after newer ones, so
+    // only once each
+    Set<String> bodies = new HashSet<>();
+    for (LogEntry entry : drained) {
+      assertTrue("duplicate " + entry.body, bodies.add(entry.body));
+    }
+  }
+
+}
@@ -26,6 +26,14 @@ public class MarySpeechTest extends AbstractServiceTest {
     File f = new File(result.get(0).getFileName());
     Assert.assertTrue("Cached file doesn't exist. {}" , f.exists());
     Assert.assertTrue("Cached file was zero length. {}", f.length() > 0);
+
+    // sentences are synthesized separately and played in order
+    result = speech.speakBlocking("hello world. how are you? fine");
+    Assert.assertEquals(3, result.size());
+    for (AudioData part : result) {
+      Assert.assertTrue(new File(part.getFileName()).length() > 0);
+    }
+    Assert.assertNotNull(speech.getLastTimeToFirstAudio());
     
   }
 }
@@ -0,0 +1,64 @@
+package org.myrobotlab.service;
+
+import org.junit.Ignore;
+import org.myrobotlab.framework.Message;
+import org.myrobotlab.logging.LoggingFactory;
+import org.myrobotlab.service.data.Orientation;
+import org.myrobotlab.service.data.PinData;
+
+/**
+ * Callbacks per second into a script - a pin array and an orientation, the way
+ * Arduino.publishPinArray and an imu's publishOrientation arrive - with the
+ * functions called directly and through the compiled call statement. Then
+ * the latency of queued callbacks while a script runs in an isolated
+ * interpreter.
+ */
+@Ignore
+public class PythonCallbackBenchmark {
+
+  static final String script = "count = 0\n" //
+      + "def onPinArray(pins):\n" //
+      + "  global count\n" //
+      + "  count += len(pins)\n" //
+      + "def onOrientation(o):\n" //
+      + "  global count\n" //
+      + "  count += 1\n";
+
+  public static void main(String[] args) throws InterruptedException {
+    LoggingFactory.init("WARN");
+    Python python = (Python) Runtime.start("python", "Python");
+    python.exec(script, true);
+
+    PinData[] pins = new PinData[16];
+    for (int i = 0; i < pins.length; ++i) {
+      pins[i] = new PinData(i, i * 10);
+    }
+    Message pinArray = Message.createMessage("arduino", "python", "onPinArray", new Object[] { pins });
+    Message orientation = Message.createMessage("imu", "python", "onOrientation", new Object[] { new Orientation(1.0, 2.0, 3.0) });
+
+    for (boolean direct : new boolean[] { false, true, false, true }) {
+      python.setDirectCallbacks(direct);
+      int rounds = 200000;
+      long start = System.nanoTime();
+      for (int i = 0; i < rounds; ++i) {
+        python.invokeCallback(pinArray);
+        python.invokeCallback(orientation);
+      }
+      double s = (System.nanoTime() - start) / 1000000000.0;
+      System.out.println(String.format("%-8s %10.0f callbacks/s  %6.2f us per callback", direct ? "direct" : "exec", 2 * rounds / s, s * 1000000 / (2 * rounds)));
+    }
+
+    // queue latency of callbacks while a long script runs in its own
+    // interpreter
+    python.execIsolated("from time import sleep\nsleep(2)\n");
+    python.getPythonStats();
+    for (int i = 0; i < 1000; ++i) {
+      python.execMethod("onOrientation", new Orientation(1.0, 2.0, 3.0));
+      Thread.sleep(1);
+    }
+    Thread.sleep(100);
+    System.out.println(python.getPythonStats());
+    Runtime.shutdown();
+  }
+
+}
@@ -0,0 +1,120 @@
+package org.myrobotlab.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.function.BooleanSupplier;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.myrobotlab.framework.Message;
+import org.myrobotlab.service.data.PythonStats;
+import org.myrobotlab.test.AbstractTest;
+import org.python.core.PyException;
+import org.python.util.PythonInterpreter;
+
+public class PythonTest extends AbstractTest {
+
+  static Python python = null;
+
+  @Before
+  public void setUp() throws Exception {
+    python = (Python) Runtime.start("python", "Python");
+  }
+
+  static Message callback(String method, Object... data) {
+    return Message.createMessage("test", "python", method, data);
+  }
+
+  static void waitFor(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10000;
+    while (!condition.getAsBoolean()) {
+      if (System.currentTimeMillis() > deadline) {
+        fail("timed out");
+      }
+      Thread.sleep(10);
+    }
+  }
+
+  // an isolated script is done when it is unregistered and its interpreter
+  // is back in the pool
+  static void awaitScript(String name, int idle) throws InterruptedException {
+    waitFor(() -> !python.interpThreads.containsKey(name) && python.interpreterPool.size() >= idle);
+  }
+
+  @Test
+  public void testRedefinedCallback() throws Exception {
+    python.setDirectCallbacks(true);
+    python.exec("result = 0\ndef onValue(v):\n  global result\n  result = v\n", true);
+    python.invokeCallback(callback("onValue", 2));
+    assertEquals("2", python.evalAndWait("result"));
+
+    // the resolved function is not called once the script replaced it
+    python.exec("def onValue(v):\n  global result\n  result = v * 10\n", true);
+    python.invokeCallback(callback("onValue", 3));
+    assertEquals("30", python.evalAndWait("result"));
+  }
+
+  @Test
+  public void testUndefinedCallback() throws Exception {
+    python.setDirectCallbacks(true);
+    try {
+      // not a function - goes through exec, which reports it
+      python.invokeCallback(callback("onNothingDefined", 1));
+      fail("undefined callback did not throw");
+    } catch (PyException e) {
+      assertTrue(e.toString(), e.toString().contains("NameError"));
+    }
+  }
+
+  @Test
+  public void testIsolatedGlobals() throws Exception {
+    python.setInterpreterPoolSize(2);
+    String a = python.execIsolated("secret = 42\nsleep(0.5)\nshared['aSees'] = 'secret' in globals()\n");
+    String b = python.execIsolated("shared['bSees'] = 'secret' in globals()\n");
+    awaitScript(a, 0);
+    awaitScript(b, 0);
+    assertEquals(Boolean.TRUE, python.getShared("aSees"));
+    assertEquals(Boolean.FALSE, python.getShared("bSees"));
+    // nor does the main interpreter
+    assertEquals("False", python.evalAndWait("'secret' in globals()"));
+    python.setInterpreterPoolSize(0);
+  }
+
+  @Test
+  public void testInterpreterPool() throws Exception {
+    python.setInterpreterPoolSize(1);
+    assertEquals(1, python.getPythonStats().idleInterpreters);
+    PythonInterpreter pooled = python.interpreterPool.peek();
+
+    String name = python.execIsolated("leftover = 1\n");
+    awaitScript(name, 1);
+    assertSame(pooled, python.interpreterPool.peek());
+
+    // returned with its globals cleared
+    name = python.execIsolated("shared['leftover'] = 'leftover' in globals()\n");
+    awaitScript(name, 1);
+    assertSame(pooled, python.interpreterPool.peek());
+    assertEquals(Boolean.FALSE, python.getShared("leftover"));
+
+    python.setInterpreterPoolSize(0);
+    assertEquals(0, python.getPythonStats().idleInterpreters);
+  }
+
+  @Test
+  public void testStats() throws Exception {
+    python.exec("def onTick():\n  pass\n", true);
+    long before = python.getPythonStats().callbacks;
+    python.execMethod("onTick");
+    python.execMethod("onTick");
+    long[] interval = new long[1];
+    waitFor(() -> (interval[0] += python.getPythonStats().intervalCallbacks) >= 2);
+    PythonStats stats = python.getPythonStats();
+    assertEquals(before + 2, stats.callbacks);
+    assertEquals(0, stats.queueDepth);
+    assertEquals(0, stats.intervalCallbacks);
+  }
+
+}
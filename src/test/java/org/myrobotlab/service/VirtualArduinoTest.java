@@ -3,14 +3,21 @@ package org.myrobotlab.service;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
 import org.myrobotlab.arduino.BoardInfo;
 import org.myrobotlab.arduino.Msg;
 import org.myrobotlab.arduino.VirtualMsg;
 import org.myrobotlab.arduino.virtual.Device;
 import org.myrobotlab.arduino.virtual.MrlServo;
+import org.myrobotlab.arduino.virtual.Wire;
 import org.myrobotlab.framework.QueueStats;
 import org.myrobotlab.framework.Service;
 import org.myrobotlab.sensor.EncoderData;
+import org.myrobotlab.service.data.I2cPollData;
 import org.myrobotlab.service.data.PinData;
 import org.myrobotlab.service.data.SerialRelayData;
 import org.myrobotlab.service.interfaces.MrlCommPublisher;
@@ -22,6 +29,8 @@ public class VirtualArduinoTest extends AbstractServiceTest implements MrlCommPu
   private Msg msg = new Msg(this, null);
   String testPort = "testPort";
   Serial serial = (Serial)Runtime.start("dteSerial", "Serial");
+  List<I2cPollData> polls = new ArrayList<I2cPollData>();
+  int[] i2cData = null;
 
   @Override
   public Service createService() {
@@ -82,6 +91,43 @@ public class VirtualArduinoTest extends AbstractServiceTest implements MrlCommPu
     Thread.sleep(50);
     assertFalse(s.enabled);
     
+    // scheduled i2c reads - a 14 byte burst from a register file every 20 ms
+    Wire.setRegisters(0x68, 0x3B, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14);
+    serial.write(msg.i2cBusAttach(1, 1));
+    Thread.sleep(50);
+    serial.write(msg.i2cPollStart(1, 7, 0x68, 0x3B, 14, 20));
+    Thread.sleep(300);
+    serial.write(msg.i2cPollStop(1, 7));
+    Thread.sleep(50);
+    synchronized (polls) {
+      assertTrue(polls.size() >= 3);
+      for (int i = 0; i < polls.size(); ++i) {
+        I2cPollData poll = polls.get(i);
+        assertEquals(7, poll.pollId);
+        assertEquals(14, poll.data.length);
+        assertEquals(1, poll.data[0]);
+        assertEquals(14, poll.data[13]);
+        if (i > 0) {
+          assertTrue(poll.timestamp > polls.get(i - 1).timestamp);
+        }
+      }
+    }
+    int count = polls.size();
+    Thread.sleep(100);
+    assertEquals(count, polls.size());
+
+    // a batched transaction - write two registers, then read them back with
+    // the register after them
+    serial.write(msg.i2cTransaction(1, 0x68, new int[] { 3, 0x6B, 0x11, 0x22, 1, 0x6B, 0x80 | 3 }));
+    Thread.sleep(50);
+    assertNotNull(i2cData);
+    assertEquals(3, i2cData.length);
+    assertEquals(0x11, i2cData[0]);
+    assertEquals(0x22, i2cData[1]);
+    assertEquals(0, i2cData[2]);
+    assertEquals(0x22, Wire.getRegister(0x68, 0x6C));
+    Wire.clear();
+    
     va.disconnect();
     Thread.sleep(50);
     assertFalse(va.isConnected());
@@ -132,6 +178,21 @@ public class VirtualArduinoTest extends AbstractServiceTest implements MrlCommPu
   @Override
   public void publishI2cData(Integer deviceId, int[] data) {
     log.info("Publish I2C - Device ID: {} Data: {}", deviceId, data);
+    i2cData = data;
+  }
+
+  @Override
+  public I2cPollData publishI2cPollData(Integer deviceId, Integer pollId, Long timestamp, int[] data) {
+    I2cPollData poll = new I2cPollData("virtualArduino", pollId, 1, 0x68, 0x3B);
+    poll.timestamp = timestamp;
+    poll.data = new byte[data.length];
+    for (int i = 0; i < data.length; ++i) {
+      poll.data[i] = (byte) data[i];
+    }
+    synchronized (polls) {
+      polls.add(poll);
+    }
+    return poll;
   }
 
   @Override